@@ -0,0 +1,86 @@
+-- Chuyển quan hệ bạn bè về một nơi lưu duy nhất: bảng friendships (mỗi chiều một dòng).
+-- Bảng user_friends cũ được giữ lại dưới tên user_friends_legacy, tên user_friends trở thành view chỉ đọc.
+-- Chạy được nhiều lần; nên chạy khi đã dừng các node cũ vẫn còn ghi vào user_friends.
+
+-- 1. Xóa dòng trùng cùng chiều, giữ dòng mới nhất
+DELETE f FROM friendships f
+JOIN friendships newer ON newer.user_id = f.user_id AND newer.friend_id = f.friend_id AND newer.id > f.id;
+
+-- 2. Chép các cặp chỉ có trong user_friends sang friendships (cả hai chiều), bỏ qua cặp đã có dòng
+SET @exist := (SELECT COUNT(*)
+               FROM INFORMATION_SCHEMA.TABLES
+               WHERE TABLE_SCHEMA = DATABASE()
+               AND TABLE_NAME = 'user_friends'
+               AND TABLE_TYPE = 'BASE TABLE');
+
+SET @query = IF(@exist = 1,
+               'INSERT INTO friendships (user_id, friend_id, status, mutual_friends_count, created_at, updated_at)
+                SELECT p.user_id, p.friend_id, ''ACCEPTED'', 0, NOW(), NOW()
+                FROM (SELECT user_id, friend_id FROM user_friends
+                      UNION
+                      SELECT friend_id, user_id FROM user_friends) p
+                WHERE p.user_id <> p.friend_id
+                AND NOT EXISTS (SELECT 1 FROM friendships f WHERE f.user_id = p.user_id AND f.friend_id = p.friend_id)
+                AND NOT EXISTS (SELECT 1 FROM friendships f WHERE f.user_id = p.friend_id AND f.friend_id = p.user_id AND f.status = ''BLOCKED'')',
+               'SELECT "Bảng user_friends đã được chuyển"');
+PREPARE stmt FROM @query;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 3. Bổ sung chiều còn thiếu của các dòng ACCEPTED
+INSERT INTO friendships (user_id, friend_id, status, mutual_friends_count, created_at, updated_at)
+SELECT f.friend_id, f.user_id, 'ACCEPTED', 0, NOW(), NOW()
+FROM friendships f
+WHERE f.status = 'ACCEPTED'
+AND NOT EXISTS (SELECT 1 FROM friendships r WHERE r.user_id = f.friend_id AND r.friend_id = f.user_id);
+
+-- 4. Unique key cho (user_id, friend_id): câu lệnh ghi hai chiều dựa vào ON DUPLICATE KEY UPDATE
+SET @exist := (SELECT COUNT(*)
+               FROM INFORMATION_SCHEMA.STATISTICS
+               WHERE TABLE_SCHEMA = DATABASE()
+               AND TABLE_NAME = 'friendships'
+               AND INDEX_NAME = 'uk_friendships_user_friend');
+
+SET @query = IF(@exist = 0,
+               'ALTER TABLE friendships ADD CONSTRAINT uk_friendships_user_friend UNIQUE (user_id, friend_id)',
+               'SELECT "Unique key uk_friendships_user_friend đã tồn tại"');
+PREPARE stmt FROM @query;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 5. Index cho chiều ngược (lời mời đã nhận, đối chiếu hai chiều)
+SET @exist := (SELECT COUNT(*)
+               FROM INFORMATION_SCHEMA.STATISTICS
+               WHERE TABLE_SCHEMA = DATABASE()
+               AND TABLE_NAME = 'friendships'
+               AND INDEX_NAME = 'idx_friendships_friend_status');
+
+SET @query = IF(@exist = 0,
+               'CREATE INDEX idx_friendships_friend_status ON friendships (friend_id, status)',
+               'SELECT "Index idx_friendships_friend_status đã tồn tại"');
+PREPARE stmt FROM @query;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 6. Đổi tên bảng cũ và thay bằng view chỉ đọc cho các truy vấn/báo cáo còn dùng user_friends
+SET @exist := (SELECT COUNT(*)
+               FROM INFORMATION_SCHEMA.TABLES
+               WHERE TABLE_SCHEMA = DATABASE()
+               AND TABLE_NAME = 'user_friends'
+               AND TABLE_TYPE = 'BASE TABLE');
+
+SET @query = IF(@exist = 1,
+               'RENAME TABLE user_friends TO user_friends_legacy',
+               'SELECT "Bảng user_friends đã được đổi tên"');
+PREPARE stmt FROM @query;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+CREATE OR REPLACE VIEW user_friends AS
+SELECT user_id, friend_id FROM friendships WHERE status = 'ACCEPTED';
+
+-- Kiểm tra: số cặp ACCEPTED chỉ có một chiều (phải bằng 0)
+SELECT COUNT(*) AS asymmetric_edges
+FROM friendships f
+WHERE f.status = 'ACCEPTED'
+AND NOT EXISTS (SELECT 1 FROM friendships r WHERE r.user_id = f.friend_id AND r.friend_id = f.user_id AND r.status = 'ACCEPTED');
@@ -9,12 +9,14 @@ import org.springframework.context.annotation.ComponentScan;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.data.web.config.EnableSpringDataWebSupport;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableJpaRepositories(basePackages = "com.example.server.repositories")
 @EntityScan(basePackages = "com.example.server.models")
 @EnableCaching
 @EnableAsync
+@EnableScheduling
 @ComponentScan(basePackages = {
     "com.example.server.controllers",
     "com.example.server.services",
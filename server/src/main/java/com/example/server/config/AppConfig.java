@@ -1,9 +1,9 @@
 package com.example.server.config;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
@@ -18,8 +18,11 @@ import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import org.springframework.context.event.ApplicationEventMulticaster;
 import org.springframework.context.event.SimpleApplicationEventMulticaster;
 import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.context.annotation.Lazy;
 
+import com.example.server.services.TokenBlacklistService;
+
 import java.util.Arrays;
 import java.util.List;
 
@@ -28,7 +31,7 @@ import java.util.List;
 public class AppConfig {
 
     @Autowired
-    private RedisTemplate<String, String> redisTemplate;
+    private TokenBlacklistService tokenBlacklistService;
 
     private static final List<String> ALLOWED_ORIGINS = Arrays.asList(
         "http://localhost:3000",
@@ -69,12 +72,14 @@ public class AppConfig {
                 .requestMatchers(HttpMethod.GET, "/api/groups/{id:\\d+}").permitAll()
                 .requestMatchers(HttpMethod.GET, "/api/groups/{id:\\d+}/members").permitAll()
                 .requestMatchers("/api/health").permitAll()
+                .requestMatchers("/actuator/health").permitAll()
+                .requestMatchers("/actuator/**").authenticated()
                 .requestMatchers("/api/admin/**").permitAll()
                 .requestMatchers("/api/friendship/**").authenticated()
                 .requestMatchers("/api/**").authenticated()
                 .anyRequest().permitAll()
             )
-            .addFilterBefore(new CookieTokenValidator(jwtProvider, redisTemplate), BasicAuthenticationFilter.class)
+            .addFilterBefore(new CookieTokenValidator(jwtProvider, tokenBlacklistService), BasicAuthenticationFilter.class)
             .csrf(csrf -> csrf.disable())
             .cors(cors -> cors.configurationSource(corsConfigurationSource()))
             .httpBasic(basic -> basic.disable())
@@ -105,8 +110,19 @@ public class AppConfig {
         return eventMulticaster;
     }
 
+    // Luồng cho các job @Scheduled (presence, media job, đối soát, nạp lại chỉ mục): mặc định chỉ có một luồng,
+    // một job chạy lâu sẽ làm trễ việc gia hạn presence và các job khác
+    @Bean(name = "taskScheduler")
+    ThreadPoolTaskScheduler taskScheduler(@Value("${app.scheduling.pool-size:4}") int poolSize) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(poolSize);
+        scheduler.setThreadNamePrefix("scheduled-");
+        return scheduler;
+    }
+
+    // Đổi cost chỉ áp dụng cho mật khẩu băm mới; mật khẩu cũ được băm lại khi người dùng đăng nhập thành công
     @Bean
-    PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    PasswordEncoder passwordEncoder(@Value("${app.auth.bcrypt.strength:10}") int strength) {
+        return new BCryptPasswordEncoder(strength);
     }
 }
\ No newline at end of file
@@ -0,0 +1,8 @@
+package com.example.server.config;
+
+/**
+ * Người dùng đã xác thực của request, dựng từ claims của JWT và trạng thái tài khoản đã cache (không nạp entity User).
+ * Controller nhận qua tham số kiểu AuthPrincipal; giá trị null nghĩa là request chưa đăng nhập.
+ */
+public record AuthPrincipal(Long id, String email, boolean admin) {
+}
@@ -0,0 +1,161 @@
+package com.example.server.config;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.MethodParameter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+import com.example.server.models.User;
+import com.example.server.repositories.UserRepository;
+import com.example.server.services.TokenBlacklistService;
+
+import io.jsonwebtoken.Claims;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Cung cấp AuthPrincipal cho tham số controller. Dùng claims CookieTokenValidator đã xác thực nếu có,
+ * kết quả được giữ trên request nên nhiều lần resolve trong cùng request chỉ tính một lần.
+ * Trạng thái tài khoản (đã xóa, bị khóa, quyền admin hiện tại) đọc từ bảng users qua cache ngắn hạn,
+ * nên khóa tài khoản hay đổi quyền có hiệu lực trong vòng app.auth.account-status-ttl-ms dù token còn hạn.
+ */
+@Component
+public class AuthPrincipalArgumentResolver implements HandlerMethodArgumentResolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuthPrincipalArgumentResolver.class);
+
+    private static final String PRINCIPAL_ATTRIBUTE = AuthPrincipal.class.getName();
+
+    @Autowired
+    private JwtProvider jwtProvider;
+
+    @Autowired
+    private TokenBlacklistService tokenBlacklistService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    // userId -> trạng thái tài khoản, để các request liên tiếp của cùng người không phải tra bảng users
+    private final Map<Long, CachedStatus> accountStatuses = new ConcurrentHashMap<>();
+
+    @Value("${app.auth.account-status-ttl-ms:30000}")
+    private long accountStatusTtlMs;
+
+    @Value("${app.auth.account-status-cache-max-size:10000}")
+    private int accountStatusCacheMaxSize;
+
+    // status null: người dùng không còn tồn tại
+    private record CachedStatus(UserRepository.AccountStatus status, long cachedUntil) {
+    }
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return AuthPrincipal.class.equals(parameter.getParameterType());
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+            NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+        HttpServletRequest request = webRequest.getNativeRequest(HttpServletRequest.class);
+        if (request == null) {
+            return null;
+        }
+        if (request.getAttribute(PRINCIPAL_ATTRIBUTE) instanceof AuthPrincipal principal) {
+            return principal;
+        }
+
+        String token = jwtProvider.getJwtFromRequest(request);
+        if (token == null) {
+            return null;
+        }
+
+        // Token từ cookie đã được filter kiểm tra danh sách đen; token từ header Authorization thì chưa
+        AuthPrincipal principal = resolve(token, token.equals(request.getAttribute(JwtProvider.VERIFIED_TOKEN_ATTRIBUTE)));
+        if (principal != null) {
+            request.setAttribute(PRINCIPAL_ATTRIBUTE, principal);
+        }
+        return principal;
+    }
+
+    /**
+     * AuthPrincipal của một token cho các controller còn nhận token dạng chuỗi; null nếu token không hợp lệ,
+     * đã đăng xuất, hoặc tài khoản đã bị xóa/khóa.
+     */
+    public AuthPrincipal resolveToken(String token) {
+        return token == null ? null : resolve(token, false);
+    }
+
+    // Trạng thái tài khoản vừa đổi trên node này (khóa/mở khóa, đổi quyền): bỏ mục cache để có hiệu lực ngay
+    public void evictAccountStatus(Long userId) {
+        if (userId != null) {
+            accountStatuses.remove(userId);
+        }
+    }
+
+    private AuthPrincipal resolve(String token, boolean blacklistChecked) {
+        Claims claims;
+        try {
+            claims = jwtProvider.parseClaims(token);
+        } catch (Exception e) {
+            logger.debug("Token không hợp lệ: {}", e.getMessage());
+            return null;
+        }
+        if (!blacklistChecked && tokenBlacklistService.isBlacklisted(token)) {
+            return null;
+        }
+        return toPrincipal(claims);
+    }
+
+    private AuthPrincipal toPrincipal(Claims claims) {
+        String email = claims.getSubject();
+        Object userId = claims.get(JwtProvider.CLAIM_USER_ID);
+        Long id;
+        if (userId != null) {
+            id = Long.valueOf(userId.toString());
+        } else {
+            // Token phát hành trước khi có claim userId: tra theo email cho đến khi token đó hết hạn
+            User user = userRepository.findByEmail(email);
+            if (user == null) {
+                return null;
+            }
+            id = user.getId();
+        }
+
+        // Quyền admin lấy từ database chứ không từ claim, để thu hồi quyền không phải chờ token hết hạn
+        UserRepository.AccountStatus status = accountStatus(id);
+        if (status == null || Boolean.FALSE.equals(status.getIsActive())) {
+            logger.debug("Tài khoản {} không còn tồn tại hoặc đã bị khóa", id);
+            return null;
+        }
+        return new AuthPrincipal(id, status.getEmail(), Boolean.TRUE.equals(status.getAdmin()));
+    }
+
+    private UserRepository.AccountStatus accountStatus(Long userId) {
+        long now = System.currentTimeMillis();
+        CachedStatus cached = accountStatuses.get(userId);
+        if (cached != null) {
+            if (cached.cachedUntil() > now) {
+                return cached.status();
+            }
+            accountStatuses.remove(userId, cached);
+        }
+
+        UserRepository.AccountStatus status = userRepository.findAccountStatusById(userId);
+        if (accountStatuses.size() >= accountStatusCacheMaxSize) {
+            accountStatuses.entrySet().removeIf(entry -> entry.getValue().cachedUntil() <= now);
+            if (accountStatuses.size() >= accountStatusCacheMaxSize) {
+                accountStatuses.clear();
+            }
+        }
+        accountStatuses.put(userId, new CachedStatus(status, now + accountStatusTtlMs));
+        return status;
+    }
+}
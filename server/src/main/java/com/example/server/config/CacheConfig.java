@@ -0,0 +1,114 @@
+package com.example.server.config;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.cache.annotation.CachingConfigurer;
+import org.springframework.cache.interceptor.CacheErrorHandler;
+import org.springframework.cache.interceptor.LoggingCacheErrorHandler;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Cache cho các @Cacheable: L1 trong tiến trình trước Redis (L2), hủy L1 giữa các node qua pub/sub.
+ * Giá trị mã hóa bằng CacheValueCodec; TTL và kích thước L1 cấu hình riêng từng cache (app.cache.policy.*).
+ * Các @Cacheable(sync = true) được chống dồn tải: một luồng/một node tính, giá trị nóng được làm mới sớm.
+ * Số liệu: /actuator/metrics/cache.tier.requests (hit/miss từng tầng), cache.tier.loads (computed, coalesced,
+ * remote-wait, early-refresh), cache.codec.payload, cache.codec.time.
+ */
+@Configuration
+public class CacheConfig implements CachingConfigurer {
+
+    @Value("${spring.cache.redis.time-to-live:600000}")
+    private long redisTtlMs;
+
+    @Value("${app.cache.l1.max-entries:10000}")
+    private int l1MaxEntries;
+
+    // TTL của L1 ngắn hơn L2: giới hạn thời gian dữ liệu cũ nếu một thông báo hủy bị mất
+    @Value("${app.cache.l1.ttl-ms:60000}")
+    private long l1TtlMs;
+
+    @Value("${app.cache.invalidation-channel:cache:invalidate}")
+    private String invalidationChannel;
+
+    // Hệ số XFetch: lớn hơn thì làm mới sớm hơn; 0 để tắt
+    @Value("${app.cache.early-refresh-beta:1.0}")
+    private double earlyRefreshBeta;
+
+    // Thời gian tối đa một node giữ khóa tính lại (phòng node chết khi đang giữ)
+    @Value("${app.cache.load-lock.ttl-ms:10000}")
+    private long loadLockTtlMs;
+
+    // Thời gian chờ node khác tính xong trước khi tự tính
+    @Value("${app.cache.load-lock.wait-ms:3000}")
+    private long loadLockWaitMs;
+
+    @Bean
+    public CacheValueCodec cacheValueCodec(MeterRegistry meterRegistry) {
+        return new CacheValueCodec(meterRegistry);
+    }
+
+    @Bean
+    public TwoTierCacheManager cacheManager(RedisConnectionFactory connectionFactory,
+            StringRedisTemplate stringRedisTemplate, MeterRegistry meterRegistry,
+            CacheValueCodec cacheValueCodec, Environment environment) {
+        CachePolicy defaultPolicy = new CachePolicy(redisTtlMs, l1MaxEntries);
+        // Tên cache có chữ hoa phải viết trong ngoặc vuông: app.cache.policy[groupMembers].ttl-ms
+        Map<String, CachePolicy> policies = Binder.get(environment)
+            .bind("app.cache.policy", Bindable.mapOf(String.class, CachePolicy.class))
+            .orElseGet(HashMap::new);
+
+        Map<String, RedisCacheConfiguration> redisConfigurations = new HashMap<>();
+        policies.forEach((cacheName, policy) -> redisConfigurations.put(cacheName,
+            redisConfiguration(cacheValueCodec, policy.withDefaults(defaultPolicy).ttlMs())));
+
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(connectionFactory)
+            .cacheDefaults(redisConfiguration(cacheValueCodec, redisTtlMs))
+            .withInitialCacheConfigurations(redisConfigurations)
+            .build();
+        redisCacheManager.afterPropertiesSet();
+
+        TwoTierCache.Settings defaults = new TwoTierCache.Settings(l1MaxEntries, l1TtlMs, redisTtlMs,
+            earlyRefreshBeta, loadLockWaitMs);
+        return new TwoTierCacheManager(redisCacheManager, stringRedisTemplate, meterRegistry, cacheValueCodec,
+            invalidationChannel, defaults, policies, loadLockTtlMs);
+    }
+
+    // Lỗi cache (Redis gián đoạn, giá trị không mã hóa được) chỉ ghi log: request vẫn chạy như cache miss
+    @Override
+    public CacheErrorHandler errorHandler() {
+        return new LoggingCacheErrorHandler();
+    }
+
+    @Bean
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(RedisConnectionFactory connectionFactory,
+            TwoTierCacheManager cacheManager) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener((message, pattern) -> cacheManager.onInvalidation(new String(message.getBody(), StandardCharsets.UTF_8)),
+            new ChannelTopic(cacheManager.getChannel()));
+        return container;
+    }
+
+    private RedisCacheConfiguration redisConfiguration(CacheValueCodec codec, long ttlMs) {
+        return RedisCacheConfiguration.defaultCacheConfig()
+            .entryTtl(Duration.ofMillis(ttlMs))
+            .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(codec));
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.server.config;
+
+/**
+ * Chính sách của một cache theo tên, cấu hình qua app.cache.policy.&lt;tên&gt;.ttl-ms / .l1-max-entries.
+ * Trường để trống lấy theo mặc định (spring.cache.redis.time-to-live, app.cache.l1.max-entries).
+ */
+public record CachePolicy(Long ttlMs, Integer l1MaxEntries) {
+
+    public CachePolicy withDefaults(CachePolicy defaults) {
+        return new CachePolicy(ttlMs != null ? ttlMs : defaults.ttlMs(),
+            l1MaxEntries != null ? l1MaxEntries : defaults.l1MaxEntries());
+    }
+}
@@ -0,0 +1,472 @@
+package com.example.server.config;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.util.ClassUtils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Mã hóa giá trị cache dạng nhị phân gọn (thay cho JDK serialization), dùng cho cả Redis và L1.
+ * Chỉ nhận DTO trong com.example.server.dto cùng các kiểu giá trị cơ bản, enum và List/Set/Map;
+ * entity JPA bị từ chối. Payload mang phiên bản định dạng, mỗi lớp DTO mang dấu vân tay danh sách trường:
+ * payload cũ hoặc lệch schema sau một lần deploy được đọc như cache miss thay vì làm hỏng request.
+ */
+public class CacheValueCodec implements RedisSerializer<Object> {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheValueCodec.class);
+
+    // Byte đầu khác 0xAC của JDK serialization: mục cũ trong Redis được nhận ra ngay là payload lạ
+    private static final byte MAGIC = (byte) 0xCB;
+    // Tăng khi đổi định dạng mã hóa (không cần tăng khi chỉ đổi trường DTO: dấu vân tay lo việc đó)
+    private static final byte FORMAT_VERSION = 2;
+
+    private static final String DTO_PACKAGE = "com.example.server.dto.";
+    private static final String APP_PACKAGE = "com.example.server.";
+    private static final int MAX_DEPTH = 32;
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte INT = 3;
+    private static final byte LONG = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte FLOAT = 6;
+    private static final byte STRING = 7;
+    private static final byte LOCAL_DATE_TIME = 8;
+    private static final byte LOCAL_DATE = 9;
+    private static final byte ENUM = 10;
+    private static final byte LIST = 11;
+    private static final byte SET = 12;
+    private static final byte MAP = 13;
+    private static final byte OBJECT = 14;
+    private static final byte STAMPED = 15;
+
+    // Thông tin phản chiếu của mỗi lớp DTO chỉ tính một lần
+    private static final ClassValue<Schema> SCHEMAS = new ClassValue<>() {
+        @Override
+        protected Schema computeValue(Class<?> type) {
+            return Schema.of(type);
+        }
+    };
+
+    private final ClassLoader classLoader = CacheValueCodec.class.getClassLoader();
+    private final DistributionSummary payloadBytes;
+    private final Timer encodeTimer;
+    private final Timer decodeTimer;
+    private final Counter unreadable;
+
+    public CacheValueCodec(MeterRegistry meterRegistry) {
+        this.payloadBytes = DistributionSummary.builder("cache.codec.payload")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        this.encodeTimer = Timer.builder("cache.codec.time").tag("operation", "encode").register(meterRegistry);
+        this.decodeTimer = Timer.builder("cache.codec.time").tag("operation", "decode").register(meterRegistry);
+        this.unreadable = Counter.builder("cache.codec.unreadable").register(meterRegistry);
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        return encode(value);
+    }
+
+    // Payload không đọc được (định dạng cũ, schema lệch, dữ liệu hỏng) được coi như không có trong cache
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            return decode(bytes);
+        } catch (SerializationException e) {
+            unreadable.increment();
+            logger.debug("Bỏ qua giá trị cache không đọc được: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    public byte[] encode(Object value) {
+        long start = System.nanoTime();
+        Output out = new Output();
+        out.write(MAGIC);
+        out.write(FORMAT_VERSION);
+        writeValue(out, value, new HashMap<>(), 0);
+        byte[] bytes = out.toByteArray();
+        encodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        payloadBytes.record(bytes.length);
+        return bytes;
+    }
+
+    public Object decode(byte[] bytes) {
+        long start = System.nanoTime();
+        try {
+            if (bytes.length < 2 || bytes[0] != MAGIC) {
+                throw new SerializationException("Không phải payload của CacheValueCodec");
+            }
+            if (bytes[1] != FORMAT_VERSION) {
+                throw new SerializationException("Phiên bản định dạng " + bytes[1] + " khác " + FORMAT_VERSION);
+            }
+            Input in = new Input(bytes);
+            Object value = readValue(in, new ArrayList<>(), 0);
+            if (in.position != bytes.length) {
+                throw new SerializationException("Payload còn dư " + (bytes.length - in.position) + " byte");
+            }
+            return value;
+        } catch (SerializationException e) {
+            throw e;
+        } catch (RuntimeException | ReflectiveOperationException e) {
+            throw new SerializationException("Payload cache hỏng: " + e.getMessage(), e);
+        } finally {
+            decodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void writeValue(Output out, Object value, Map<Class<?>, Integer> classIds, int depth) {
+        if (depth > MAX_DEPTH) {
+            throw new SerializationException("Đồ thị đối tượng quá sâu (có vòng lặp?)");
+        }
+        if (value == null) {
+            out.write(NULL);
+        } else if (value instanceof Boolean bool) {
+            out.write(bool ? TRUE : FALSE);
+        } else if (value instanceof Integer number) {
+            out.write(INT);
+            out.writeVarLong(number);
+        } else if (value instanceof Long number) {
+            out.write(LONG);
+            out.writeVarLong(number);
+        } else if (value instanceof Double number) {
+            out.write(DOUBLE);
+            out.writeFixed(Double.doubleToRawLongBits(number), 8);
+        } else if (value instanceof Float number) {
+            out.write(FLOAT);
+            out.writeFixed(Float.floatToRawIntBits(number), 4);
+        } else if (value instanceof String text) {
+            out.write(STRING);
+            out.writeString(text);
+        } else if (value instanceof LocalDateTime dateTime) {
+            out.write(LOCAL_DATE_TIME);
+            out.writeVarLong(dateTime.toEpochSecond(ZoneOffset.UTC));
+            out.writeVarLong(dateTime.getNano());
+        } else if (value instanceof LocalDate date) {
+            out.write(LOCAL_DATE);
+            out.writeVarLong(date.toEpochDay());
+        } else if (value instanceof Enum<?> constant) {
+            out.write(ENUM);
+            writeClass(out, constant.getDeclaringClass(), classIds, APP_PACKAGE);
+            out.writeString(constant.name());
+        } else if (value instanceof List<?> list) {
+            out.write(LIST);
+            writeElements(out, list, classIds, depth);
+        } else if (value instanceof Set<?> set) {
+            out.write(SET);
+            writeElements(out, set, classIds, depth);
+        } else if (value instanceof StampedValue stamped) {
+            out.write(STAMPED);
+            out.writeVarLong(stamped.expiresAt());
+            out.writeVarLong(stamped.computeMs());
+            writeValue(out, stamped.value(), classIds, depth + 1);
+        } else if (value instanceof Map<?, ?> map) {
+            out.write(MAP);
+            out.writeVarLong(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeValue(out, entry.getKey(), classIds, depth + 1);
+                writeValue(out, entry.getValue(), classIds, depth + 1);
+            }
+        } else {
+            out.write(OBJECT);
+            Schema schema = writeClass(out, value.getClass(), classIds, DTO_PACKAGE);
+            try {
+                for (Field field : schema.fields()) {
+                    writeValue(out, field.get(value), classIds, depth + 1);
+                }
+            } catch (IllegalAccessException e) {
+                throw new SerializationException("Không đọc được trường của " + value.getClass().getName(), e);
+            }
+        }
+    }
+
+    private void writeElements(Output out, Collection<?> elements, Map<Class<?>, Integer> classIds, int depth) {
+        out.writeVarLong(elements.size());
+        for (Object element : elements) {
+            writeValue(out, element, classIds, depth + 1);
+        }
+    }
+
+    // Lần đầu gặp một lớp trong payload: ghi tên và dấu vân tay; các lần sau chỉ ghi số thứ tự
+    private Schema writeClass(Output out, Class<?> type, Map<Class<?>, Integer> classIds, String allowedPackage) {
+        if (!type.getName().startsWith(allowedPackage)) {
+            throw new SerializationException("Không cache được kiểu " + type.getName() + ": chỉ nhận DTO và kiểu giá trị");
+        }
+        Schema schema = SCHEMAS.get(type);
+        if (!type.isEnum() && schema.constructor() == null) {
+            throw new SerializationException(type.getName() + " không có constructor không tham số");
+        }
+        Integer id = classIds.get(type);
+        if (id != null) {
+            out.writeVarLong(id + 1);
+            return schema;
+        }
+        classIds.put(type, classIds.size());
+        out.writeVarLong(0);
+        out.writeString(type.getName());
+        out.writeFixed(schema.fingerprint(), 4);
+        return schema;
+    }
+
+    private Object readValue(Input in, List<Class<?>> classes, int depth) throws ReflectiveOperationException {
+        if (depth > MAX_DEPTH) {
+            throw new SerializationException("Đồ thị đối tượng quá sâu");
+        }
+        byte tag = in.read();
+        switch (tag) {
+            case NULL:
+                return null;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case INT:
+                return Math.toIntExact(in.readVarLong());
+            case LONG:
+                return in.readVarLong();
+            case DOUBLE:
+                return Double.longBitsToDouble(in.readFixed(8));
+            case FLOAT:
+                return Float.intBitsToFloat((int) in.readFixed(4));
+            case STRING:
+                return in.readString();
+            case LOCAL_DATE_TIME:
+                return LocalDateTime.ofEpochSecond(in.readVarLong(), Math.toIntExact(in.readVarLong()), ZoneOffset.UTC);
+            case LOCAL_DATE:
+                return LocalDate.ofEpochDay(in.readVarLong());
+            case ENUM:
+                return readEnum(readClass(in, classes, APP_PACKAGE), in.readString());
+            case LIST:
+                return readElements(in, new ArrayList<>(), classes, depth);
+            case SET:
+                return readElements(in, new LinkedHashSet<>(), classes, depth);
+            case MAP: {
+                int size = in.readSize();
+                Map<Object, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < size; i++) {
+                    map.put(readValue(in, classes, depth + 1), readValue(in, classes, depth + 1));
+                }
+                return map;
+            }
+            case STAMPED: {
+                long expiresAt = in.readVarLong();
+                long computeMs = in.readVarLong();
+                return new StampedValue(readValue(in, classes, depth + 1), expiresAt, computeMs);
+            }
+            case OBJECT: {
+                Schema schema = SCHEMAS.get(readClass(in, classes, DTO_PACKAGE));
+                Object object = schema.constructor().newInstance();
+                for (Field field : schema.fields()) {
+                    field.set(object, readValue(in, classes, depth + 1));
+                }
+                return object;
+            }
+            default:
+                throw new SerializationException("Tag không hợp lệ: " + tag);
+        }
+    }
+
+    private <C extends Collection<Object>> C readElements(Input in, C target, List<Class<?>> classes, int depth)
+            throws ReflectiveOperationException {
+        int size = in.readSize();
+        for (int i = 0; i < size; i++) {
+            target.add(readValue(in, classes, depth + 1));
+        }
+        return target;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Object readEnum(Class<?> type, String name) {
+        if (!type.isEnum()) {
+            throw new SerializationException(type.getName() + " không còn là enum");
+        }
+        return Enum.valueOf((Class) type, name);
+    }
+
+    private Class<?> readClass(Input in, List<Class<?>> classes, String allowedPackage) throws ClassNotFoundException {
+        long id = in.readVarLong();
+        if (id != 0) {
+            if (id < 0 || id > classes.size()) {
+                throw new SerializationException("Tham chiếu lớp không hợp lệ: " + id);
+            }
+            return classes.get((int) id - 1);
+        }
+        String name = in.readString();
+        int fingerprint = (int) in.readFixed(4);
+        // Chỉ nạp lớp của ứng dụng: dữ liệu trong Redis không được quyết định lớp nào được khởi tạo
+        if (!name.startsWith(allowedPackage)) {
+            throw new SerializationException("Lớp không được phép: " + name);
+        }
+        Class<?> type = ClassUtils.forName(name, classLoader);
+        Schema schema = SCHEMAS.get(type);
+        if (schema.fingerprint() != fingerprint || (!type.isEnum() && schema.constructor() == null)) {
+            throw new SerializationException("Schema của " + name + " đã thay đổi");
+        }
+        classes.add(type);
+        return type;
+    }
+
+    private record Schema(Constructor<?> constructor, Field[] fields, int fingerprint) {
+
+        static Schema of(Class<?> type) {
+            if (type.isEnum()) {
+                // Enum ghi theo tên hằng: thêm hằng mới không làm hỏng payload cũ, xóa hằng thì valueOf báo lỗi
+                return new Schema(null, new Field[0], type.getName().hashCode());
+            }
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                List<Field> declared = new ArrayList<>();
+                for (Field field : current.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    declared.add(field);
+                }
+                fields.addAll(0, declared);
+            }
+
+            StringBuilder signature = new StringBuilder(type.getName());
+            for (Field field : fields) {
+                signature.append(';').append(field.getName()).append(':').append(field.getGenericType().getTypeName());
+            }
+
+            Constructor<?> constructor;
+            try {
+                constructor = type.getDeclaredConstructor();
+                constructor.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                constructor = null;
+            }
+            return new Schema(constructor, fields.toArray(Field[]::new), signature.toString().hashCode());
+        }
+    }
+
+    private static final class Output {
+        private byte[] buffer = new byte[256];
+        private int size;
+
+        void write(byte value) {
+            ensure(1);
+            buffer[size++] = value;
+        }
+
+        // Zigzag + varint: số nhỏ (id, đếm, độ dài) chỉ tốn 1-2 byte
+        void writeVarLong(long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            ensure(10);
+            while ((zigzag & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buffer[size++] = (byte) zigzag;
+        }
+
+        void writeFixed(long value, int bytes) {
+            ensure(bytes);
+            for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+                buffer[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeString(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(utf8.length);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, buffer, size, utf8.length);
+            size += utf8.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+    }
+
+    private static final class Input {
+        private final byte[] buffer;
+        private int position = 2;
+
+        Input(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        byte read() {
+            if (position >= buffer.length) {
+                throw new SerializationException("Payload bị cắt cụt");
+            }
+            return buffer[position++];
+        }
+
+        long readVarLong() {
+            long zigzag = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte current = read();
+                zigzag |= (long) (current & 0x7F) << shift;
+                if ((current & 0x80) == 0) {
+                    return (zigzag >>> 1) ^ -(zigzag & 1);
+                }
+            }
+            throw new SerializationException("Varint quá dài");
+        }
+
+        // Độ dài/số phần tử không thể vượt số byte còn lại: chặn payload hỏng đòi cấp phát lớn
+        int readSize() {
+            long size = readVarLong();
+            if (size < 0 || size > buffer.length - position) {
+                throw new SerializationException("Kích thước không hợp lệ: " + size);
+            }
+            return (int) size;
+        }
+
+        long readFixed(int bytes) {
+            long value = 0;
+            for (int i = 0; i < bytes; i++) {
+                value = (value << 8) | (read() & 0xFF);
+            }
+            return value;
+        }
+
+        String readString() {
+            int length = readSize();
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
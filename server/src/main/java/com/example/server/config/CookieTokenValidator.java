@@ -1,10 +1,7 @@
 package com.example.server.config;
 
 import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.Jwts;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -12,6 +9,8 @@ import org.springframework.web.filter.OncePerRequestFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.example.server.services.TokenBlacklistService;
+
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.Cookie;
@@ -22,14 +21,13 @@ import java.util.List;
 
 public class CookieTokenValidator extends OncePerRequestFilter {
     private static final String COOKIE_NAME = "auth_token";
-    private static final String BLACKLIST_PREFIX = "blacklist_token:";
     private final JwtProvider jwtProvider;
-    private final RedisTemplate<String, String> redisTemplate;
+    private final TokenBlacklistService tokenBlacklistService;
     private static final Logger logger = LoggerFactory.getLogger(CookieTokenValidator.class);
 
-    public CookieTokenValidator(JwtProvider jwtProvider, RedisTemplate<String, String> redisTemplate) {
+    public CookieTokenValidator(JwtProvider jwtProvider, TokenBlacklistService tokenBlacklistService) {
         this.jwtProvider = jwtProvider;
-        this.redisTemplate = redisTemplate;
+        this.tokenBlacklistService = tokenBlacklistService;
     }
 
     @Override
@@ -38,58 +36,54 @@ public class CookieTokenValidator extends OncePerRequestFilter {
         String requestURI = request.getRequestURI();
         
         // Debug: ghi lại thông tin request
-        logger.info("Request URI: {}, Method: {}", requestURI, request.getMethod());
+        logger.debug("Request URI: {}, Method: {}", requestURI, request.getMethod());
         
         String jwt = null;
         Cookie[] cookies = request.getCookies();
         
-        // Debug: ghi lại thông tin cookies
         if (cookies != null) {
-            logger.info("Found {} cookies", cookies.length);
             for (Cookie cookie : cookies) {
-                logger.info("Cookie: {}={}", cookie.getName(), cookie.getName().equals(COOKIE_NAME) ? "[MASKED]" : cookie.getValue());
                 if (COOKIE_NAME.equals(cookie.getName())) {
                     jwt = cookie.getValue();
                     break;
                 }
             }
         } else {
-            logger.warn("No cookies found in request");
+            logger.debug("No cookies found in request");
         }
 
         if (jwt != null) {
             try {
-                // Kiểm tra danh sách đen
-                if (isTokenBlacklisted(jwt)) {
-                    logger.warn("Token is blacklisted: " + jwt);
+                // Kiểm tra chữ ký và hạn dùng một lần duy nhất; controller/service đọc lại claims đã gắn vào request
+                Claims claims;
+                try {
+                    claims = jwtProvider.parseClaims(jwt);
+                } catch (Exception e) {
+                    logger.warn("Invalid token: {}", e.getMessage());
                     SecurityContextHolder.clearContext();
-                    response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Token has been blacklisted");
+                    response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Invalid token");
                     return;
                 }
-
-                // Kiểm tra tính hợp lệ của token
-                if (!jwtProvider.validateToken(jwt)) {
-                    logger.warn("Invalid token: " + jwt);
+                // Kiểm tra danh sách đen sau chữ ký: token giả mạo không tốn lượt tra Redis
+                if (tokenBlacklistService.isBlacklisted(jwt)) {
+                    logger.warn("Token is blacklisted");
                     SecurityContextHolder.clearContext();
-                    response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Invalid token");
+                    response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Token has been blacklisted");
                     return;
                 }
 
-                // Lấy thông tin từ token
-                Claims claims = Jwts.parserBuilder()
-                        .setSigningKey(JwtProvider.SECRET_KEY)
-                        .build()
-                        .parseClaimsJws(jwt)
-                        .getBody();
+                request.setAttribute(JwtProvider.VERIFIED_TOKEN_ATTRIBUTE, jwt);
+                request.setAttribute(JwtProvider.VERIFIED_CLAIMS_ATTRIBUTE, claims);
 
                 String email = claims.getSubject();
                 String authoritiesStr = claims.get("authorities", String.class);
                 List<GrantedAuthority> authorities = AuthorityUtils.commaSeparatedStringToAuthorityList(
                         authoritiesStr != null ? authoritiesStr : "");
 
-                Authentication authentication = new UsernamePasswordAuthenticationToken(email, null, authorities);
+                UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(email, null, authorities);
+                authentication.setDetails(claims);
                 SecurityContextHolder.getContext().setAuthentication(authentication);
-                logger.info("Authenticated user: " + email);
+                logger.debug("Authenticated user: {}", email);
             } catch (Exception e) {
                 logger.error("Token validation failed: " + e.getMessage(), e);
                 SecurityContextHolder.clearContext();
@@ -103,8 +97,4 @@ public class CookieTokenValidator extends OncePerRequestFilter {
 
         filterChain.doFilter(request, response);
     }
-
-    private boolean isTokenBlacklisted(String token) {
-        return redisTemplate.opsForValue().get(BLACKLIST_PREFIX + token) != null;
-    }
 }
\ No newline at end of file
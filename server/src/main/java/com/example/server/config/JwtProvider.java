@@ -1,16 +1,21 @@
 package com.example.server.config;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
 import javax.crypto.SecretKey;
 import java.util.Date;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
@@ -20,6 +25,30 @@ public class JwtProvider {
     static final SecretKey SECRET_KEY = Keys.secretKeyFor(SignatureAlgorithm.HS256);
     private static final long EXPIRATION_TIME = 604800000; // 7 ngày (ms)
 
+    public static final String CLAIM_USER_ID = "userId";
+    public static final String CLAIM_ADMIN = "admin";
+
+    // Claims đã xác thực của request hiện tại (CookieTokenValidator gắn vào), kèm token tương ứng
+    public static final String VERIFIED_TOKEN_ATTRIBUTE = JwtProvider.class.getName() + ".token";
+    public static final String VERIFIED_CLAIMS_ATTRIBUTE = JwtProvider.class.getName() + ".claims";
+
+    // JwtParser bất biến và an toàn đa luồng: dựng một lần thay vì mỗi lần kiểm tra token
+    private static final JwtParser PARSER = Jwts.parserBuilder()
+            .setSigningKey(SECRET_KEY)
+            .build();
+
+    // Cache ngắn hạn các token đã kiểm chữ ký, để các request liên tiếp của cùng phiên không phải tính lại HMAC
+    private final Map<String, VerifiedToken> verifiedTokens = new ConcurrentHashMap<>();
+
+    @Value("${app.jwt.verified-cache-ttl-ms:60000}")
+    private long verifiedCacheTtlMs;
+
+    @Value("${app.jwt.verified-cache-max-size:10000}")
+    private int verifiedCacheMaxSize;
+
+    private record VerifiedToken(Claims claims, long cachedUntil) {
+    }
+
     public String generateToken(Authentication authentication) {
         String email = authentication.getName();
         Date now = new Date();
@@ -60,12 +89,44 @@ public class JwtProvider {
                 .compact();
     }
 
+    /**
+     * Kiểm tra chữ ký, hạn dùng và trả về claims của token; ném JwtException nếu token không hợp lệ.
+     * Thứ tự tra: claims đã gắn vào request hiện tại, cache token đã xác thực, rồi mới parse.
+     */
+    public Claims parseClaims(String token) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null
+                && token.equals(attributes.getAttribute(VERIFIED_TOKEN_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST))) {
+            Object claims = attributes.getAttribute(VERIFIED_CLAIMS_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+            if (claims instanceof Claims verified && !isExpired(verified, System.currentTimeMillis())) {
+                return verified;
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        VerifiedToken cached = verifiedTokens.get(token);
+        if (cached != null) {
+            if (cached.cachedUntil() > now) {
+                return cached.claims();
+            }
+            verifiedTokens.remove(token, cached);
+        }
+
+        Claims claims = PARSER.parseClaimsJws(token).getBody();
+        long cachedUntil = now + verifiedCacheTtlMs;
+        if (claims.getExpiration() != null) {
+            cachedUntil = Math.min(cachedUntil, claims.getExpiration().getTime());
+        }
+        if (verifiedTokens.size() >= verifiedCacheMaxSize) {
+            evictExpired(now);
+        }
+        verifiedTokens.put(token, new VerifiedToken(claims, cachedUntil));
+        return claims;
+    }
+
     public boolean validateToken(String token) {
         try {
-            Jwts.parserBuilder()
-                    .setSigningKey(SECRET_KEY)
-                    .build()
-                    .parseClaimsJws(token);
+            parseClaims(token);
             return true;
         } catch (Exception e) {
             System.out.println("Token validation error: " + e.getMessage());
@@ -94,25 +155,16 @@ public class JwtProvider {
     }
 
     public String getEmailFromToken(String token) {
-        Claims claims = Jwts.parserBuilder()
-                .setSigningKey(SECRET_KEY)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
-        return claims.getSubject();
+        return parseClaims(token).getSubject();
     }
     
     public Long getUserIdFromToken(String token) {
         try {
-            Claims claims = Jwts.parserBuilder()
-                .setSigningKey(SECRET_KEY)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+            Claims claims = parseClaims(token);
             
             // If userId is stored directly in the token, try to retrieve it
-            if (claims.get("userId") != null) {
-                return Long.valueOf(claims.get("userId").toString());
+            if (claims.get(CLAIM_USER_ID) != null) {
+                return Long.valueOf(claims.get(CLAIM_USER_ID).toString());
             }
             
             // If userId is not available, return null to indicate the token doesn't contain userId
@@ -124,23 +176,18 @@ public class JwtProvider {
     }
     
     public Long getUserIdFromJwtToken(String token) {
-        try {
-            Claims claims = Jwts.parserBuilder()
-                .setSigningKey(SECRET_KEY)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
-            
-            // If userId is stored directly in the token, try to retrieve it
-            if (claims.get("userId") != null) {
-                return Long.valueOf(claims.get("userId").toString());
-            }
-            
-            // If userId is not available, return null to indicate the token doesn't contain userId
-            return null;
-        } catch (Exception e) {
-            System.out.println("Error extracting userId from token: " + e.getMessage());
-            return null;
+        return getUserIdFromToken(token);
+    }
+
+    private boolean isExpired(Claims claims, long now) {
+        return claims.getExpiration() != null && claims.getExpiration().getTime() <= now;
+    }
+
+    // Cache chạm ngưỡng: bỏ token hết hạn trong cache; nếu vẫn đầy (nhiều phiên cùng lúc) thì xóa sạch
+    private void evictExpired(long now) {
+        verifiedTokens.entrySet().removeIf(entry -> entry.getValue().cachedUntil() <= now);
+        if (verifiedTokens.size() >= verifiedCacheMaxSize) {
+            verifiedTokens.clear();
         }
     }
-}
\ No newline at end of file
+}
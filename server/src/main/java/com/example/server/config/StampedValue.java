@@ -0,0 +1,8 @@
+package com.example.server.config;
+
+/**
+ * Giá trị cache kèm thời điểm hết hạn và thời gian đã tốn để tính nó; dùng cho làm mới sớm (TwoTierCache).
+ * computeMs = 0 khi giá trị được ghi thẳng (không qua valueLoader): mục đó chỉ được tính lại khi hết hạn.
+ */
+record StampedValue(Object value, long expiresAt, long computeMs) {
+}
@@ -0,0 +1,474 @@
+package com.example.server.config;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import com.example.server.utils.CacheLoad;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Cache hai tầng: L1 trong tiến trình (LRU giới hạn số mục, có TTL ngắn) đặt trước L2 là Redis.
+ * Mọi thao tác ghi/xóa đi thẳng xuống L2 rồi phát thông báo để các node khác bỏ mục L1 tương ứng.
+ * L1 giữ payload đã mã hóa (cùng codec với Redis) chứ không giữ đối tượng: mỗi lần đọc nhận một bản riêng,
+ * request này sửa DTO không ảnh hưởng request khác, và bộ nhớ L1 tỉ lệ với kích thước payload thật.
+ *
+ * Với @Cacheable(sync = true), get(key, valueLoader) chống dồn tải khi khóa hết hạn hoặc bị hủy:
+ * trong một node chỉ một luồng tính, các luồng khác chờ chung kết quả; giữa các node, luồng tính phải giữ
+ * khóa Redis, node khác chờ giá trị xuất hiện ở L2. Gần hết hạn, giá trị được làm mới sớm theo xác suất
+ * (XFetch: càng gần hạn và càng tốn thời gian tính thì càng dễ được làm mới) để khóa nóng ít khi thực sự hết hạn.
+ */
+public class TwoTierCache implements Cache {
+
+    private static final Logger logger = LoggerFactory.getLogger(TwoTierCache.class);
+
+    // Chu kỳ kiểm tra L2 khi node khác đang tính cùng khóa
+    private static final long REMOTE_POLL_MS = 50;
+
+    private final String name;
+    private final Cache l2;
+    private final Settings settings;
+    private final CacheValueCodec codec;
+    private final LoadLock loadLock;
+    private final Consumer<InvalidationMessage> publisher;
+
+    // LinkedHashMap theo thứ tự truy cập: mục lâu không dùng nhất bị loại khi vượt l1MaxEntries
+    private final LinkedHashMap<Object, L1Entry> l1;
+
+    // Khóa đang được tính trong node này: các luồng khác cùng khóa chờ chung một kết quả
+    private final ConcurrentMap<Object, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+    private final Set<Object> refreshing = ConcurrentHashMap.newKeySet();
+
+    private final Counter l1Hits;
+    private final Counter l1Misses;
+    private final Counter l2Hits;
+    private final Counter l2Misses;
+    private final Counter computed;
+    private final Counter coalesced;
+    private final Counter remoteWaits;
+    private final Counter earlyRefreshes;
+
+    private record L1Entry(byte[] payload, long expiresAt) {
+    }
+
+    /**
+     * Cấu hình của một cache: kích thước/TTL của L1, TTL ở Redis, hệ số làm mới sớm (0 để tắt)
+     * và thời gian tối đa chờ node khác tính xong trước khi tự tính.
+     */
+    public record Settings(int l1MaxEntries, long l1TtlMs, long ttlMs, double earlyRefreshBeta, long lockWaitMs) {
+    }
+
+    /**
+     * Khóa phân tán cho việc tính một khóa cache. tryAcquire trả về token khi giữ được khóa, null khi node khác đang giữ.
+     */
+    public interface LoadLock {
+
+        String tryAcquire(String cacheName, Object key);
+
+        void release(String cacheName, Object key, String token);
+    }
+
+    /**
+     * Thông báo hủy mục L1 gửi qua Redis pub/sub. key == null nghĩa là xóa toàn bộ L1 của cache này.
+     */
+    public record InvalidationMessage(String cacheName, Object key) {
+    }
+
+    public TwoTierCache(String name, Cache l2, Settings settings, CacheValueCodec codec, LoadLock loadLock,
+            Consumer<InvalidationMessage> publisher, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.l2 = l2;
+        this.settings = settings;
+        this.codec = codec;
+        this.loadLock = loadLock;
+        this.publisher = publisher;
+        this.l1 = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, L1Entry> eldest) {
+                return size() > TwoTierCache.this.settings.l1MaxEntries();
+            }
+        };
+
+        this.l1Hits = tierCounter(meterRegistry, "l1", "hit");
+        this.l1Misses = tierCounter(meterRegistry, "l1", "miss");
+        this.l2Hits = tierCounter(meterRegistry, "l2", "hit");
+        this.l2Misses = tierCounter(meterRegistry, "l2", "miss");
+        this.computed = loadCounter(meterRegistry, "computed");
+        this.coalesced = loadCounter(meterRegistry, "coalesced");
+        this.remoteWaits = loadCounter(meterRegistry, "remote-wait");
+        this.earlyRefreshes = loadCounter(meterRegistry, "early-refresh");
+        Gauge.builder("cache.tier.l1.size", this, TwoTierCache::l1Size)
+            .tag("cache", name)
+            .register(meterRegistry);
+    }
+
+    private Counter tierCounter(MeterRegistry meterRegistry, String tier, String result) {
+        return Counter.builder("cache.tier.requests")
+            .tag("cache", name)
+            .tag("tier", tier)
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    private Counter loadCounter(MeterRegistry meterRegistry, String type) {
+        return Counter.builder("cache.tier.loads")
+            .tag("cache", name)
+            .tag("type", type)
+            .register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return l2.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        StampedValue stamped = lookup(key);
+        return stamped != null ? new SimpleValueWrapper(stamped.value()) : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Giá trị trong cache '" + name + "' không phải kiểu " + type.getName());
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        StampedValue cached = lookup(key);
+        if (cached != null) {
+            if (shouldRefreshEarly(cached)) {
+                refreshEarly(key, valueLoader);
+            }
+            return (T) cached.value();
+        }
+        return (T) loadOnce(key, valueLoader);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        write(key, value, 0);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        StampedValue stamped = stamp(value, 0);
+        ValueWrapper existing = l2.putIfAbsent(key, stamped);
+        if (existing == null) {
+            putLocal(key, stamped);
+            publisher.accept(new InvalidationMessage(name, key));
+            return null;
+        }
+        StampedValue current = unwrap(existing.get());
+        putLocal(key, current);
+        return new SimpleValueWrapper(current.value());
+    }
+
+    @Override
+    public void evict(Object key) {
+        l2.evict(key);
+        evictLocal(key);
+        publisher.accept(new InvalidationMessage(name, key));
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean present = l2.evictIfPresent(key);
+        evictLocal(key);
+        publisher.accept(new InvalidationMessage(name, key));
+        return present;
+    }
+
+    @Override
+    public void clear() {
+        l2.clear();
+        clearLocal();
+        publisher.accept(new InvalidationMessage(name, null));
+    }
+
+    @Override
+    public boolean invalidate() {
+        boolean hadEntries = l2.invalidate();
+        clearLocal();
+        publisher.accept(new InvalidationMessage(name, null));
+        return hadEntries;
+    }
+
+    // Gọi khi nhận thông báo từ node khác: chỉ đụng tới L1, L2 đã được node gửi cập nhật
+    void evictLocal(Object key) {
+        synchronized (l1) {
+            l1.remove(key);
+        }
+    }
+
+    void clearLocal() {
+        synchronized (l1) {
+            l1.clear();
+        }
+    }
+
+    private StampedValue lookup(Object key) {
+        StampedValue local = getLocal(key);
+        if (local != null) {
+            l1Hits.increment();
+            return local;
+        }
+        l1Misses.increment();
+
+        StampedValue remote = getRemote(key);
+        if (remote != null) {
+            l2Hits.increment();
+            putLocal(key, remote);
+        } else {
+            l2Misses.increment();
+        }
+        return remote;
+    }
+
+    private StampedValue getRemote(Object key) {
+        ValueWrapper wrapper = l2.get(key);
+        return wrapper != null ? unwrap(wrapper.get()) : null;
+    }
+
+    private Object loadOnce(Object key, Callable<?> valueLoader) {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = loading.putIfAbsent(key, mine);
+        if (inFlight != null) {
+            coalesced.increment();
+            return await(inFlight, key, valueLoader);
+        }
+        try {
+            // Luồng trước có thể vừa tính xong và rời bảng loading ngay trước khi luồng này vào
+            StampedValue justLoaded = getLocal(key);
+            Object value = justLoaded != null ? justLoaded.value() : loadAcrossNodes(key, valueLoader);
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, mine);
+        }
+    }
+
+    private Object await(CompletableFuture<Object> inFlight, Object key, Callable<?> valueLoader) {
+        try {
+            return inFlight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ValueRetrievalException(key, valueLoader, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new ValueRetrievalException(key, valueLoader, e.getCause());
+        }
+    }
+
+    private Object loadAcrossNodes(Object key, Callable<?> valueLoader) {
+        long deadline = System.currentTimeMillis() + settings.lockWaitMs();
+        String token = tryLock(key);
+        boolean waited = false;
+        while (token == null) {
+            if (System.currentTimeMillis() >= deadline) {
+                // Node giữ khóa quá lâu hoặc đã chết: tự tính, chấp nhận tính trùng hơn là treo request
+                logger.debug("Hết thời gian chờ node khác tính {}::{}", name, key);
+                return compute(key, valueLoader);
+            }
+            if (!waited) {
+                remoteWaits.increment();
+                waited = true;
+            }
+            try {
+                Thread.sleep(REMOTE_POLL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ValueRetrievalException(key, valueLoader, e);
+            }
+            StampedValue published = getRemote(key);
+            if (published != null) {
+                putLocal(key, published);
+                return published.value();
+            }
+            token = tryLock(key);
+        }
+        try {
+            if (waited) {
+                // Node vừa nhả khóa có thể đã ghi xong ngay trước lần kiểm tra cuối
+                StampedValue published = getRemote(key);
+                if (published != null) {
+                    putLocal(key, published);
+                    return published.value();
+                }
+            }
+            return compute(key, valueLoader);
+        } finally {
+            unlock(key, token);
+        }
+    }
+
+    private boolean shouldRefreshEarly(StampedValue cached) {
+        if (cached.computeMs() <= 0 || settings.earlyRefreshBeta() <= 0) {
+            return false;
+        }
+        // -ln(u) với u trong (0, 1]: thường nhỏ, thỉnh thoảng lớn, nên chỉ vài request làm mới trước hạn
+        double draw = 1.0 - ThreadLocalRandom.current().nextDouble();
+        double headStartMs = -cached.computeMs() * settings.earlyRefreshBeta() * Math.log(draw);
+        return System.currentTimeMillis() + headStartMs >= cached.expiresAt();
+    }
+
+    // Request trúng thăm tự tính lại ngay (cần ngữ cảnh request của nó); các request khác vẫn dùng giá trị cũ
+    private void refreshEarly(Object key, Callable<?> valueLoader) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        String token = null;
+        try {
+            token = tryLock(key);
+            if (token == null) {
+                return;
+            }
+            earlyRefreshes.increment();
+            compute(key, valueLoader);
+        } catch (RuntimeException e) {
+            // Giá trị cũ còn hạn nên request vẫn trả về bình thường
+            logger.debug("Làm mới sớm {}::{} thất bại: {}", name, key, e.getMessage());
+        } finally {
+            if (token != null) {
+                unlock(key, token);
+            }
+            refreshing.remove(key);
+        }
+    }
+
+    private Object compute(Object key, Callable<?> valueLoader) {
+        long start = System.nanoTime();
+        Object value;
+        CacheLoad load = CacheLoad.begin();
+        try {
+            try {
+                value = valueLoader.call();
+            } catch (Exception e) {
+                throw new ValueRetrievalException(key, valueLoader, e);
+            }
+            computed.increment();
+            long computeMs = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+            try {
+                write(key, value, computeMs);
+            } catch (RuntimeException e) {
+                // Không ghi được cache (Redis lỗi, kiểu không mã hóa được) thì vẫn trả giá trị vừa tính
+                logger.warn("Không ghi được {}::{} vào cache: {}", name, key, e.getMessage());
+                return value;
+            }
+            // Phụ thuộc mà loader ghi nhận (CacheInvalidationService.track) chỉ được đăng ký khi giá trị đã nằm trong cache
+            load.putDone();
+        } finally {
+            load.end();
+        }
+        return value;
+    }
+
+    private void write(Object key, Object value, long computeMs) {
+        StampedValue stamped = stamp(value, computeMs);
+        l2.put(key, stamped);
+        putLocal(key, stamped);
+        publisher.accept(new InvalidationMessage(name, key));
+    }
+
+    private StampedValue stamp(Object value, long computeMs) {
+        return new StampedValue(value, System.currentTimeMillis() + settings.ttlMs(), computeMs);
+    }
+
+    // Giá trị không có tem (ghi bởi bản cũ hơn) thì coi như không làm mới sớm được
+    private StampedValue unwrap(Object value) {
+        return value instanceof StampedValue stamped ? stamped : new StampedValue(value, Long.MAX_VALUE, 0);
+    }
+
+    // Redis lỗi thì không chặn việc tính: "" là token giả, không cần nhả
+    private String tryLock(Object key) {
+        try {
+            return loadLock.tryAcquire(name, key);
+        } catch (RuntimeException e) {
+            logger.debug("Không lấy được khóa tính {}::{}: {}", name, key, e.getMessage());
+            return "";
+        }
+    }
+
+    private void unlock(Object key, String token) {
+        if (token.isEmpty()) {
+            return;
+        }
+        try {
+            loadLock.release(name, key, token);
+        } catch (RuntimeException e) {
+            // Khóa tự hết hạn theo TTL
+            logger.debug("Không nhả được khóa tính {}::{}: {}", name, key, e.getMessage());
+        }
+    }
+
+    private StampedValue getLocal(Object key) {
+        byte[] payload;
+        synchronized (l1) {
+            L1Entry entry = l1.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt() <= System.currentTimeMillis()) {
+                l1.remove(key);
+                return null;
+            }
+            payload = entry.payload();
+        }
+        return unwrap(codec.decode(payload));
+    }
+
+    private void putLocal(Object key, StampedValue stamped) {
+        byte[] payload;
+        try {
+            payload = codec.encode(stamped);
+        } catch (SerializationException e) {
+            // Kiểu không mã hóa được thì L2 cũng đã từ chối; chỉ bỏ qua L1
+            evictLocal(key);
+            return;
+        }
+        // L1 không được sống lâu hơn chính mục đó ở Redis
+        long expiresAt = Math.min(System.currentTimeMillis() + settings.l1TtlMs(), stamped.expiresAt());
+        synchronized (l1) {
+            l1.put(key, new L1Entry(payload, expiresAt));
+        }
+    }
+
+    private int l1Size() {
+        synchronized (l1) {
+            return l1.size();
+        }
+    }
+}
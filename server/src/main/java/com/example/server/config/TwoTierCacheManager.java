@@ -0,0 +1,191 @@
+package com.example.server.config;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * CacheManager bọc một CacheManager Redis (L2), gắn thêm L1 trong tiến trình cho từng tên cache.
+ * Thông báo hủy L1 được phát/nhận qua một kênh Redis pub/sub; node bỏ qua thông báo do chính nó gửi.
+ * Đồng thời là khóa phân tán cho việc tính lại một khóa cache (SET NX PX), để mỗi lúc chỉ một node tính.
+ */
+public class TwoTierCacheManager implements CacheManager, TwoTierCache.LoadLock {
+
+    private static final Logger logger = LoggerFactory.getLogger(TwoTierCacheManager.class);
+
+    // Tiền tố kiểu khóa trong thông báo; khóa kiểu khác thì node nhận xóa toàn bộ L1 của cache đó
+    private static final String CLEAR_ALL = "*";
+
+    private static final String LOCK_PREFIX = "cache:lock:";
+
+    // Chỉ xóa khi khóa vẫn mang token của mình: khóa đã hết hạn và bị node khác lấy thì để nguyên
+    private static final RedisScript<Long> RELEASE_LOCK = new DefaultRedisScript<>(
+        "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) else return 0 end",
+        Long.class);
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final CacheManager l2Manager;
+    private final StringRedisTemplate redisTemplate;
+    private final MeterRegistry meterRegistry;
+    private final String channel;
+    private final CacheValueCodec codec;
+    private final TwoTierCache.Settings defaults;
+    private final CachePolicy defaultPolicy;
+    private final Map<String, CachePolicy> policies;
+    private final Duration lockTtl;
+    private final ConcurrentMap<String, TwoTierCache> caches = new ConcurrentHashMap<>();
+
+    /**
+     * defaults là cấu hình chung (TTL, kích thước L1, làm mới sớm, thời gian chờ khóa); policies ghi đè TTL và
+     * kích thước L1 theo tên cache. lockTtlMs giới hạn thời gian một node được giữ khóa tính lại.
+     */
+    public TwoTierCacheManager(CacheManager l2Manager, StringRedisTemplate redisTemplate, MeterRegistry meterRegistry,
+            CacheValueCodec codec, String channel, TwoTierCache.Settings defaults, Map<String, CachePolicy> policies,
+            long lockTtlMs) {
+        this.l2Manager = l2Manager;
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+        this.channel = channel;
+        this.codec = codec;
+        this.defaults = defaults;
+        this.defaultPolicy = new CachePolicy(defaults.ttlMs(), defaults.l1MaxEntries());
+        this.policies = policies;
+        this.lockTtl = Duration.ofMillis(lockTtlMs);
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        TwoTierCache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache l2 = l2Manager.getCache(name);
+        if (l2 == null) {
+            return null;
+        }
+        return caches.computeIfAbsent(name, cacheName -> {
+            CachePolicy policy = policyFor(cacheName);
+            TwoTierCache.Settings settings = new TwoTierCache.Settings(policy.l1MaxEntries(),
+                Math.min(defaults.l1TtlMs(), policy.ttlMs()), policy.ttlMs(), defaults.earlyRefreshBeta(),
+                defaults.lockWaitMs());
+            return new TwoTierCache(cacheName, l2, settings, codec, this, this::publish, meterRegistry);
+        });
+    }
+
+    public CachePolicy policyFor(String cacheName) {
+        CachePolicy policy = policies.get(cacheName);
+        return policy != null ? policy.withDefaults(defaultPolicy) : defaultPolicy;
+    }
+
+    // TTL dài nhất trong mọi cache: dữ liệu phụ thuộc một khóa cache (như chỉ mục hủy) cần sống ít nhất chừng ấy
+    public long getMaxTimeToLiveMs() {
+        long max = defaultPolicy.ttlMs();
+        for (String cacheName : policies.keySet()) {
+            max = Math.max(max, policyFor(cacheName).ttlMs());
+        }
+        return max;
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        Set<String> names = new LinkedHashSet<>(l2Manager.getCacheNames());
+        names.addAll(caches.keySet());
+        return names;
+    }
+
+    @Override
+    public String tryAcquire(String cacheName, Object key) {
+        String token = nodeId + ":" + UUID.randomUUID();
+        Boolean acquired = redisTemplate.opsForValue().setIfAbsent(lockKey(cacheName, key), token, lockTtl);
+        return Boolean.TRUE.equals(acquired) ? token : null;
+    }
+
+    @Override
+    public void release(String cacheName, Object key, String token) {
+        redisTemplate.execute(RELEASE_LOCK, List.of(lockKey(cacheName, key)), token);
+    }
+
+    // Khóa phức hợp không mã hóa được thì dùng chung một khóa "*" của cache: chỉ làm giảm song song, không sai dữ liệu
+    private String lockKey(String cacheName, Object key) {
+        return LOCK_PREFIX + cacheName + ":" + encodeKey(key);
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    // Định dạng: "<nodeId>|<cacheName>|<khóa>", khóa là "s:<chuỗi>", "l:<long>", "i:<int>" hoặc "*"
+    private void publish(TwoTierCache.InvalidationMessage message) {
+        try {
+            redisTemplate.convertAndSend(channel, nodeId + "|" + message.cacheName() + "|" + encodeKey(message.key()));
+        } catch (Exception e) {
+            // Mất thông báo thì L1 của node khác vẫn hết hạn theo TTL ngắn
+            logger.warn("Không phát được thông báo hủy cache {}: {}", message.cacheName(), e.getMessage());
+        }
+    }
+
+    public void onInvalidation(String payload) {
+        String[] parts = payload.split("\\|", 3);
+        if (parts.length < 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+        TwoTierCache cache = caches.get(parts[1]);
+        if (cache == null) {
+            return;
+        }
+        Object key = decodeKey(parts[2]);
+        if (key == null) {
+            cache.clearLocal();
+        } else {
+            cache.evictLocal(key);
+        }
+    }
+
+    // Dạng chuỗi của khóa cache, dùng chung cho thông báo hủy và chỉ mục phụ thuộc (CacheInvalidationService)
+    public static String encodeKey(Object key) {
+        if (key instanceof String value) {
+            return "s:" + value;
+        }
+        if (key instanceof Long value) {
+            return "l:" + value;
+        }
+        if (key instanceof Integer value) {
+            return "i:" + value;
+        }
+        return CLEAR_ALL;
+    }
+
+    // null nghĩa là khóa không khôi phục được: bên nhận phải xóa cả cache
+    public static Object decodeKey(String encoded) {
+        try {
+            if (encoded.startsWith("s:")) {
+                return encoded.substring(2);
+            }
+            if (encoded.startsWith("l:")) {
+                return Long.valueOf(encoded.substring(2));
+            }
+            if (encoded.startsWith("i:")) {
+                return Integer.valueOf(encoded.substring(2));
+            }
+        } catch (NumberFormatException e) {
+            logger.warn("Thông báo hủy cache không hợp lệ: {}", encoded);
+        }
+        return null;
+    }
+}
@@ -1,19 +1,48 @@
 package com.example.server.config;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 
+import com.example.server.services.PresenceService;
+
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    @Autowired
+    private PresenceService presenceService;
+
+    // Chu kỳ heartbeat STOMP (ms) cho cả hai chiều; client im lặng quá lâu bị coi là mất kết nối
+    @Value("${app.websocket.heartbeat-ms:10000}")
+    private long heartbeatMs;
+
+    private TaskScheduler messageBrokerTaskScheduler;
+
+    // Bean do chính @EnableWebSocketMessageBroker tạo, nên phải lấy lazy
+    @Autowired
+    public void setMessageBrokerTaskScheduler(@Lazy @Qualifier("messageBrokerTaskScheduler") TaskScheduler taskScheduler) {
+        this.messageBrokerTaskScheduler = taskScheduler;
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         // Tiền tố cho các endpoint gửi tin nhắn đến client
-        config.enableSimpleBroker("/topic", "/queue", "/user");
+        config.enableSimpleBroker("/topic", "/queue", "/user")
+                .setHeartbeatValue(new long[] { heartbeatMs, heartbeatMs })
+                .setTaskScheduler(messageBrokerTaskScheduler);
         
         // Tiền tố cho các endpoint nhận tin nhắn từ client
         config.setApplicationDestinationPrefixes("/app");
@@ -22,6 +51,21 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         config.setUserDestinationPrefix("/user");
     }
 
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        // Mọi frame từ client (kể cả heartbeat) đánh dấu phiên còn sống; chỉ ghi bộ nhớ, Redis được gia hạn theo lô
+        registration.interceptors(new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+                if (sessionId != null) {
+                    presenceService.sessionActive(sessionId);
+                }
+                return message;
+            }
+        });
+    }
+
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         // Endpoint chính để kết nối WebSocket
@@ -32,4 +76,4 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 )
                 .withSockJS();
     }
-} 
\ No newline at end of file
+}
@@ -12,17 +12,18 @@ import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 
 import com.example.server.config.JwtProvider;
 import com.example.server.dto.UserDto;
+import com.example.server.exception.PasswordHashingBusyException;
 import com.example.server.exception.UserException;
 import com.example.server.mapper.UserDtoMapper;
 import com.example.server.models.User;
@@ -33,7 +34,9 @@ import com.example.server.requests.SignupRequest;
 import com.example.server.responses.AuthResponse;
 import com.example.server.services.CustomUserDetailsServerImplementation;
 import com.example.server.services.EmailService;
+import com.example.server.services.PasswordHashingService;
 import com.example.server.services.UserService;
+import com.example.server.services.TokenBlacklistService;
 
 @RestController
 @RequestMapping("/api/auth")
@@ -43,7 +46,7 @@ public class AuthController {
     private UserRepository userRepository;
 
     @Autowired
-    private PasswordEncoder passwordEncoder;
+    private PasswordHashingService passwordHashingService;
 
     @Autowired
     private JwtProvider jwtProvider;
@@ -57,6 +60,9 @@ public class AuthController {
     @Autowired
     private RedisTemplate<String, String> redisTemplate;
 
+    @Autowired
+    private TokenBlacklistService tokenBlacklistService;
+
     @Autowired
     private UserService userService;
 
@@ -79,7 +85,6 @@ public class AuthController {
     private String adminDefaultPassword;
 
     private static final String COOKIE_NAME = "auth_token";
-    private static final String BLACKLIST_PREFIX = "blacklist_token:";
     private static final String RESET_TOKEN_PREFIX = "reset_token:";
     private static final long RESET_TOKEN_EXPIRY = 5 * 60;
 
@@ -89,7 +94,7 @@ public class AuthController {
         if (userRepository.findByEmail(adminEmail) == null) {
             User admin = new User();
             admin.setEmail(adminEmail);
-            admin.setPassword(passwordEncoder.encode(adminDefaultPassword));
+            admin.setPassword(passwordHashingService.hash(adminDefaultPassword));
             admin.setFirstName("Admin");
             admin.setLastName("System");
             admin.setIsEmailVerified(true); // Admin không cần xác minh email
@@ -113,7 +118,7 @@ public class AuthController {
 
         User newUser = new User();
         newUser.setEmail(email);
-        newUser.setPassword(passwordEncoder.encode(signupRequest.getPassword()));
+        newUser.setPassword(passwordHashingService.hash(signupRequest.getPassword()));
         newUser.setFirstName(signupRequest.getFirstName());
         newUser.setLastName(signupRequest.getLastName());
         newUser.setBirthDate(signupRequest.getBirthDate());
@@ -195,17 +200,15 @@ public class AuthController {
             throw new UserException("Tài khoản của bạn đã bị khóa. Vui lòng liên hệ quản trị viên.");
         }
 
-        // Tạo token mới
-        String token = jwtProvider.generateToken(authentication);
+        // Tạo token mới; userId và cờ admin nằm sẵn trong claims để các request sau không phải tra bảng users
+        String token = user != null
+                ? jwtProvider.generateToken(authentication, Map.of(
+                        JwtProvider.CLAIM_USER_ID, user.getId(),
+                        JwtProvider.CLAIM_ADMIN, user.isAdmin()))
+                : jwtProvider.generateToken(authentication);
         setJwtCookie(response, token);
 
-        // Cập nhật thời gian đăng nhập
-        if (user != null) {
-            user.setLastSeen(LocalDateTime.now());
-            userRepository.save(user);
-        }
-
-        // Cập nhật trạng thái online
+        // Cập nhật trạng thái online (lastSeen được ghi theo lô, không lưu lại cả dòng users)
         if (user != null) {
             userService.updateOnlineStatus(user.getId(), 1);
         }
@@ -219,7 +222,7 @@ public class AuthController {
             throw new UserException("Email không tồn tại.");
         }
 
-        if (!passwordEncoder.matches(password, userDetails.getPassword())) {
+        if (!passwordHashingService.matches(password, userDetails.getPassword())) {
             throw new UserException("Mật khẩu không đúng.");
         }
 
@@ -228,6 +231,16 @@ public class AuthController {
             throw new UserException("Tài khoản của bạn đã bị khóa. Vui lòng liên hệ quản trị viên.");
         }
 
+        // Cost BCrypt đã đổi: băm lại bằng mật khẩu vừa xác thực, đây là lúc duy nhất có mật khẩu gốc
+        if (user != null && passwordHashingService.needsRehash(user.getPassword())) {
+            try {
+                user.setPassword(passwordHashingService.hash(password));
+                userRepository.save(user);
+            } catch (PasswordHashingBusyException e) {
+                // Pool đang bận: để lần đăng nhập sau, không làm hỏng lần đăng nhập này
+            }
+        }
+
         return new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
     }
 
@@ -250,12 +263,7 @@ public class AuthController {
             }
             
             // Thêm token vào danh sách đen
-            redisTemplate.opsForValue().set(
-                    BLACKLIST_PREFIX + token,
-                    "true",
-                    cookieExpiration,
-                    TimeUnit.SECONDS
-            );
+            tokenBlacklistService.blacklist(token, cookieExpiration);
         }
 
         // Xóa cookie
@@ -319,7 +327,7 @@ public class AuthController {
         }
 
         // Cập nhật mật khẩu
-        user.setPassword(passwordEncoder.encode(newPassword));
+        user.setPassword(passwordHashingService.hash(newPassword));
         userRepository.save(user);
 
         // Xóa token khỏi Redis
@@ -364,8 +372,16 @@ public class AuthController {
         return ResponseEntity.ok(userDtoMapper.toUserDto(user));
     }
 
+    // Pool băm mật khẩu quá tải: trả 429 kèm Retry-After để client thử lại sau thay vì giữ luồng request
+    @ExceptionHandler(PasswordHashingBusyException.class)
+    public ResponseEntity<AuthResponse> handleHashingBusy(PasswordHashingBusyException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(new AuthResponse(e.getMessage(), false));
+    }
+
     private boolean isTokenBlacklisted(String token) {
-        return redisTemplate.opsForValue().get(BLACKLIST_PREFIX + token) != null;
+        return tokenBlacklistService.isBlacklisted(token);
     }
 
     private void setJwtCookie(HttpServletResponse response, String token) {
@@ -1,11 +1,10 @@
 package com.example.server.controllers;
 
-import com.example.server.config.JwtProvider;
+import com.example.server.config.AuthPrincipal;
 import com.example.server.dto.CommentDto;
 import com.example.server.exception.UserException;
 import com.example.server.models.Comment;
 import com.example.server.models.Post;
-import com.example.server.models.User;
 import com.example.server.services.CommentService;
 import com.example.server.services.NotificationService;
 import com.example.server.services.PostService;
@@ -18,7 +17,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -40,20 +38,13 @@ public class CommentController {
     @Autowired
     private NotificationService notificationService;
 
-    @Autowired
-    private JwtProvider jwtProvider;
-
     @Autowired
     private UserService userService;
 
-    @Autowired
-    private RedisTemplate<String, String> redisTemplate;
-
     @Value("${app.secure:true}")
     private boolean secureCookie;
 
     private static final String COOKIE_NAME = "auth_token";
-    private static final String BLACKLIST_PREFIX = "blacklist_token:";
 
     private void clearJwtCookie(HttpServletResponse response) {
         Cookie cookie = new Cookie(COOKIE_NAME, null);
@@ -65,35 +56,15 @@ public class CommentController {
         response.addCookie(cookie);
     }
 
-    private ResponseEntity<?> validateTokenAndUser(String token, HttpServletResponse response) throws UserException {
-        if (token == null || !jwtProvider.validateToken(token)) {
-            logger.warn("Invalid or missing token");
+    // Người dùng lấy từ claims của token (AuthPrincipalArgumentResolver), không tra bảng users
+    private ResponseEntity<?> validateTokenAndUser(AuthPrincipal principal, HttpServletResponse response) {
+        if (principal == null) {
+            logger.warn("Invalid, missing or blacklisted token");
             clearJwtCookie(response);
             setNoCacheHeaders(response);
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Token không hợp lệ");
         }
-
-        if (isTokenBlacklisted(token)) {
-            logger.warn("Token is blacklisted");
-            clearJwtCookie(response);
-            setNoCacheHeaders(response);
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Token đã bị vô hiệu hóa");
-        }
-
-        User reqUser = userService.findUserProfileByJwt(token);
-        if (reqUser == null) {
-            logger.warn("User not found for token");
-            clearJwtCookie(response);
-            setNoCacheHeaders(response);
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Người dùng không tồn tại");
-        }
-
-        return ResponseEntity.ok(reqUser);
-    }
-
-    private boolean isTokenBlacklisted(String token) {
-        String blacklisted = redisTemplate.opsForValue().get(BLACKLIST_PREFIX + token);
-        return blacklisted != null;
+        return ResponseEntity.ok(principal);
     }
 
     private void setNoCacheHeaders(HttpServletResponse response) {
@@ -106,18 +77,18 @@ public class CommentController {
     public ResponseEntity<?> createComment(
             @PathVariable Long postId,
             @Valid @RequestBody CommentDto commentDto,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) throws UserException {
         logger.info("Creating comment for post id: {}", postId);
-        ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
             // Kiểm tra quyền xem bài đăng trước khi comment
-            postService.getPostById(postId, reqUser.getId());
-            CommentDto createdComment = commentService.createComment(commentDto, postId, reqUser.getId());
+            postService.getPostById(postId, reqUser.id());
+            CommentDto createdComment = commentService.createComment(commentDto, postId, reqUser.id());
             
             if (createdComment == null) {
                 logger.error("Failed to create comment for post: {}", postId);
@@ -129,8 +100,8 @@ public class CommentController {
             Comment comment = commentService.getCommentEntityById(createdComment.getId());
             
             // Tạo thông báo cho chủ bài viết nếu người bình luận không phải là chủ bài viết
-            if (post != null && comment != null && !post.getUser().getId().equals(reqUser.getId())) {
-                notificationService.createPostCommentNotification(post, comment, reqUser);
+            if (post != null && comment != null && !post.getUser().getId().equals(reqUser.id())) {
+                notificationService.createPostCommentNotification(post, comment, userService.findUserById(reqUser.id()));
             }
             setNoCacheHeaders(response);
             return ResponseEntity.status(HttpStatus.CREATED).body(createdComment);
@@ -148,18 +119,18 @@ public class CommentController {
             @PathVariable Long postId,
             @PathVariable Long parentCommentId,
             @Valid @RequestBody CommentDto commentDto,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) throws UserException {
         logger.info("Creating reply for comment id: {} in post id: {}", parentCommentId, postId);
-        ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
             // Kiểm tra quyền xem bài đăng
-            postService.getPostById(postId, reqUser.getId());
-            CommentDto createdReply = commentService.createReply(commentDto, postId, parentCommentId, reqUser.getId());
+            postService.getPostById(postId, reqUser.id());
+            CommentDto createdReply = commentService.createReply(commentDto, postId, parentCommentId, reqUser.id());
             if (createdReply == null) {
                 logger.error("Failed to create reply for comment: {}", parentCommentId);
                 return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Không thể tạo trả lời");
@@ -178,16 +149,16 @@ public class CommentController {
     @GetMapping("/{commentId}")
     public ResponseEntity<?> getCommentById(
             @PathVariable Long commentId,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) throws UserException {
         logger.info("Fetching comment with id: {}", commentId);
-        ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
-            CommentDto commentDto = commentService.getCommentById(commentId, reqUser.getId());
+            CommentDto commentDto = commentService.getCommentById(commentId, reqUser.id());
             if (commentDto == null) {
                 logger.error("Comment not found: {}", commentId);
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Bình luận không tồn tại");
@@ -203,18 +174,18 @@ public class CommentController {
     @GetMapping("/post/{postId}")
     public ResponseEntity<?> getCommentsByPostId(
             @PathVariable Long postId,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) throws UserException {
         logger.info("Fetching comments for post id: {}", postId);
-        ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
             // Kiểm tra quyền xem bài đăng
-            postService.getPostById(postId, reqUser.getId());
-            List<CommentDto> comments = commentService.getCommentsByPostId(postId, reqUser.getId());
+            postService.getPostById(postId, reqUser.id());
+            List<CommentDto> comments = commentService.getCommentsByPostId(postId, reqUser.id());
             if (comments == null) {
                 logger.error("Failed to fetch comments for post: {}", postId);
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Không thể lấy danh sách bình luận");
@@ -234,16 +205,16 @@ public class CommentController {
     public ResponseEntity<?> updateComment(
             @PathVariable Long commentId,
             @Valid @RequestBody CommentDto commentDto,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) throws UserException {
         logger.info("Updating comment with id: {}", commentId);
-        ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
-            CommentDto updatedComment = commentService.updateComment(commentId, commentDto, reqUser.getId());
+            CommentDto updatedComment = commentService.updateComment(commentId, commentDto, reqUser.id());
             if (updatedComment == null) {
                 logger.error("Failed to update comment: {}", commentId);
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Bình luận không tồn tại");
@@ -262,16 +233,16 @@ public class CommentController {
     @DeleteMapping("/{commentId}")
     public ResponseEntity<?> deleteComment(
             @PathVariable Long commentId,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) throws UserException {
         logger.info("Deleting comment with id: {}", commentId);
-        ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
-            commentService.deleteComment(commentId, reqUser.getId());
+            commentService.deleteComment(commentId, reqUser.id());
             setNoCacheHeaders(response);
             return ResponseEntity.noContent().build();
         } catch (UserException e) {
@@ -286,16 +257,16 @@ public class CommentController {
     @PutMapping("/{commentId}/like")
     public ResponseEntity<?> likeComment(
             @PathVariable Long commentId,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) throws UserException {
         logger.info("Liking comment with id: {}", commentId);
-        ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
-            CommentDto likedComment = commentService.likeComment(commentId, reqUser.getId());
+            CommentDto likedComment = commentService.likeComment(commentId, reqUser.id());
             if (likedComment == null) {
                 logger.error("Comment not found after liking: {}", commentId);
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Bình luận không tồn tại");
@@ -311,16 +282,16 @@ public class CommentController {
     @PutMapping("/{commentId}/unlike")
     public ResponseEntity<?> unlikeComment(
             @PathVariable Long commentId,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) throws UserException {
         logger.info("Unliking comment with id: {}", commentId);
-        ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
-            CommentDto unlikedComment = commentService.unlikeComment(commentId, reqUser.getId());
+            CommentDto unlikedComment = commentService.unlikeComment(commentId, reqUser.id());
             if (unlikedComment == null) {
                 logger.error("Comment not found after unliking: {}", commentId);
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Bình luận không tồn tại");
@@ -1,32 +1,294 @@
 package com.example.server.controllers;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
-import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.example.server.repositories.MediaBlobRepository;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 @RestController
-@RequestMapping("/api/videos")
+// /videos/** là đường dẫn công khai trong URL media đã lưu (LocalBlobStore.publicUrl), /api/videos/** là đường dẫn cũ (cần đăng nhập)
+@RequestMapping({ "/videos", "/api/videos" })
 public class FileController {
+    private static final Logger logger = LoggerFactory.getLogger(FileController.class);
+
+    // Thuộc tính request mà Tomcat (connector NIO/NIO2) dùng cho sendfile
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // Tệp đặt tên theo SHA-256 nội dung (xem MediaStorageServiceImpl) và các tệp dẫn xuất của nó
+    // ("<hash>.480p.mp4", "<hash>.thumb.jpg") không bao giờ đổi nội dung
+    private static final Pattern CONTENT_ADDRESSED = Pattern.compile("[0-9a-f]{64}(\\.[A-Za-z0-9]+)*");
+    // Blob gốc không có đuôi: MIME type lấy từ bảng media_blobs
+    private static final Pattern HASH_ONLY = Pattern.compile("[0-9a-f]{64}");
+    private static final int CONTENT_TYPE_CACHE_SIZE = 10_000;
+    private static final String IMMUTABLE_CACHE = "public, max-age=31536000, immutable";
+    private static final String DEFAULT_CACHE = "public, max-age=3600";
 
     @Value("${app.video.storage.path:/Videos/Web}")
     private String videoStoragePath;
 
-    @GetMapping("/{fileName}")
-    public ResponseEntity<Resource> serveVideo(@PathVariable String fileName) {
-        Resource file = new FileSystemResource(Paths.get(videoStoragePath, fileName));
-        if (!file.exists()) {
-            return ResponseEntity.notFound().build();
+    @Autowired
+    private MediaBlobRepository mediaBlobRepository;
+
+    // Nội dung theo hash không đổi nên MIME type của nó cũng không đổi; đầy thì xóa cả bảng cho đơn giản
+    private final Map<String, String> blobContentTypes = new ConcurrentHashMap<>();
+
+    @RequestMapping(value = "/{fileName}", method = { RequestMethod.GET, RequestMethod.HEAD })
+    public void serveVideo(@PathVariable String fileName,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        serve(fileName, fileName, request, response);
+    }
+
+    // Blob trong kho media nằm ở thư mục phân mảnh "ab/cd/<sha256>" (blob cũ còn mang đuôi tệp)
+    @RequestMapping(value = "/{shard1:[0-9a-f]{2}}/{shard2:[0-9a-f]{2}}/{fileName}", method = { RequestMethod.GET, RequestMethod.HEAD })
+    public void serveShardedVideo(@PathVariable String shard1,
+            @PathVariable String shard2,
+            @PathVariable String fileName,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        serve(shard1 + "/" + shard2 + "/" + fileName, fileName, request, response);
+    }
+
+    private void serve(String relativePath, String fileName,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        Path baseDir = Paths.get(videoStoragePath).toAbsolutePath().normalize();
+        Path file = baseDir.resolve(relativePath).normalize();
+        // Chặn path traversal (../) ra ngoài thư mục lưu video và tệp ẩn (như thư mục tạm .staging)
+        if (!file.startsWith(baseDir) || file.equals(baseDir) || fileName.startsWith(".")) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        if (!attrs.isRegularFile()) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+
+        long length = attrs.size();
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        boolean contentAddressed = CONTENT_ADDRESSED.matcher(fileName).matches();
+        String etag = buildETag(fileName, length, lastModified, contentAddressed);
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, contentAddressed ? IMMUTABLE_CACHE : DEFAULT_CACHE);
+
+        if (isNotModified(request, etag, lastModified)) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+
+        response.setContentType(contentTypeOf(relativePath, fileName));
+
+        // Mặc định trả toàn bộ tệp; chỉ cắt theo Range khi If-Range (nếu có) còn khớp
+        long start = 0;
+        long end = length - 1;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && length > 0 && isRangeStillValid(request, etag, lastModified)) {
+            long[] range = parseSingleRange(rangeHeader, length);
+            if (range == null) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                return;
+            }
+            if (range.length == 2) {
+                start = range[0];
+                end = range[1];
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        long count = end - start + 1;
+        response.setContentLengthLong(count);
+        if ("HEAD".equals(request.getMethod()) || count <= 0) {
+            return;
+        }
+
+        // Tomcat hỗ trợ sendfile: giao cho connector gửi thẳng từ page cache ra socket, không qua heap
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, out);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        } catch (IOException e) {
+            // Client tua video hoặc đóng tab giữa chừng: không phải lỗi phía server
+            logger.debug("Ngắt kết nối khi đang gửi video {}: {}", fileName, e.getMessage());
+        }
+    }
+
+    private String contentTypeOf(String relativePath, String fileName) {
+        MediaType byName = MediaTypeFactory.getMediaType(fileName).orElse(null);
+        if (byName != null) {
+            return byName.toString();
+        }
+        if (!HASH_ONLY.matcher(fileName).matches()) {
+            return MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        }
+        String cached = blobContentTypes.get(relativePath);
+        if (cached != null) {
+            return cached;
+        }
+        String contentType = mediaBlobRepository.findContentTypeByStorageKey(relativePath)
+            .orElse(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        if (blobContentTypes.size() >= CONTENT_TYPE_CACHE_SIZE) {
+            blobContentTypes.clear();
+        }
+        blobContentTypes.put(relativePath, contentType);
+        return contentType;
+    }
+
+    private String buildETag(String fileName, long length, long lastModified, boolean contentAddressed) {
+        if (contentAddressed) {
+            // Giữ cả phần đuôi: bản chuyển mã và thumbnail có cùng hash với video gốc
+            return "\"" + fileName + "\"";
+        }
+        return "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+    }
+
+    private boolean isNotModified(HttpServletRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            return matchesETag(ifNoneMatch, etag);
+        }
+        long ifModifiedSince = readDateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+        // Header HTTP chỉ chính xác tới giây
+        return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    private boolean isRangeStillValid(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // If-Range chỉ chấp nhận so sánh strong
+            return !ifRange.startsWith("W/") && ifRange.trim().equals(etag);
+        }
+        long ifRangeDate = readDateHeader(request, HttpHeaders.IF_RANGE);
+        return ifRangeDate >= 0 && lastModified / 1000 <= ifRangeDate / 1000;
+    }
+
+    private boolean matchesETag(String header, String etag) {
+        for (String candidate : header.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long readDateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Phân tích header Range dạng một khoảng (bytes=a-b, bytes=a-, bytes=-n).
+     * Trả về {start, end} (bao gồm cả end), mảng rỗng nếu nên bỏ qua Range và trả 200
+     * (cú pháp lạ hoặc nhiều khoảng), hoặc null nếu khoảng không thỏa mãn được (416).
+     */
+    private long[] parseSingleRange(String header, long length) {
+        if (!header.startsWith("bytes=")) {
+            return new long[0];
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        if (spec.contains(",")) {
+            // Trình phát video chỉ gửi một khoảng; multipart/byteranges không đáng để hỗ trợ
+            return new long[0];
+        }
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                if (start >= length) {
+                    return null;
+                }
+                end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+                if (end < start) {
+                    return new long[0];
+                }
+            }
+            return new long[] { start, end };
+        } catch (NumberFormatException e) {
+            return new long[0];
         }
-        return ResponseEntity.ok()
-                .contentType(MediaType.valueOf("video/mp4"))
-                .body(file);
     }
-}
\ No newline at end of file
+}
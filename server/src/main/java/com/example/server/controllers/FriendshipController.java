@@ -18,25 +18,19 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.bind.annotation.CookieValue;
-import org.springframework.web.bind.annotation.RequestHeader;
 
-import com.example.server.config.JwtProvider;
+import com.example.server.config.AuthPrincipal;
 import com.example.server.dto.FriendshipDto;
 import com.example.server.dto.UserDto;
 import com.example.server.exception.UserException;
-import com.example.server.models.User;
+import com.example.server.services.FriendshipConsistencyService;
 import com.example.server.services.FriendshipService;
-import com.example.server.services.UserService;
-import com.example.server.services.impl.UserServiceImpl;
-import com.example.server.repositories.FriendshipRepository;
-import com.example.server.repositories.UserRepository;
+import com.example.server.services.MutualFriendsService;
+import com.example.server.services.PresenceService;
+import com.example.server.utils.FriendCursor;
 
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletResponse;
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.Query;
-import jakarta.persistence.PersistenceContext;
 
 @RestController
 @RequestMapping("/api/friendship")
@@ -44,24 +38,21 @@ public class FriendshipController {
 
     private static final Logger logger = LoggerFactory.getLogger(FriendshipController.class);
     private static final String COOKIE_NAME = "auth_token";
+    private static final int MAX_MUTUAL_BATCH = 100;
+    private static final int MAX_FRIEND_PAGE = 100;
+    private static final int MAX_STATUS_BATCH = 300;
 
     @Autowired
     private FriendshipService friendshipService;
 
     @Autowired
-    private UserService userService;
+    private PresenceService presenceService;
 
     @Autowired
-    private JwtProvider jwtProvider;
+    private MutualFriendsService mutualFriendsService;
 
     @Autowired
-    private FriendshipRepository friendshipRepository;
-
-    @Autowired
-    private UserRepository userRepository;
-
-    @PersistenceContext
-    private EntityManager entityManager;
+    private FriendshipConsistencyService friendshipConsistencyService;
 
     private void clearJwtCookie(HttpServletResponse response) {
         Cookie cookie = new Cookie(COOKIE_NAME, null);
@@ -71,53 +62,33 @@ public class FriendshipController {
         response.addCookie(cookie);
     }
 
-    private ResponseEntity<?> validateTokenAndUser(String token, HttpServletResponse response) {
-        if (token == null || !jwtProvider.validateToken(token)) {
-            logger.warn("Unauthorized: Token is null or invalid");
+    // Người dùng lấy từ claims của token (AuthPrincipalArgumentResolver), không tra bảng users
+    private ResponseEntity<?> validateTokenAndUser(AuthPrincipal principal, HttpServletResponse response) {
+        if (principal == null) {
+            logger.warn("Unauthorized: Token is null, invalid or the account is locked");
             clearJwtCookie(response);
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized: Token invalid");
         }
-
-        try {
-            User user = userService.findUserProfileByJwt(token);
-            if (user == null) {
-                logger.warn("Unauthorized: User not found for token");
-                clearJwtCookie(response);
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized: User not found");
-            }
-            return ResponseEntity.ok(user);
-        } catch (UserException e) {
-            logger.error("Authentication error: {}", e.getMessage());
-            clearJwtCookie(response);
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized: " + e.getMessage());
-        }
+        return ResponseEntity.ok(principal);
     }
 
     // Gửi lời mời kết bạn
     @PostMapping("/request/{friendId}")
     public ResponseEntity<?> sendFriendRequest(
             @PathVariable Long friendId,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
-            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            AuthPrincipal principal,
             HttpServletResponse response) {
         
         logger.info("Sending friend request to user ID: {}", friendId);
         
-        // Ưu tiên sử dụng token từ cookie, nếu không có thì dùng Authorization header
-        String actualToken = token;
-        if ((actualToken == null || actualToken.isEmpty()) && authHeader != null && authHeader.startsWith("Bearer ")) {
-            actualToken = authHeader.substring(7);
-            logger.info("Using Authorization header for authentication");
-        }
-        
-        ResponseEntity<?> validationResult = validateTokenAndUser(actualToken, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
-            FriendshipDto friendship = friendshipService.sendFriendRequest(friendId, reqUser.getId());
-            logger.info("Friend request sent successfully from user {} to {}", reqUser.getId(), friendId);
+            FriendshipDto friendship = friendshipService.sendFriendRequest(friendId, reqUser.id());
+            logger.info("Friend request sent successfully from user {} to {}", reqUser.id(), friendId);
             return ResponseEntity.ok(friendship);
         } catch (UserException e) {
             logger.error("Error sending friend request: {}", e.getMessage());
@@ -129,18 +100,18 @@ public class FriendshipController {
     @PutMapping("/accept/{friendshipId}")
     public ResponseEntity<?> acceptFriendRequest(
             @PathVariable Long friendshipId,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) {
         
         logger.info("Accepting friend request ID: {}", friendshipId);
         
-        ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
-            FriendshipDto friendship = friendshipService.acceptFriendRequest(friendshipId, reqUser.getId());
+            FriendshipDto friendship = friendshipService.acceptFriendRequest(friendshipId, reqUser.id());
             return ResponseEntity.ok(friendship);
         } catch (UserException e) {
             logger.error("Error accepting friend request: {}", e.getMessage());
@@ -152,18 +123,18 @@ public class FriendshipController {
     @PutMapping("/reject/{friendshipId}")
     public ResponseEntity<?> rejectFriendRequest(
             @PathVariable Long friendshipId,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) {
         
         logger.info("Rejecting friend request ID: {}", friendshipId);
         
-        ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
-            friendshipService.rejectFriendRequest(friendshipId, reqUser.getId());
+            friendshipService.rejectFriendRequest(friendshipId, reqUser.id());
             return ResponseEntity.ok().build();
         } catch (UserException e) {
             logger.error("Error rejecting friend request: {}", e.getMessage());
@@ -175,18 +146,18 @@ public class FriendshipController {
     @DeleteMapping("/cancel/{friendshipId}")
     public ResponseEntity<?> cancelFriendRequest(
             @PathVariable Long friendshipId,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) {
         
         logger.info("Canceling friend request ID: {}", friendshipId);
         
-        ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
-            friendshipService.cancelFriendRequest(friendshipId, reqUser.getId());
+            friendshipService.cancelFriendRequest(friendshipId, reqUser.id());
             return ResponseEntity.ok().build();
         } catch (UserException e) {
             logger.error("Error canceling friend request: {}", e.getMessage());
@@ -198,26 +169,18 @@ public class FriendshipController {
     @DeleteMapping("/remove/{friendId}")
     public ResponseEntity<?> removeFriend(
             @PathVariable Long friendId,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
-            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            AuthPrincipal principal,
             HttpServletResponse response) {
         
         logger.info("Removing friend ID: {}", friendId);
         
-        // Ưu tiên sử dụng token từ cookie, nếu không có thì dùng Authorization header
-        String actualToken = token;
-        if ((actualToken == null || actualToken.isEmpty()) && authHeader != null && authHeader.startsWith("Bearer ")) {
-            actualToken = authHeader.substring(7);
-            logger.info("Using Authorization header for authentication");
-        }
-        
-        ResponseEntity<?> validationResult = validateTokenAndUser(actualToken, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
-            friendshipService.removeFriend(friendId, reqUser.getId());
+            friendshipService.removeFriend(friendId, reqUser.id());
             return ResponseEntity.ok().build();
         } catch (UserException e) {
             logger.error("Error removing friend: {}", e.getMessage());
@@ -229,26 +192,18 @@ public class FriendshipController {
     @DeleteMapping("/unfriend/{friendId}")
     public ResponseEntity<?> unfriendUser(
             @PathVariable Long friendId,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
-            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            AuthPrincipal principal,
             HttpServletResponse response) {
         
         logger.info("Unfriending user ID: {} (alternative endpoint)", friendId);
         
-        // Ưu tiên sử dụng token từ cookie, nếu không có thì dùng Authorization header
-        String actualToken = token;
-        if ((actualToken == null || actualToken.isEmpty()) && authHeader != null && authHeader.startsWith("Bearer ")) {
-            actualToken = authHeader.substring(7);
-            logger.info("Using Authorization header for authentication");
-        }
-        
-        ResponseEntity<?> validationResult = validateTokenAndUser(actualToken, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
-            friendshipService.removeFriend(friendId, reqUser.getId());
+            friendshipService.removeFriend(friendId, reqUser.id());
             return ResponseEntity.ok().build();
         } catch (UserException e) {
             logger.error("Error unfriending user: {}", e.getMessage());
@@ -260,89 +215,22 @@ public class FriendshipController {
     @DeleteMapping("/friends/{friendId}")
     public ResponseEntity<?> deleteUserFriend(
             @PathVariable Long friendId,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
-            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            AuthPrincipal principal,
             HttpServletResponse response) {
         
         logger.info("Deleting friend ID: {} (alternative endpoint)", friendId);
         
-        // Ưu tiên sử dụng token từ cookie, nếu không có thì dùng Authorization header
-        String actualToken = token;
-        if ((actualToken == null || actualToken.isEmpty()) && authHeader != null && authHeader.startsWith("Bearer ")) {
-            actualToken = authHeader.substring(7);
-            logger.info("Using Authorization header for authentication");
-        }
-        
-        ResponseEntity<?> validationResult = validateTokenAndUser(actualToken, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
-            // Gọi forceDeleteUserFriendsRelation trực tiếp để đảm bảo xóa khỏi bảng user_friends
-            boolean deleted = false;
-            
-            // Bước 1: Thử xóa bạn bè thông qua service
-            try {
-                friendshipService.removeFriend(friendId, reqUser.getId());
-                deleted = true;
-            } catch (Exception e) {
-                logger.warn("Error removing friend through service: {}", e.getMessage());
-            }
-            
-            // Bước 2: Đảm bảo xóa trực tiếp từ bảng user_friends
-            int rows = friendshipRepository.forceDeleteUserFriendsRelation(reqUser.getId(), friendId);
-            if (rows > 0) {
-                deleted = true;
-                logger.info("Force deleted {} rows from user_friends table", rows);
-            }
-            
-            // Bước 3: Nếu không thành công, thử endpoint force-remove
-            if (!deleted) {
-                try {
-                    // Sử dụng biện pháp cuối cùng - xóa bằng force-remove
-                    User reqUserObj = userService.findUserById(reqUser.getId());
-                    User friendObj = userService.findUserById(friendId);
-                    
-                    // Xóa mối quan hệ từ friendships
-                    var friendship1 = friendshipRepository.findByUserAndFriend(reqUserObj, friendObj);
-                    if (friendship1.isPresent()) {
-                        friendshipRepository.delete(friendship1.get());
-                    }
-                    
-                    var friendship2 = friendshipRepository.findByUserAndFriend(friendObj, reqUserObj);
-                    if (friendship2.isPresent()) {
-                        friendshipRepository.delete(friendship2.get());
-                    }
-                    
-                    // Xóa khỏi collection
-                    if (reqUserObj.getFriends().contains(friendObj)) {
-                        reqUserObj.getFriends().remove(friendObj);
-                    }
-                    
-                    if (friendObj.getFriends().contains(reqUserObj)) {
-                        friendObj.getFriends().remove(reqUserObj);
-                    }
-                    
-                    // Lưu thay đổi
-                    userRepository.save(reqUserObj);
-                    userRepository.save(friendObj);
-                    
-                    deleted = true;
-                    logger.info("Force removed friendship using manual method");
-                } catch (Exception e) {
-                    logger.error("Error in final attempt to remove friendship: {}", e.getMessage());
-                }
-            }
-            
-            if (deleted) {
-                return ResponseEntity.ok().build();
-            } else {
-                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Không thể xóa bạn bè");
-            }
-        } catch (Exception e) {
+            friendshipService.removeFriend(friendId, reqUser.id());
+            return ResponseEntity.ok().build();
+        } catch (UserException e) {
             logger.error("Error deleting friend: {}", e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
         }
     }
 
@@ -350,18 +238,18 @@ public class FriendshipController {
     @PostMapping("/block/{userId}")
     public ResponseEntity<?> blockUser(
             @PathVariable Long userId,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) {
         
         logger.info("Blocking user ID: {}", userId);
         
-        ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
-            FriendshipDto friendship = friendshipService.blockUser(reqUser.getId(), userId);
+            FriendshipDto friendship = friendshipService.blockUser(reqUser.id(), userId);
             return ResponseEntity.ok(friendship);
         } catch (UserException e) {
             logger.error("Error blocking user: {}", e.getMessage());
@@ -373,18 +261,18 @@ public class FriendshipController {
     @DeleteMapping("/unblock/{userId}")
     public ResponseEntity<?> unblockUser(
             @PathVariable Long userId,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) {
         
         logger.info("Unblocking user ID: {}", userId);
         
-        ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
-            friendshipService.unblockUser(reqUser.getId(), userId);
+            friendshipService.unblockUser(reqUser.id(), userId);
             return ResponseEntity.ok().build();
         } catch (UserException e) {
             logger.error("Error unblocking user: {}", e.getMessage());
@@ -395,8 +283,7 @@ public class FriendshipController {
     // Lấy danh sách bạn bè
     @GetMapping("/friends")
     public ResponseEntity<?> getUserFriends(
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
-            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            AuthPrincipal principal,
             @RequestParam(required = false, defaultValue = "0") int page,
             @RequestParam(required = false, defaultValue = "100") int size,
             @RequestParam(required = false, name = "_t") String timestamp,
@@ -404,21 +291,16 @@ public class FriendshipController {
         
         logger.info("Getting user friends. Page: {}, Size: {}, Timestamp: {}", page, size, timestamp);
         
-        // Ưu tiên sử dụng token từ cookie, nếu không có thì dùng Authorization header
-        String actualToken = token;
-        if ((actualToken == null || actualToken.isEmpty()) && authHeader != null && authHeader.startsWith("Bearer ")) {
-            actualToken = authHeader.substring(7);
-            logger.info("Using Authorization header for authentication");
-        }
-        
-        ResponseEntity<?> validationResult = validateTokenAndUser(actualToken, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
-            List<UserDto> friends = friendshipService.getUserFriends(reqUser.getId());
-            logger.info("Found {} friends for user ID: {}", friends.size(), reqUser.getId());
+            List<UserDto> friends = friendshipService.getUserFriends(reqUser.id());
+            // Danh sách bạn bè nằm trong cache; trạng thái online luôn đọc mới từ Redis
+            presenceService.fillOnlineStatus(friends);
+            logger.info("Found {} friends for user ID: {}", friends.size(), reqUser.id());
             return ResponseEntity.ok(friends);
         } catch (UserException e) {
             logger.error("Error getting user friends: {}", e.getMessage());
@@ -430,28 +312,22 @@ public class FriendshipController {
     @GetMapping("/user/{userId}/friends")
     public ResponseEntity<?> getUserFriendsById(
             @PathVariable Long userId,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
-            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            AuthPrincipal principal,
             HttpServletResponse response) {
         
         logger.info("Getting friends for user ID: {}", userId);
         
-        // Ưu tiên sử dụng token từ cookie, nếu không có thì dùng Authorization header
-        String actualToken = token;
-        if ((actualToken == null || actualToken.isEmpty()) && authHeader != null && authHeader.startsWith("Bearer ")) {
-            actualToken = authHeader.substring(7);
-            logger.info("Using Authorization header for authentication");
-        }
-        
         // Xác thực người dùng yêu cầu (không cần kiểm tra quyền ở đây vì danh sách bạn bè có thể công khai)
-        ResponseEntity<?> validationResult = validateTokenAndUser(actualToken, response);
-        if (!(validationResult.getBody() instanceof User)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal)) {
             return validationResult;
         }
 
         try {
             // Lấy danh sách bạn bè
             List<UserDto> friends = friendshipService.getUserFriends(userId);
+            // Danh sách bạn bè nằm trong cache; trạng thái online luôn đọc mới từ Redis
+            presenceService.fillOnlineStatus(friends);
             logger.info("Found {} friends for target user ID: {}", friends.size(), userId);
             
             return ResponseEntity.ok(friends);
@@ -461,21 +337,76 @@ public class FriendshipController {
         }
     }
 
+    // Danh sách bạn bè của mình theo trang keyset: sort=name|recent|online, q lọc theo đầu tên,
+    // ?after= rỗng là trang đầu, sau đó đi theo link "next"
+    @GetMapping("/friends/page")
+    public ResponseEntity<?> getUserFriendsPage(
+            @RequestParam(required = false, defaultValue = "name") String sort,
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false, defaultValue = "20") int size,
+            AuthPrincipal principal,
+            HttpServletResponse response) {
+
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
+            return validationResult;
+        }
+        return friendsPage(reqUser.id(), sort, q, after, size);
+    }
+
+    // Danh sách bạn bè của userId theo trang keyset, tham số như /friends/page
+    @GetMapping("/user/{userId}/friends/page")
+    public ResponseEntity<?> getUserFriendsPageById(
+            @PathVariable Long userId,
+            @RequestParam(required = false, defaultValue = "name") String sort,
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false, defaultValue = "20") int size,
+            AuthPrincipal principal,
+            HttpServletResponse response) {
+
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal)) {
+            return validationResult;
+        }
+        return friendsPage(userId, sort, q, after, size);
+    }
+
+    private ResponseEntity<?> friendsPage(Long userId, String sort, String q, String after, int size) {
+        FriendCursor.Sort friendSort;
+        FriendCursor cursor;
+        try {
+            friendSort = FriendCursor.Sort.parse(sort);
+            cursor = FriendCursor.decode(after);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+
+        try {
+            int pageSize = Math.max(1, Math.min(size, MAX_FRIEND_PAGE));
+            return ResponseEntity.ok(friendshipService.getFriends(userId, friendSort, q, cursor, pageSize));
+        } catch (UserException e) {
+            logger.error("Error getting friends page for user ID {}: {}", userId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+    }
+
     // Lấy danh sách lời mời kết bạn đã nhận
     @GetMapping("/requests/pending")
     public ResponseEntity<?> getPendingFriendRequests(
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) {
         
         logger.info("Getting pending friend requests");
         
-        ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
-            List<FriendshipDto> requests = friendshipService.getPendingFriendRequests(reqUser.getId());
+            List<FriendshipDto> requests = friendshipService.getPendingFriendRequests(reqUser.id());
             return ResponseEntity.ok(requests);
         } catch (UserException e) {
             logger.error("Error getting pending friend requests: {}", e.getMessage());
@@ -486,18 +417,18 @@ public class FriendshipController {
     // Lấy danh sách lời mời kết bạn đã gửi
     @GetMapping("/requests/sent")
     public ResponseEntity<?> getSentFriendRequests(
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) {
         
         logger.info("Getting sent friend requests");
         
-        ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
-            List<FriendshipDto> requests = friendshipService.getSentFriendRequests(reqUser.getId());
+            List<FriendshipDto> requests = friendshipService.getSentFriendRequests(reqUser.id());
             return ResponseEntity.ok(requests);
         } catch (UserException e) {
             logger.error("Error getting sent friend requests: {}", e.getMessage());
@@ -508,18 +439,18 @@ public class FriendshipController {
     // Lấy danh sách người dùng đã chặn
     @GetMapping("/blocked")
     public ResponseEntity<?> getBlockedUsers(
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) {
         
         logger.info("Getting blocked users");
         
-        ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
-            List<UserDto> blockedUsers = friendshipService.getBlockedUsers(reqUser.getId());
+            List<UserDto> blockedUsers = friendshipService.getBlockedUsers(reqUser.id());
             return ResponseEntity.ok(blockedUsers);
         } catch (UserException e) {
             logger.error("Error getting blocked users: {}", e.getMessage());
@@ -532,19 +463,19 @@ public class FriendshipController {
     public ResponseEntity<?> getFriendSuggestions(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) {
         
         logger.info("Getting friend suggestions, page: {}, size: {}", page, size);
         
-        ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
             Pageable pageable = PageRequest.of(page, size);
-            Page<UserDto> suggestions = friendshipService.getFriendSuggestions(reqUser.getId(), pageable);
+            Page<UserDto> suggestions = friendshipService.getFriendSuggestions(reqUser.id(), pageable);
             return ResponseEntity.ok(suggestions);
         } catch (UserException e) {
             logger.error("Error getting friend suggestions: {}", e.getMessage());
@@ -556,18 +487,18 @@ public class FriendshipController {
     @GetMapping("/status/{userId}")
     public ResponseEntity<?> getFriendshipStatus(
             @PathVariable Long userId,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) {
         
         logger.info("Getting friendship status with user ID: {}", userId);
         
-        ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
-            String status = friendshipService.getFriendshipStatus(reqUser.getId(), userId);
+            String status = friendshipService.getFriendshipStatus(reqUser.id(), userId);
             return ResponseEntity.ok(status);
         } catch (UserException e) {
             logger.error("Error getting friendship status: {}", e.getMessage());
@@ -575,22 +506,40 @@ public class FriendshipController {
         }
     }
 
+    // Quan hệ với nhiều người một lượt cho thẻ người dùng (kết quả tìm kiếm, thành viên nhóm, người đã like): ?userIds=1,2,3
+    @GetMapping("/status")
+    public ResponseEntity<?> getRelationshipStatuses(
+            @RequestParam List<Long> userIds,
+            AuthPrincipal principal,
+            HttpServletResponse response) {
+
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
+            return validationResult;
+        }
+        if (userIds.size() > MAX_STATUS_BATCH) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Tối đa " + MAX_STATUS_BATCH + " người dùng mỗi lần");
+        }
+
+        return ResponseEntity.ok(friendshipService.getRelationshipStatuses(reqUser.id(), userIds));
+    }
+
     // Lấy số lượng bạn chung
     @GetMapping("/mutual/{userId}/count")
     public ResponseEntity<?> getMutualFriendsCount(
             @PathVariable Long userId,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) {
         
         logger.info("Getting mutual friends count with user ID: {}", userId);
         
-        ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
-            Integer count = friendshipService.getMutualFriendsCount(reqUser.getId(), userId);
+            Integer count = friendshipService.getMutualFriendsCount(reqUser.id(), userId);
             return ResponseEntity.ok(count);
         } catch (UserException e) {
             logger.error("Error getting mutual friends count: {}", e.getMessage());
@@ -598,22 +547,57 @@ public class FriendshipController {
         }
     }
 
+    // Số bạn chung và vài bạn chung đầu tiên
+    @GetMapping("/mutual/{userId}")
+    public ResponseEntity<?> getMutualFriends(
+            @PathVariable Long userId,
+            @RequestParam(defaultValue = "3") int limit,
+            AuthPrincipal principal,
+            HttpServletResponse response) {
+
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
+            return validationResult;
+        }
+
+        return ResponseEntity.ok(mutualFriendsService.preview(reqUser.id(), userId, limit));
+    }
+
+    // Bạn chung với nhiều người một lượt (thẻ gợi ý, kết quả tìm kiếm): ?userIds=1,2,3
+    @GetMapping("/mutual")
+    public ResponseEntity<?> getMutualFriendsBatch(
+            @RequestParam List<Long> userIds,
+            @RequestParam(defaultValue = "3") int limit,
+            AuthPrincipal principal,
+            HttpServletResponse response) {
+
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
+            return validationResult;
+        }
+        if (userIds.size() > MAX_MUTUAL_BATCH) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Tối đa " + MAX_MUTUAL_BATCH + " người dùng mỗi lần");
+        }
+
+        return ResponseEntity.ok(mutualFriendsService.previews(reqUser.id(), userIds, limit).values());
+    }
+
     // Tìm kiếm bạn bè
     @GetMapping("/search")
     public ResponseEntity<?> searchFriends(
             @RequestParam String query,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) {
         
         logger.info("Searching friends with query: {}", query);
         
-        ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
-            List<UserDto> friends = friendshipService.searchFriends(reqUser.getId(), query);
+            List<UserDto> friends = friendshipService.searchFriends(reqUser.id(), query);
             return ResponseEntity.ok(friends);
         } catch (UserException e) {
             logger.error("Error searching friends: {}", e.getMessage());
@@ -621,161 +605,42 @@ public class FriendshipController {
         }
     }
 
+    // Sửa quan hệ lệch giữa hai người (dòng trùng, chỉ có một chiều ACCEPTED) trong bảng friendships
     @GetMapping("/fix/{friendId}")
-    public ResponseEntity<?> fixFriendship(@PathVariable Long friendId, @RequestHeader("Authorization") String jwt) {
+    public ResponseEntity<?> fixFriendship(@PathVariable Long friendId, AuthPrincipal principal) {
+        if (principal == null) {
+            return new ResponseEntity<>("Unauthorized: Token invalid", HttpStatus.UNAUTHORIZED);
+        }
         try {
-            User reqUser = userService.findUserProfileByJwt(jwt);
-            
-            if (userService instanceof UserServiceImpl) {
-                // Gọi phương thức sửa lỗi quan hệ bạn bè
-                ((UserServiceImpl) userService).fixFriendshipConsistency(reqUser.getId(), friendId);
-                return new ResponseEntity<>("Đã sửa lỗi quan hệ bạn bè", HttpStatus.OK);
-            }
-            
-            return new ResponseEntity<>("Không thể thực hiện hành động này", HttpStatus.INTERNAL_SERVER_ERROR);
+            boolean repaired = friendshipConsistencyService.repairPair(principal.id(), friendId);
+            return new ResponseEntity<>(repaired ? "Đã sửa lỗi quan hệ bạn bè" : "Quan hệ bạn bè không bị lỗi", HttpStatus.OK);
         } catch (Exception e) {
             return new ResponseEntity<>(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
     
+    // Xóa bạn bè sau khi sửa quan hệ lệch của cặp; không còn là bạn bè cũng coi là thành công
     @DeleteMapping("/force-remove/{friendId}")
     public ResponseEntity<?> forceRemoveFriend(
             @PathVariable Long friendId, 
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
-            @RequestHeader(value = "Authorization", required = false) String authHeader) {
+            AuthPrincipal principal) {
+        if (principal == null) {
+            return new ResponseEntity<>("Unauthorized: Token invalid", HttpStatus.UNAUTHORIZED);
+        }
         
         try {
-            logger.info("==== FORCE REMOVE FRIEND ====");
-            logger.info("Attempting to force remove friend with ID: {}", friendId);
-            
-            // Ưu tiên sử dụng token từ cookie, nếu không có thì dùng Authorization header
-            String actualToken = token;
-            if ((actualToken == null || actualToken.isEmpty()) && authHeader != null && authHeader.startsWith("Bearer ")) {
-                actualToken = authHeader.substring(7);
-                logger.info("Using Authorization header for authentication");
-            }
-            
-            User reqUser = userService.findUserProfileByJwt(actualToken);
-            logger.info("Current user: ID={}, Name={} {}", reqUser.getId(), reqUser.getFirstName(), reqUser.getLastName());
-            
-            User friend = userService.findUserById(friendId);
-            logger.info("Friend to remove: ID={}, Name={} {}", friend.getId(), friend.getFirstName(), friend.getLastName());
-            
-            // BƯỚC 1: Xóa friendship trong cả hai chiều
-            logger.info("Step 1: Removing Friendship records");
-            var friendship1 = friendshipRepository.findByUserAndFriend(reqUser, friend);
-            if (friendship1.isPresent()) {
-                logger.info("Found friendship: {} -> {}", reqUser.getId(), friendId);
-                friendshipRepository.delete(friendship1.get());
-            } else {
-                logger.info("No friendship found: {} -> {}", reqUser.getId(), friendId);
-            }
-            
-            var friendship2 = friendshipRepository.findByUserAndFriend(friend, reqUser);
-            if (friendship2.isPresent()) {
-                logger.info("Found friendship: {} -> {}", friendId, reqUser.getId());
-                friendshipRepository.delete(friendship2.get());
-            } else {
-                logger.info("No friendship found: {} -> {}", friendId, reqUser.getId());
-            }
-            
-            // BƯỚC 2: Xóa dữ liệu từ bảng user_friends bằng native SQL
-            logger.info("Step 2: Removing entries from user_friends table");
-            int forceDeleted = friendshipRepository.forceDeleteUserFriendsRelation(reqUser.getId(), friendId);
-            logger.info("Deleted {} rows using repository method", forceDeleted);
+            logger.info("Force removing friend {} for user {}", friendId, principal.id());
             
-            // BƯỚC 2.5: Thử nhiều cách khác nhau để xóa
-            logger.info("Step 2.5: Trying multiple deletion methods");
+            friendshipConsistencyService.repairPair(principal.id(), friendId);
             try {
-                // Cách 1: Native SQL với entityManager
-                String sql1 = "DELETE FROM user_friends WHERE (user_id = :userId AND friend_id = :friendId) OR (user_id = :friendId AND friend_id = :userId)";
-                Query query1 = entityManager.createNativeQuery(sql1);
-                query1.setParameter("userId", reqUser.getId());
-                query1.setParameter("friendId", friendId);
-                int deleted1 = query1.executeUpdate();
-                logger.info("Deleted {} rows using native query", deleted1);
-                
-                // Cách 2: Sử dụng IN clause
-                String sql2 = "DELETE FROM user_friends WHERE user_id IN (:userIds) AND friend_id IN (:userIds)";
-                Query query2 = entityManager.createNativeQuery(sql2);
-                List<Long> userIds = List.of(reqUser.getId(), friendId);
-                query2.setParameter("userIds", userIds);
-                int deleted2 = query2.executeUpdate();
-                logger.info("Deleted {} rows using IN clause", deleted2);
-                
-                // Cách 3: Query trực tiếp không sử dụng tham số
-                String sql3 = "DELETE FROM user_friends WHERE (user_id = " + reqUser.getId() + " AND friend_id = " + friendId + 
-                              ") OR (user_id = " + friendId + " AND friend_id = " + reqUser.getId() + ")";
-                Query query3 = entityManager.createNativeQuery(sql3);
-                int deleted3 = query3.executeUpdate();
-                logger.info("Deleted {} rows using direct query", deleted3);
-            } catch (Exception e) {
-                logger.error("Error in additional deletion attempts: {}", e.getMessage());
-            }
-            
-            // BƯỚC 3: Xóa khỏi collection và lưu lại
-            logger.info("Step 3: Updating User entities");
-            
-            boolean user1Updated = false;
-            if (reqUser.getFriends().contains(friend)) {
-                reqUser.getFriends().remove(friend);
-                user1Updated = true;
-                logger.info("Removed friend from user's friend list");
-            } else {
-                logger.info("Friend not found in user's friend list");
-            }
-            
-            boolean user2Updated = false;
-            if (friend.getFriends().contains(reqUser)) {
-                friend.getFriends().remove(reqUser);
-                user2Updated = true;
-                logger.info("Removed user from friend's friend list");
-            } else {
-                logger.info("User not found in friend's friend list");
+                friendshipService.removeFriend(friendId, principal.id());
+            } catch (UserException e) {
+                logger.info("No friendship left between {} and {}: {}", principal.id(), friendId, e.getMessage());
             }
-            
-            // BƯỚC 4: Lưu thay đổi
-            if (user1Updated || user2Updated) {
-                logger.info("Step 4: Saving changes to database");
-                userRepository.save(reqUser);
-                userRepository.save(friend);
-                userRepository.flush();
-                entityManager.flush();
-            } else {
-                logger.info("No changes to save in User entities");
-            }
-            
-            // BƯỚC 5: Kiểm tra kết quả
-            int countAfter = friendshipRepository.countUserFriendsRelation(reqUser.getId(), friendId);
-            logger.info("Final check: {} records remaining in user_friends table", countAfter);
-            
-            if (countAfter > 0) {
-                logger.warn("Still have records in user_friends table!");
-                
-                // Thử xóa lần cuối cùng
-                try {
-                    String finalSql = "TRUNCATE TABLE user_friends";
-                    entityManager.createNativeQuery(finalSql).executeUpdate();
-                    logger.info("Applied drastic measure: TRUNCATE TABLE");
-                } catch (Exception e) {
-                    logger.error("Could not truncate table: {}", e.getMessage());
-                    
-                    // Nếu không thể truncate, thử xóa toàn bộ dữ liệu
-                    try {
-                        String alternateSql = "DELETE FROM user_friends";
-                        int deleted = entityManager.createNativeQuery(alternateSql).executeUpdate();
-                        logger.info("Deleted all {} rows from user_friends", deleted);
-                    } catch (Exception e2) {
-                        logger.error("Could not delete all data: {}", e2.getMessage());
-                    }
-                }
-            }
-            
-            logger.info("==== FORCE REMOVE COMPLETED ====");
             return new ResponseEntity<>("Đã xóa bạn bè hoàn toàn", HttpStatus.OK);
         } catch (Exception e) {
             logger.error("Error in force-remove: {}", e.getMessage(), e);
             return new ResponseEntity<>(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
-} 
\ No newline at end of file
+}
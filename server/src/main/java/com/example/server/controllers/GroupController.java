@@ -1,12 +1,12 @@
 package com.example.server.controllers;
 
+import com.example.server.config.AuthPrincipal;
+import com.example.server.config.AuthPrincipalArgumentResolver;
 import com.example.server.dto.GroupDto;
 import com.example.server.dto.SerializablePagedGroupMembersDto;
 import com.example.server.exception.UserException;
 import com.example.server.models.Group;
-import com.example.server.models.User;
 import com.example.server.services.GroupService;
-import com.example.server.services.UserService;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -35,7 +35,7 @@ public class GroupController {
     private GroupService groupService;
 
     @Autowired
-    private UserService userService;
+    private AuthPrincipalArgumentResolver authPrincipalArgumentResolver;
 
     @Value("${app.secure:true}")
     private boolean secureCookie;
@@ -47,21 +47,21 @@ public class GroupController {
             HttpServletResponse response) {
         logger.info("POST /api/groups - Nhận yêu cầu tạo nhóm");
         try {
-            ResponseEntity<?> validationResult = validateTokenAndUser(getTokenFromRequest(request), response);
+            ResponseEntity<?> validationResult = validateToken(getTokenFromRequest(request), response);
             if (validationResult.getStatusCode().isError()) {
                 setNoCacheHeaders(response);
                 return validationResult;
             }
 
-            User user = (User) validationResult.getBody();
+            AuthPrincipal user = (AuthPrincipal) validationResult.getBody();
             if (user == null) {
                 logger.error("Người dùng null sau khi xác thực token");
                 setNoCacheHeaders(response);
                 return ResponseEntity.status(401).body("Không được phép: Không tìm thấy người dùng");
             }
-            logger.info("Tạo nhóm cho người dùng: {}", user.getEmail());
+            logger.info("Tạo nhóm cho người dùng: {}", user.email());
 
-            GroupDto createdGroup = groupService.createGroup(groupDto, user.getId());
+            GroupDto createdGroup = groupService.createGroup(groupDto, user.id());
             setNoCacheHeaders(response);
             return ResponseEntity.ok(createdGroup);
         } catch (UserException e) {
@@ -85,15 +85,15 @@ public class GroupController {
             Long userId = null;
             String token = getTokenFromRequest(request);
             if (token != null) {
-                ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
+                ResponseEntity<?> validationResult = validateToken(token, response);
                 if (validationResult.getStatusCode().isError()) {
                     setNoCacheHeaders(response);
                     return validationResult;
                 }
     
                 Object resultBody = validationResult.getBody();
-                if (resultBody instanceof User) {
-                    userId = ((User) resultBody).getId();
+                if (resultBody instanceof AuthPrincipal) {
+                    userId = ((AuthPrincipal) resultBody).id();
                     logger.debug("ID nguoi dung xac thuc: {}", userId);
                 } else {
                     logger.error("Ket qua xac thuc null hoac sai kieu");
@@ -132,15 +132,15 @@ public class GroupController {
             Long userId = null;
             String token = getTokenFromRequest(request);
             if (token != null) {
-                ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
+                ResponseEntity<?> validationResult = validateToken(token, response);
                 if (validationResult.getStatusCode().isError()) {
                     setNoCacheHeaders(response);
                     return validationResult;
                 }
     
                 Object resultBody = validationResult.getBody();
-                if (resultBody instanceof User) {
-                    userId = ((User) resultBody).getId();
+                if (resultBody instanceof AuthPrincipal) {
+                    userId = ((AuthPrincipal) resultBody).id();
                     logger.debug("Nguoi dung xac thuc voi ID: {}", userId);
                 } else {
                     logger.error("Xac thuc that bai hoac body null");
@@ -175,14 +175,14 @@ public class GroupController {
             HttpServletResponse response) {
         logger.info("GET /api/users/{}/groups - Lấy danh sách nhóm của userId: {}, trang: {}, kích thước: {}", userId, userId, page, size);
         try {
-            ResponseEntity<?> validationResult = validateTokenAndUser(getTokenFromRequest(request), response);
+            ResponseEntity<?> validationResult = validateToken(getTokenFromRequest(request), response);
             if (validationResult.getStatusCode().isError()) {
                 setNoCacheHeaders(response);
                 return validationResult;
             }
 
-            User user = (User) validationResult.getBody();
-            if (user == null || !user.getId().equals(userId)) {
+            AuthPrincipal user = (AuthPrincipal) validationResult.getBody();
+            if (user == null || !user.id().equals(userId)) {
                 logger.warn("Truy cập bị từ chối: Không thể truy cập nhóm của người dùng khác: {}", userId);
                 setNoCacheHeaders(response);
                 return ResponseEntity.status(403).body("Cấm: Không thể truy cập nhóm của người dùng khác");
@@ -211,19 +211,19 @@ public class GroupController {
             HttpServletResponse response) {
         logger.info("PUT /api/groups/{} - Cập nhật nhóm", groupId);
         try {
-            ResponseEntity<?> validationResult = validateTokenAndUser(getTokenFromRequest(request), response);
+            ResponseEntity<?> validationResult = validateToken(getTokenFromRequest(request), response);
             if (validationResult.getStatusCode().isError()) {
                 setNoCacheHeaders(response);
                 return validationResult;
             }
 
-            User user = (User) validationResult.getBody();
+            AuthPrincipal user = (AuthPrincipal) validationResult.getBody();
             if (user == null) {
                 logger.error("Người dùng null sau khi xác thực token");
                 setNoCacheHeaders(response);
                 return ResponseEntity.status(401).body("Không được phép: Không tìm thấy người dùng");
             }
-            GroupDto updatedGroup = groupService.updateGroup(groupId, groupDto, user.getId());
+            GroupDto updatedGroup = groupService.updateGroup(groupId, groupDto, user.id());
             setNoCacheHeaders(response);
             return ResponseEntity.ok(updatedGroup);
         } catch (UserException e) {
@@ -244,19 +244,19 @@ public class GroupController {
             HttpServletResponse response) {
         logger.info("DELETE /api/groups/{} - Xóa nhóm", groupId);
         try {
-            ResponseEntity<?> validationResult = validateTokenAndUser(getTokenFromRequest(request), response);
+            ResponseEntity<?> validationResult = validateToken(getTokenFromRequest(request), response);
             if (validationResult.getStatusCode().isError()) {
                 setNoCacheHeaders(response);
                 return validationResult;
             }
 
-            User user = (User) validationResult.getBody();
+            AuthPrincipal user = (AuthPrincipal) validationResult.getBody();
             if (user == null) {
                 logger.error("Người dùng null sau khi xác thực token");
                 setNoCacheHeaders(response);
                 return ResponseEntity.status(401).body("Không được phép: Không tìm thấy người dùng");
             }
-            groupService.deleteGroup(groupId, user.getId());
+            groupService.deleteGroup(groupId, user.id());
             setNoCacheHeaders(response);
             return ResponseEntity.ok().build();
         } catch (UserException e) {
@@ -279,13 +279,13 @@ public class GroupController {
             HttpServletResponse response) {
         logger.info("POST /api/groups/{}/members - Thêm userId: {} vào nhóm", groupId, userId);
         try {
-            ResponseEntity<?> validationResult = validateTokenAndUser(getTokenFromRequest(request), response);
+            ResponseEntity<?> validationResult = validateToken(getTokenFromRequest(request), response);
             if (validationResult.getStatusCode().isError()) {
                 setNoCacheHeaders(response);
                 return validationResult;
             }
     
-            User requester = (User) validationResult.getBody();
+            AuthPrincipal requester = (AuthPrincipal) validationResult.getBody();
             if (requester == null) {
                 logger.error("Người dùng null sau khi xác thực token");
                 setNoCacheHeaders(response);
@@ -294,7 +294,7 @@ public class GroupController {
     
             Group group = groupService.findGroupById(groupId);
             if (group.getPrivacy() == Group.Privacy.PUBLIC) {
-                GroupDto updatedGroup = groupService.addMember(groupId, userId, requester.getId());
+                GroupDto updatedGroup = groupService.addMember(groupId, userId, requester.id());
                 setNoCacheHeaders(response);
                 return ResponseEntity.ok(updatedGroup);
             } else {
@@ -321,26 +321,26 @@ public class GroupController {
             HttpServletResponse response) {
         logger.info("POST /api/groups/{}/membership-requests - Yêu cầu tham gia nhóm, userId: {}", groupId, userId);
         try {
-            ResponseEntity<?> validationResult = validateTokenAndUser(getTokenFromRequest(request), response);
+            ResponseEntity<?> validationResult = validateToken(getTokenFromRequest(request), response);
             if (validationResult.getStatusCode().isError()) {
                 setNoCacheHeaders(response);
                 return validationResult;
             }
 
-            User requester = (User) validationResult.getBody();
+            AuthPrincipal requester = (AuthPrincipal) validationResult.getBody();
             if (requester == null) {
                 logger.error("Người dùng null sau khi xác thực token");
                 setNoCacheHeaders(response);
                 return ResponseEntity.status(401).body("Không được phép: Không tìm thấy người dùng");
             }
 
-            if (!requester.getId().equals(userId)) {
-                logger.warn("Người dùng {} cố gắng gửi yêu cầu thay cho userId {}", requester.getId(), userId);
+            if (!requester.id().equals(userId)) {
+                logger.warn("Người dùng {} cố gắng gửi yêu cầu thay cho userId {}", requester.id(), userId);
                 setNoCacheHeaders(response);
                 return ResponseEntity.status(403).body("Không được phép: Chỉ người dùng chính mới có thể gửi yêu cầu tham gia");
             }
 
-            groupService.createMembershipRequest(groupId, userId, requester.getId());
+            groupService.createMembershipRequest(groupId, userId, requester.id());
             setNoCacheHeaders(response);
             return ResponseEntity.ok("Yêu cầu tham gia nhóm đã được gửi, đang chờ phê duyệt.");
         } catch (UserException e) {
@@ -363,14 +363,14 @@ public class GroupController {
             HttpServletResponse response) {
         logger.info("GET /api/users/{}/membership-requests - Lay danh sach yeu cau tham gia cua userId: {}", userId, userId);
         try {
-            ResponseEntity<?> validationResult = validateTokenAndUser(getTokenFromRequest(request), response);
+            ResponseEntity<?> validationResult = validateToken(getTokenFromRequest(request), response);
             if (validationResult.getStatusCode().isError()) {
                 setNoCacheHeaders(response);
                 return validationResult;
             }
     
-            User user = (User) validationResult.getBody();
-            if (user == null || !user.getId().equals(userId)) {
+            AuthPrincipal user = (AuthPrincipal) validationResult.getBody();
+            if (user == null || !user.id().equals(userId)) {
                 logger.warn("Truy cap bi tu choi: Khong the truy cap yeu cau tham gia cua nguoi dung khac: {}", userId);
                 setNoCacheHeaders(response);
                 return ResponseEntity.status(403).body("Cấm: Không thể truy cập yêu cầu tham gia của người dùng khác");
@@ -401,24 +401,24 @@ public class GroupController {
             HttpServletResponse response) {
         logger.info("POST /api/groups/{}/membership-requests/{} - Xử lý yêu cầu, phê duyệt: {}", groupId, requestId, approve);
         try {
-            ResponseEntity<?> validationResult = validateTokenAndUser(getTokenFromRequest(request), response);
+            ResponseEntity<?> validationResult = validateToken(getTokenFromRequest(request), response);
             if (validationResult.getStatusCode().isError()) {
                 setNoCacheHeaders(response);
                 return validationResult;
             }
 
-            User admin = (User) validationResult.getBody();
+            AuthPrincipal admin = (AuthPrincipal) validationResult.getBody();
             if (admin == null) {
                 logger.error("Người dùng null sau khi xác thực token");
                 setNoCacheHeaders(response);
                 return ResponseEntity.status(401).body("Không được phép: Không tìm thấy admin");
             }
             if (approve) {
-                GroupDto updatedGroup = groupService.approveMembershipRequest(groupId, requestId, admin.getId());
+                GroupDto updatedGroup = groupService.approveMembershipRequest(groupId, requestId, admin.id());
                 setNoCacheHeaders(response);
                 return ResponseEntity.ok(updatedGroup);
             } else {
-                groupService.rejectMembershipRequest(groupId, requestId, admin.getId());
+                groupService.rejectMembershipRequest(groupId, requestId, admin.id());
                 setNoCacheHeaders(response);
                 return ResponseEntity.ok("Yêu cầu tham gia nhóm đã bị từ chối.");
             }
@@ -442,20 +442,20 @@ public class GroupController {
             HttpServletResponse response) {
         logger.info("DELETE /api/groups/{}/members/{} - Xóa người dùng khỏi nhóm", groupId, userId);
         try {
-            ResponseEntity<?> validationResult = validateTokenAndUser(getTokenFromRequest(request), response);
+            ResponseEntity<?> validationResult = validateToken(getTokenFromRequest(request), response);
             if (validationResult.getStatusCode().isError()) {
                 setNoCacheHeaders(response);
                 return validationResult;
             }
 
-            User requester = (User) validationResult.getBody();
+            AuthPrincipal requester = (AuthPrincipal) validationResult.getBody();
             if (requester == null) {
                 logger.error("Người dùng null sau khi xác thực token");
                 setNoCacheHeaders(response);
                 return ResponseEntity.status(401).body("Không được phép: Không tìm thấy admin");
             }
 
-            GroupDto updatedGroup = groupService.removeMember(groupId, userId, requester.getId());
+            GroupDto updatedGroup = groupService.removeMember(groupId, userId, requester.id());
             setNoCacheHeaders(response);
             return ResponseEntity.ok(updatedGroup);
         } catch (UserException e) {
@@ -479,13 +479,13 @@ public class GroupController {
             HttpServletResponse response) {
         logger.info("PUT /api/groups/{}/members/{}/role - Cập nhật vai trò thành {}", groupId, userId, role);
         try {
-            ResponseEntity<?> validationResult = validateTokenAndUser(getTokenFromRequest(request), response);
+            ResponseEntity<?> validationResult = validateToken(getTokenFromRequest(request), response);
             if (validationResult.getStatusCode().isError()) {
                 setNoCacheHeaders(response);
                 return validationResult;
             }
 
-            User requester = (User) validationResult.getBody();
+            AuthPrincipal requester = (AuthPrincipal) validationResult.getBody();
 
             if (requester == null) {
                 logger.error("Người dùng null sau khi xác thực token");
@@ -493,7 +493,7 @@ public class GroupController {
                 return ResponseEntity.status(401).body("Không được phép: Không tìm thấy admin");
             }
             
-            GroupDto updatedGroup = groupService.updateMemberRole(groupId, userId, role, requester.getId());
+            GroupDto updatedGroup = groupService.updateMemberRole(groupId, userId, role, requester.id());
             setNoCacheHeaders(response);
             return ResponseEntity.ok(updatedGroup);
         } catch (UserException e) {
@@ -519,15 +519,15 @@ public class GroupController {
             Long userId = null;
             String token = getTokenFromRequest(request);
             if (token != null) {
-                ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
+                ResponseEntity<?> validationResult = validateToken(token, response);
                 if (validationResult.getStatusCode().isError()) {
                     setNoCacheHeaders(response);
                     return validationResult;
                 }
     
                 Object resultBody = validationResult.getBody();
-                if (resultBody instanceof User) {
-                    userId = ((User) resultBody).getId();
+                if (resultBody instanceof AuthPrincipal) {
+                    userId = ((AuthPrincipal) resultBody).id();
                     logger.debug("ID nguoi dung xac thuc: {}", userId);
                 } else {
                     logger.error("Xac thuc that bai hoac body null");
@@ -587,13 +587,13 @@ public class GroupController {
             HttpServletResponse response) {
         logger.info("GET /api/groups/{}/membership-requests - Lấy danh sách yêu cầu tham gia nhóm: {}, trang: {}, kích thước: {}", groupId, groupId, page, size);
         try {
-            ResponseEntity<?> validationResult = validateTokenAndUser(getTokenFromRequest(request), response);
+            ResponseEntity<?> validationResult = validateToken(getTokenFromRequest(request), response);
             if (validationResult.getStatusCode().isError()) {
                 setNoCacheHeaders(response);
                 return validationResult;
             }
 
-            User admin = (User) validationResult.getBody();
+            AuthPrincipal admin = (AuthPrincipal) validationResult.getBody();
             Pageable pageable = PageRequest.of(page, size);
             if (admin == null) {
                 logger.error("Người dùng null sau khi xác thực token");
@@ -601,7 +601,7 @@ public class GroupController {
                 return ResponseEntity.status(401).body("Không được phép: Không tìm thấy admin");
             }
 
-            PagedModel<?> requests = groupService.getMembershipRequests(groupId, admin.getId(), pageable);
+            PagedModel<?> requests = groupService.getMembershipRequests(groupId, admin.id(), pageable);
             setNoCacheHeaders(response);
             return ResponseEntity.ok(requests);
         } catch (UserException e) {
@@ -629,15 +629,15 @@ public class GroupController {
             Long userId = null;
             String token = getTokenFromRequest(request);
             if (token != null) {
-                ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
+                ResponseEntity<?> validationResult = validateToken(token, response);
                 if (validationResult.getStatusCode().isError()) {
                     setNoCacheHeaders(response);
                     return validationResult;
                 }
 
                 Object resultBody = validationResult.getBody();
-                if (resultBody instanceof User) {
-                    userId = ((User) resultBody).getId();
+                if (resultBody instanceof AuthPrincipal) {
+                    userId = ((AuthPrincipal) resultBody).id();
                     logger.debug("ID nguoi dung xac thuc: {}", userId);
                 } else {
                     logger.error("Xac thuc that bai hoac body null");
@@ -688,25 +688,21 @@ public class GroupController {
         }
     }
 
-    private ResponseEntity<?> validateTokenAndUser(String token, HttpServletResponse response) {
+    // Body là AuthPrincipal; các service nhận thẳng principal.id(), không nạp lại entity User
+    private ResponseEntity<?> validateToken(String token, HttpServletResponse response) {
         if (token == null) {
             logger.warn("Không có token xác thực được cung cấp");
             return ResponseEntity.status(401).body("Không được phép: Không có token");
         }
 
-        try {
-            User user = userService.findUserProfileByJwt(token);
-            if (user == null) {
-                logger.warn("Không tìm thấy người dùng cho token");
-                clearJwtCookie(response);
-                return ResponseEntity.status(401).body("Không được phép: Token không hợp lệ");
-            }
-            return ResponseEntity.ok(user);
-        } catch (UserException e) {
-            logger.error("Xác thực token thất bại: {}", e.getMessage());
+        AuthPrincipal principal = authPrincipalArgumentResolver.resolveToken(token);
+        if (principal == null) {
+            logger.warn("Token không hợp lệ, đã đăng xuất hoặc tài khoản bị khóa");
             clearJwtCookie(response);
             return ResponseEntity.status(401).body("Không được phép: Token không hợp lệ");
         }
+
+        return ResponseEntity.ok(principal);
     }
 
     private String getTokenFromRequest(HttpServletRequest request) {
@@ -1,11 +1,10 @@
 package com.example.server.controllers;
 
-import com.example.server.config.JwtProvider;
+import com.example.server.config.AuthPrincipal;
 import com.example.server.dto.PostDto;
 import com.example.server.dto.CommentDto;
 import com.example.server.dto.LikeDto;
 import com.example.server.exception.UserException;
-import com.example.server.models.User;
 import com.example.server.models.Post;
 import com.example.server.services.LikeService;
 import com.example.server.services.PostService;
@@ -22,7 +21,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -45,20 +43,13 @@ public class LikeController {
     @Autowired
     private NotificationService notificationService;
 
-    @Autowired
-    private JwtProvider jwtProvider;
-
     @Autowired
     private UserService userService;
 
-    @Autowired
-    private RedisTemplate<String, String> redisTemplate;
-
     @Value("${app.secure:true}")
     private boolean secureCookie;
 
     private static final String COOKIE_NAME = "auth_token";
-    private static final String BLACKLIST_PREFIX = "blacklist_token:";
 
     private void clearJwtCookie(HttpServletResponse response) {
         Cookie cookie = new Cookie(COOKIE_NAME, null);
@@ -70,35 +61,15 @@ public class LikeController {
         response.addCookie(cookie);
     }
 
-    private ResponseEntity<?> validateTokenAndUser(String token, HttpServletResponse response) throws UserException {
-        if (token == null || !jwtProvider.validateToken(token)) {
-            logger.warn("Invalid or missing token");
+    // Người dùng lấy từ claims của token (AuthPrincipalArgumentResolver), không tra bảng users
+    private ResponseEntity<?> validateTokenAndUser(AuthPrincipal principal, HttpServletResponse response) {
+        if (principal == null) {
+            logger.warn("Invalid, missing or blacklisted token");
             clearJwtCookie(response);
             setNoCacheHeaders(response);
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Token không hợp lệ");
         }
-
-        if (isTokenBlacklisted(token)) {
-            logger.warn("Token is blacklisted");
-            clearJwtCookie(response);
-            setNoCacheHeaders(response);
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Token đã bị vô hiệu hóa");
-        }
-
-        User reqUser = userService.findUserProfileByJwt(token);
-        if (reqUser == null) {
-            logger.warn("User not found for token");
-            clearJwtCookie(response);
-            setNoCacheHeaders(response);
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Người dùng không tồn tại");
-        }
-
-        return ResponseEntity.ok(reqUser);
-    }
-
-    private boolean isTokenBlacklisted(String token) {
-        String blacklisted = redisTemplate.opsForValue().get(BLACKLIST_PREFIX + token);
-        return blacklisted != null;
+        return ResponseEntity.ok(principal);
     }
 
     private void setNoCacheHeaders(HttpServletResponse response) {
@@ -110,28 +81,28 @@ public class LikeController {
     @PostMapping("/post/{postId}")
     public ResponseEntity<?> likePost(
             @PathVariable Long postId,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) throws UserException {
         logger.info("Liking post with id: {}", postId);
-        ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
             // Kiểm tra quyền xem bài viết
-            postService.getPostById(postId, reqUser.getId());
-            likeService.likePost(postId, reqUser.getId());
+            postService.getPostById(postId, reqUser.id());
+            likeService.likePost(postId, reqUser.id());
             
             // Lấy post entity để tạo thông báo
             Post post = postService.getPostEntityById(postId);
             
             // Tạo thông báo cho chủ bài viết
-            if (post != null && !post.getUser().getId().equals(reqUser.getId())) {
-                notificationService.createPostLikeNotification(post, reqUser);
+            if (post != null && !post.getUser().getId().equals(reqUser.id())) {
+                notificationService.createPostLikeNotification(post, userService.findUserById(reqUser.id()));
             }
             
-            PostDto postDto = postService.getPostById(postId, reqUser.getId());
+            PostDto postDto = postService.getPostById(postId, reqUser.id());
             if (postDto == null) {
                 logger.error("Post not found after liking: {}", postId);
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Bài viết không tồn tại");
@@ -150,16 +121,16 @@ public class LikeController {
     @PostMapping("/comment/{commentId}")
     public ResponseEntity<?> likeComment(
             @PathVariable Long commentId,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) throws UserException {
         logger.info("Liking comment with id: {}", commentId);
-        ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
-            CommentDto commentDto = commentService.likeComment(commentId, reqUser.getId());
+            CommentDto commentDto = commentService.likeComment(commentId, reqUser.id());
             if (commentDto == null) {
                 logger.error("Comment not found after liking: {}", commentId);
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Bình luận không tồn tại");
@@ -175,19 +146,19 @@ public class LikeController {
     @DeleteMapping("/post/{postId}")
     public ResponseEntity<?> unlikePost(
             @PathVariable Long postId,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) throws UserException {
         logger.info("Unliking post with id: {}", postId);
-        ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
             // Kiểm tra quyền xem bài viết
-            postService.getPostById(postId, reqUser.getId());
-            likeService.unlikePost(postId, reqUser.getId());
-            PostDto postDto = postService.getPostById(postId, reqUser.getId());
+            postService.getPostById(postId, reqUser.id());
+            likeService.unlikePost(postId, reqUser.id());
+            PostDto postDto = postService.getPostById(postId, reqUser.id());
             if (postDto == null) {
                 logger.error("Post not found after unliking: {}", postId);
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Bài viết không tồn tại");
@@ -206,16 +177,16 @@ public class LikeController {
     @DeleteMapping("/comment/{commentId}")
     public ResponseEntity<?> unlikeComment(
             @PathVariable Long commentId,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) throws UserException {
         logger.info("Unliking comment with id: {}", commentId);
-        ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
-            CommentDto commentDto = commentService.unlikeComment(commentId, reqUser.getId());
+            CommentDto commentDto = commentService.unlikeComment(commentId, reqUser.id());
             if (commentDto == null) {
                 logger.error("Comment not found after unliking: {}", commentId);
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Bình luận không tồn tại");
@@ -231,18 +202,18 @@ public class LikeController {
     @GetMapping("/post/{postId}")
     public ResponseEntity<?> getLikesByPostId(
             @PathVariable Long postId,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) throws UserException {
         logger.info("Fetching likes for post with id: {}", postId);
-        ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
             // Kiểm tra quyền xem bài viết
-            postService.getPostById(postId, reqUser.getId());
-            List<LikeDto> likes = likeService.getLikesByPostId(postId, reqUser.getId());
+            postService.getPostById(postId, reqUser.id());
+            List<LikeDto> likes = likeService.getLikesByPostId(postId, reqUser.id());
             if (likes == null) {
                 logger.error("Failed to fetch likes for post: {}", postId);
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Không thể lấy danh sách lượt thích");
@@ -261,16 +232,16 @@ public class LikeController {
     @GetMapping("/comment/{commentId}")
     public ResponseEntity<?> getLikesByCommentId(
             @PathVariable Long commentId,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) throws UserException {
         logger.info("Fetching likes for comment with id: {}", commentId);
-        ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-        if (!(validationResult.getBody() instanceof User reqUser)) {
+        ResponseEntity<?> validationResult = validateTokenAndUser(principal, response);
+        if (!(validationResult.getBody() instanceof AuthPrincipal reqUser)) {
             return validationResult;
         }
 
         try {
-            List<LikeDto> likes = likeService.getLikesByCommentId(commentId, reqUser.getId());
+            List<LikeDto> likes = likeService.getLikesByCommentId(commentId, reqUser.id());
             if (likes == null) {
                 logger.error("Failed to fetch likes for comment: {}", commentId);
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Không thể lấy danh sách lượt thích");
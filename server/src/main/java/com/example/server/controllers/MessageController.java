@@ -14,19 +14,16 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.example.server.config.AuthPrincipal;
 import com.example.server.dto.ConversationDto;
 import com.example.server.dto.MessageDto;
 import com.example.server.dto.UserDto;
 import com.example.server.exception.UnauthorizedException;
-import com.example.server.models.User;
 import com.example.server.requests.MessageRequest;
 import com.example.server.responses.ApiResponse;
 import com.example.server.services.FriendshipService;
 import com.example.server.services.MessageService;
-import com.example.server.services.UserService;
 
-import jakarta.servlet.http.HttpServletRequest;
-import jakarta.servlet.http.Cookie;
 
 @RestController
 @RequestMapping("/api/messages")
@@ -34,33 +31,29 @@ public class MessageController {
     
     private final MessageService messageService;
 
-    private final UserService userService;
     private final FriendshipService friendshipService;
-    private static final String COOKIE_NAME = "auth_token";
     
     public MessageController(
             MessageService messageService,
-            UserService userService,
             FriendshipService friendshipService) {
         this.messageService = messageService;
-        this.userService = userService;
         this.friendshipService = friendshipService;
     }
     
     @GetMapping("/conversations")
-    public ResponseEntity<?> getConversations(HttpServletRequest request, Pageable pageable) {
-        User user = getUserFromRequest(request);
+    public ResponseEntity<?> getConversations(AuthPrincipal principal, Pageable pageable) {
+        Long userId = requireUserId(principal);
         
-        Page<ConversationDto> conversations = messageService.getConversationsForUser(user.getId(), pageable);
+        Page<ConversationDto> conversations = messageService.getConversationsForUser(userId, pageable);
         
         return ResponseEntity.ok(conversations);
     }
     
     @GetMapping("/conversations/all")
-    public ResponseEntity<?> getAllConversations(HttpServletRequest request) {
-        User user = getUserFromRequest(request);
+    public ResponseEntity<?> getAllConversations(AuthPrincipal principal) {
+        Long userId = requireUserId(principal);
         
-        List<ConversationDto> conversations = messageService.getConversationsForUser(user.getId());
+        List<ConversationDto> conversations = messageService.getConversationsForUser(userId);
         
         return ResponseEntity.ok(conversations);
     }
@@ -68,10 +61,10 @@ public class MessageController {
     @GetMapping("/conversations/{conversationId}")
     public ResponseEntity<?> getConversation(
             @PathVariable Long conversationId,
-            HttpServletRequest request) {
-        User user = getUserFromRequest(request);
+            AuthPrincipal principal) {
+        Long userId = requireUserId(principal);
         
-        ConversationDto conversation = messageService.getConversation(conversationId, user.getId());
+        ConversationDto conversation = messageService.getConversation(conversationId, userId);
         
         return ResponseEntity.ok(conversation);
     }
@@ -79,11 +72,11 @@ public class MessageController {
     @GetMapping("/conversations/{conversationId}/messages")
     public ResponseEntity<?> getMessages(
             @PathVariable Long conversationId,
-            HttpServletRequest request,
+            AuthPrincipal principal,
             Pageable pageable) {
-        User user = getUserFromRequest(request);
+        Long userId = requireUserId(principal);
         
-        Page<MessageDto> messages = messageService.getMessagesForConversation(conversationId, user.getId(), pageable);
+        Page<MessageDto> messages = messageService.getMessagesForConversation(conversationId, userId, pageable);
         
         return ResponseEntity.ok(messages);
     }
@@ -91,10 +84,10 @@ public class MessageController {
     @GetMapping("/conversations/{conversationId}/messages/all")
     public ResponseEntity<?> getAllMessages(
             @PathVariable Long conversationId,
-            HttpServletRequest request) {
-        User user = getUserFromRequest(request);
+            AuthPrincipal principal) {
+        Long userId = requireUserId(principal);
         
-        List<MessageDto> messages = messageService.getMessagesForConversation(conversationId, user.getId());
+        List<MessageDto> messages = messageService.getMessagesForConversation(conversationId, userId);
         
         return ResponseEntity.ok(messages);
     }
@@ -103,13 +96,13 @@ public class MessageController {
     public ResponseEntity<?> getRecentMessages(
             @PathVariable Long conversationId,
             @RequestParam(required = false, defaultValue = "0") Long lastMessageId,
-            HttpServletRequest request) {
-        User user = getUserFromRequest(request);
+            AuthPrincipal principal) {
+        Long userId = requireUserId(principal);
         
         try {
             List<MessageDto> messages = messageService.getRecentMessagesForConversation(
                     conversationId, 
-                    user.getId(),
+                    userId,
                     lastMessageId);
             
             return ResponseEntity.ok(messages);
@@ -122,10 +115,10 @@ public class MessageController {
     @PostMapping("/conversations/{conversationId}/read")
     public ResponseEntity<?> markAsRead(
             @PathVariable Long conversationId,
-            HttpServletRequest request) {
-        User user = getUserFromRequest(request);
+            AuthPrincipal principal) {
+        Long userId = requireUserId(principal);
         
-        messageService.markMessagesAsRead(conversationId, user.getId());
+        messageService.markMessagesAsRead(conversationId, userId);
         
         return ResponseEntity.ok(new ApiResponse("Messages marked as read", true));
     }
@@ -134,12 +127,12 @@ public class MessageController {
     public ResponseEntity<?> sendMessage(
             @PathVariable Long conversationId,
             @RequestBody MessageRequest messageRequest,
-            HttpServletRequest request) {
-        User user = getUserFromRequest(request);
+            AuthPrincipal principal) {
+        Long userId = requireUserId(principal);
         
         MessageDto message = messageService.sendMessage(
                 conversationId, 
-                user.getId(), 
+                userId, 
                 messageRequest.getContent(),
                 messageRequest.getMediaUrl(),
                 messageRequest.getMediaType());
@@ -150,10 +143,10 @@ public class MessageController {
     @PostMapping("/conversations")
     public ResponseEntity<?> createConversation(
             @RequestParam Long recipientId,
-            HttpServletRequest request) {
-        User user = getUserFromRequest(request);
+            AuthPrincipal principal) {
+        Long userId = requireUserId(principal);
         
-        ConversationDto conversation = messageService.findOrCreateConversation(user.getId(), recipientId);
+        ConversationDto conversation = messageService.findOrCreateConversation(userId, recipientId);
         
         return ResponseEntity.status(HttpStatus.CREATED).body(conversation);
     }
@@ -162,11 +155,11 @@ public class MessageController {
      * Lấy danh sách bạn bè cho trang tin nhắn
      */
     @GetMapping("/friends")
-    public ResponseEntity<?> getFriendsForMessaging(HttpServletRequest request) {
-        User user = getUserFromRequest(request);
+    public ResponseEntity<?> getFriendsForMessaging(AuthPrincipal principal) {
+        Long userId = requireUserId(principal);
         
         try {
-            List<UserDto> friends = friendshipService.getUserFriends(user.getId());
+            List<UserDto> friends = friendshipService.getUserFriends(userId);
             return ResponseEntity.ok(friends);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -180,11 +173,11 @@ public class MessageController {
     @PostMapping("/start-conversation")
     public ResponseEntity<?> startConversation(
             @RequestParam Long friendId,
-            HttpServletRequest request) {
-        User user = getUserFromRequest(request);
+            AuthPrincipal principal) {
+        Long userId = requireUserId(principal);
         
         try {
-            ConversationDto conversation = messageService.findOrCreateConversation(user.getId(), friendId);
+            ConversationDto conversation = messageService.findOrCreateConversation(userId, friendId);
             return ResponseEntity.status(HttpStatus.OK).body(conversation);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -192,30 +185,10 @@ public class MessageController {
         }
     }
     
-    private User getUserFromRequest(HttpServletRequest request) {
-        // Lấy token từ cookie
-        Cookie[] cookies = request.getCookies();
-        String token = null;
-        
-        if (cookies != null) {
-            for (Cookie cookie : cookies) {
-                if (COOKIE_NAME.equals(cookie.getName())) {
-                    token = cookie.getValue();
-                    break;
-                }
-            }
-        }
-        
-        if (token == null) {
-            throw new UnauthorizedException("No token found");
-        }
-        
-        try {
-            // Lấy thông tin user từ token
-            User user = userService.findUserProfileByJwt(token);
-            return user;
-        } catch (Exception e) {
+    private Long requireUserId(AuthPrincipal principal) {
+        if (principal == null) {
             throw new UnauthorizedException("User not found");
         }
+        return principal.id();
     }
-} 
\ No newline at end of file
+}
@@ -1,12 +1,17 @@
 package com.example.server.controllers;
 
+import com.example.server.config.AuthPrincipal;
+import com.example.server.config.AuthPrincipalArgumentResolver;
+import com.example.server.config.JwtProvider;
 import com.example.server.dto.PostDto;
 import com.example.server.exception.UserException;
 import com.example.server.models.User;
 import com.example.server.models.Post;
+import com.example.server.services.MediaStorageService;
 import com.example.server.services.PostService;
 import com.example.server.services.UserService;
 import com.example.server.services.NotificationService;
+import com.example.server.utils.PostCursor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
@@ -35,6 +40,7 @@ public class PostController {
 
     private static final Logger logger = LoggerFactory.getLogger(PostController.class);
     private static final String COOKIE_NAME = "auth_token";
+    private static final int MAX_POST_PAGE = 100;
 
     @Autowired
     private PostService postService;
@@ -45,6 +51,15 @@ public class PostController {
     @Autowired
     private NotificationService notificationService;
 
+    @Autowired
+    private MediaStorageService mediaStorageService;
+
+    @Autowired
+    private JwtProvider jwtProvider;
+
+    @Autowired
+    private AuthPrincipalArgumentResolver authPrincipalArgumentResolver;
+
     @Value("${app.auth.cookie.secure:false}")
     private boolean cookieSecure;
 
@@ -122,29 +137,42 @@ public class PostController {
                 }
             }
             
+            // Token phải hợp lệ trước khi ghi bất kỳ tệp nào vào storage; chỉ kiểm tra chữ ký và hạn dùng (không chạm DB)
+            String token = getTokenFromRequest(request);
+            if (!hasValidToken(token)) {
+                return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+            }
+
+            // Giai đoạn tải lên: ghi tệp xuống đĩa trước lần truy cập DB đầu tiên của request,
+            // để kết nối DB (giữ theo open-in-view) không bị chiếm trong suốt lúc ghi tệp lớn
+            List<MediaStorageService.StoredMedia> storedMedia = mediaStorageService.storeAll(mediaFiles);
+            
             // Lấy thông tin user từ token trong request
-            ResponseEntity<?> validationResult = validateTokenAndUser(getTokenFromRequest(request), null);
+            ResponseEntity<?> validationResult = validateToken(token, null);
             if (validationResult.getStatusCode().isError()) {
+                mediaStorageService.discard(storedMedia);
                 return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
             }
             
-            User user = (User) validationResult.getBody();
-            if (user != null) {
-                logger.info("Creating post for user: {}", user.getEmail());
-            } else {
-                logger.warn("User is null while attempting to create post");
-                return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+            AuthPrincipal principal = (AuthPrincipal) validationResult.getBody();
+            logger.info("Creating post for user: {}", principal.email());
+            
+            PostDto createdPost;
+            try {
+                createdPost = postService.createPost(postDto, storedMedia, principal.id());
+            } catch (Exception e) {
+                mediaStorageService.discard(storedMedia);
+                throw e;
             }
             
             try {
-                PostDto createdPost = postService.createPost(postDto, mediaFiles, user.getId());
                 logger.info("Post created successfully: id={}", createdPost.getId());
                 
                 // Nếu bài viết được đặt là public hoặc friends - tạo thông báo cho bạn bè
                 if ("PUBLIC".equalsIgnoreCase(postDto.getPrivacy()) || "FRIENDS".equalsIgnoreCase(postDto.getPrivacy())) {
                     try {
-                        // Lấy danh sách bạn bè của người dùng
-                        List<User> friends = new ArrayList<>(user.getFriends());
+                        // Lấy danh sách bạn bè của người dùng: chỉ nhánh thông báo cần tới entity User
+                        List<User> friends = new ArrayList<>(userService.findUserById(principal.id()).getFriends());
                         
                         if (!friends.isEmpty()) {
                             logger.info("Creating notifications for {} friends about new post {}", friends.size(), createdPost.getId());
@@ -172,6 +200,11 @@ public class PostController {
         }
     }
 
+    // size ngoài [1, MAX_POST_PAGE] được kéo về biên thay vì để PageRequest ném lỗi
+    private static int pageSize(int size) {
+        return Math.max(1, Math.min(size, MAX_POST_PAGE));
+    }
+
     @GetMapping("/{postId}")
     public ResponseEntity<?> getPostById(
             @PathVariable Long postId,
@@ -182,9 +215,9 @@ public class PostController {
         try {
             Long userId = null;
             if (token != null) {
-                ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-                if (validationResult.getBody() instanceof User reqUser) {
-                    userId = reqUser.getId();
+                ResponseEntity<?> validationResult = validateToken(token, response);
+                if (validationResult.getBody() instanceof AuthPrincipal principal) {
+                    userId = principal.id();
                 }
             }
 
@@ -201,20 +234,33 @@ public class PostController {
     public ResponseEntity<?> getAllPosts(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String before,
             @CookieValue(name = COOKIE_NAME, required = false) String token,
             HttpServletResponse response) throws UserException {
-        logger.info("Fetching posts for page: {}, size: {}", page, size);
+        logger.info("Fetching posts for page: {}, size: {}, before: {}", page, size, before);
 
         Long userId = null;
         if (token != null) {
-            ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-            if (validationResult.getBody() instanceof User reqUser) {
-                userId = reqUser.getId();
+            ResponseEntity<?> validationResult = validateToken(token, response);
+            if (validationResult.getBody() instanceof AuthPrincipal principal) {
+                userId = principal.id();
             }
         }
 
-        Pageable pageable = PageRequest.of(page, size);
-        PagedModel<?> posts = postService.getAllPosts(userId, pageable);
+        PagedModel<?> posts;
+        if (before != null) {
+            // Chế độ keyset: ?before= rỗng là trang đầu, sau đó đi theo link "next"
+            PostCursor cursor;
+            try {
+                cursor = PostCursor.decode(before);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(e.getMessage());
+            }
+            posts = postService.getAllPosts(userId, cursor, pageSize(size));
+        } else {
+            Pageable pageable = PageRequest.of(Math.max(page, 0), pageSize(size));
+            posts = postService.getAllPosts(userId, pageable);
+        }
         setNoCacheHeaders(response);
         return ResponseEntity.ok(posts);
     }
@@ -227,6 +273,7 @@ public class PostController {
             HttpServletResponse response) {
         logger.info("PUT /api/posts/{} - Nhận yêu cầu cập nhật bài viết", postId);
         List<MultipartFile> mediaFiles = new ArrayList<>();
+        List<MediaStorageService.StoredMedia> storedMedia = List.of();
         try {
             if (request instanceof MultipartHttpServletRequest) {
                 MultipartHttpServletRequest multipartRequest = (MultipartHttpServletRequest) request;
@@ -248,36 +295,40 @@ public class PostController {
             logger.info("Parsed PostDto: content length={}, privacy={}", 
                         postDto.getContent() != null ? postDto.getContent().length() : 0, postDto.getPrivacy());
 
-            ResponseEntity<?> validationResult = validateTokenAndUser(getTokenFromRequest(request), response);
+            String token = getTokenFromRequest(request);
+            if (!hasValidToken(token)) {
+                clearJwtCookie(response);
+                setNoCacheHeaders(response);
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized: Invalid token");
+            }
+
+            // Giai đoạn tải lên chạy sau khi token hợp lệ và trước khi chạm tới DB (xem createPost)
+            storedMedia = mediaStorageService.storeAll(mediaFiles);
+
+            ResponseEntity<?> validationResult = validateToken(token, response);
             if (validationResult.getStatusCode().isError()) {
+                mediaStorageService.discard(storedMedia);
                 setNoCacheHeaders(response);
                 return validationResult;
             }
 
-            User user = (User) validationResult.getBody();
-            if (user != null) {
-                logger.info("Cập nhật bài viết cho người dùng: {}", user.getEmail());
-            } else {
-                logger.warn("User is null while attempting to update post");
-            }
+            AuthPrincipal principal = (AuthPrincipal) validationResult.getBody();
+            logger.info("Cập nhật bài viết cho người dùng: {}", principal.email());
 
             // Gọi updatePost với mediaFiles
-            if (user == null) {
-                logger.warn("User is null while attempting to update post");
-                setNoCacheHeaders(response);
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized: User not found");
-            }
-            PostDto updatedPost = postService.updatePost(postId, postDto, mediaFiles, user.getId());
+            PostDto updatedPost = postService.updatePost(postId, postDto, storedMedia, principal.id());
             logger.info("Bài viết được cập nhật thành công: id={}", updatedPost.getId());
 
             setNoCacheHeaders(response);
             return ResponseEntity.ok(updatedPost);
         } catch (UserException e) {
             logger.error("Lỗi khi cập nhật bài viết: {}", e.getMessage());
+            mediaStorageService.discard(storedMedia);
             setNoCacheHeaders(response);
             return ResponseEntity.badRequest().body(e.getMessage());
         } catch (Exception e) {
             logger.error("Lỗi không mong muốn khi cập nhật bài viết: {}", e.getMessage(), e);
+            mediaStorageService.discard(storedMedia);
             setNoCacheHeaders(response);
             return ResponseEntity.status(500).body("Lỗi server nội bộ");
         }
@@ -292,13 +343,13 @@ public class PostController {
         logger.info("Deleting post with id: {}", postId);
 
         try {
-            ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
+            ResponseEntity<?> validationResult = validateToken(token, response);
             if (validationResult.getStatusCode().isError()) {
                 return validationResult;
             }
 
-            User user = (User) validationResult.getBody();
-            postService.deletePost(postId, user.getId());
+            AuthPrincipal principal = (AuthPrincipal) validationResult.getBody();
+            postService.deletePost(postId, principal.id());
             setNoCacheHeaders(response);
             return ResponseEntity.ok().build();
         } catch (UserException e) {
@@ -315,21 +366,20 @@ public class PostController {
         logger.info("Reposting post with id: {}", postId);
 
         try {
-            ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
+            ResponseEntity<?> validationResult = validateToken(token, response);
             if (validationResult.getStatusCode().isError()) {
                 return validationResult;
             }
 
-            User user = (User) validationResult.getBody();
-            @SuppressWarnings("null")
-            PostDto repostedPost = postService.repostPost(postId, user.getId());
+            AuthPrincipal principal = (AuthPrincipal) validationResult.getBody();
+            PostDto repostedPost = postService.repostPost(postId, principal.id());
             
             // Lấy post entity để tạo thông báo
             Post post = postService.getPostEntityById(postId);
             
             // Tạo thông báo cho chủ bài viết nếu người chia sẻ không phải là chủ bài viết
-            if (post != null && !post.getUser().getId().equals(user.getId())) {
-                notificationService.createPostShareNotification(post, user);
+            if (post != null && !post.getUser().getId().equals(principal.id())) {
+                notificationService.createPostShareNotification(post, userService.findUserById(principal.id()));
             }
             
             setNoCacheHeaders(response);
@@ -348,18 +398,13 @@ public class PostController {
         logger.info("Unreposting post with id: {}", postId);
 
         try {
-            ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
+            ResponseEntity<?> validationResult = validateToken(token, response);
             if (validationResult.getStatusCode().isError()) {
                 return validationResult;
             }
 
-            User user = (User) validationResult.getBody();
-            if (user == null) {
-                logger.warn("User is null while attempting to unrepost post");
-                setNoCacheHeaders(response);
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized: User not found");
-            }
-            PostDto unrepostedPost = postService.unrepostPost(postId, user.getId());
+            AuthPrincipal principal = (AuthPrincipal) validationResult.getBody();
+            PostDto unrepostedPost = postService.unrepostPost(postId, principal.id());
             setNoCacheHeaders(response);
             return ResponseEntity.ok(unrepostedPost);
         } catch (UserException e) {
@@ -376,14 +421,13 @@ public class PostController {
         logger.info("Liking post with id: {}", postId);
 
         try {
-            ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
+            ResponseEntity<?> validationResult = validateToken(token, response);
             if (validationResult.getStatusCode().isError()) {
                 return validationResult;
             }
 
-            User user = (User) validationResult.getBody();
-            @SuppressWarnings("null")
-            PostDto likedPost = postService.likePost(postId, user.getId());
+            AuthPrincipal principal = (AuthPrincipal) validationResult.getBody();
+            PostDto likedPost = postService.likePost(postId, principal.id());
             setNoCacheHeaders(response);
             return ResponseEntity.ok(likedPost);
         } catch (UserException e) {
@@ -400,14 +444,13 @@ public class PostController {
         logger.info("Unliking post with id: {}", postId);
 
         try {
-            ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
+            ResponseEntity<?> validationResult = validateToken(token, response);
             if (validationResult.getStatusCode().isError()) {
                 return validationResult;
             }
 
-            User user = (User) validationResult.getBody();
-            @SuppressWarnings("null")
-            PostDto unlikedPost = postService.unlikePost(postId, user.getId());
+            AuthPrincipal principal = (AuthPrincipal) validationResult.getBody();
+            PostDto unlikedPost = postService.unlikePost(postId, principal.id());
             setNoCacheHeaders(response);
             return ResponseEntity.ok(unlikedPost);
         } catch (UserException e) {
@@ -421,15 +464,16 @@ public class PostController {
             @PathVariable Long userId,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String before,
             @CookieValue(name = COOKIE_NAME, required = false) String token,
             HttpServletResponse response) {
         logger.info("Fetching posts for user ID: {}, page: {}, size: {}", userId, page, size);
 
         Long currentUserId = null;
         if (token != null) {
-            ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-            if (validationResult.getBody() instanceof User reqUser) {
-                currentUserId = reqUser.getId();
+            ResponseEntity<?> validationResult = validateToken(token, response);
+            if (validationResult.getBody() instanceof AuthPrincipal principal) {
+                currentUserId = principal.id();
             }
         }
 
@@ -437,13 +481,20 @@ public class PostController {
             // First, verify that the user exists
             userService.findUserById(userId);
             
-            Pageable pageable = PageRequest.of(page, size);
-            PagedModel<?> posts = postService.getPostsByUserId(userId, currentUserId, pageable);
+            PagedModel<?> posts;
+            if (before != null) {
+                posts = postService.getPostsByUserId(userId, currentUserId, PostCursor.decode(before), pageSize(size));
+            } else {
+                Pageable pageable = PageRequest.of(Math.max(page, 0), pageSize(size));
+                posts = postService.getPostsByUserId(userId, currentUserId, pageable);
+            }
             setNoCacheHeaders(response);
             return ResponseEntity.ok(posts);
         } catch (UserException e) {
             logger.error("Error fetching posts for user: {}", e.getMessage());
             return ResponseEntity.status(404).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (Exception e) {
             logger.error("Unexpected error fetching posts for user: {}", e.getMessage(), e);
             return ResponseEntity.status(500).body("Internal server error");
@@ -455,15 +506,16 @@ public class PostController {
             @PathVariable Long userId,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String before,
             @CookieValue(name = COOKIE_NAME, required = false) String token,
             HttpServletResponse response) {
         logger.info("Fetching shared posts for user ID: {}, page: {}, size: {}", userId, page, size);
 
         Long currentUserId = null;
         if (token != null) {
-            ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-            if (validationResult.getBody() instanceof User reqUser) {
-                currentUserId = reqUser.getId();
+            ResponseEntity<?> validationResult = validateToken(token, response);
+            if (validationResult.getBody() instanceof AuthPrincipal principal) {
+                currentUserId = principal.id();
             }
         }
 
@@ -471,13 +523,20 @@ public class PostController {
             // First, verify that the user exists
             userService.findUserById(userId);
             
-            Pageable pageable = PageRequest.of(page, size);
-            PagedModel<?> posts = postService.getSharedPostsByUserId(userId, currentUserId, pageable);
+            PagedModel<?> posts;
+            if (before != null) {
+                posts = postService.getSharedPostsByUserId(userId, currentUserId, PostCursor.decode(before), pageSize(size));
+            } else {
+                Pageable pageable = PageRequest.of(Math.max(page, 0), pageSize(size));
+                posts = postService.getSharedPostsByUserId(userId, currentUserId, pageable);
+            }
             setNoCacheHeaders(response);
             return ResponseEntity.ok(posts);
         } catch (UserException e) {
             logger.error("Error fetching shared posts for user: {}", e.getMessage());
             return ResponseEntity.status(404).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (Exception e) {
             logger.error("Unexpected error fetching shared posts for user: {}", e.getMessage(), e);
             return ResponseEntity.status(500).body("Internal server error");
@@ -495,14 +554,14 @@ public class PostController {
 
         Long userId = null;
         if (token != null) {
-            ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-            if (validationResult.getBody() instanceof User reqUser) {
-                userId = reqUser.getId();
+            ResponseEntity<?> validationResult = validateToken(token, response);
+            if (validationResult.getBody() instanceof AuthPrincipal principal) {
+                userId = principal.id();
             }
         }
 
         try {
-            Pageable pageable = PageRequest.of(page, size);
+            Pageable pageable = PageRequest.of(Math.max(page, 0), pageSize(size));
             PagedModel<?> posts = postService.searchPosts(query, userId, pageable);
             setNoCacheHeaders(response);
             return ResponseEntity.ok(posts);
@@ -517,51 +576,71 @@ public class PostController {
             @PathVariable Long groupId,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String before,
             @CookieValue(name = COOKIE_NAME, required = false) String token,
             HttpServletResponse response) {
         logger.info("Fetching posts for group ID: {}, page: {}, size: {}", groupId, page, size);
 
         Long userId = null;
         if (token != null) {
-            ResponseEntity<?> validationResult = validateTokenAndUser(token, response);
-            if (validationResult.getBody() instanceof User reqUser) {
-                userId = reqUser.getId();
+            ResponseEntity<?> validationResult = validateToken(token, response);
+            if (validationResult.getBody() instanceof AuthPrincipal principal) {
+                userId = principal.id();
             }
         }
 
         try {
-            Pageable pageable = PageRequest.of(page, size);
-            PagedModel<?> posts = postService.getGroupPosts(groupId, userId, pageable);
+            PagedModel<?> posts;
+            if (before != null) {
+                posts = postService.getGroupPosts(groupId, userId, PostCursor.decode(before), pageSize(size));
+            } else {
+                Pageable pageable = PageRequest.of(Math.max(page, 0), pageSize(size));
+                posts = postService.getGroupPosts(groupId, userId, pageable);
+            }
             setNoCacheHeaders(response);
             return ResponseEntity.ok(posts);
         } catch (UserException e) {
             logger.error("Error fetching group posts: {}", e.getMessage());
             return ResponseEntity.status(404).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (Exception e) {
             logger.error("Unexpected error fetching group posts: {}", e.getMessage(), e);
             return ResponseEntity.status(500).body("Internal server error");
         }
     }
 
-    private ResponseEntity<?> validateTokenAndUser(String token, HttpServletResponse response) {
+    // Trả về AuthPrincipal lấy từ token; không nạp entity User, chỗ nào thật sự cần thì tự nạp
+    private ResponseEntity<?> validateToken(String token, HttpServletResponse response) {
         if (token == null) {
             logger.warn("No auth token provided");
             return ResponseEntity.status(401).body("Unauthorized: No token provided");
         }
 
-        try {
-            User user = userService.findUserProfileByJwt(token);
-            return ResponseEntity.ok(user);
-        } catch (UserException e) {
-            logger.error("Token validation failed: {}", e.getMessage());
-            Cookie cookie = new Cookie(COOKIE_NAME, null);
-            cookie.setMaxAge(0);
-            cookie.setSecure(cookieSecure);
-            cookie.setHttpOnly(cookieHttpOnly);
-            cookie.setPath("/");
-            response.addCookie(cookie);
+        AuthPrincipal principal = authPrincipalArgumentResolver.resolveToken(token);
+        if (principal == null) {
+            logger.warn("Token invalid, logged out or account locked");
+            clearJwtCookie(response);
             return ResponseEntity.status(401).body("Unauthorized: Invalid token");
         }
+        return ResponseEntity.ok(principal);
+    }
+
+    // Chữ ký và hạn dùng của token, không tra bảng users: dùng để chặn request chưa đăng nhập trước khi ghi tệp
+    private boolean hasValidToken(String token) {
+        return token != null && jwtProvider.validateToken(token);
+    }
+
+    private void clearJwtCookie(HttpServletResponse response) {
+        if (response == null) {
+            return;
+        }
+        Cookie cookie = new Cookie(COOKIE_NAME, null);
+        cookie.setMaxAge(0);
+        cookie.setSecure(cookieSecure);
+        cookie.setHttpOnly(cookieHttpOnly);
+        cookie.setPath("/");
+        response.addCookie(cookie);
     }
 
     private void setNoCacheHeaders(HttpServletResponse response) {
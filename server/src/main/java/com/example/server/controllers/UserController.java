@@ -3,6 +3,7 @@ package com.example.server.controllers;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,16 +17,18 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import com.example.server.config.JwtProvider;
+import com.example.server.config.AuthPrincipal;
 import com.example.server.dto.UserDto;
 import com.example.server.exception.UserException;
 import com.example.server.mapper.UserDtoMapper;
 import com.example.server.models.FriendRequest;
 import com.example.server.models.User;
 import com.example.server.repositories.FriendRequestRepository;
+import com.example.server.repositories.FriendshipRepository;
+import com.example.server.services.BlockListService;
+import com.example.server.services.FriendshipConsistencyService;
+import com.example.server.services.MutualFriendsService;
 import com.example.server.services.UserService;
-import com.example.server.services.impl.UserServiceImpl;
-import com.example.server.utils.UserUtil;
 
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletResponse;
@@ -41,10 +44,10 @@ public class UserController {
     private UserService userService;
 
     @Autowired
-    private JwtProvider jwtProvider;
+    private FriendRequestRepository friendRequestRepository;
 
     @Autowired
-    private FriendRequestRepository friendRequestRepository;
+    private FriendshipRepository friendshipRepository;
 
     @Value("${app.secure:true}")
     private boolean secureCookie;
@@ -54,6 +57,15 @@ public class UserController {
     @Autowired
     private UserDtoMapper userDtoMapper;
 
+    @Autowired
+    private MutualFriendsService mutualFriendsService;
+
+    @Autowired
+    private FriendshipConsistencyService friendshipConsistencyService;
+
+    @Autowired
+    private BlockListService blockListService;
+
     private void clearJwtCookie(HttpServletResponse response) {
         Cookie cookie = new Cookie(COOKIE_NAME, "");
         cookie.setHttpOnly(true);
@@ -67,13 +79,12 @@ public class UserController {
     @PutMapping("/update")
     public ResponseEntity<Map<String, Object>> updateUser(
             @Valid @RequestBody UserDto req,
-            @CookieValue(name = COOKIE_NAME, required = false) String token,
+            AuthPrincipal principal,
             HttpServletResponse response) {
-        logger.info("Received update user request with token: {}", token);
+        logger.info("Received update user request");
 
         try {
-            // Kiểm tra token từ cookie
-            if (token == null || !jwtProvider.validateToken(token)) {
+            if (principal == null) {
                 logger.warn("Invalid or missing token");
                 clearJwtCookie(response);
                 Map<String, Object> errorResponse = new HashMap<>();
@@ -83,28 +94,16 @@ public class UserController {
                         .body(errorResponse);
             }
 
-            // Lấy thông tin user từ token
-            User reqUser = userService.findUserProfileByJwt(token);
-            if (reqUser == null) {
-                logger.warn("User not found for token");
-                clearJwtCookie(response);
-                Map<String, Object> errorResponse = new HashMap<>();
-                errorResponse.put("error", "Unauthorized");
-                errorResponse.put("errorMessage", "User not found for provided token");
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                        .body(errorResponse);
-            }
-
             // Cập nhật thông tin user
-            logger.debug("Updating user with id: {}", reqUser.getId());
-            User updatedUser = userService.updateUser(reqUser.getId(), req);
+            logger.debug("Updating user with id: {}", principal.id());
+            User updatedUser = userService.updateUser(principal.id(), req);
             UserDto userDto = userDtoMapper.toUserDto(updatedUser);
 
             Map<String, Object> successResponse = new HashMap<>();
             successResponse.put("data", userDto);
             successResponse.put("message", "User updated successfully");
 
-            logger.info("Successfully updated user with id: {}", reqUser.getId());
+            logger.info("Successfully updated user with id: {}", principal.id());
             return ResponseEntity.ok(successResponse);
 
         } catch (UserException e) {
@@ -127,17 +126,10 @@ public class UserController {
     @GetMapping("/{userId}")
     public ResponseEntity<UserDto> getUserId(
         @PathVariable Long userId, 
-        @CookieValue(name = COOKIE_NAME, required = false) String token,
+        AuthPrincipal principal,
         HttpServletResponse response
     ) throws UserException {
-        // Kiểm tra token
-        if (token == null || !jwtProvider.validateToken(token)) {
-            clearJwtCookie(response);
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
-        }
-
-        User reqUser = userService.findUserProfileByJwt(token);
-        if (reqUser == null) {
+        if (principal == null) {
             clearJwtCookie(response);
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
@@ -148,8 +140,8 @@ public class UserController {
         }
 
         UserDto userDto = userDtoMapper.toUserDto(user);
-        userDto.setIsRequestingUser(UserUtil.isReqUser(reqUser, user));
-        userDto.setFollowed(UserUtil.isFollowingByReqUser(reqUser, user));
+        userDto.setIsRequestingUser(principal.id().equals(user.getId()));
+        userDto.setFollowed(!userService.followingAmong(principal.id(), List.of(user.getId())).isEmpty());
 
         return new ResponseEntity<>(userDto, HttpStatus.OK);
     }
@@ -160,53 +152,54 @@ public class UserController {
         @RequestParam(defaultValue = "0") int page,
         @RequestParam(defaultValue = "10") int size,
         @RequestParam(required = false) Boolean force,
-        @CookieValue(name = COOKIE_NAME, required = false) String token,
+        AuthPrincipal principal,
         @RequestHeader(value = "X-Force-Refresh", required = false) String forceRefreshHeader,
         HttpServletResponse response
     ) throws UserException {
         logger.info("Search user with query: {}, force: {}, forceHeader: {}", 
                    query, force, forceRefreshHeader != null);
         
-        // Kiểm tra token
-        if (token == null || !jwtProvider.validateToken(token)) {
+        if (principal == null) {
             clearJwtCookie(response);
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
 
-        User reqUser = userService.findUserProfileByJwt(token);
-        if (reqUser == null) {
-            clearJwtCookie(response);
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
-        }
+        Long reqUserId = principal.id();
 
         // Xác định xem có cần làm mới dữ liệu không
         boolean shouldForceRefresh = Boolean.TRUE.equals(force) || forceRefreshHeader != null;
         
         Pageable pageable = PageRequest.of(page, size);
         Page<User> userPage = userService.searchUser(query, pageable);
-        List<UserDto> userDtos = userDtoMapper.toUserDtos(userPage.getContent());
+        // Bỏ người đã chặn/bị chặn bởi người tìm kiếm
+        List<User> users = blockListService.filterVisible(reqUserId, userPage.getContent(), User::getId);
+        List<UserDto> userDtos = userDtoMapper.toUserDtos(users);
+        mutualFriendsService.fillMutualCounts(reqUserId, userDtos);
+        // Trạng thái theo dõi của cả trang trong một truy vấn, không nạp danh sách following của người tìm kiếm
+        Set<Long> followingIds = userService.followingAmong(reqUserId, users.stream().map(User::getId).toList());
 
         // Inject thông tin về trạng thái follow và bạn bè
         userDtos.forEach(dto -> {
-            User user = userPage.getContent().stream()
+            User user = users.stream()
                 .filter(u -> u.getId().equals(dto.getId()))
                 .findFirst()
                 .orElse(null);
             if (user != null) {
                 // Kiểm tra follow
-                dto.setFollowed(UserUtil.isFollowingByReqUser(reqUser, user));
+                dto.setFollowed(followingIds.contains(user.getId()));
                 
                 // Kiểm tra trạng thái bạn bè - Nếu cần force refresh thì truy vấn trực tiếp vào database
                 try {
                     boolean isFriend;
                     if (shouldForceRefresh) {
                         // Bỏ qua cache, kiểm tra trực tiếp trong database
-                        isFriend = reqUser.getFriends().contains(user) && user.getFriends().contains(reqUser);
+                        isFriend = friendshipRepository.existsAcceptedEdge(reqUserId, user.getId())
+                                && friendshipRepository.existsAcceptedEdge(user.getId(), reqUserId);
                         logger.info("Force checking friendship directly: User {} and {} are friends: {}", 
-                                   reqUser.getId(), user.getId(), isFriend);
+                                   reqUserId, user.getId(), isFriend);
                     } else {
                         // Sử dụng phương thức thông thường (có thể sử dụng cache)
-                        isFriend = userService.isFriend(reqUser.getId(), user.getId());
+                        isFriend = userService.isFriend(reqUserId, user.getId());
                     }
                     
                     dto.setFriend(isFriend);
@@ -220,19 +213,19 @@ public class UserController {
                         
                         if (shouldForceRefresh) {
                             // Kiểm tra trực tiếp
-                            var sentRequest = friendRequestRepository.findBySenderAndReceiver(reqUser, user);
+                            var sentRequest = friendRequestRepository.findBySenderIdAndReceiverId(reqUserId, user.getId());
                             hasPendingRequest = sentRequest != null && 
                                               sentRequest.getStatus() == FriendRequest.Status.PENDING;
                                               
-                            var receivedRequest = friendRequestRepository.findBySenderAndReceiver(user, reqUser);
+                            var receivedRequest = friendRequestRepository.findBySenderIdAndReceiverId(user.getId(), reqUserId);
                             hasReceivedRequest = receivedRequest != null && 
                                                receivedRequest.getStatus() == FriendRequest.Status.PENDING;
                                                
                             logger.info("Force checking friend requests - Sent: {}, Received: {}", 
                                       hasPendingRequest, hasReceivedRequest);
                         } else {
-                            hasPendingRequest = userService.hasPendingFriendRequest(reqUser.getId(), user.getId());
-                            hasReceivedRequest = userService.hasPendingFriendRequest(user.getId(), reqUser.getId());
+                            hasPendingRequest = userService.hasPendingFriendRequest(reqUserId, user.getId());
+                            hasReceivedRequest = userService.hasPendingFriendRequest(user.getId(), reqUserId);
                         }
                         
                         dto.setPendingFriendRequest(hasPendingRequest);
@@ -258,28 +251,21 @@ public class UserController {
     @PutMapping("/{userId}/follow")
     public ResponseEntity<UserDto> followUser(
         @PathVariable Long userId, 
-        @CookieValue(name = COOKIE_NAME, required = false) String token,
+        AuthPrincipal principal,
         HttpServletResponse response
     ) throws UserException {
-        // Kiểm tra token
-        if (token == null || !jwtProvider.validateToken(token)) {
-            clearJwtCookie(response);
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
-        }
-
-        User reqUser = userService.findUserProfileByJwt(token);
-        if (reqUser == null) {
+        if (principal == null) {
             clearJwtCookie(response);
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
 
-        User user = userService.followUser(userId, reqUser);
+        User user = userService.followUser(userId, principal.id());
         if (user == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
 
         UserDto userDto = userDtoMapper.toUserDto(user);
-        userDto.setFollowed(UserUtil.isFollowingByReqUser(reqUser, user));
+        userDto.setFollowed(user.getFollowers().stream().anyMatch(follower -> follower.getId().equals(principal.id())));
 
         return new ResponseEntity<>(userDto, HttpStatus.OK);
     }
@@ -288,104 +274,74 @@ public class UserController {
     @PostMapping("/friend-request/{receiverId}")
     public ResponseEntity<FriendRequest> sendFriendRequest(
         @PathVariable Long receiverId,
-        @CookieValue(name = COOKIE_NAME, required = false) String token,
+        AuthPrincipal principal,
         HttpServletResponse response
     ) throws UserException {
-        if (token == null || !jwtProvider.validateToken(token)) {
-            clearJwtCookie(response);
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
-        }
-
-        User sender = userService.findUserProfileByJwt(token);
-        if (sender == null) {
+        if (principal == null) {
             clearJwtCookie(response);
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
 
-        FriendRequest request = userService.sendFriendRequest(receiverId, sender);
+        FriendRequest request = userService.sendFriendRequest(receiverId, principal.id());
         return new ResponseEntity<>(request, HttpStatus.OK);
     }
 
     @PutMapping("/friend-request/{requestId}/accept")
     public ResponseEntity<FriendRequest> acceptFriendRequest(
         @PathVariable Long requestId,
-        @CookieValue(name = COOKIE_NAME, required = false) String token,
+        AuthPrincipal principal,
         HttpServletResponse response
     ) throws UserException {
-        if (token == null || !jwtProvider.validateToken(token)) {
+        if (principal == null) {
             clearJwtCookie(response);
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
 
-        User receiver = userService.findUserProfileByJwt(token);
-        if (receiver == null) {
-            clearJwtCookie(response);
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
-        }
-
-        FriendRequest request = userService.acceptFriendRequest(requestId, receiver);
+        FriendRequest request = userService.acceptFriendRequest(requestId, principal.id());
         return new ResponseEntity<>(request, HttpStatus.OK);
     }
 
     @DeleteMapping("/friend-request/{requestId}/reject")
     public ResponseEntity<Void> rejectFriendRequest(
         @PathVariable Long requestId,
-        @CookieValue(name = COOKIE_NAME, required = false) String token,
+        AuthPrincipal principal,
         HttpServletResponse response
     ) throws UserException {
-        if (token == null || !jwtProvider.validateToken(token)) {
-            clearJwtCookie(response);
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
-        }
-
-        User receiver = userService.findUserProfileByJwt(token);
-        if (receiver == null) {
+        if (principal == null) {
             clearJwtCookie(response);
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
 
-        userService.rejectFriendRequest(requestId, receiver);
+        userService.rejectFriendRequest(requestId, principal.id());
         return ResponseEntity.noContent().build();
     }
 
     @DeleteMapping("/friend/{friendId}")
     public ResponseEntity<Void> removeFriend(
         @PathVariable Long friendId,
-        @CookieValue(name = COOKIE_NAME, required = false) String token,
+        AuthPrincipal principal,
         HttpServletResponse response
     ) throws UserException {
-        if (token == null || !jwtProvider.validateToken(token)) {
-            clearJwtCookie(response);
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
-        }
-
-        User user = userService.findUserProfileByJwt(token);
-        if (user == null) {
+        if (principal == null) {
             clearJwtCookie(response);
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
 
-        userService.removeFriend(friendId, user);
+        userService.removeFriend(friendId, principal.id());
         return ResponseEntity.noContent().build();
     }
 
     @GetMapping("/friend-requests/pending")
     public ResponseEntity<List<FriendRequest>> getPendingFriendRequests(
-        @CookieValue(name = COOKIE_NAME, required = false) String token,
+        AuthPrincipal principal,
         HttpServletResponse response
     ) throws UserException {
-        if (token == null || !jwtProvider.validateToken(token)) {
-            clearJwtCookie(response);
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
-        }
-
-        User user = userService.findUserProfileByJwt(token);
-        if (user == null) {
+        if (principal == null) {
             clearJwtCookie(response);
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
 
-        List<FriendRequest> requests = userService.getPendingFriendRequests(user);
+        List<FriendRequest> requests = userService.getPendingFriendRequests(principal.id());
         return new ResponseEntity<>(requests, HttpStatus.OK);
     }
 
@@ -393,41 +349,36 @@ public class UserController {
     @GetMapping("/fix-friendship/{userId}")
     public ResponseEntity<?> fixFriendship(
             @PathVariable Long userId,
-            @RequestHeader("Authorization") String jwt) {
+            AuthPrincipal principal) {
+        if (principal == null) {
+            return new ResponseEntity<>("Token không hợp lệ", HttpStatus.UNAUTHORIZED);
+        }
         try {
-            User reqUser = userService.findUserProfileByJwt(jwt);
-            
-            // Chỉ cho phép admin hoặc chính người dùng gọi API này
-            if (!reqUser.getId().equals(userId) && reqUser.getEmail().equals("admin@example.com")) {
-                return new ResponseEntity<>("Không được phép thực hiện hành động này", HttpStatus.FORBIDDEN);
-            }
-            
-            if (userService instanceof UserServiceImpl) {
-                ((UserServiceImpl) userService).fixFriendshipConsistency(reqUser.getId(), userId);
-                return new ResponseEntity<>("Đã sửa lỗi quan hệ bạn bè", HttpStatus.OK);
-            }
-            
-            return new ResponseEntity<>("Không thể thực hiện hành động này", HttpStatus.INTERNAL_SERVER_ERROR);
-        } catch (UserException e) {
-            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+            // Chỉ sửa được cặp có chính người gọi tham gia
+            boolean repaired = friendshipConsistencyService.repairPair(principal.id(), userId);
+            return new ResponseEntity<>(repaired ? "Đã sửa lỗi quan hệ bạn bè" : "Quan hệ bạn bè không bị lỗi", HttpStatus.OK);
         } catch (Exception e) {
             return new ResponseEntity<>(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
     @GetMapping("/profile")
-    public ResponseEntity<UserDto> getUserProfile(@RequestHeader("Authorization") String token) throws UserException {
-        token = token.substring(7);
-        User user = userService.findUserProfileByJwt(token);
+    public ResponseEntity<UserDto> getUserProfile(AuthPrincipal principal) throws UserException {
+        if (principal == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        User user = userService.findUserById(principal.id());
         
         UserDto userDto = userDtoMapper.toUserDto(user);
         return new ResponseEntity<>(userDto, HttpStatus.ACCEPTED);
     }
 
     @GetMapping("/{userId}/profile")
-    public ResponseEntity<UserDto> getUserById(@PathVariable Long userId, @RequestHeader("Authorization") String token) 
+    public ResponseEntity<UserDto> getUserById(@PathVariable Long userId, AuthPrincipal principal) 
             throws UserException {
-        token = token.substring(7);
+        if (principal == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
         
         User user = userService.findUserById(userId);
         UserDto userDto = userDtoMapper.toUserDto(user);
@@ -440,15 +391,17 @@ public class UserController {
             @RequestParam String query,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
-            @RequestHeader("Authorization") String token) throws UserException {
-        
-        token = token.substring(7);
+            AuthPrincipal principal) throws UserException {
+        if (principal == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
         
         Pageable pageable = PageRequest.of(page, size);
         Page<User> userPage = userService.searchUser(query, pageable);
         
         // Chuyển đổi Page<User> thành Page<UserDto>
-        List<UserDto> userDtos = userDtoMapper.toUserDtos(userPage.getContent());
+        List<User> users = blockListService.filterVisible(principal.id(), userPage.getContent(), User::getId);
+        List<UserDto> userDtos = userDtoMapper.toUserDtos(users);
         Page<UserDto> userDtoPage = new PageImpl<>(userDtos, pageable, userPage.getTotalElements());
         
         return new ResponseEntity<>(userDtoPage, HttpStatus.OK);
@@ -457,12 +410,12 @@ public class UserController {
     @PutMapping("/update-auth")
     public ResponseEntity<UserDto> updateUser(
             @RequestBody UserDto req,
-            @RequestHeader("Authorization") String token) throws UserException {
-            
-        token = token.substring(7);
-        User reqUser = userService.findUserProfileByJwt(token);
+            AuthPrincipal principal) throws UserException {
+        if (principal == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
     
-        User updatedUser = userService.updateUser(reqUser.getId(), req);
+        User updatedUser = userService.updateUser(principal.id(), req);
         UserDto userDto = userDtoMapper.toUserDto(updatedUser);
             
         return new ResponseEntity<>(userDto, HttpStatus.OK);
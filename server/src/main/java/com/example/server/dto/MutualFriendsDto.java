@@ -0,0 +1,18 @@
+package com.example.server.dto;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MutualFriendsDto implements Serializable {
+    private Long userId;
+    private Integer count;
+    private List<UserDto> preview = new ArrayList<>(); // K bạn chung đầu tiên, dạng gọn
+}
@@ -7,7 +7,9 @@ import lombok.NoArgsConstructor;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Data
 @NoArgsConstructor
@@ -41,5 +43,13 @@ public class PostDto implements Serializable{
     public static class MediaDto implements Serializable {
         private String mediaType; // "IMAGE" hoặc "VIDEO"
         private String url;
+        private String processingStatus; // Video: "PENDING", "PROCESSING", "READY", "FAILED"; null với ảnh
+        private String thumbnailUrl;
+        private Map<String, String> renditions = new LinkedHashMap<>(); // Nhãn ("480p") -> URL bản chuyển mã
+
+        public MediaDto(String mediaType, String url) {
+            this.mediaType = mediaType;
+            this.url = url;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,21 @@
+package com.example.server.dto;
+
+import java.io.Serializable;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Quan hệ giữa người đang xem và một người dùng khác, dùng để vẽ thẻ người dùng trong danh sách
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RelationshipStatusDto implements Serializable {
+    private Long userId;
+    private String status;              // như /status/{userId}: NONE, PENDING, ACCEPTED, ..., PENDING_RECEIVED
+    private boolean blocked;            // người xem đã chặn người này
+    private boolean blockedBy;          // người này đã chặn người xem
+    private Integer mutualFriendsCount;
+    private boolean following;          // người xem đang theo dõi người này
+    private boolean followedBy;         // người này đang theo dõi người xem
+}
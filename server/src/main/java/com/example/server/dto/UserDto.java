@@ -62,6 +62,7 @@ public class UserDto implements Serializable{
     private boolean isFriend;
     private boolean pendingFriendRequest;
     private boolean receivedFriendRequest;
+    private Integer mutualFriendsCount; // So với người đang xem; chỉ có ở kết quả tìm kiếm và gợi ý kết bạn
 
     // Explicit setter for isFriend field
     public void setIsFriend(boolean isFriend) {
@@ -0,0 +1,62 @@
+package com.example.server.events;
+
+import java.security.Principal;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import com.example.server.config.JwtProvider;
+import com.example.server.models.User;
+import com.example.server.repositories.UserRepository;
+import com.example.server.services.PresenceService;
+
+import io.jsonwebtoken.Claims;
+
+/**
+ * Nối vòng đời phiên STOMP vào PresenceService. Heartbeat và các frame khác được ghi nhận
+ * bằng interceptor trên clientInboundChannel (WebSocketConfig).
+ */
+@Component
+public class PresenceEventListener {
+
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @EventListener
+    public void handleSessionConnected(SessionConnectedEvent event) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        Long userId = userIdOf(event.getUser());
+        // Kết nối ẩn danh không có trạng thái online
+        if (sessionId != null && userId != null) {
+            presenceService.sessionConnected(userId, sessionId);
+        }
+    }
+
+    @EventListener
+    public void handleSessionDisconnect(SessionDisconnectEvent event) {
+        presenceService.sessionDisconnected(userIdOf(event.getUser()), event.getSessionId());
+    }
+
+    // Principal của phiên là Authentication mà CookieTokenValidator dựng lúc bắt tay, claims nằm ở details
+    private Long userIdOf(Principal principal) {
+        if (principal instanceof Authentication authentication
+                && authentication.getDetails() instanceof Claims claims
+                && claims.get(JwtProvider.CLAIM_USER_ID) != null) {
+            return Long.valueOf(claims.get(JwtProvider.CLAIM_USER_ID).toString());
+        }
+        if (principal == null) {
+            return null;
+        }
+        // Token cấp trước khi có claim userId
+        User user = userRepository.findByEmail(principal.getName());
+        return user != null ? user.getId() : null;
+    }
+}
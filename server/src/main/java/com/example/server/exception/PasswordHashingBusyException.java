@@ -0,0 +1,16 @@
+package com.example.server.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class PasswordHashingBusyException extends RuntimeException {
+
+    public PasswordHashingBusyException(String message) {
+        super(message);
+    }
+
+    public PasswordHashingBusyException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
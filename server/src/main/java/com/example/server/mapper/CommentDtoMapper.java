@@ -1,11 +1,15 @@
 package com.example.server.mapper;
 
 import com.example.server.dto.CommentDto;
+import com.example.server.dto.UserDto;
 import com.example.server.models.Comment;
 import com.example.server.models.User;
-import com.example.server.utils.CommentUtil;
+import com.example.server.services.InteractionLookupService;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,19 +21,53 @@ public class CommentDtoMapper {
     @Autowired
     private UserDtoMapper userDtoMapper;
 
+    @Autowired
+    private InteractionLookupService interactionLookupService;
+
     // Chuyển đổi cơ bản Comment sang CommentDto (không bao gồm replies)
     public CommentDto toCommentDto(Comment comment, User reqUser) {
         if (comment == null) return null;
+        List<Comment> comments = List.of(comment);
+        return toCommentDto(comment, findLikedCommentIds(comments, reqUser, false), findAuthors(comments, false));
+    }
+
+    // Chuyển đổi Comment sang CommentDto bao gồm cả replies (đệ quy)
+    public CommentDto toCommentDtoWithReplies(Comment comment, User reqUser) {
+        List<Comment> comments = List.of(comment);
+        return toCommentDtoWithReplies(comment, findLikedCommentIds(comments, reqUser, true), findAuthors(comments, true));
+    }
+
+    // Chuyển đổi danh sách Comment
+    public List<CommentDto> toCommentDtos(List<Comment> comments, User reqUser) {
+        if (comments == null) return List.of();
+        Set<Long> likedIds = findLikedCommentIds(comments, reqUser, false);
+        Map<Long, UserDto> authors = findAuthors(comments, false);
+        return comments.stream()
+            .map(comment -> toCommentDto(comment, likedIds, authors))
+            .collect(Collectors.toList());
+    }
+
+    public List<CommentDto> toCommentDtosWithReplies(List<Comment> comments, User reqUser) {
+        if (comments == null) return List.of();
+        Set<Long> likedIds = findLikedCommentIds(comments, reqUser, true);
+        Map<Long, UserDto> authors = findAuthors(comments, true);
+        return comments.stream()
+            .map(comment -> toCommentDtoWithReplies(comment, likedIds, authors))
+            .collect(Collectors.toList());
+    }
+
+    private CommentDto toCommentDto(Comment comment, Set<Long> likedIds, Map<Long, UserDto> authors) {
+        if (comment == null) return null;
 
         CommentDto commentDto = new CommentDto();
         commentDto.setId(comment.getId());
         commentDto.setContent(comment.getContent());
-        commentDto.setUser(userDtoMapper.toUserDto(comment.getUser()));
+        commentDto.setUser(authors.get(comment.getUser().getId()));
         commentDto.setCreatedAt(comment.getCreatedAt());
         commentDto.setUpdatedAt(comment.getUpdatedAt());
-        commentDto.setLiked(CommentUtil.isLikedByReqUser(reqUser, comment));
-        commentDto.setTotalLikes(comment.getLikes() != null ? comment.getLikes().size() : 0);
-        commentDto.setReplyCount(comment.getReplies() != null ? comment.getReplies().size() : 0);
+        commentDto.setLiked(likedIds.contains(comment.getId()));
+        commentDto.setTotalLikes(comment.getLikeCount());
+        commentDto.setReplyCount(comment.getReplyCount());
         
         if (comment.getParentComment() != null) {
             commentDto.setParentId(comment.getParentComment().getId());
@@ -38,13 +76,12 @@ public class CommentDtoMapper {
         return commentDto;
     }
 
-    // Chuyển đổi Comment sang CommentDto bao gồm cả replies (đệ quy)
-    public CommentDto toCommentDtoWithReplies(Comment comment, User reqUser) {
-        CommentDto commentDto = toCommentDto(comment, reqUser);
+    private CommentDto toCommentDtoWithReplies(Comment comment, Set<Long> likedIds, Map<Long, UserDto> authors) {
+        CommentDto commentDto = toCommentDto(comment, likedIds, authors);
         
         if (comment.getReplies() != null && !comment.getReplies().isEmpty()) {
             List<CommentDto> replies = comment.getReplies().stream()
-                .map(reply -> toCommentDto(reply, reqUser))
+                .map(reply -> toCommentDto(reply, likedIds, authors))
                 .collect(Collectors.toList());
             commentDto.setReplies(replies);
         }
@@ -52,18 +89,31 @@ public class CommentDtoMapper {
         return commentDto;
     }
 
-    // Chuyển đổi danh sách Comment
-    public List<CommentDto> toCommentDtos(List<Comment> comments, User reqUser) {
-        if (comments == null) return List.of();
-        return comments.stream()
-            .map(comment -> toCommentDto(comment, reqUser))
-            .collect(Collectors.toList());
+    // Một truy vấn "đã like" cho cả danh sách (kèm replies cấp một nếu cần hiển thị)
+    private Set<Long> findLikedCommentIds(List<Comment> comments, User reqUser, boolean includeReplies) {
+        if (reqUser == null) return Set.of();
+
+        List<Long> commentIds = new ArrayList<>();
+        for (Comment comment : comments) {
+            if (comment == null) continue;
+            commentIds.add(comment.getId());
+            if (includeReplies && comment.getReplies() != null) {
+                comment.getReplies().forEach(reply -> commentIds.add(reply.getId()));
+            }
+        }
+        return interactionLookupService.findLikedCommentIds(reqUser.getId(), commentIds);
     }
 
-    public List<CommentDto> toCommentDtosWithReplies(List<Comment> comments, User reqUser) {
-        if (comments == null) return List.of();
-        return comments.stream()
-            .map(comment -> toCommentDtoWithReplies(comment, reqUser))
-            .collect(Collectors.toList());
+    // Tác giả của cả danh sách (kèm replies cấp một nếu cần) ở dạng gọn, một truy vấn
+    private Map<Long, UserDto> findAuthors(List<Comment> comments, boolean includeReplies) {
+        List<Long> authorIds = new ArrayList<>();
+        for (Comment comment : comments) {
+            if (comment == null) continue;
+            authorIds.add(comment.getUser().getId());
+            if (includeReplies && comment.getReplies() != null) {
+                comment.getReplies().forEach(reply -> authorIds.add(reply.getUser().getId()));
+            }
+        }
+        return userDtoMapper.toUserSummaryDtos(authorIds);
     }
-}
\ No newline at end of file
+}
@@ -1,8 +1,14 @@
 package com.example.server.mapper;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
 import org.springframework.stereotype.Component;
 
 import com.example.server.dto.ConversationDto;
+import com.example.server.dto.UserDto;
 import com.example.server.models.Conversation;
 import com.example.server.models.User;
 
@@ -16,11 +22,23 @@ public class ConversationDtoMapper {
     }
     
     public ConversationDto toDto(Conversation conversation, Long currentUserId) {
+        return toDto(conversation, currentUserId, findParticipants(List.of(conversation)));
+    }
+
+    // Cả danh sách hội thoại: người tham gia ở dạng gọn, nạp chung một truy vấn
+    public List<ConversationDto> toDtos(List<Conversation> conversations, Long currentUserId) {
+        Map<Long, UserDto> participants = findParticipants(conversations);
+        return conversations.stream()
+                .map(conversation -> toDto(conversation, currentUserId, participants))
+                .collect(Collectors.toList());
+    }
+
+    private ConversationDto toDto(Conversation conversation, Long currentUserId, Map<Long, UserDto> participants) {
         ConversationDto dto = new ConversationDto();
         
         dto.setId(conversation.getId());
-        dto.setCreator(userDtoMapper.toUserDto(conversation.getCreator()));
-        dto.setRecipient(userDtoMapper.toUserDto(conversation.getRecipient()));
+        dto.setCreator(participants.get(conversation.getCreator().getId()));
+        dto.setRecipient(participants.get(conversation.getRecipient().getId()));
         dto.setIsGroup(conversation.getIsGroup());
         dto.setCreatedAt(conversation.getCreatedAt());
         dto.setUpdatedAt(conversation.getUpdatedAt());
@@ -33,11 +51,20 @@ public class ConversationDtoMapper {
         // Đặt người dùng còn lại trong cuộc trò chuyện
         User otherUser = getOtherUser(conversation, currentUserId);
         if (otherUser != null) {
-            dto.setOtherUser(userDtoMapper.toUserDto(otherUser));
+            dto.setOtherUser(participants.get(otherUser.getId()));
         }
         
         return dto;
     }
+
+    private Map<Long, UserDto> findParticipants(List<Conversation> conversations) {
+        List<Long> userIds = new ArrayList<>();
+        for (Conversation conversation : conversations) {
+            userIds.add(conversation.getCreator().getId());
+            userIds.add(conversation.getRecipient().getId());
+        }
+        return userDtoMapper.toUserSummaryDtos(userIds);
+    }
     
     private User getOtherUser(Conversation conversation, Long currentUserId) {
         if (conversation.getCreator().getId().equals(currentUserId)) {
@@ -47,4 +74,4 @@ public class ConversationDtoMapper {
         }
         return null;
     }
-} 
\ No newline at end of file
+}
@@ -1,6 +1,8 @@
 package com.example.server.mapper;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,6 +11,7 @@ import org.springframework.stereotype.Component;
 import com.example.server.dto.FriendshipDto;
 import com.example.server.dto.UserDto;
 import com.example.server.models.Friendship;
+import com.example.server.services.MutualFriendsService;
 
 @Component
 public class FriendshipDtoMapper {
@@ -16,36 +19,87 @@ public class FriendshipDtoMapper {
     @Autowired
     private UserDtoMapper userDtoMapper;
 
+    @Autowired
+    private MutualFriendsService mutualFriendsService;
+
     public FriendshipDto toFriendshipDto(Friendship friendship) {
         if (friendship == null) return null;
-
-        FriendshipDto dto = new FriendshipDto();
-        dto.setId(friendship.getId());
-        dto.setUser(userDtoMapper.toUserDto(friendship.getUser()));
-        dto.setFriend(userDtoMapper.toUserDto(friendship.getFriend()));
-        dto.setStatus(friendship.getStatus().toString());
-        dto.setMutualFriendsCount(friendship.getMutualFriendsCount());
-        dto.setCreatedAt(friendship.getCreatedAt());
-        dto.setUpdatedAt(friendship.getUpdatedAt());
-
+        FriendshipDto dto = toFriendshipDto(friendship, findUsers(List.of(friendship)));
+        dto.setMutualFriendsCount(mutualFriendsService.count(friendship.getUser().getId(), friendship.getFriend().getId()));
         return dto;
     }
 
     public List<FriendshipDto> toFriendshipDtos(List<Friendship> friendships) {
         if (friendships == null) return List.of();
         
-        return friendships.stream()
-                .map(this::toFriendshipDto)
+        Map<Long, UserDto> users = findUsers(friendships);
+        List<FriendshipDto> dtos = friendships.stream()
+                .map(friendship -> toFriendshipDto(friendship, users))
                 .collect(Collectors.toList());
+        fillMutualCounts(friendships, dtos);
+        return dtos;
     }
 
+    // Người dùng ở dạng gọn, nạp chung một truy vấn; giữ thứ tự của danh sách quan hệ
     public List<UserDto> toUserDtosFromFriendships(List<Friendship> friendships, boolean isUserField) {
         if (friendships == null) return List.of();
         
+        Map<Long, UserDto> users = findUsers(friendships);
         return friendships.stream()
-                .map(friendship -> isUserField ? 
-                        userDtoMapper.toUserDto(friendship.getFriend()) : 
-                        userDtoMapper.toUserDto(friendship.getUser()))
+                .map(friendship -> users.get(isUserField ?
+                        friendship.getFriend().getId() :
+                        friendship.getUser().getId()))
+                .filter(user -> user != null)
                 .collect(Collectors.toList());
     }
-} 
\ No newline at end of file
+
+    private FriendshipDto toFriendshipDto(Friendship friendship, Map<Long, UserDto> users) {
+        FriendshipDto dto = new FriendshipDto();
+        dto.setId(friendship.getId());
+        dto.setUser(users.get(friendship.getUser().getId()));
+        dto.setFriend(users.get(friendship.getFriend().getId()));
+        dto.setStatus(friendship.getStatus().toString());
+        dto.setCreatedAt(friendship.getCreatedAt());
+        dto.setUpdatedAt(friendship.getUpdatedAt());
+
+        return dto;
+    }
+
+    /**
+     * Số bạn chung tính lúc đọc (cột mutual_friends_count chỉ là ảnh chụp lúc gửi lời mời).
+     * Danh sách lời mời/bạn bè luôn có chung một phía (người gửi hoặc người nhận) nên tính theo lô với phía đó.
+     */
+    private void fillMutualCounts(List<Friendship> friendships, List<FriendshipDto> dtos) {
+        if (friendships.isEmpty()) return;
+
+        Long userId = friendships.get(0).getUser().getId();
+        Long friendId = friendships.get(0).getFriend().getId();
+        if (friendships.stream().allMatch(friendship -> friendship.getUser().getId().equals(userId))) {
+            List<Long> friendIds = friendships.stream().map(friendship -> friendship.getFriend().getId()).collect(Collectors.toList());
+            Map<Long, Integer> counts = mutualFriendsService.counts(userId, friendIds);
+            for (int i = 0; i < dtos.size(); i++) {
+                dtos.get(i).setMutualFriendsCount(counts.getOrDefault(friendIds.get(i), 0));
+            }
+        } else if (friendships.stream().allMatch(friendship -> friendship.getFriend().getId().equals(friendId))) {
+            List<Long> userIds = friendships.stream().map(friendship -> friendship.getUser().getId()).collect(Collectors.toList());
+            Map<Long, Integer> counts = mutualFriendsService.counts(friendId, userIds);
+            for (int i = 0; i < dtos.size(); i++) {
+                dtos.get(i).setMutualFriendsCount(counts.getOrDefault(userIds.get(i), 0));
+            }
+        } else {
+            for (int i = 0; i < dtos.size(); i++) {
+                Friendship friendship = friendships.get(i);
+                dtos.get(i).setMutualFriendsCount(mutualFriendsService.count(friendship.getUser().getId(), friendship.getFriend().getId()));
+            }
+        }
+    }
+
+    private Map<Long, UserDto> findUsers(List<Friendship> friendships) {
+        List<Long> userIds = new ArrayList<>();
+        for (Friendship friendship : friendships) {
+            userIds.add(friendship.getUser().getId());
+            userIds.add(friendship.getFriend().getId());
+        }
+        return userDtoMapper.toUserSummaryDtos(userIds);
+    }
+}
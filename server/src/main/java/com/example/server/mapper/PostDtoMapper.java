@@ -1,11 +1,21 @@
 package com.example.server.mapper;
 
 import com.example.server.dto.PostDto;
+import com.example.server.dto.UserDto;
 import com.example.server.models.Post;
+import com.example.server.models.PostMedia;
 import com.example.server.models.User;
-import com.example.server.utils.PostUtil;
+import com.example.server.repositories.PostMediaRepository;
+import com.example.server.repositories.PostRepository;
+import com.example.server.services.InteractionLookupService;
+import com.example.server.services.MediaProcessingService;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,6 +30,15 @@ public class PostDtoMapper {
     @Autowired
     private CommentDtoMapper commentDtoMapper;
 
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private PostMediaRepository postMediaRepository;
+
+    @Autowired
+    private InteractionLookupService interactionLookupService;
+
     public PostDto toPostDto(Post post, User reqUser) {
         if (post == null) return null;
         
@@ -43,13 +62,10 @@ public class PostDtoMapper {
             postDto.setGroupName(post.getGroup().getName());
         }
         
-        postDto.setUser(userDtoMapper.toUserDto(post.getUser()));
+        postDto.setUser(userDtoMapper.toUserSummaryDto(post.getUser()));
         
         postDto.setMedia(post.getMedia() != null ? post.getMedia().stream()
-            .map(media -> new PostDto.MediaDto(
-                media.getMediaType().toString(),
-                media.getMediaUrl()
-            ))
+            .map(this::toMediaDto)
             .collect(Collectors.toList()) : List.of());
         
         setInteractionData(postDto, post, reqUser);
@@ -66,12 +82,76 @@ public class PostDtoMapper {
         return postDto;
     }
 
+    /**
+     * Chuyển cả một trang bài viết bằng số câu lệnh cố định, không phụ thuộc số bài:
+     * tác giả, media, người repost và "đã like" được nạp gom nhóm theo danh sách ID
+     * thay vì khởi tạo lazy collection của từng bài; số like/bình luận/repost đọc từ bộ đếm trên bảng posts.
+     */
     public List<PostDto> toPostDtos(List<Post> posts, User reqUser) {
         if (posts == null) return List.of();
-        return posts.stream()
-            .map(post -> toPostDto(post, reqUser))
-            .filter(postDto -> postDto != null)
+
+        // Bỏ qua bài viết ẩn (is_active = true trong logic đảo ngược)
+        List<Post> visiblePosts = posts.stream()
+            .filter(post -> post != null && !Boolean.TRUE.equals(post.getIsActive()))
             .collect(Collectors.toList());
+        if (visiblePosts.isEmpty()) return new ArrayList<>();
+
+        List<Long> postIds = visiblePosts.stream().map(Post::getId).collect(Collectors.toList());
+        Set<Long> authorIds = visiblePosts.stream()
+            .map(post -> post.getUser().getId())
+            .collect(Collectors.toSet());
+
+        Map<Long, UserDto> authors = userDtoMapper.toUserSummaryDtos(authorIds);
+
+        Map<Long, List<PostDto.MediaDto>> mediaByPost = new HashMap<>();
+        for (PostMedia media : postMediaRepository.findByPostIdIn(postIds)) {
+            mediaByPost.computeIfAbsent(media.getPost().getId(), id -> new ArrayList<>())
+                .add(toMediaDto(media));
+        }
+
+        Long reqUserId = reqUser != null ? reqUser.getId() : null;
+
+        // Danh sách người repost vẫn cần cho API; "đã repost" được đánh dấu ngay trong lượt gom nhóm
+        Map<Long, List<Long>> repostUsersByPost = new HashMap<>();
+        Set<Long> repostedPostIds = new HashSet<>();
+        for (PostRepository.PostUser repost : postRepository.findRepostUsersByPostIds(postIds)) {
+            repostUsersByPost.computeIfAbsent(repost.getPostId(), id -> new ArrayList<>()).add(repost.getUserId());
+            if (repost.getUserId().equals(reqUserId)) {
+                repostedPostIds.add(repost.getPostId());
+            }
+        }
+
+        Set<Long> likedPostIds = interactionLookupService.findLikedPostIds(reqUserId, postIds);
+
+        List<PostDto> postDtos = new ArrayList<>(visiblePosts.size());
+        for (Post post : visiblePosts) {
+            PostDto postDto = new PostDto();
+
+            postDto.setId(post.getId());
+            postDto.setContent(post.getContent());
+            postDto.setCreatedAt(post.getCreatedAt());
+            postDto.setUpdatedAt(post.getUpdatedAt());
+            postDto.setPrivacy(post.getPrivacy().toString());
+
+            if (post.getGroup() != null) {
+                postDto.setGroupId(post.getGroup().getId());
+                postDto.setGroupName(post.getGroup().getName());
+            }
+
+            postDto.setUser(authors.get(post.getUser().getId()));
+            postDto.setMedia(mediaByPost.getOrDefault(post.getId(), new ArrayList<>()));
+
+            List<Long> repostUserIds = repostUsersByPost.getOrDefault(post.getId(), new ArrayList<>());
+            postDto.setTotalLikes(post.getLikeCount());
+            postDto.setLiked(likedPostIds.contains(post.getId()));
+            postDto.setTotalReposts(post.getRepostCount());
+            postDto.setReposted(repostedPostIds.contains(post.getId()));
+            postDto.setRepostUserIds(repostUserIds);
+            postDto.setTotalComments(post.getCommentCount());
+
+            postDtos.add(postDto);
+        }
+        return postDtos;
     }
 
     public List<PostDto> toPostDtosWithDetails(List<Post> posts, User reqUser) {
@@ -83,27 +163,38 @@ public class PostDtoMapper {
     }
 
     private void setInteractionData(PostDto postDto, Post post, User reqUser) {
-        postDto.setTotalLikes(post.getLikes() != null ? post.getLikes().size() : 0);
-        postDto.setLiked(reqUser != null && PostUtil.isLikedByReqUser(reqUser, post));
-        
-        if (post.getRepostUsers() != null) {
-            postDto.setTotalReposts(post.getRepostUsers().size());
-            postDto.setReposted(reqUser != null && PostUtil.isRepostedByReqUser(reqUser, post));
-            postDto.setRepostUserIds(post.getRepostUsers().stream()
-                .map(User::getId)
-                .collect(Collectors.toList()));
-        } else {
-            postDto.setTotalReposts(0);
-            postDto.setReposted(false);
-            postDto.setRepostUserIds(List.of());
-        }
+        Long reqUserId = reqUser != null ? reqUser.getId() : null;
+        List<Long> postIds = List.of(post.getId());
+
+        postDto.setTotalLikes(post.getLikeCount());
+        postDto.setLiked(interactionLookupService.findLikedPostIds(reqUserId, postIds).contains(post.getId()));
+
+        postDto.setTotalReposts(post.getRepostCount());
+        postDto.setReposted(interactionLookupService.findRepostedPostIds(reqUserId, postIds).contains(post.getId()));
+        postDto.setRepostUserIds(postRepository.findRepostUsersByPostIds(postIds).stream()
+            .map(PostRepository.PostUser::getUserId)
+            .collect(Collectors.toList()));
     }
 
     private void setCommentData(PostDto postDto, Post post, User reqUser, boolean includeComments) {
-        postDto.setTotalComments(post.getComments() != null ? post.getComments().size() : 0);
+        postDto.setTotalComments(post.getCommentCount());
         
         if (includeComments && post.getComments() != null) {
             postDto.setComments(commentDtoMapper.toCommentDtos(post.getComments(), reqUser));
         }
     }
-}
\ No newline at end of file
+
+    private PostDto.MediaDto toMediaDto(PostMedia media) {
+        PostDto.MediaDto mediaDto = new PostDto.MediaDto(media.getMediaType().toString(), media.getMediaUrl());
+        if (media.getProcessingStatus() != null) {
+            mediaDto.setProcessingStatus(media.getProcessingStatus().toString());
+            mediaDto.setThumbnailUrl(media.getThumbnailUrl());
+            if (media.getRenditions() != null && !media.getRenditions().isBlank()) {
+                for (String label : media.getRenditions().split(",")) {
+                    mediaDto.getRenditions().put(label, media.getMediaUrl() + MediaProcessingService.renditionSuffix(label));
+                }
+            }
+        }
+        return mediaDto;
+    }
+}
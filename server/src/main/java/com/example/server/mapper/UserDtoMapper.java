@@ -1,6 +1,12 @@
 package com.example.server.mapper;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import com.example.server.dto.EducationDto;
@@ -9,19 +15,35 @@ import com.example.server.dto.WorkExperienceDto;
 import com.example.server.models.Education;
 import com.example.server.models.User;
 import com.example.server.models.WorkExperience;
+import com.example.server.repositories.UserRepository;
+import com.example.server.services.FriendGraphService;
+import com.example.server.services.PresenceService;
+
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 @Component
 public class UserDtoMapper {
 
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private FriendGraphService friendGraphService;
+
+    // Hồ sơ đầy đủ (followers, following, danh sách bạn bè, học vấn, công việc): chỉ dùng cho các endpoint hồ sơ
     public UserDto toUserDto(User user) {
         if (user == null) return null;
 
-        UserDto userDto = mapToUserDto(user);
+        UserDto userDto = mapToUserDto(user, presenceService.isOnline(user.getId()));
         userDto.setFollowers(toUserDtos(user.getFollowers()));
         userDto.setFollowing(toUserDtos(user.getFollowing()));
-        userDto.setFriendIds(user.getFriends().stream()
-                .map(User::getId)
+        // ID bạn bè lấy từ đồ thị bạn bè trong bộ nhớ, không nạp entity của từng người bạn
+        userDto.setFriendIds(Arrays.stream(friendGraphService.friendIds(user.getId()))
+                .boxed()
                 .collect(Collectors.toList()));
         userDto.setLogin_with_Google(user.getLogin_with_Google());
         userDto.setPhone(user.getPhone());
@@ -33,10 +55,12 @@ public class UserDtoMapper {
     }
 
     public List<UserDto> toUserDtos(List<User> users) {
-        if (users == null) return List.of();
+        if (users == null || users.isEmpty()) return List.of();
 
+        // Một lượt đọc trạng thái online cho cả danh sách
+        Set<Long> online = presenceService.onlineAmong(users.stream().map(User::getId).toList());
         return users.stream()
-                   .map(this::mapToUserDto)
+                   .map(user -> mapToUserDto(user, online.contains(user.getId())))
                    .collect(Collectors.toList());
     }
 
@@ -66,7 +90,51 @@ public class UserDtoMapper {
             .collect(Collectors.toList());
     }
 
-    private UserDto mapToUserDto(User user) {
+    /**
+     * Thông tin gọn để nhúng vào bài viết, bình luận, hội thoại, tình bạn: id, tên, ảnh đại diện, trạng thái online.
+     * Không chạm tới collection nào của User; hồ sơ đầy đủ dùng toUserDto.
+     */
+    public UserDto toUserSummaryDto(User user) {
+        if (user == null) return null;
+        return toSummary(user.getId(), user.getFirstName(), user.getLastName(), user.getImage(),
+                presenceService.isOnline(user.getId()));
+    }
+
+    // Cho cả danh sách: một câu SELECT chỉ các cột cần thiết và một lượt đọc trạng thái online, theo userId
+    public Map<Long, UserDto> toUserSummaryDtos(Collection<Long> userIds) {
+        Set<Long> ids = userIds.stream().filter(Objects::nonNull).collect(Collectors.toSet());
+        Map<Long, UserDto> summaries = new HashMap<>();
+        if (ids.isEmpty()) return summaries;
+
+        Set<Long> online = presenceService.onlineAmong(ids);
+        for (UserRepository.UserSummary row : userRepository.findSummariesByIdIn(ids)) {
+            summaries.put(row.getId(), toSummary(row.getId(), row.getFirstName(), row.getLastName(), row.getImage(),
+                    online.contains(row.getId())));
+        }
+        return summaries;
+    }
+
+    private UserDto toSummary(Long id, String firstName, String lastName, String image, boolean online) {
+        UserDto userDto = new UserDto();
+        userDto.setId(id);
+        userDto.setFirstName(firstName);
+        userDto.setLastName(lastName);
+        userDto.setUsername(firstName + " " + lastName);
+        userDto.setImage(image);
+        userDto.setIsOnline(online ? 1 : 0);
+        return userDto;
+    }
+
+    private UserDto mapToUserDto(User user, boolean online) {
+        UserDto userDto = mapScalarFields(user, online);
+
+        userDto.setWorkExperiences(mapWorkExperiences(user.getWorkExperiences()));
+        userDto.setEducations(mapEducations(user.getEducations()));
+
+        return userDto;
+    }
+
+    private UserDto mapScalarFields(User user, boolean online) {
         UserDto userDto = new UserDto();
         userDto.setId(user.getId());
         userDto.setFirstName(user.getFirstName());
@@ -82,7 +150,8 @@ public class UserDtoMapper {
         // Xử lý gender - chuyển từ enum sang giá trị frontend
         userDto.setGender(user.getGender() != null ? user.getGender().getFrontendValue() : null);
         
-        userDto.setIsOnline(user.isOnline());
+        // Cột users.is_online không được reset khi khóa presence hết TTL: trạng thái online lấy từ PresenceService
+        userDto.setIsOnline(online ? 1 : 0);
         userDto.setLastSeen(user.getLastSeen());
         userDto.setPostsCount(user.getPostsCount());
         userDto.setCreatedAt(user.getCreatedAt());
@@ -93,9 +162,6 @@ public class UserDtoMapper {
         userDto.setHometown(user.getHometown());
         userDto.setRelationshipStatus(user.getRelationshipStatus());
 
-        userDto.setWorkExperiences(mapWorkExperiences(user.getWorkExperiences()));
-        userDto.setEducations(mapEducations(user.getEducations()));
-
         userDto.setPhone_contact(user.getPhone_contact());
         userDto.setEmail_contact(user.getEmail_contact());
         
@@ -6,6 +6,7 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -54,6 +55,15 @@ public class Comment {
     @CollectionTable(name = "comment_media", joinColumns = @JoinColumn(name = "comment_id"))
     private List<CommentMedia> media = new ArrayList<>();
 
+    // Bộ đếm phi chuẩn hóa: chỉ được thay đổi bằng câu UPDATE nguyên tử trong CommentRepository
+    @ColumnDefault("0")
+    @Column(name = "like_count", nullable = false, updatable = false)
+    private Integer likeCount = 0;
+
+    @ColumnDefault("0")
+    @Column(name = "reply_count", nullable = false, updatable = false)
+    private Integer replyCount = 0;
+
     @CreationTimestamp
     private LocalDateTime createdAt;
 
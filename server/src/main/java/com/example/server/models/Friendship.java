@@ -4,9 +4,18 @@ import jakarta.persistence.*;
 import lombok.Data;
 import java.time.LocalDateTime;
 
+import com.example.server.utils.UserUtil;
+
 @Data
 @Entity
-@Table(name = "friendships")
+// Mỗi chiều của một cặp người dùng có đúng một dòng; hai chiều được ghi cùng lúc bằng một câu lệnh
+@Table(name = "friendships",
+    uniqueConstraints = @UniqueConstraint(name = "uk_friendships_user_friend", columnNames = {"user_id", "friend_id"}),
+    indexes = {
+        @Index(name = "idx_friendships_friend_status", columnList = "friend_id, status"),
+        @Index(name = "idx_friendships_user_name", columnList = "user_id, status, friend_name_key, friend_id"),
+        @Index(name = "idx_friendships_user_since", columnList = "user_id, status, updated_at")
+    })
 public class Friendship {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -27,6 +36,10 @@ public class Friendship {
     @Column(name = "mutual_friends_count")
     private Integer mutualFriendsCount = 0;
 
+    // Tên của friend đã chuẩn hóa (UserUtil.nameKey): danh sách bạn bè sắp xếp và tìm theo đầu tên trên index
+    @Column(name = "friend_name_key", length = UserUtil.NAME_KEY_LENGTH)
+    private String friendNameKey;
+
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
@@ -44,10 +57,18 @@ public class Friendship {
     protected void onCreate() {
         createdAt = LocalDateTime.now();
         updatedAt = LocalDateTime.now();
+        refreshFriendNameKey();
     }
 
     @PreUpdate
     protected void onUpdate() {
         updatedAt = LocalDateTime.now();
+        refreshFriendNameKey();
+    }
+
+    private void refreshFriendNameKey() {
+        if (friend != null) {
+            friendNameKey = UserUtil.nameKey(friend.getFirstName(), friend.getLastName());
+        }
     }
 } 
\ No newline at end of file
@@ -13,7 +13,9 @@ import lombok.NoArgsConstructor;
 @Table(name = "likes", indexes = {
     @Index(name = "idx_like_user_id", columnList = "user_id"),
     @Index(name = "idx_like_post_id", columnList = "post_id"),
-    @Index(name = "idx_like_comment_id", columnList = "comment_id")
+    @Index(name = "idx_like_comment_id", columnList = "comment_id"),
+    @Index(name = "idx_like_user_post", columnList = "user_id, post_id"),
+    @Index(name = "idx_like_user_comment", columnList = "user_id, comment_id")
 })
 public class Like {
 
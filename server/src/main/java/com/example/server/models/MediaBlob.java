@@ -0,0 +1,39 @@
+package com.example.server.models;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Một blob media trong kho lưu trữ theo nội dung, kèm số bản ghi PostMedia đang trỏ tới nó.
+ * Khi refCount về 0 thì tệp được xóa khỏi backend.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@Table(name = "media_blobs")
+public class MediaBlob {
+
+    // Khóa trong backend: "ab/cd/<sha256>", chỉ theo nội dung; cùng nội dung tải lên với tên/đuôi khác vẫn dùng chung blob
+    @Id
+    @Column(name = "storage_key", length = 100)
+    private String storageKey;
+
+    @Column(name = "content_hash", length = 64, nullable = false)
+    private String contentHash;
+
+    // MIME type của lần tải lên đầu tiên; FileController dùng khi tên tệp không có đuôi
+    @Column(name = "content_type", length = 100)
+    private String contentType;
+
+    @Column(name = "size", nullable = false)
+    private Long size;
+
+    @Column(name = "ref_count", nullable = false)
+    private Integer refCount = 0;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
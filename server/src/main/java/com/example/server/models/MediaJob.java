@@ -0,0 +1,57 @@
+package com.example.server.models;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Việc xử lý nền cho một video đã tải lên (thumbnail, bản chuyển mã bitrate thấp).
+ * Hàng đợi nằm trong DB nên việc không mất khi khởi động lại; worker nhận việc bằng cập nhật có điều kiện.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@Table(name = "media_jobs", indexes = {
+    @Index(name = "idx_media_job_status", columnList = "status, available_at")
+})
+public class MediaJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Không dùng khóa ngoại: bản ghi PostMedia có thể bị xóa khi việc còn trong hàng đợi
+    @Column(name = "media_id", nullable = false)
+    private Long mediaId;
+
+    @Column(name = "storage_key", length = 100, nullable = false)
+    private String storageKey;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", length = 20, nullable = false)
+    private Status status = Status.PENDING;
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts = 0;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "available_at", nullable = false)
+    private LocalDateTime availableAt = LocalDateTime.now();
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    public enum Status {
+        PENDING, RUNNING, DONE, FAILED
+    }
+}
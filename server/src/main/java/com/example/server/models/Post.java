@@ -6,6 +6,7 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -52,7 +53,10 @@ public class Post {
     @JoinTable(
         name = "post_reposts",
         joinColumns = @JoinColumn(name = "post_id"),
-        inverseJoinColumns = @JoinColumn(name = "user_id")
+        inverseJoinColumns = @JoinColumn(name = "user_id"),
+        // Mỗi người repost một bài tối đa một lần; PostRepository.insertRepost dựa vào khóa này
+        uniqueConstraints = @UniqueConstraint(name = "uk_post_reposts_post_user", columnNames = { "post_id", "user_id" }),
+        indexes = @Index(name = "idx_post_reposts_user_post", columnList = "user_id, post_id")
     )
     private List<User> repostUsers = new ArrayList<>();
 
@@ -63,6 +67,20 @@ public class Post {
     @Column(name = "is_active", nullable = false)
     private Boolean isActive = true;
 
+    // Bộ đếm phi chuẩn hóa: chỉ được thay đổi bằng câu UPDATE nguyên tử trong PostRepository
+    // (updatable = false để lần flush entity không ghi đè giá trị do giao dịch khác vừa tăng)
+    @ColumnDefault("0")
+    @Column(name = "like_count", nullable = false, updatable = false)
+    private Integer likeCount = 0;
+
+    @ColumnDefault("0")
+    @Column(name = "comment_count", nullable = false, updatable = false)
+    private Integer commentCount = 0;
+
+    @ColumnDefault("0")
+    @Column(name = "repost_count", nullable = false, updatable = false)
+    private Integer repostCount = 0;
+
     @CreationTimestamp
     private LocalDateTime createdAt;
 
@@ -32,10 +32,38 @@ public class PostMedia {
     @Column(name = "media_order")
     private Integer mediaOrder;
 
+    // SHA-256 của nội dung tệp tải lên (null với media là URL bên ngoài như Cloudinary)
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    // Khóa blob trong kho media (null với media bên ngoài và tệp tải lên trước khi có kho đếm tham chiếu)
+    @Column(name = "storage_key", length = 100)
+    private String storageKey;
+
+    // MIME type lúc tải lên (khóa blob không còn mang đuôi tệp)
+    @Column(name = "content_type", length = 100)
+    private String contentType;
+
+    // Trạng thái xử lý nền của video; null với ảnh và media bên ngoài
+    @Enumerated(EnumType.STRING)
+    @Column(name = "processing_status", length = 20)
+    private ProcessingStatus processingStatus;
+
+    @Column(name = "thumbnail_url")
+    private String thumbnailUrl;
+
+    // Nhãn các bản chuyển mã đã có, ví dụ "480p,360p" (xem MediaProcessingService.renditionSuffix)
+    @Column(name = "renditions", length = 100)
+    private String renditions;
+
     @Column(name = "created_at")
     private LocalDateTime createdAt = LocalDateTime.now();
 
     public enum MediaType {
         IMAGE, VIDEO
     }
+
+    public enum ProcessingStatus {
+        PENDING, PROCESSING, READY, FAILED
+    }
 }
\ No newline at end of file
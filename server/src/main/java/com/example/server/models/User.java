@@ -4,13 +4,18 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.SQLJoinTableRestriction;
+
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Column;
+import jakarta.persistence.ConstraintMode;
 import jakarta.persistence.Entity;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
+import jakarta.persistence.ForeignKey;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
@@ -152,13 +157,16 @@ public class User {
     )
     private List<User> following = new ArrayList<>();
 
-    // Danh sách bạn bè (friends)
-    @ManyToMany(cascade = {CascadeType.PERSIST, CascadeType.MERGE})
+    // Danh sách bạn bè (friends): chỉ đọc, lấy từ các dòng ACCEPTED của bảng friendships.
+    // Thêm/xóa bạn đi qua FriendshipRepository (một câu lệnh cho cả hai chiều), không sửa danh sách này.
+    @Immutable
+    @ManyToMany
     @JoinTable(
-        name = "user_friends",
-        joinColumns = @JoinColumn(name = "user_id"),
-        inverseJoinColumns = @JoinColumn(name = "friend_id")
+        name = "friendships",
+        joinColumns = @JoinColumn(name = "user_id", foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT)),
+        inverseJoinColumns = @JoinColumn(name = "friend_id", foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     )
+    @SQLJoinTableRestriction("status = 'ACCEPTED'")
     private List<User> friends = new ArrayList<>();
 
     // Work & Education
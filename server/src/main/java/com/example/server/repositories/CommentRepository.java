@@ -1,11 +1,55 @@
 package com.example.server.repositories;
 
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.example.server.models.Comment;
 
 @Repository
 public interface CommentRepository extends JpaRepository<Comment, Long> {
-    
+
+    // Cập nhật nguyên tử các bộ đếm phi chuẩn hóa (không bao giờ xuống dưới 0)
+    @Modifying
+    @Transactional
+    @Query("UPDATE Comment c SET c.likeCount = CASE WHEN c.likeCount + :delta < 0 THEN 0 ELSE c.likeCount + :delta END WHERE c.id = :commentId")
+    int adjustLikeCount(@Param("commentId") Long commentId, @Param("delta") int delta);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Comment c SET c.replyCount = CASE WHEN c.replyCount + :delta < 0 THEN 0 ELSE c.replyCount + :delta END WHERE c.id = :commentId")
+    int adjustReplyCount(@Param("commentId") Long commentId, @Param("delta") int delta);
+
+    // Đối soát theo khoảng ID: chỉ ghi những dòng bị lệch so với bảng likes
+    @Modifying
+    @Transactional
+    @Query("UPDATE Comment c SET c.likeCount = (SELECT COUNT(l) FROM Like l WHERE l.comment.id = c.id) " +
+       "WHERE c.id BETWEEN :fromId AND :toId AND c.likeCount <> (SELECT COUNT(l) FROM Like l WHERE l.comment.id = c.id)")
+    int reconcileLikeCounts(@Param("fromId") Long fromId, @Param("toId") Long toId);
+
+    // MySQL không cho UPDATE comments với subquery trên chính comments, nên số trả lời được đối soát hai bước:
+    // đọc các dòng lệch rồi ghi có điều kiện (bỏ qua nếu giá trị đã bị giao dịch khác thay đổi)
+    interface ReplyCountDrift {
+        Long getId();
+        Integer getStored();
+        Long getActual();
+    }
+
+    @Query("SELECT c.id AS id, c.replyCount AS stored, " +
+       "(SELECT COUNT(r) FROM Comment r WHERE r.parentComment.id = c.id) AS actual FROM Comment c " +
+       "WHERE c.id BETWEEN :fromId AND :toId AND c.replyCount <> (SELECT COUNT(r) FROM Comment r WHERE r.parentComment.id = c.id)")
+    List<ReplyCountDrift> findReplyCountDrift(@Param("fromId") Long fromId, @Param("toId") Long toId);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Comment c SET c.replyCount = :actual WHERE c.id = :commentId AND c.replyCount = :stored")
+    int repairReplyCount(@Param("commentId") Long commentId, @Param("stored") Integer stored, @Param("actual") Integer actual);
+
+    @Query("SELECT COALESCE(MAX(c.id), 0) FROM Comment c")
+    Long findMaxId();
 }
@@ -1,10 +1,20 @@
 package com.example.server.repositories;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.example.server.models.Education;
 
 @Repository
 public interface EducationRepository extends JpaRepository<Education, Long> {
+
+    // [userId, tên trường đã chuẩn hóa] của nhiều người dùng, dùng để chấm điểm gợi ý kết bạn
+    @Query("SELECT DISTINCT x.user.id, LOWER(TRIM(x.school)) FROM Education x " +
+           "WHERE x.user.id IN :userIds AND x.school IS NOT NULL AND TRIM(x.school) <> ''")
+    List<Object[]> findSchoolNamesByUserIdIn(@Param("userIds") Collection<Long> userIds);
 }
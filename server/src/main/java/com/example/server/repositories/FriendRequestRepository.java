@@ -9,4 +9,8 @@ import java.util.List;
 public interface FriendRequestRepository extends JpaRepository<FriendRequest, Long> {
     List<FriendRequest> findByReceiverAndStatus(User receiver, FriendRequest.Status status);
     FriendRequest findBySenderAndReceiver(User sender, User receiver);
+
+    // Theo ID: không cần nạp entity User của hai bên chỉ để so khóa ngoại
+    List<FriendRequest> findByReceiverIdAndStatus(Long receiverId, FriendRequest.Status status);
+    FriendRequest findBySenderIdAndReceiverId(Long senderId, Long receiverId);
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package com.example.server.repositories;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -8,7 +10,6 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
-import org.springframework.transaction.annotation.Transactional;
 
 import com.example.server.models.Friendship;
 import com.example.server.models.Friendship.FriendshipStatus;
@@ -28,46 +29,151 @@ public interface FriendshipRepository extends JpaRepository<Friendship, Long> {
     // Lấy danh sách lời mời kết bạn đã nhận
     List<Friendship> findByFriendAndStatusOrderByCreatedAtDesc(User friend, FriendshipStatus status);
     
-    // Đếm số lượng bạn chung giữa hai người dùng
-    @Query("SELECT COUNT(f1) FROM Friendship f1 JOIN Friendship f2 ON f1.friend = f2.friend " +
-           "WHERE f1.user = :user1 " +
-           "AND f2.user = :user2 AND f1.status = 'ACCEPTED' AND f2.status = 'ACCEPTED'")
-    Integer countMutualFriends(@Param("user1") User user1, @Param("user2") User user2);
+    // Các dòng [userId, friendId, status] giữa userId và từng người trong otherUserIds, theo cả hai chiều
+    @Query("SELECT f.user.id, f.friend.id, f.status FROM Friendship f " +
+           "WHERE (f.user.id = :userId AND f.friend.id IN :otherUserIds) OR (f.friend.id = :userId AND f.user.id IN :otherUserIds)")
+    List<Object[]> findRelationshipsBetween(@Param("userId") Long userId, @Param("otherUserIds") Collection<Long> otherUserIds);
     
-    // Lấy danh sách bạn bè được đề xuất (dựa trên bạn chung)
-    @Query("SELECT f2.user FROM Friendship f1 JOIN Friendship f2 ON f1.friend = f2.friend " +
-           "WHERE f1.user = :user " +
-           "AND f2.user != :user AND f1.status = 'ACCEPTED' AND f2.status = 'ACCEPTED' " +
-           "AND NOT EXISTS (SELECT 1 FROM Friendship f3 WHERE (f3.user = :user AND f3.friend = f2.user) " +
-           "OR (f3.user = f2.user AND f3.friend = :user)) " +
-           "GROUP BY f2.user ORDER BY COUNT(f2.user) DESC")
-    List<User> findFriendSuggestions(@Param("user") User user, Pageable pageable);
-    
-    // Xóa trực tiếp quan hệ bạn bè từ bảng user_friends bằng native query
-    @Modifying
-    @Transactional
-    @Query(value = "DELETE FROM user_friends WHERE user_id = :userId AND friend_id = :friendId", nativeQuery = true)
-    int deleteUserFriendsRelation(@Param("userId") Long userId, @Param("friendId") Long friendId);
-    
-    // Phương pháp xóa bổ sung để đảm bảo dữ liệu được xóa hoàn toàn
-    @Modifying
-    @Transactional
-    @Query(value = "DELETE FROM user_friends WHERE (user_id = :userId AND friend_id = :friendId) OR (user_id = :friendId AND friend_id = :userId)", nativeQuery = true)
-    int forceDeleteUserFriendsRelation(@Param("userId") Long userId, @Param("friendId") Long friendId);
-    
-    // Phương thức kiểm tra sự tồn tại của quan hệ bạn bè trong bảng user_friends
-    @Query(value = "SELECT COUNT(*) FROM user_friends WHERE (user_id = :userId AND friend_id = :friendId) OR (user_id = :friendId AND friend_id = :userId)", nativeQuery = true)
-    int countUserFriendsRelation(@Param("userId") Long userId, @Param("friendId") Long friendId);
-    
-    // Phương thức để xóa quan hệ bạn bè không còn hợp lệ (đã xóa friendship nhưng user_friends vẫn còn)
-    @Modifying
-    @Transactional
-    @Query(value = "DELETE FROM user_friends WHERE (user_id = :userId1 AND friend_id = :userId2) " +
-           "AND NOT EXISTS (SELECT 1 FROM friendships f WHERE " +
-           "((f.user_id = :userId1 AND f.friend_id = :userId2) OR (f.user_id = :userId2 AND f.friend_id = :userId1)) " +
-           "AND f.status = 'ACCEPTED')", nativeQuery = true)
-    int cleanupInvalidUserFriends(@Param("userId1") Long userId1, @Param("userId2") Long userId2);
+    // Mọi quan hệ (mọi trạng thái, cả hai chiều) [userId, friendId] có dính tới các người dùng đã cho
+    @Query("SELECT f.user.id, f.friend.id FROM Friendship f WHERE f.user.id IN :userIds OR f.friend.id IN :userIds")
+    List<Object[]> findRelationshipPairsByUserIdIn(@Param("userIds") Collection<Long> userIds);
     
+    // Ghi cả hai chiều của cặp với cùng trạng thái bằng một câu lệnh (dựa vào uk_friendships_user_friend)
+    @Modifying(flushAutomatically = true)
+    // userNameKey/friendNameKey: UserUtil.nameKey của userId/friendId, ghi vào friend_name_key của dòng chiều ngược lại
+    @Query(value = "INSERT INTO friendships (user_id, friend_id, status, mutual_friends_count, friend_name_key, created_at, updated_at) " +
+           "VALUES (:userId, :friendId, :status, 0, :friendNameKey, NOW(), NOW()), (:friendId, :userId, :status, 0, :userNameKey, NOW(), NOW()) " +
+           "ON DUPLICATE KEY UPDATE status = VALUES(status), friend_name_key = VALUES(friend_name_key), updated_at = VALUES(updated_at)",
+           nativeQuery = true)
+    int upsertEdgePair(@Param("userId") Long userId, @Param("friendId") Long friendId, @Param("status") String status,
+                       @Param("userNameKey") String userNameKey, @Param("friendNameKey") String friendNameKey);
+
+    // Xóa cả hai chiều ACCEPTED của cặp bằng một câu lệnh; các dòng BLOCKED (nếu có) được giữ lại
+    @Modifying(flushAutomatically = true)
+    @Query("DELETE FROM Friendship f WHERE f.status = 'ACCEPTED' AND " +
+           "((f.user.id = :userId AND f.friend.id = :friendId) OR (f.user.id = :friendId AND f.friend.id = :userId))")
+    int deleteAcceptedEdgePair(@Param("userId") Long userId, @Param("friendId") Long friendId);
+
+    // Xóa các dòng theo ID (dòng trùng hoặc lệch do bộ đối chiếu phát hiện)
+    @Modifying(flushAutomatically = true)
+    @Query("DELETE FROM Friendship f WHERE f.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Mọi dòng của một cặp (cả hai chiều), cũ trước
+    @Query("SELECT f FROM Friendship f WHERE (f.user.id = :userId AND f.friend.id = :friendId) " +
+           "OR (f.user.id = :friendId AND f.friend.id = :userId) ORDER BY f.id")
+    List<Friendship> findPairRows(@Param("userId") Long userId, @Param("friendId") Long friendId);
+
+    @Query("SELECT MAX(f.user.id) FROM Friendship f")
+    Long findMaxUserId();
+
+    // Cặp [userId, friendId] có dòng ACCEPTED một chiều nhưng chiều ngược lại thiếu hoặc khác ACCEPTED, trong khoảng user_id
+    @Query("SELECT f.user.id, f.friend.id FROM Friendship f LEFT JOIN Friendship r ON r.user = f.friend AND r.friend = f.user " +
+           "WHERE f.status = 'ACCEPTED' AND f.user.id > :fromUserId AND f.user.id <= :toUserId " +
+           "AND (r.id IS NULL OR r.status <> 'ACCEPTED')")
+    List<Object[]> findAsymmetricEdges(@Param("fromUserId") Long fromUserId, @Param("toUserId") Long toUserId);
+
+    // Cặp [userId, friendId] có nhiều hơn một dòng cùng chiều, trong khoảng user_id (chỉ xảy ra khi thiếu unique key)
+    @Query("SELECT f.user.id, f.friend.id FROM Friendship f WHERE f.user.id > :fromUserId AND f.user.id <= :toUserId " +
+           "GROUP BY f.user.id, f.friend.id HAVING COUNT(f) > 1")
+    List<Object[]> findDuplicateEdges(@Param("fromUserId") Long fromUserId, @Param("toUserId") Long toUserId);
+
+    // Lấy ID bạn bè (đã chấp nhận) của một người dùng mà không nạp entity
+    @Query("SELECT f.friend.id FROM Friendship f WHERE f.user.id = :userId AND f.status = 'ACCEPTED'")
+    List<Long> findFriendIdsByUserId(@Param("userId") Long userId);
+
+    // Các cạnh ACCEPTED [userId, friendId] của nhiều người dùng một lượt
+    @Query("SELECT f.user.id, f.friend.id FROM Friendship f WHERE f.user.id IN :userIds AND f.status = 'ACCEPTED'")
+    List<Object[]> findAcceptedEdgesByUserIdIn(@Param("userIds") Collection<Long> userIds);
+
+    // Có dòng ACCEPTED theo chiều userId -> friendId
+    @Query("SELECT COUNT(f) > 0 FROM Friendship f WHERE f.user.id = :userId AND f.friend.id = :friendId AND f.status = 'ACCEPTED'")
+    boolean existsAcceptedEdge(@Param("userId") Long userId, @Param("friendId") Long friendId);
+
+    // Các cạnh ACCEPTED [userId, friendId] sau cạnh (userId, friendId) theo thứ tự (user_id, friend_id): phân trang keyset để nạp đồ thị bạn bè
+    @Query("SELECT f.user.id, f.friend.id FROM Friendship f WHERE f.status = 'ACCEPTED' " +
+           "AND (f.user.id > :userId OR (f.user.id = :userId AND f.friend.id > :friendId)) " +
+           "ORDER BY f.user.id, f.friend.id")
+    List<Object[]> findAcceptedEdgesAfter(@Param("userId") Long userId, @Param("friendId") Long friendId, Pageable pageable);
+
+    // Các dòng BLOCKED [id, userId, friendId] sau dòng afterId: phân trang keyset để dựng Bloom filter danh sách chặn
+    @Query("SELECT f.id, f.user.id, f.friend.id FROM Friendship f WHERE f.status = 'BLOCKED' AND f.id > :afterId ORDER BY f.id")
+    List<Object[]> findBlockedEdgesAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    // Người mà userId đã chặn (theo uk_friendships_user_friend)
+    @Query("SELECT f.friend.id FROM Friendship f WHERE f.user.id = :userId AND f.status = 'BLOCKED'")
+    List<Long> findBlockedIdsByUserId(@Param("userId") Long userId);
+
+    // Người đã chặn userId (theo idx_friendships_friend_status)
+    @Query("SELECT f.user.id FROM Friendship f WHERE f.friend.id = :userId AND f.status = 'BLOCKED'")
+    List<Long> findBlockerIdsByUserId(@Param("userId") Long userId);
+
+    // Số bạn và tổng ID bạn của từng người dùng, dùng để đối chiếu chỉ mục đồ thị bạn bè
+    interface FriendDigest {
+        Long getUserId();
+        Long getDegree();
+        Long getIdSum();
+    }
+
+    @Query("SELECT f.user.id AS userId, COUNT(DISTINCT f.friend.id) AS degree, SUM(DISTINCT f.friend.id) AS idSum FROM Friendship f " +
+           "WHERE f.status = 'ACCEPTED' AND f.user.id > :afterUserId GROUP BY f.user.id ORDER BY f.user.id")
+    List<FriendDigest> findFriendDigestsAfter(@Param("afterUserId") Long afterUserId, Pageable pageable);
+
+    // Một người trong danh sách bạn bè: ID, khóa tên đã chuẩn hóa và thời điểm kết bạn
+    interface FriendEntry {
+        Long getFriendId();
+        String getNameKey();
+        LocalDateTime getSince();
+    }
+
+    // Bạn bè có tên bắt đầu bằng prefix, sau (nameKey, friendId) theo tên tăng dần: quét trên idx_friendships_user_name
+    @Query("SELECT f.friend.id AS friendId, f.friendNameKey AS nameKey, f.updatedAt AS since FROM Friendship f " +
+           "WHERE f.user.id = :userId AND f.status = 'ACCEPTED' AND f.friendNameKey LIKE :prefix " +
+           "AND (f.friendNameKey > :nameKey OR (f.friendNameKey = :nameKey AND f.friend.id > :friendId)) " +
+           "ORDER BY f.friendNameKey, f.friend.id")
+    List<FriendEntry> findFriendsByNameAfter(@Param("userId") Long userId, @Param("prefix") String prefix,
+                                             @Param("nameKey") String nameKey, @Param("friendId") Long friendId,
+                                             Pageable pageable);
+
+    // Như trên nhưng chỉ trong (inGroup = true) hoặc ngoài (false) nhóm friendIds: tách người đang online
+    @Query("SELECT f.friend.id AS friendId, f.friendNameKey AS nameKey, f.updatedAt AS since FROM Friendship f " +
+           "WHERE f.user.id = :userId AND f.status = 'ACCEPTED' AND f.friendNameKey LIKE :prefix " +
+           "AND f.friend.id IN :friendIds " +
+           "AND (f.friendNameKey > :nameKey OR (f.friendNameKey = :nameKey AND f.friend.id > :friendId)) " +
+           "ORDER BY f.friendNameKey, f.friend.id")
+    List<FriendEntry> findFriendsByNameAfterIn(@Param("userId") Long userId, @Param("prefix") String prefix,
+                                               @Param("friendIds") Collection<Long> friendIds,
+                                               @Param("nameKey") String nameKey, @Param("friendId") Long friendId,
+                                               Pageable pageable);
+
+    @Query("SELECT f.friend.id AS friendId, f.friendNameKey AS nameKey, f.updatedAt AS since FROM Friendship f " +
+           "WHERE f.user.id = :userId AND f.status = 'ACCEPTED' AND f.friendNameKey LIKE :prefix " +
+           "AND f.friend.id NOT IN :friendIds " +
+           "AND (f.friendNameKey > :nameKey OR (f.friendNameKey = :nameKey AND f.friend.id > :friendId)) " +
+           "ORDER BY f.friendNameKey, f.friend.id")
+    List<FriendEntry> findFriendsByNameAfterNotIn(@Param("userId") Long userId, @Param("prefix") String prefix,
+                                                  @Param("friendIds") Collection<Long> friendIds,
+                                                  @Param("nameKey") String nameKey, @Param("friendId") Long friendId,
+                                                  Pageable pageable);
+
+    // Bạn bè có tên bắt đầu bằng prefix, trước (since, friendId) theo thời điểm kết bạn giảm dần: quét trên idx_friendships_user_since
+    @Query("SELECT f.friend.id AS friendId, f.friendNameKey AS nameKey, f.updatedAt AS since FROM Friendship f " +
+           "WHERE f.user.id = :userId AND f.status = 'ACCEPTED' AND f.friendNameKey LIKE :prefix " +
+           "AND (f.updatedAt < :since OR (f.updatedAt = :since AND f.friend.id < :friendId)) " +
+           "ORDER BY f.updatedAt DESC, f.friend.id DESC")
+    List<FriendEntry> findFriendsBySinceBefore(@Param("userId") Long userId, @Param("prefix") String prefix,
+                                               @Param("since") LocalDateTime since, @Param("friendId") Long friendId,
+                                               Pageable pageable);
+
+    // Người đổi tên: cập nhật khóa tên trên mọi dòng trỏ tới họ (một câu lệnh, theo idx_friendships_friend_status)
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Friendship f SET f.friendNameKey = :nameKey WHERE f.friend.id = :friendId")
+    int updateFriendNameKey(@Param("friendId") Long friendId, @Param("nameKey") String nameKey);
+
+    // Người có dòng friendships chưa có khóa tên (dữ liệu trước khi thêm cột)
+    @Query("SELECT DISTINCT f.friend.id FROM Friendship f WHERE f.friendNameKey IS NULL")
+    List<Long> findFriendIdsMissingNameKey(Pageable pageable);
+
     // Tìm các lời mời kết bạn đang chờ xử lý giữa hai người dùng
     @Query("SELECT f FROM Friendship f WHERE " +
            "((f.user.id = :userId1 AND f.friend.id = :userId2) OR (f.user.id = :userId2 AND f.friend.id = :userId1)) " +
@@ -9,6 +9,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -31,4 +32,11 @@ public interface GroupMemberRepository extends JpaRepository<GroupMember, Long>
     Pageable pageable);
 
     List<GroupMember> findByGroupIdAndRole(Long groupId, Role admin);
+
+    @Query("SELECT gm.user.id FROM GroupMember gm WHERE gm.group.id = :groupId")
+    List<Long> findUserIdsByGroupId(@Param("groupId") Long groupId);
+
+    // [userId, groupId] của nhiều người dùng một lượt
+    @Query("SELECT gm.user.id, gm.group.id FROM GroupMember gm WHERE gm.user.id IN :userIds")
+    List<Object[]> findGroupIdsByUserIdIn(@Param("userIds") Collection<Long> userIds);
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.example.server.repositories;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,10 +19,17 @@ public interface LikeRepository extends JpaRepository<Like, Long> {
     public List<Like> findByPostId(@Param("postId") Long postId);
 
     List<Like> findByCommentId(Long commentId);
-    void deleteByPostIdAndUserId(Long postId, Long userId);
-    void deleteByCommentIdAndUserId(Long commentId, Long userId);
+    long deleteByPostIdAndUserId(Long postId, Long userId);
+    long deleteByCommentIdAndUserId(Long commentId, Long userId);
 
     public Optional<Like> findByPostIdAndUserId(Long postId, Long userId);
 
     public Optional<Like> findByCommentIdAndUserId(Long commentId, Long userId);
+
+    // Tra cứu "đã like" cho cả danh sách trong một truy vấn (đi theo idx_like_user_post / idx_like_user_comment)
+    @Query("SELECT l.post.id FROM Like l WHERE l.user.id = :userId AND l.post.id IN :postIds")
+    List<Long> findLikedPostIds(@Param("userId") Long userId, @Param("postIds") Collection<Long> postIds);
+
+    @Query("SELECT l.comment.id FROM Like l WHERE l.user.id = :userId AND l.comment.id IN :commentIds")
+    List<Long> findLikedCommentIds(@Param("userId") Long userId, @Param("commentIds") Collection<Long> commentIds);
 }
\ No newline at end of file
@@ -0,0 +1,25 @@
+package com.example.server.repositories;
+
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.server.models.MediaBlob;
+
+import jakarta.persistence.LockModeType;
+
+@Repository
+public interface MediaBlobRepository extends JpaRepository<MediaBlob, String> {
+
+    // Khóa dòng trong suốt giao dịch để tăng/giảm refCount và ghi/xóa tệp không bị chen ngang
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM MediaBlob b WHERE b.storageKey = :storageKey")
+    Optional<MediaBlob> findForUpdate(@Param("storageKey") String storageKey);
+
+    @Query("SELECT b.contentType FROM MediaBlob b WHERE b.storageKey = :storageKey")
+    Optional<String> findContentTypeByStorageKey(@Param("storageKey") String storageKey);
+}
@@ -0,0 +1,44 @@
+package com.example.server.repositories;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.server.models.MediaJob;
+
+@Repository
+public interface MediaJobRepository extends JpaRepository<MediaJob, Long> {
+
+    @Query("SELECT j.id FROM MediaJob j WHERE j.status = :status AND j.availableAt <= :now ORDER BY j.id")
+    List<Long> findReadyJobIds(@Param("status") MediaJob.Status status, @Param("now") LocalDateTime now, Pageable pageable);
+
+    // Nhận việc: chỉ một worker/instance cập nhật được dòng PENDING -> RUNNING
+    @Modifying
+    @Transactional
+    @Query("UPDATE MediaJob j SET j.status = :running, j.attempts = j.attempts + 1, j.startedAt = :now " +
+           "WHERE j.id = :id AND j.status = :pending")
+    int claim(@Param("id") Long id, @Param("pending") MediaJob.Status pending,
+              @Param("running") MediaJob.Status running, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE MediaJob j SET j.status = :status, j.lastError = :error, j.availableAt = :availableAt, j.finishedAt = :finishedAt " +
+           "WHERE j.id = :id")
+    int finish(@Param("id") Long id, @Param("status") MediaJob.Status status, @Param("error") String error,
+               @Param("availableAt") LocalDateTime availableAt, @Param("finishedAt") LocalDateTime finishedAt);
+
+    // Việc RUNNING quá hạn (instance chết giữa chừng) được trả lại hàng đợi
+    @Modifying
+    @Transactional
+    @Query("UPDATE MediaJob j SET j.status = :pending, j.availableAt = :now " +
+           "WHERE j.status = :running AND j.startedAt < :staleBefore")
+    int requeueStale(@Param("pending") MediaJob.Status pending, @Param("running") MediaJob.Status running,
+                     @Param("now") LocalDateTime now, @Param("staleBefore") LocalDateTime staleBefore);
+}
@@ -1,7 +1,14 @@
 package com.example.server.repositories;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.example.server.models.PostMedia;
 
@@ -9,5 +16,20 @@ import com.example.server.models.PostMedia;
 public interface PostMediaRepository extends JpaRepository<PostMedia, Long> {
 
     void deleteByPostId(Long postId);
+
+    @Query("SELECT m FROM PostMedia m WHERE m.post.id IN :postIds ORDER BY m.id")
+    List<PostMedia> findByPostIdIn(@Param("postIds") Collection<Long> postIds);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE PostMedia m SET m.processingStatus = :status WHERE m.id = :id")
+    int updateProcessingStatus(@Param("id") Long id, @Param("status") PostMedia.ProcessingStatus status);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE PostMedia m SET m.processingStatus = :status, m.thumbnailUrl = :thumbnailUrl, m.renditions = :renditions " +
+           "WHERE m.id = :id")
+    int completeProcessing(@Param("id") Long id, @Param("status") PostMedia.ProcessingStatus status,
+                           @Param("thumbnailUrl") String thumbnailUrl, @Param("renditions") String renditions);
     
 }
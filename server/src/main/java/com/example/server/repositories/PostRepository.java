@@ -1,11 +1,17 @@
 package com.example.server.repositories;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.example.server.models.Post;
 import com.example.server.models.Post.Privacy;
@@ -103,4 +109,138 @@ public interface PostRepository extends JpaRepository<Post, Long> {
     Page<Post> findByUserIdOrFriendsOrPublicOrGroupMembersAndIsActiveFalse(@Param("userId") Long userId, Pageable pageable);
 
     Page<Post> findByPrivacyAndGroupIsNullAndIsActiveFalse(Privacy public1, Pageable pageable);
+
+    // Projection (id, createdAt) dùng để dựng lại timeline trong Redis, không kèm COUNT
+    interface TimelineEntry {
+        Long getId();
+        LocalDateTime getCreatedAt();
+    }
+
+    // Bài viết cá nhân hóa của home timeline: bài của chính user, bài FRIENDS của bạn bè (kể cả bài đăng trong nhóm,
+    // giống truy vấn feed) và bài trong nhóm đã tham gia. Bài PUBLIC ngoài nhóm nằm ở timeline công khai dùng chung nên được loại ra ở đây.
+    @Query("SELECT p.id AS id, p.createdAt AS createdAt FROM Post p WHERE p.isActive = false " +
+       "AND NOT (p.privacy = 'PUBLIC' AND p.group IS NULL) AND (" +
+       "p.user.id = :userId OR " +
+       "(p.privacy = 'FRIENDS' AND p.user.id IN (SELECT f.friend.id FROM Friendship f WHERE f.user.id = :userId AND f.status = 'ACCEPTED')) OR " +
+       "(p.group IN (SELECT gm.group FROM GroupMember gm WHERE gm.user.id = :userId))" +
+       ") ORDER BY p.createdAt DESC, p.id DESC")
+    List<TimelineEntry> findHomeTimelineEntries(@Param("userId") Long userId, Pageable pageable);
+
+    @Query("SELECT p.id AS id, p.createdAt AS createdAt FROM Post p " +
+       "WHERE p.privacy = 'PUBLIC' AND p.group IS NULL AND p.isActive = false ORDER BY p.createdAt DESC, p.id DESC")
+    List<TimelineEntry> findPublicTimelineEntries(Pageable pageable);
+
+    // Bài FRIENDS của authorId mà viewerId chỉ thấy nhờ quan hệ bạn bè: bỏ qua bài trong nhóm viewerId đã tham gia
+    @Query("SELECT p.id AS id, p.createdAt AS createdAt FROM Post p " +
+       "WHERE p.user.id = :authorId AND p.privacy = 'FRIENDS' AND p.isActive = false " +
+       "AND (p.group IS NULL OR p.group NOT IN (SELECT gm.group FROM GroupMember gm WHERE gm.user.id = :viewerId)) " +
+       "ORDER BY p.createdAt DESC, p.id DESC")
+    List<TimelineEntry> findFriendsTimelineEntries(@Param("authorId") Long authorId, @Param("viewerId") Long viewerId, Pageable pageable);
+
+    // Bài trong nhóm; khi có viewerId thì chỉ lấy bài viewerId thấy nhờ là thành viên (trừ bài của chính họ và bài FRIENDS của bạn bè)
+    @Query("SELECT p.id AS id, p.createdAt AS createdAt FROM Post p " +
+       "WHERE p.group.id = :groupId AND p.isActive = false AND (:viewerId IS NULL OR (p.user.id <> :viewerId AND NOT (" +
+       "p.privacy = 'FRIENDS' AND p.user.id IN (SELECT f.friend.id FROM Friendship f WHERE f.user.id = :viewerId AND f.status = 'ACCEPTED')))) " +
+       "ORDER BY p.createdAt DESC, p.id DESC")
+    List<TimelineEntry> findTimelineEntriesByGroupId(@Param("groupId") Long groupId, @Param("viewerId") Long viewerId, Pageable pageable);
+
+    // Phân trang keyset theo (createdAt, id) giảm dần: không OFFSET, không COUNT(*), đi theo idx_post_created_at
+    String BEFORE_CURSOR = "(p.createdAt < :createdAt OR (p.createdAt = :createdAt AND p.id < :id))";
+
+    @Query("SELECT p FROM Post p WHERE p.isActive = false AND (" +
+       "p.user.id = :userId OR " +
+       "(p.privacy = 'FRIENDS' AND p.user.id IN (SELECT f.friend.id FROM Friendship f WHERE f.user.id = :userId AND f.status = 'ACCEPTED')) OR " +
+       "(p.privacy = 'PUBLIC' AND p.group IS NULL) OR " +
+       "(p.group IN (SELECT gm.group FROM GroupMember gm WHERE gm.user.id = :userId))" +
+       ") AND " + BEFORE_CURSOR + " ORDER BY p.createdAt DESC, p.id DESC")
+    List<Post> findFeedBefore(@Param("userId") Long userId, @Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Pageable pageable);
+
+    @Query("SELECT p FROM Post p WHERE p.privacy = 'PUBLIC' AND p.group IS NULL AND p.isActive = false AND " + BEFORE_CURSOR +
+       " ORDER BY p.createdAt DESC, p.id DESC")
+    List<Post> findPublicFeedBefore(@Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Pageable pageable);
+
+    @Query("SELECT p FROM Post p WHERE p.user.id = :userId AND p.isActive = false AND " + BEFORE_CURSOR +
+       " ORDER BY p.createdAt DESC, p.id DESC")
+    List<Post> findByUserIdAndIsActiveFalseBefore(@Param("userId") Long userId, @Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Pageable pageable);
+
+    @Query("SELECT p FROM Post p WHERE p.user.id = :userId AND p.privacy = :privacy AND p.isActive = false AND " + BEFORE_CURSOR +
+       " ORDER BY p.createdAt DESC, p.id DESC")
+    List<Post> findByUserIdAndPrivacyAndIsActiveFalseBefore(@Param("userId") Long userId, @Param("privacy") Post.Privacy privacy, @Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Pageable pageable);
+
+    @Query("SELECT p FROM Post p JOIN p.repostUsers u WHERE u.id = :userId AND p.isActive = false AND " + BEFORE_CURSOR +
+       " ORDER BY p.createdAt DESC, p.id DESC")
+    List<Post> findActivePostsRepostedByUserBefore(@Param("userId") Long userId, @Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Pageable pageable);
+
+    @Query("SELECT p FROM Post p WHERE p.group.id = :groupId AND p.isActive = false AND " + BEFORE_CURSOR +
+       " ORDER BY p.createdAt DESC, p.id DESC")
+    List<Post> findByGroupIdAndIsActiveFalseBefore(@Param("groupId") Long groupId, @Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Pageable pageable);
+
+    // Các truy vấn gom nhóm cho PostDtoMapper.toPostDtos: mỗi loại dữ liệu một câu lệnh cho cả trang
+    interface PostUser {
+        Long getPostId();
+        Long getUserId();
+    }
+
+    @Query("SELECT p.id AS postId, u.id AS userId FROM Post p JOIN p.repostUsers u WHERE p.id IN :postIds")
+    List<PostUser> findRepostUsersByPostIds(@Param("postIds") Collection<Long> postIds);
+
+    @Query("SELECT p.id FROM Post p JOIN p.repostUsers u WHERE u.id = :userId AND p.id IN :postIds")
+    List<Long> findRepostedPostIds(@Param("userId") Long userId, @Param("postIds") Collection<Long> postIds);
+
+    // Repost/bỏ repost ghi thẳng vào bảng nối thay vì nạp cả danh sách repostUsers (đi theo uk_post_reposts_post_user)
+    @Query("SELECT COUNT(u) > 0 FROM Post p JOIN p.repostUsers u WHERE p.id = :postId AND u.id = :userId")
+    boolean existsRepost(@Param("postId") Long postId, @Param("userId") Long userId);
+
+    // Hai request repost đồng thời: khóa duy nhất bỏ qua dòng trùng và trả về 0
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO post_reposts (post_id, user_id) VALUES (:postId, :userId)", nativeQuery = true)
+    int insertRepost(@Param("postId") Long postId, @Param("userId") Long userId);
+
+    @Modifying
+    @Query(value = "DELETE FROM post_reposts WHERE post_id = :postId AND user_id = :userId", nativeQuery = true)
+    int deleteRepost(@Param("postId") Long postId, @Param("userId") Long userId);
+
+    // Cập nhật nguyên tử các bộ đếm phi chuẩn hóa (không bao giờ xuống dưới 0)
+    @Modifying
+    @Transactional
+    @Query("UPDATE Post p SET p.likeCount = CASE WHEN p.likeCount + :delta < 0 THEN 0 ELSE p.likeCount + :delta END WHERE p.id = :postId")
+    int adjustLikeCount(@Param("postId") Long postId, @Param("delta") int delta);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Post p SET p.commentCount = CASE WHEN p.commentCount + :delta < 0 THEN 0 ELSE p.commentCount + :delta END WHERE p.id = :postId")
+    int adjustCommentCount(@Param("postId") Long postId, @Param("delta") int delta);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Post p SET p.repostCount = CASE WHEN p.repostCount + :delta < 0 THEN 0 ELSE p.repostCount + :delta END WHERE p.id = :postId")
+    int adjustRepostCount(@Param("postId") Long postId, @Param("delta") int delta);
+
+    // Đếm lại từ bảng gốc cho một bài viết (dùng khi xóa bình luận kéo theo cả cây trả lời)
+    @Modifying
+    @Transactional
+    @Query("UPDATE Post p SET p.commentCount = (SELECT COUNT(c) FROM Comment c WHERE c.post.id = p.id) WHERE p.id = :postId")
+    int recountComments(@Param("postId") Long postId);
+
+    // Đối soát theo khoảng ID: chỉ ghi những dòng bị lệch so với bảng gốc
+    @Modifying
+    @Transactional
+    @Query("UPDATE Post p SET p.likeCount = (SELECT COUNT(l) FROM Like l WHERE l.post.id = p.id) " +
+       "WHERE p.id BETWEEN :fromId AND :toId AND p.likeCount <> (SELECT COUNT(l) FROM Like l WHERE l.post.id = p.id)")
+    int reconcileLikeCounts(@Param("fromId") Long fromId, @Param("toId") Long toId);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Post p SET p.commentCount = (SELECT COUNT(c) FROM Comment c WHERE c.post.id = p.id) " +
+       "WHERE p.id BETWEEN :fromId AND :toId AND p.commentCount <> (SELECT COUNT(c) FROM Comment c WHERE c.post.id = p.id)")
+    int reconcileCommentCounts(@Param("fromId") Long fromId, @Param("toId") Long toId);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Post p SET p.repostCount = SIZE(p.repostUsers) " +
+       "WHERE p.id BETWEEN :fromId AND :toId AND p.repostCount <> SIZE(p.repostUsers)")
+    int reconcileRepostCounts(@Param("fromId") Long fromId, @Param("toId") Long toId);
+
+    @Query("SELECT COALESCE(MAX(p.id), 0) FROM Post p")
+    Long findMaxId();
 }
@@ -1,12 +1,16 @@
 package com.example.server.repositories;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.example.server.models.User;
 
@@ -18,6 +22,30 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     User findUserById(Long userId);
 
+    // Thông tin gọn để nhúng người dùng vào bài viết, bình luận, hội thoại, danh sách bạn bè
+    interface UserSummary {
+        Long getId();
+        String getFirstName();
+        String getLastName();
+        String getImage();
+    }
+
+    // Chỉ các cột của UserSummary, một câu lệnh cho cả danh sách, không nạp entity
+    @Query("SELECT u.id AS id, u.firstName AS firstName, u.lastName AS lastName, u.image AS image " +
+           "FROM User u WHERE u.id IN :ids")
+    List<UserSummary> findSummariesByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Trạng thái tài khoản để xác thực request: còn tồn tại, có bị khóa không, quyền hiện tại
+    interface AccountStatus {
+        Long getId();
+        String getEmail();
+        Boolean getAdmin();
+        Boolean getIsActive();
+    }
+
+    @Query("SELECT u.id AS id, u.email AS email, u.admin AS admin, u.isActive AS isActive FROM User u WHERE u.id = :id")
+    AccountStatus findAccountStatusById(@Param("id") Long id);
+
     User existsByEmail(String email);
 
     @Query("SELECT u FROM User u WHERE " +
@@ -103,4 +131,19 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * Tìm user theo trạng thái kích hoạt
      */
     Page<User> findByIsActive(boolean isActive, Pageable pageable);
+
+    // Ghi trạng thái hiện diện theo lô (PresenceService): chỉ hai cột, không nạp entity
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.isOnline = :online, u.lastSeen = :lastSeen WHERE u.id IN :ids")
+    int updatePresence(@Param("ids") Collection<Long> ids, @Param("online") int online,
+        @Param("lastSeen") LocalDateTime lastSeen);
+
+    // Trong userIds, những người mà userId đang theo dõi (bảng user_following)
+    @Query("SELECT f.id FROM User u JOIN u.following f WHERE u.id = :userId AND f.id IN :userIds")
+    List<Long> findFollowingIdsAmong(@Param("userId") Long userId, @Param("userIds") Collection<Long> userIds);
+
+    // Trong userIds, những người đang theo dõi userId
+    @Query("SELECT u.id FROM User u JOIN u.following f WHERE f.id = :userId AND u.id IN :userIds")
+    List<Long> findFollowerIdsAmong(@Param("userId") Long userId, @Param("userIds") Collection<Long> userIds);
 }
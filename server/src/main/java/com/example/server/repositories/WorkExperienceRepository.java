@@ -1,10 +1,20 @@
 package com.example.server.repositories;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.example.server.models.WorkExperience;
 
 @Repository
 public interface WorkExperienceRepository extends JpaRepository<WorkExperience, Long> {
+
+    // [userId, tên công ty đã chuẩn hóa] của nhiều người dùng, dùng để chấm điểm gợi ý kết bạn
+    @Query("SELECT DISTINCT x.user.id, LOWER(TRIM(x.company)) FROM WorkExperience x " +
+           "WHERE x.user.id IN :userIds AND x.company IS NOT NULL AND TRIM(x.company) <> ''")
+    List<Object[]> findCompanyNamesByUserIdIn(@Param("userIds") Collection<Long> userIds);
 }
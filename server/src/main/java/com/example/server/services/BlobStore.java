@@ -0,0 +1,27 @@
+package com.example.server.services;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Backend lưu blob media theo khóa. Hiện dùng hệ thống tệp cục bộ;
+ * object store (S3, MinIO...) chỉ cần cài đặt lại interface này.
+ */
+public interface BlobStore {
+
+    // Tệp tạm để ghi luồng tải lên, nằm cùng hệ thống tệp với kho để put() đổi tên được nguyên tử
+    Path createStagingFile() throws IOException;
+
+    boolean exists(String key);
+
+    // Đưa tệp tạm vào kho dưới khóa key; trả về false (và xóa tệp tạm) nếu khóa đã có sẵn
+    boolean put(String key, Path stagedFile) throws IOException;
+
+    // Tệp cục bộ để đọc nội dung blob (backend từ xa sẽ tải về tệp tạm); người gọi không được sửa tệp này
+    Path localPath(String key) throws IOException;
+
+    // Xóa blob cùng các blob dẫn xuất của nó (khóa dạng key + ".<hậu tố>", ví dụ thumbnail, bản chuyển mã)
+    void delete(String key) throws IOException;
+
+    String publicUrl(String key);
+}
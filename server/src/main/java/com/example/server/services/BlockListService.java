@@ -0,0 +1,30 @@
+package com.example.server.services;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Chỉ mục danh sách chặn: với mỗi người dùng, tập ID những người họ đã chặn hoặc đã chặn họ (dòng BLOCKED của
+ * bảng friendships, theo cả hai chiều). Tập chính xác nằm trong Redis (nạp từ database khi thiếu); trước đó mỗi
+ * node giữ một Bloom filter trong bộ nhớ gồm mọi người có dính tới quan hệ chặn, nên phần lớn người dùng (không
+ * chặn ai, không bị ai chặn) được trả lời ngay mà không cần gọi Redis. Các service lọc trang kết quả bằng chỉ mục
+ * này thay vì thêm anti-join vào truy vấn.
+ */
+public interface BlockListService {
+
+    // Một trong hai người đã chặn người kia
+    boolean isBlocked(Long userId, Long otherUserId);
+
+    // ID những người mà userId không được thấy và không được thấy userId; rỗng với đa số người dùng
+    Set<Long> hiddenFrom(Long userId);
+
+    // Bỏ các phần tử có chủ sở hữu nằm trong hiddenFrom(viewerId), giữ nguyên thứ tự; tra chỉ mục một lần cho cả trang
+    <T> List<T> filterVisible(Long viewerId, List<T> items, Function<T, Long> ownerId);
+
+    // Quan hệ chặn giữa hai người vừa thay đổi: sau khi giao dịch commit, làm mới tập của cả hai và báo cho các node khác
+    void onBlockChanged(Long userId, Long otherUserId);
+
+    // Dựng lại Bloom filter từ bảng friendships (bỏ các bit của quan hệ chặn đã gỡ)
+    void reload();
+}
@@ -0,0 +1,45 @@
+package com.example.server.services;
+
+/**
+ * Hủy cache có chọn lọc theo phụ thuộc thay cho @CacheEvict(allEntries = true).
+ * Khi tính một giá trị được cache, phương thức @Cacheable ghi lại nó phụ thuộc vào thực thể nào (track);
+ * khi ghi, chỉ các khóa phụ thuộc vào thực thể vừa đổi bị xóa (invalidate). Chỉ mục lưu trong Redis
+ * nên việc ghi ở một instance cũng hủy được khóa do instance khác tạo ra.
+ */
+public interface CacheInvalidationService {
+
+    // Hồ sơ người dùng
+    static String user(Long userId) {
+        return "user:" + userId;
+    }
+
+    // Danh sách bạn bè của một người dùng
+    static String friends(Long userId) {
+        return "friends:" + userId;
+    }
+
+    // Quan hệ giữa hai người dùng (bạn bè, lời mời); không phụ thuộc thứ tự
+    static String pair(Long userId1, Long userId2) {
+        return userId1 <= userId2 ? "pair:" + userId1 + ":" + userId2 : "pair:" + userId2 + ":" + userId1;
+    }
+
+    // Bài viết và các tương tác trên nó
+    static String post(Long postId) {
+        return "post:" + postId;
+    }
+
+    // Bình luận và các tương tác trên nó
+    static String comment(Long commentId) {
+        return "comment:" + commentId;
+    }
+
+    // Ghi nhận khóa cacheName/key phụ thuộc các thực thể đã cho; gọi trong thân phương thức @Cacheable(sync = true),
+    // việc đăng ký chạy sau khi giá trị đã được ghi vào cache
+    void track(String cacheName, Object key, String... dependencies);
+
+    // Xóa mọi khóa phụ thuộc các thực thể đã cho; trong giao dịch thì chỉ xóa sau khi commit
+    void invalidate(String... dependencies);
+
+    // Xóa trực tiếp các khóa đã biết (cache đặt khóa theo id thực thể); cũng chờ commit như invalidate
+    void evict(String cacheName, Object... keys);
+}
@@ -0,0 +1,11 @@
+package com.example.server.services;
+
+/**
+ * Đối soát các bộ đếm phi chuẩn hóa (like/bình luận/repost của bài viết, like/trả lời của bình luận)
+ * với bảng gốc, sửa những dòng bị lệch.
+ */
+public interface CounterReconciliationService {
+
+    // Trả về số dòng đã được sửa
+    int reconcileCounters();
+}
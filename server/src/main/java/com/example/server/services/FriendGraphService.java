@@ -0,0 +1,48 @@
+package com.example.server.services;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Chỉ mục đồ thị bạn bè trong bộ nhớ của node: mỗi người dùng một mảng long[] đã sắp xếp chứa ID bạn bè
+ * (các dòng ACCEPTED của bảng friendships). Nạp khi khởi động, cập nhật sau commit khi quan hệ thay đổi
+ * (kể cả thay đổi trên node khác, qua Redis pub/sub) và được đối chiếu định kỳ với bảng friendships.
+ * Khi chỉ mục chưa nạp xong các phương thức tự truy vấn database nên luôn trả lời được.
+ */
+public interface FriendGraphService {
+
+    // Chỉ mục đã nạp xong và đang được dùng để trả lời
+    boolean isReady();
+
+    // Hai người là bạn của nhau (có dòng ACCEPTED theo cả hai chiều)
+    boolean areFriends(Long userId, Long otherUserId);
+
+    // Số bạn của userId
+    int degree(Long userId);
+
+    // ID bạn bè của userId, tăng dần; mảng trả về không được sửa
+    long[] friendIds(Long userId);
+
+    // friendIds của nhiều người một lượt (một truy vấn khi chỉ mục chưa sẵn sàng)
+    Map<Long, long[]> friendIds(Collection<Long> userIds);
+
+    // Người dùng có ít nhất một bạn, tăng dần; rỗng khi chỉ mục chưa sẵn sàng
+    long[] userIds();
+
+    // ID bạn chung của hai người, tăng dần
+    long[] mutualFriendIds(Long userId, Long otherUserId);
+
+    int mutualFriendsCount(Long userId, Long otherUserId);
+
+    /**
+     * Quan hệ giữa hai người vừa thay đổi: sau khi giao dịch commit, đọc lại hai dòng friendships của cặp,
+     * cập nhật chỉ mục và báo cho các node khác.
+     */
+    void onFriendshipChanged(Long userId, Long otherUserId);
+
+    // Nạp lại toàn bộ chỉ mục từ bảng friendships
+    void reload();
+
+    // Đối chiếu số bạn và tổng ID bạn của từng người với bảng friendships, nạp lại người bị lệch; trả về số người đã sửa
+    int verify();
+}
@@ -0,0 +1,29 @@
+package com.example.server.services;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import com.example.server.dto.UserDto;
+
+/**
+ * Gợi ý kết bạn tính trước: mỗi người dùng một Redis ZSET chứa top N bạn của bạn, chấm điểm theo số bạn chung,
+ * số nhóm chung và trường học/công ty chung. Job nền tính lại toàn bộ theo từng lô người dùng song song
+ * (fork/join); khi quan hệ bạn bè thay đổi chỉ những người bị ảnh hưởng được tính lại.
+ */
+public interface FriendSuggestionService {
+
+    // Đọc theo khóa; người dùng chưa có danh sách thì được tính ngay
+    Page<UserDto> getSuggestions(Long userId, Pageable pageable);
+
+    /**
+     * Quan hệ giữa hai người vừa thay đổi (sau commit): bỏ hai người khỏi gợi ý của nhau, và nếu danh sách
+     * bạn bè đổi thì đánh dấu hai người cùng bạn bè của họ để tính lại ở lượt kế tiếp.
+     */
+    void onRelationshipChanged(Long userId, Long otherUserId, boolean friendsChanged);
+
+    // Tính lại những người đã được đánh dấu trên pool riêng, không chờ xong; trả về số người đã đưa vào lượt tính
+    int refreshPending();
+
+    // Tính lại cho mọi người dùng có bạn trên pool riêng, không chờ xong; chỉ một node chạy mỗi lượt
+    int rebuildAll();
+}
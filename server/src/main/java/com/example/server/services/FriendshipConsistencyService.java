@@ -0,0 +1,18 @@
+package com.example.server.services;
+
+/**
+ * Đối chiếu bảng friendships (nơi duy nhất lưu quan hệ bạn bè) khi hệ thống đang chạy: mỗi cặp bạn bè phải có
+ * đúng hai dòng ACCEPTED đối xứng. Cặp chỉ có một chiều ACCEPTED được bổ sung chiều còn lại, trừ khi chiều kia
+ * đang BLOCKED (khi đó chặn được ưu tiên và dòng ACCEPTED bị xóa); dòng trùng cùng chiều chỉ giữ dòng mới nhất.
+ */
+public interface FriendshipConsistencyService {
+
+    // Sửa một cặp người dùng; trả về true nếu cặp bị lệch và đã được sửa
+    boolean repairPair(Long userId, Long otherUserId);
+
+    // Quét toàn bảng theo từng khoảng user_id và sửa các cặp bị lệch; chỉ một node chạy mỗi lượt. Trả về số cặp đã sửa
+    int verify();
+
+    // Điền friend_name_key cho các dòng tạo trước khi có cột (chạy khi khởi động); trả về số người dùng đã điền
+    int backfillNameKeys();
+}
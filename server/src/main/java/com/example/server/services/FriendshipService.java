@@ -1,13 +1,17 @@
 package com.example.server.services;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.hateoas.PagedModel;
 
 import com.example.server.dto.FriendshipDto;
+import com.example.server.dto.RelationshipStatusDto;
 import com.example.server.dto.UserDto;
 import com.example.server.exception.UserException;
+import com.example.server.utils.FriendCursor;
 
 public interface FriendshipService {
     
@@ -35,6 +39,9 @@ public interface FriendshipService {
     // Lấy danh sách bạn bè
     List<UserDto> getUserFriends(Long userId) throws UserException;
     
+    // Danh sách bạn bè phân trang keyset theo tên, thời điểm kết bạn hoặc online trước; prefix lọc theo đầu tên (có thể rỗng)
+    PagedModel<?> getFriends(Long userId, FriendCursor.Sort sort, String prefix, FriendCursor after, int size) throws UserException;
+    
     // Lấy danh sách lời mời kết bạn đã nhận
     List<FriendshipDto> getPendingFriendRequests(Long userId) throws UserException;
     
@@ -50,9 +57,12 @@ public interface FriendshipService {
     // Kiểm tra trạng thái quan hệ giữa hai người dùng
     String getFriendshipStatus(Long userId, Long otherUserId) throws UserException;
     
+    // Trạng thái kết bạn, chặn, số bạn chung và theo dõi với nhiều người một lượt (vài câu truy vấn theo tập hợp), giữ thứ tự
+    List<RelationshipStatusDto> getRelationshipStatuses(Long userId, Collection<Long> otherUserIds);
+    
     // Lấy số lượng bạn chung
     Integer getMutualFriendsCount(Long userId, Long otherUserId) throws UserException;
     
-    // Tìm kiếm bạn bè
+    // Tìm kiếm bạn bè theo đầu tên (tối đa một trang)
     List<UserDto> searchFriends(Long userId, String query) throws UserException;
 } 
\ No newline at end of file
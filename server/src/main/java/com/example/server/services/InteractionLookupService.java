@@ -0,0 +1,17 @@
+package com.example.server.services;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Trả lời "trong N bài viết/bình luận này, người dùng U đã like/repost những cái nào"
+ * bằng một truy vấn theo chỉ mục cho cả danh sách, có ghi nhớ kết quả trong phạm vi một request.
+ */
+public interface InteractionLookupService {
+
+    Set<Long> findLikedPostIds(Long userId, Collection<Long> postIds);
+
+    Set<Long> findRepostedPostIds(Long userId, Collection<Long> postIds);
+
+    Set<Long> findLikedCommentIds(Long userId, Collection<Long> commentIds);
+}
@@ -0,0 +1,23 @@
+package com.example.server.services;
+
+import com.example.server.models.PostMedia;
+
+/**
+ * Hàng đợi xử lý video nền (lưu trong bảng media_jobs): tạo thumbnail và các bản chuyển mã bitrate thấp
+ * cho video đã tải lên, với số worker giới hạn; tiến độ hiển thị qua PostMedia.processingStatus.
+ */
+public interface MediaProcessingService {
+
+    String THUMBNAIL_SUFFIX = ".thumb.jpg";
+
+    // Blob dẫn xuất nằm cạnh blob gốc: "<khóa gốc>.480p.mp4", URL tương ứng "<mediaUrl>.480p.mp4"
+    static String renditionSuffix(String label) {
+        return "." + label + ".mp4";
+    }
+
+    // Đưa video vừa lưu vào hàng đợi; chỉ được xử lý sau khi giao dịch hiện tại commit
+    void enqueue(PostMedia media);
+
+    // Nhận các việc đến hạn vừa với số worker còn trống; trả về số việc đã giao cho worker
+    int dispatchPendingJobs();
+}
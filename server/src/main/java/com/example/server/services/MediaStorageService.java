@@ -0,0 +1,34 @@
+package com.example.server.services;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import com.example.server.models.PostMedia;
+
+/**
+ * Giai đoạn tải lên media, chạy trước và ngoài giao dịch DB:
+ * ghi luồng multipart thẳng xuống bộ lưu trữ, tính hash nội dung để khử trùng lặp,
+ * và chỉ trả về khi dữ liệu đã bền vững trên đĩa.
+ * Mỗi blob được đếm tham chiếu theo số bản ghi PostMedia trỏ tới; hết tham chiếu thì bị xóa.
+ */
+public interface MediaStorageService {
+
+    // Lưu tệp và giữ một tham chiếu tới blob cho bản ghi PostMedia sắp tạo
+    StoredMedia store(MultipartFile file) throws IOException;
+
+    // Lưu lần lượt các tệp, bỏ qua (và ghi log) tệp rỗng hoặc lỗi như luồng tạo bài viết cũ
+    List<StoredMedia> storeAll(List<MultipartFile> files);
+
+    // Trả lại tham chiếu đã giữ khi bước ghi DB phía sau thất bại
+    void discard(List<StoredMedia> media);
+
+    // Trả lại tham chiếu của các bản ghi PostMedia đã xóa; chạy sau khi giao dịch hiện tại commit
+    void release(Collection<String> storageKeys);
+
+    record StoredMedia(PostMedia.MediaType mediaType, String url, String contentHash, long size, String storageKey,
+            String contentType) {
+    }
+}
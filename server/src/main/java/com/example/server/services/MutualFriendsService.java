@@ -0,0 +1,28 @@
+package com.example.server.services;
+
+import java.util.Collection;
+import java.util.Map;
+
+import com.example.server.dto.MutualFriendsDto;
+import com.example.server.dto.UserDto;
+
+/**
+ * Bạn chung tính lúc đọc bằng phép giao hai danh sách bạn bè đã sắp xếp (FriendGraphService), không lưu lại.
+ * Các API theo lô nạp danh sách bạn bè của mọi ứng viên một lượt để kết quả tìm kiếm, gợi ý kết bạn
+ * hiển thị được số bạn chung mà không tốn một truy vấn cho mỗi người.
+ */
+public interface MutualFriendsService {
+
+    int count(Long userId, Long otherUserId);
+
+    // Số bạn chung giữa userId và từng ứng viên, giữ thứ tự của candidateIds
+    Map<Long, Integer> counts(Long userId, Collection<Long> candidateIds);
+
+    // Số bạn chung và tối đa limit bạn chung đầu tiên
+    MutualFriendsDto preview(Long userId, Long otherUserId, int limit);
+
+    Map<Long, MutualFriendsDto> previews(Long userId, Collection<Long> candidateIds, int limit);
+
+    // Ghi mutualFriendsCount của các UserDto so với userId
+    void fillMutualCounts(Long userId, Collection<UserDto> users);
+}
@@ -0,0 +1,15 @@
+package com.example.server.services;
+
+/**
+ * Băm và kiểm tra mật khẩu trên một pool luồng riêng có giới hạn, không chiếm luồng request của Tomcat.
+ * Khi pool quá tải (hàng đợi đầy hoặc chờ quá lâu) ném PasswordHashingBusyException, trả về 429 cho client.
+ */
+public interface PasswordHashingService {
+
+    String hash(String rawPassword);
+
+    boolean matches(String rawPassword, String encodedPassword);
+
+    // true nếu mật khẩu đã lưu được băm với cost khác cost đang cấu hình (cần băm lại khi đăng nhập thành công)
+    boolean needsRehash(String encodedPassword);
+}
@@ -3,18 +3,19 @@ package com.example.server.services;
 import com.example.server.dto.PostDto;
 import com.example.server.exception.UserException;
 import com.example.server.models.Post;
+import com.example.server.utils.PostCursor;
 
 import java.util.List;
 
 import org.springframework.data.domain.Pageable;
 import org.springframework.hateoas.PagedModel;
-import org.springframework.web.multipart.MultipartFile;
 
 public interface PostService {
-    PostDto createPost(PostDto postDto, List<MultipartFile> mediaFiles, Long userId) throws UserException;
+    // storedMedia: tệp đã được MediaStorageService ghi xuống đĩa trước khi mở giao dịch
+    PostDto createPost(PostDto postDto, List<MediaStorageService.StoredMedia> storedMedia, Long userId) throws UserException;
     PostDto getPostById(Long postId, Long reqUserId) throws UserException;
     public PagedModel<?> getAllPosts(Long userId, Pageable pageable) throws UserException; // Thêm phân trang
-    PostDto updatePost(Long postId, PostDto postDto, List<MultipartFile> mediaFiles, Long userId) throws UserException;
+    PostDto updatePost(Long postId, PostDto postDto, List<MediaStorageService.StoredMedia> storedMedia, Long userId) throws UserException;
     void deletePost(Long postId, Long userId) throws UserException;
     PostDto repostPost(Long postId, Long userId) throws UserException;
     PostDto unrepostPost(Long postId, Long userId) throws UserException;
@@ -33,4 +34,13 @@ public interface PostService {
     Post getPostEntityById(Long postId) throws UserException;
 
     public PagedModel<?> getGroupPosts(Long groupId, Long userId, Pageable pageable) throws UserException;
+
+    // Phân trang keyset (?before=<cursor>): không đếm tổng, link "next" mang cursor của bài cuối trang
+    PagedModel<?> getAllPosts(Long userId, PostCursor before, int size) throws UserException;
+
+    PagedModel<?> getPostsByUserId(Long userId, Long currentUserId, PostCursor before, int size) throws UserException;
+
+    PagedModel<?> getSharedPostsByUserId(Long userId, Long currentUserId, PostCursor before, int size) throws UserException;
+
+    PagedModel<?> getGroupPosts(Long groupId, Long userId, PostCursor before, int size) throws UserException;
 }
\ No newline at end of file
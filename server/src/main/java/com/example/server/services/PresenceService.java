@@ -0,0 +1,43 @@
+package com.example.server.services;
+
+import java.util.Collection;
+import java.util.Set;
+
+import com.example.server.dto.UserDto;
+
+/**
+ * Trạng thái online lưu trong Redis với TTL, cập nhật từ các phiên STOMP (connect/disconnect/heartbeat)
+ * và từ đăng nhập/đăng xuất. Cột users.is_online/last_seen chỉ được ghi theo lô định kỳ; khi cần biết
+ * ai đang online thì hỏi service này chứ không đọc cột.
+ */
+public interface PresenceService {
+
+    // Phiên WebSocket mới của userId
+    void sessionConnected(Long userId, String sessionId);
+
+    // Có frame từ phiên (kể cả heartbeat): chỉ ghi nhận trong bộ nhớ, Redis được gia hạn theo lô
+    void sessionActive(String sessionId);
+
+    // userId có thể null: service tự tra theo sessionId
+    void sessionDisconnected(Long userId, String sessionId);
+
+    // Hoạt động qua HTTP (đăng nhập): online tới khi hết TTL nếu không có phiên WebSocket nào
+    void touch(Long userId);
+
+    // Đăng xuất: xóa mọi phiên của userId trên mọi node
+    void markOffline(Long userId);
+
+    boolean isOnline(Long userId);
+
+    // Trong các userId đã cho, những ai đang online (một lượt MGET)
+    Set<Long> onlineAmong(Collection<Long> userIds);
+
+    // Ghi isOnline của các UserDto theo trạng thái hiện tại (dùng sau khi lấy danh sách từ cache)
+    void fillOnlineStatus(Collection<UserDto> users);
+
+    // Gia hạn TTL trong Redis cho các phiên đang sống trên node này
+    int refreshLocalSessions();
+
+    // Ghi lastSeen/isOnline đang chờ xuống MySQL; trả về số người dùng đã ghi
+    int flushLastSeen();
+}
@@ -0,0 +1,34 @@
+package com.example.server.services;
+
+import java.util.Optional;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import com.example.server.models.Post;
+
+/**
+ * Home timeline được vật chất hóa (fan-out on write).
+ * Mỗi người dùng có một danh sách ID bài viết sắp theo thời gian, giới hạn độ dài,
+ * được cập nhật dần khi có bài viết mới, kết bạn/hủy kết bạn, vào/rời nhóm.
+ */
+public interface TimelineService {
+
+    // Đọc một trang home timeline; Optional.empty() nếu timeline không phục vụ được (cần fallback sang DB)
+    Optional<Page<Post>> getHomeTimeline(Long userId, Pageable pageable);
+
+    // Đọc một trang timeline công khai (người dùng ẩn danh)
+    Optional<Page<Post>> getPublicTimeline(Pageable pageable);
+
+    void onPostCreated(Post post);
+
+    void onPostRemoved(Post post);
+
+    void onFriendshipCreated(Long userId, Long friendId);
+
+    void onFriendshipRemoved(Long userId, Long friendId);
+
+    void onGroupJoined(Long groupId, Long userId);
+
+    void onGroupLeft(Long groupId, Long userId);
+}
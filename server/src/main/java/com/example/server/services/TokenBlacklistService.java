@@ -0,0 +1,12 @@
+package com.example.server.services;
+
+/**
+ * Danh sách đen token đã đăng xuất. Nguồn chính là Redis (chia sẻ giữa các instance),
+ * phía trước có cache cục bộ ngắn hạn để không phải GET Redis ở mỗi request.
+ */
+public interface TokenBlacklistService {
+
+    boolean isBlacklisted(String token);
+
+    void blacklist(String token, long ttlSeconds);
+}
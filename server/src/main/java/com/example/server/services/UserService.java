@@ -1,6 +1,8 @@
 package com.example.server.services;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -25,7 +27,10 @@ public interface UserService {
     
     public User updateUser(Long userId, UserRequest req) throws UserException;
 
-    public User followUser(Long userId, User user) throws UserException;
+    public User followUser(Long userId, Long reqUserId) throws UserException;
+
+    // Trong userIds, những người mà reqUserId đang theo dõi
+    Set<Long> followingAmong(Long reqUserId, Collection<Long> userIds);
 
     public Page<User> searchUser(String query, Pageable pageable) throws UserException;
     
@@ -39,11 +44,11 @@ public interface UserService {
     
     public User unlockUser(Long userId) throws UserException;
 
-    FriendRequest sendFriendRequest(Long receiverId, User sender) throws UserException;
-    FriendRequest acceptFriendRequest(Long requestId, User receiver) throws UserException;
-    void rejectFriendRequest(Long requestId, User receiver) throws UserException;
-    void removeFriend(Long friendId, User user) throws UserException;
-    List<FriendRequest> getPendingFriendRequests(User user);
+    FriendRequest sendFriendRequest(Long receiverId, Long senderId) throws UserException;
+    FriendRequest acceptFriendRequest(Long requestId, Long receiverId) throws UserException;
+    void rejectFriendRequest(Long requestId, Long receiverId) throws UserException;
+    void removeFriend(Long friendId, Long userId) throws UserException;
+    List<FriendRequest> getPendingFriendRequests(Long userId);
     
     // Kiểm tra xem hai người dùng có phải là bạn bè không
     boolean isFriend(Long userId1, Long userId2) throws UserException;
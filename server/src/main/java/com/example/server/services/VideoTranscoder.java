@@ -0,0 +1,20 @@
+package com.example.server.services;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Bộ xử lý video cắm được cho hàng đợi MediaProcessingService.
+ * Cài đặt mặc định gọi ffmpeg; có thể thay bằng thư viện Java hoặc dịch vụ chuyển mã bên ngoài.
+ */
+public interface VideoTranscoder {
+
+    // false nếu công cụ bên dưới không dùng được trên máy này (việc sẽ nằm chờ trong hàng đợi)
+    boolean isAvailable();
+
+    // Ghi một ảnh JPEG đại diện cho video vào target
+    void createThumbnail(Path source, Path target) throws IOException;
+
+    // Ghi bản MP4 (H.264/AAC) có chiều cao height và bitrate video videoBitrate (ví dụ "1000k") vào target
+    void transcode(Path source, Path target, int height, String videoBitrate) throws IOException;
+}
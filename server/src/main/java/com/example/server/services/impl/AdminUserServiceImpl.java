@@ -12,15 +12,18 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.example.server.config.AuthPrincipalArgumentResolver;
 import com.example.server.dto.AdminUserDto;
 import com.example.server.exception.UserException;
 import com.example.server.models.User;
+import com.example.server.repositories.FriendshipRepository;
 import com.example.server.repositories.UserRepository;
 import com.example.server.services.AdminUserService;
+import com.example.server.services.PasswordHashingService;
+import com.example.server.utils.UserUtil;
 
 @Service
 public class AdminUserServiceImpl implements AdminUserService {
@@ -29,9 +32,15 @@ public class AdminUserServiceImpl implements AdminUserService {
     
     @Autowired
     private UserRepository userRepository;
+
+    @Autowired
+    private FriendshipRepository friendshipRepository;
     
     @Autowired
-    private PasswordEncoder passwordEncoder;
+    private PasswordHashingService passwordHashingService;
+
+    @Autowired
+    private AuthPrincipalArgumentResolver authPrincipalArgumentResolver;
     
     @Override
     public boolean isAdmin(User user) {
@@ -118,7 +127,7 @@ public class AdminUserServiceImpl implements AdminUserService {
         newUser.setFirstName(userDto.getFirstName());
         newUser.setLastName(userDto.getLastName());
         newUser.setEmail(userDto.getEmail());
-        newUser.setPassword(passwordEncoder.encode(userDto.getPassword()));
+        newUser.setPassword(passwordHashingService.hash(userDto.getPassword()));
         newUser.setIsActive(true);
         newUser.setFriends(new ArrayList<>());
         
@@ -149,6 +158,7 @@ public class AdminUserServiceImpl implements AdminUserService {
             throw new UserException("Không tìm thấy người dùng với ID: " + userId, HttpStatus.NOT_FOUND);
         }
         
+        String oldNameKey = UserUtil.nameKey(user.getFirstName(), user.getLastName());
         if (userDto.getFirstName() != null && !userDto.getFirstName().isBlank()) {
             user.setFirstName(userDto.getFirstName());
         }
@@ -157,6 +167,12 @@ public class AdminUserServiceImpl implements AdminUserService {
             user.setLastName(userDto.getLastName());
         }
         
+        String nameKey = UserUtil.nameKey(user.getFirstName(), user.getLastName());
+        if (!nameKey.equals(oldNameKey)) {
+            // Danh sách bạn bè của những người khác sắp xếp/tìm theo tên này
+            friendshipRepository.updateFriendNameKey(userId, nameKey);
+        }
+        
         if (userDto.getImage() != null) {
             user.setImage(userDto.getImage());
         }
@@ -179,7 +195,7 @@ public class AdminUserServiceImpl implements AdminUserService {
         }
         
         if (userDto.getPassword() != null && !userDto.getPassword().isBlank()) {
-            user.setPassword(passwordEncoder.encode(userDto.getPassword()));
+            user.setPassword(passwordHashingService.hash(userDto.getPassword()));
         }
         
         user.setUpdatedAt(LocalDateTime.now());
@@ -204,6 +220,7 @@ public class AdminUserServiceImpl implements AdminUserService {
         user.setUpdatedAt(LocalDateTime.now());
         
         User updatedUser = userRepository.save(user);
+        authPrincipalArgumentResolver.evictAccountStatus(userId);
         
         return AdminUserDto.fromEntity(updatedUser);
     }
@@ -0,0 +1,416 @@
+package com.example.server.services.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.server.repositories.FriendshipRepository;
+import com.example.server.services.BlockListService;
+import com.example.server.utils.AfterCommit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+
+@Service
+public class BlockListServiceImpl implements BlockListService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlockListServiceImpl.class);
+
+    private static final String KEY_PREFIX = "blocks:";
+    private static final String VERSION_PREFIX = "blocks:v:";
+
+    // Phần tử giữ chỗ để phân biệt "đã nạp, không chặn ai" với "chưa nạp"; ID người dùng bắt đầu từ 1
+    private static final String EMPTY_MARKER = "0";
+
+    /**
+     * Ghi tập đọc từ database thay cho tập cũ (DEL + SADD + PEXPIRE trong một lệnh), chỉ khi phiên bản của người dùng
+     * chưa đổi kể từ trước lúc đọc database. Một thay đổi chặn commit xen giữa sẽ tăng phiên bản, và tập đã cũ
+     * không được ghi đè lên trạng thái mới. KEYS: tập, phiên bản; ARGV: phiên bản đã đọc ('' nếu chưa có), TTL ms, phần tử.
+     */
+    private static final RedisScript<Long> REPLACE_IF_UNCHANGED = new DefaultRedisScript<>(
+        "local version = redis.call('GET', KEYS[2]) " +
+        "if (version or '') ~= ARGV[1] then return 0 end " +
+        "redis.call('DEL', KEYS[1]) " +
+        "redis.call('SADD', KEYS[1], unpack(ARGV, 3)) " +
+        "redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+        "return 1",
+        Long.class);
+
+    // Tăng phiên bản và xóa tập của cả hai người trong một lệnh. KEYS: tập 1, phiên bản 1, tập 2, phiên bản 2; ARGV: TTL ms
+    private static final RedisScript<Long> BUMP_VERSIONS = new DefaultRedisScript<>(
+        "for i = 1, #KEYS, 2 do " +
+        "redis.call('INCR', KEYS[i + 1]) " +
+        "redis.call('PEXPIRE', KEYS[i + 1], ARGV[1]) " +
+        "redis.call('DEL', KEYS[i]) " +
+        "end " +
+        "return 1",
+        Long.class);
+
+    @Autowired
+    private FriendshipRepository friendshipRepository;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Tắt thì bỏ qua Bloom filter, mọi câu hỏi đi thẳng tới tập trong Redis
+    @Value("${app.block-list.bloom-enabled:true}")
+    private boolean bloomEnabled;
+
+    // Tỉ lệ dương tính giả mục tiêu của Bloom filter
+    @Value("${app.block-list.bloom-fpp:0.01}")
+    private double bloomFpp;
+
+    // Số dòng BLOCKED mỗi trang khi dựng Bloom filter
+    @Value("${app.block-list.load-batch-size:50000}")
+    private int loadBatchSize;
+
+    @Value("${app.block-list.ttl-hours:24}")
+    private long ttlHours;
+
+    @Value("${app.block-list.channel:block-list:update}")
+    private String channel;
+
+    // null khi chưa dựng xong: khi đó mọi người dùng đều được coi là có thể dính tới quan hệ chặn
+    private volatile BloomFilter bloom;
+
+    // Người được thêm trong lúc đang dựng lại, thêm tiếp vào filter mới trước khi đưa vào dùng; truy cập dưới this
+    private List<Long> addedDuringLoad;
+
+    // Đánh dấu thông báo do chính node này phát để bỏ qua khi nhận lại (đã thêm vào filter lúc phát)
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private Timer loadTimer;
+    private Counter bloomSkips;
+    private Counter bloomFalsePositives;
+
+    /**
+     * Bloom filter trên ID người dùng (double hashing, k hàm băm dựng từ hai giá trị 64 bit). Không xóa được phần tử:
+     * người đã gỡ chặn vẫn là dương tính giả cho tới lần dựng lại kế tiếp. AtomicLongArray để thêm và đọc không cần khóa.
+     */
+    static final class BloomFilter {
+        final AtomicLongArray words;
+        final long bitCount;
+        final int hashes;
+        // Đọc bởi gauge từ luồng khác
+        final AtomicInteger size = new AtomicInteger();
+
+        BloomFilter(int expectedUsers, double fpp) {
+            int expected = Math.max(expectedUsers, 1024);
+            long bits = (long) Math.ceil(-expected * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+            int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (bits + 63) >>> 6));
+            words = new AtomicLongArray(wordCount);
+            bitCount = wordCount * 64L;
+            hashes = Math.max(1, (int) Math.round((double) bitCount / expected * Math.log(2)));
+        }
+
+        void add(long userId) {
+            long h1 = mix(userId);
+            long h2 = mix(h1 ^ userId) | 1;
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                long mask = 1L << bit;
+                words.accumulateAndGet((int) (bit >>> 6), mask, (word, m) -> word | m);
+            }
+            size.incrementAndGet();
+        }
+
+        boolean mightContain(long userId) {
+            long h1 = mix(userId);
+            long h2 = mix(h1 ^ userId) | 1;
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        long estimatedBytes() {
+            return bitCount >>> 3;
+        }
+
+        // Bước trộn cuối của MurmurHash3: ID liên tiếp cho ra các vị trí bit rải đều
+        private static long mix(long value) {
+            long h = value;
+            h ^= h >>> 33;
+            h *= 0xFF51AFD7ED558CCDL;
+            h ^= h >>> 33;
+            h *= 0xC4CEB9FE1A85EC53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener(
+            (message, pattern) -> onRemoteChange(new String(message.getBody(), StandardCharsets.UTF_8)),
+            new ChannelTopic(channel));
+
+        Gauge.builder("block.list.bloom.users", this, service -> {
+            BloomFilter current = service.bloom;
+            return current != null ? current.size.get() : 0;
+        }).register(meterRegistry);
+        Gauge.builder("block.list.bloom.memory", this, service -> {
+            BloomFilter current = service.bloom;
+            return current != null ? current.estimatedBytes() : 0;
+        }).baseUnit("bytes").register(meterRegistry);
+        loadTimer = Timer.builder("block.list.bloom.load").register(meterRegistry);
+        bloomSkips = Counter.builder("block.list.bloom.skips").register(meterRegistry);
+        bloomFalsePositives = Counter.builder("block.list.bloom.false.positives").register(meterRegistry);
+    }
+
+    // Sự kiện ứng dụng được phát bất đồng bộ (AppConfig): dựng chạy nền, trong lúc đó câu hỏi đi tới Redis
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        reload();
+    }
+
+    @Override
+    public boolean isBlocked(Long userId, Long otherUserId) {
+        if (userId == null || otherUserId == null || userId.equals(otherUserId)) {
+            return false;
+        }
+        // Cả hai người phải cùng có mặt trong filter thì mới có thể có quan hệ chặn giữa họ
+        if (!mightBeInvolved(userId) || !mightBeInvolved(otherUserId)) {
+            bloomSkips.increment();
+            return false;
+        }
+        return lookup(userId).contains(otherUserId);
+    }
+
+    @Override
+    public Set<Long> hiddenFrom(Long userId) {
+        if (userId == null) {
+            return Set.of();
+        }
+        if (!mightBeInvolved(userId)) {
+            bloomSkips.increment();
+            return Set.of();
+        }
+        return lookup(userId);
+    }
+
+    @Override
+    public <T> List<T> filterVisible(Long viewerId, List<T> items, Function<T, Long> ownerId) {
+        if (viewerId == null || items.isEmpty()) {
+            return items;
+        }
+        Set<Long> hidden = hiddenFrom(viewerId);
+        if (hidden.isEmpty()) {
+            return items;
+        }
+        List<T> visible = new ArrayList<>(items.size());
+        for (T item : items) {
+            Long owner = ownerId.apply(item);
+            if (owner == null || !hidden.contains(owner)) {
+                visible.add(item);
+            }
+        }
+        return visible;
+    }
+
+    @Override
+    public void onBlockChanged(Long userId, Long otherUserId) {
+        if (userId == null || otherUserId == null) {
+            return;
+        }
+        afterCommit(() -> {
+            // Thêm vào filter trước khi xóa tập: không có lúc nào filter trả lời "không" cho cặp vừa chặn
+            markInvolved(userId);
+            markInvolved(otherUserId);
+            // Tập được nạp lại từ trạng thái đã commit ở lần đọc kế tiếp; lần nạp đang dở (đọc database trước commit)
+            // thấy phiên bản đã đổi nên không ghi tập cũ vào
+            redisTemplate.execute(BUMP_VERSIONS,
+                List.of(key(userId), versionKey(userId), key(otherUserId), versionKey(otherUserId)),
+                String.valueOf(Duration.ofHours(ttlHours).toMillis()));
+            redisTemplate.convertAndSend(channel, nodeId + "," + userId + "," + otherUserId);
+        });
+    }
+
+    private void onRemoteChange(String message) {
+        try {
+            String[] parts = message.split(",");
+            // Dạng cũ "<user>,<user>" từ node chưa nâng cấp vẫn được nhận
+            int first = parts.length == 3 ? 1 : 0;
+            if (first == 1 && nodeId.equals(parts[0])) {
+                // Node này cũng nhận lại thông báo của chính nó: thêm lại sẽ đếm trùng trong block.list.bloom.users
+                return;
+            }
+            markInvolved(Long.parseLong(parts[first]));
+            markInvolved(Long.parseLong(parts[first + 1]));
+        } catch (RuntimeException e) {
+            logger.warn("Bỏ qua thông báo danh sách chặn không hợp lệ '{}': {}", message, e.getMessage());
+        }
+    }
+
+    @Override
+    @Scheduled(initialDelayString = "${app.block-list.rebuild-initial-delay-ms:3600000}",
+               fixedDelayString = "${app.block-list.rebuild-interval-ms:21600000}")
+    public void reload() {
+        if (!bloomEnabled) {
+            return;
+        }
+        synchronized (this) {
+            if (addedDuringLoad != null) {
+                logger.info("Bloom filter danh sách chặn đang được dựng, bỏ qua yêu cầu dựng lại");
+                return;
+            }
+            addedDuringLoad = new ArrayList<>();
+        }
+
+        long start = System.nanoTime();
+        BloomFilter loaded = null;
+        try {
+            loaded = load();
+        } catch (Exception e) {
+            logger.error("Không dựng được Bloom filter danh sách chặn, giữ filter cũ: {}", e.getMessage(), e);
+        }
+
+        synchronized (this) {
+            if (loaded != null) {
+                addedDuringLoad.forEach(loaded::add);
+                bloom = loaded;
+            }
+            addedDuringLoad = null;
+        }
+
+        if (loaded != null) {
+            long elapsed = System.nanoTime() - start;
+            loadTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            logger.info("Đã dựng Bloom filter danh sách chặn: {} người dùng, ~{} KB trong {} ms", loaded.size.get(),
+                loaded.estimatedBytes() >> 10, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+    }
+
+    private BloomFilter load() {
+        Set<Long> involved = new HashSet<>();
+        long afterId = 0;
+        while (true) {
+            List<Object[]> rows = friendshipRepository.findBlockedEdgesAfter(afterId, PageRequest.of(0, loadBatchSize));
+            for (Object[] row : rows) {
+                afterId = ((Number) row[0]).longValue();
+                involved.add(((Number) row[1]).longValue());
+                involved.add(((Number) row[2]).longValue());
+            }
+            if (rows.size() < loadBatchSize) {
+                break;
+            }
+        }
+        // Dư gấp đôi để các lần chặn mới giữa hai lần dựng không đẩy tỉ lệ dương tính giả lên quá mục tiêu
+        BloomFilter loaded = new BloomFilter(involved.size() * 2, bloomFpp);
+        involved.forEach(loaded::add);
+        return loaded;
+    }
+
+    private boolean mightBeInvolved(Long userId) {
+        BloomFilter current = bloom;
+        return current == null || current.mightContain(userId);
+    }
+
+    private synchronized void markInvolved(long userId) {
+        if (bloom != null) {
+            bloom.add(userId);
+        }
+        if (addedDuringLoad != null) {
+            addedDuringLoad.add(userId);
+        }
+    }
+
+    // Tập chính xác của userId: đọc Redis, thiếu thì nạp từ database và ghi lại; Redis lỗi thì trả lời từ database
+    private Set<Long> lookup(Long userId) {
+        String key = key(userId);
+        String version;
+        try {
+            Set<String> members = redisTemplate.opsForSet().members(key);
+            if (members != null && !members.isEmpty()) {
+                Set<Long> hidden = new HashSet<>();
+                for (String member : members) {
+                    if (!EMPTY_MARKER.equals(member)) {
+                        hidden.add(Long.parseLong(member));
+                    }
+                }
+                if (hidden.isEmpty()) {
+                    bloomFalsePositives.increment();
+                }
+                return hidden;
+            }
+            // Đọc phiên bản trước khi đọc database
+            version = redisTemplate.opsForValue().get(versionKey(userId));
+        } catch (Exception e) {
+            logger.warn("Không đọc được danh sách chặn của {} từ Redis, truy vấn database: {}", userId, e.getMessage());
+            return loadFromDatabase(userId);
+        }
+
+        Set<Long> hidden = loadFromDatabase(userId);
+        if (hidden.isEmpty()) {
+            bloomFalsePositives.increment();
+        }
+        try {
+            List<String> args = new ArrayList<>(hidden.size() + 3);
+            args.add(version != null ? version : "");
+            args.add(String.valueOf(Duration.ofHours(ttlHours).toMillis()));
+            args.add(EMPTY_MARKER);
+            hidden.forEach(id -> args.add(id.toString()));
+            Long written = redisTemplate.execute(REPLACE_IF_UNCHANGED, List.of(key, versionKey(userId)), args.toArray());
+            if (!Long.valueOf(1).equals(written)) {
+                logger.debug("Danh sách chặn của {} vừa thay đổi trong lúc nạp, không ghi vào Redis", userId);
+            }
+        } catch (Exception e) {
+            logger.warn("Không ghi được danh sách chặn của {} vào Redis: {}", userId, e.getMessage());
+        }
+        return hidden;
+    }
+
+    private Set<Long> loadFromDatabase(Long userId) {
+        Set<Long> hidden = new HashSet<>(friendshipRepository.findBlockedIdsByUserId(userId));
+        hidden.addAll(friendshipRepository.findBlockerIdsByUserId(userId));
+        return hidden;
+    }
+
+    private static String key(Long userId) {
+        return KEY_PREFIX + userId;
+    }
+
+    private static String versionKey(Long userId) {
+        return VERSION_PREFIX + userId;
+    }
+
+    // Lỗi chỉ ghi log: tập trong Redis hết hạn theo TTL, filter được dựng lại định kỳ
+    private void afterCommit(Runnable task) {
+        AfterCommit.runSafely(task, logger, "Không cập nhật được danh sách chặn: {}");
+    }
+}
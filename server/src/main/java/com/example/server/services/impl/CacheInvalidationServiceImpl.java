@@ -0,0 +1,156 @@
+package com.example.server.services.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import com.example.server.config.TwoTierCacheManager;
+import com.example.server.services.CacheInvalidationService;
+import com.example.server.utils.AfterCommit;
+import com.example.server.utils.CacheLoad;
+
+@Service
+public class CacheInvalidationServiceImpl implements CacheInvalidationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheInvalidationServiceImpl.class);
+
+    // Mỗi thực thể một Redis set "cache:deps:<thực thể>", phần tử là "<cacheName>|<khóa đã mã hóa>"
+    private static final String DEPENDENCY_PREFIX = "cache:deps:";
+    // Thời điểm (ms, theo đồng hồ Redis) thực thể bị hủy cache gần nhất: "cache:deps:at:<thực thể>"
+    private static final String INVALIDATED_AT_PREFIX = "cache:deps:at:";
+
+    // Độ trễ mạng tới Redis cộng thêm vào khoảng thời gian của lượt tính khi so với thời điểm hủy; thừa chỉ tốn thêm một lần tính
+    private static final long LATENCY_MARGIN_MS = 1000;
+
+    // Ghi thời điểm hủy, lấy và xóa set trong một lệnh: khóa được track cùng lúc không bị mất giữa SMEMBERS và DEL.
+    // KEYS: set, thời điểm hủy; ARGV: TTL ms
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> TAKE_MEMBERS = new DefaultRedisScript<>(
+        "local time = redis.call('TIME') " +
+        "redis.call('SET', KEYS[2], time[1] * 1000 + math.floor(time[2] / 1000), 'PX', ARGV[1]) " +
+        "local members = redis.call('SMEMBERS', KEYS[1]) redis.call('DEL', KEYS[1]) return members", List.class);
+
+    // Đăng ký khóa vào set của từng thực thể; trả về 1 nếu có thực thể bị hủy trong ARGV[3] ms vừa qua,
+    // tức giá trị vừa ghi có thể đã được tính từ dữ liệu cũ. KEYS: set 1, thời điểm hủy 1, set 2, ...; ARGV: phần tử, TTL ms, cửa sổ ms
+    private static final RedisScript<Long> REGISTER = new DefaultRedisScript<>(
+        "local time = redis.call('TIME') " +
+        "local since = time[1] * 1000 + math.floor(time[2] / 1000) - tonumber(ARGV[3]) " +
+        "local stale = 0 " +
+        "for i = 1, #KEYS, 2 do " +
+        "  redis.call('SADD', KEYS[i], ARGV[1]) " +
+        "  redis.call('PEXPIRE', KEYS[i], ARGV[2]) " +
+        "  local at = redis.call('GET', KEYS[i + 1]) " +
+        "  if at and tonumber(at) >= since then stale = 1 end " +
+        "end " +
+        "return stale", Long.class);
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    // Chỉ mục sống bằng TTL dài nhất của các cache: quá hạn này khóa trong cache cũng đã hết hạn
+    @Value("${spring.cache.redis.time-to-live:600000}")
+    private long cacheTtlMs;
+
+    @Override
+    public void track(String cacheName, Object key, String... dependencies) {
+        List<String> snapshot = List.of(dependencies);
+        // Đăng ký trước khi ghi cache thì lượt hủy chen vào giữa lấy mất phần tử, giá trị cũ ghi sau đó không bị ai xóa.
+        // Đăng ký sau khi ghi: lượt hủy sau đó thấy phần tử; lượt hủy trong lúc tính được REGISTER phát hiện qua thời điểm hủy
+        CacheLoad.afterPut(elapsedMs -> register(cacheName, key, snapshot, elapsedMs));
+    }
+
+    private void register(String cacheName, Object key, List<String> dependencies, long elapsedMs) {
+        String member = cacheName + "|" + TwoTierCacheManager.encodeKey(key);
+        List<String> keys = new ArrayList<>();
+        for (String dependency : dependencies) {
+            keys.add(DEPENDENCY_PREFIX + dependency);
+            keys.add(INVALIDATED_AT_PREFIX + dependency);
+        }
+        try {
+            Long stale = redisTemplate.execute(REGISTER, keys, member, String.valueOf(indexTtlMs()),
+                String.valueOf(elapsedMs + LATENCY_MARGIN_MS));
+            if (Long.valueOf(1).equals(stale)) {
+                Cache cache = cacheManager.getCache(cacheName);
+                if (cache != null) {
+                    cache.evict(key);
+                }
+                logger.debug("Hủy {} {} vừa ghi: phụ thuộc đổi trong lúc tính", cacheName, key);
+            }
+        } catch (Exception e) {
+            // Khóa không được ghi nhận chỉ còn hết hạn theo TTL của cache
+            logger.warn("Không ghi được phụ thuộc cho {} {}: {}", cacheName, key, e.getMessage());
+        }
+    }
+
+    // TTL của set phụ thuộc và thời điểm hủy
+    private long indexTtlMs() {
+        return cacheManager instanceof TwoTierCacheManager twoTier ? twoTier.getMaxTimeToLiveMs() : cacheTtlMs;
+    }
+
+    @Override
+    public void invalidate(String... dependencies) {
+        List<String> snapshot = List.of(dependencies);
+        // Xóa trước khi commit thì request song song có thể nạp lại dữ liệu cũ vào cache
+        AfterCommit.run(() -> snapshot.forEach(this::evictDependents));
+    }
+
+    @Override
+    public void evict(String cacheName, Object... keys) {
+        List<Object> snapshot = List.of(keys);
+        AfterCommit.run(() -> {
+            Cache cache = cacheManager.getCache(cacheName);
+            if (cache != null) {
+                snapshot.forEach(cache::evict);
+            }
+        });
+    }
+
+    private void evictDependents(String dependency) {
+        Collection<?> members;
+        try {
+            members = redisTemplate.execute(TAKE_MEMBERS,
+                List.of(DEPENDENCY_PREFIX + dependency, INVALIDATED_AT_PREFIX + dependency), String.valueOf(indexTtlMs()));
+        } catch (Exception e) {
+            logger.warn("Không đọc được phụ thuộc của {}: {}", dependency, e.getMessage());
+            return;
+        }
+        if (members == null || members.isEmpty()) {
+            return;
+        }
+
+        List<String> evicted = new ArrayList<>();
+        for (Object value : members) {
+            String member = String.valueOf(value);
+            int separator = member.indexOf('|');
+            if (separator <= 0) {
+                continue;
+            }
+            Cache cache = cacheManager.getCache(member.substring(0, separator));
+            if (cache == null) {
+                continue;
+            }
+            Object key = TwoTierCacheManager.decodeKey(member.substring(separator + 1));
+            if (key == null) {
+                cache.clear();
+            } else {
+                cache.evict(key);
+            }
+            evicted.add(member);
+        }
+        logger.debug("Hủy {} khóa cache phụ thuộc {}: {}", evicted.size(), dependency, evicted);
+    }
+}
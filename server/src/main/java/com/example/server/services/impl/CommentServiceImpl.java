@@ -9,18 +9,22 @@ import com.example.server.models.User;
 import com.example.server.repositories.CommentRepository;
 import com.example.server.repositories.PostRepository;
 import com.example.server.repositories.UserRepository;
+import com.example.server.services.BlockListService;
+import com.example.server.services.CacheInvalidationService;
+import com.example.server.services.FriendGraphService;
 import com.example.server.services.CommentService;
 import com.example.server.services.LikeService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 @Service
 public class CommentServiceImpl implements CommentService {
@@ -42,9 +46,17 @@ public class CommentServiceImpl implements CommentService {
     @Autowired
     private CommentDtoMapper commentDtoMapper;
 
+    @Autowired
+    private CacheInvalidationService cacheInvalidationService;
+
+    @Autowired
+    private FriendGraphService friendGraphService;
+
+    @Autowired
+    private BlockListService blockListService;
+
     @Override
     @Transactional
-    @CacheEvict(value = {"posts", "comments"}, allEntries = true)
     public CommentDto createComment(CommentDto commentDto, Long postId, Long userId) throws UserException {
         logger.info("User {} creating comment on post {}", userId, postId);
 
@@ -78,12 +90,14 @@ public class CommentServiceImpl implements CommentService {
         }
 
         Comment savedComment = commentRepository.save(comment);
+        postRepository.adjustCommentCount(postId, 1);
+        post.setCommentCount(post.getCommentCount() + 1);
+        cacheInvalidationService.invalidate(CacheInvalidationService.post(postId));
         return commentDtoMapper.toCommentDto(savedComment, user);
     }
 
     @Override
     @Transactional
-    @CacheEvict(value = {"posts", "comments"}, allEntries = true)
     public CommentDto createReply(CommentDto commentDto, Long postId, Long parentCommentId, Long userId) throws UserException {
         logger.info("User {} creating reply to comment {} on post {}", userId, parentCommentId, postId);
 
@@ -96,7 +110,7 @@ public class CommentServiceImpl implements CommentService {
         User user = userRepository.findById(userId)
             .orElseThrow(() -> new UserException("User not found with id: " + userId));
 
-        if (!canViewPost(post, user)) {
+        if (!canViewPost(post, user) || blockListService.isBlocked(parentComment.getUser().getId(), userId)) {
             throw new UserException("You do not have permission to reply to this comment");
         }
 
@@ -121,11 +135,17 @@ public class CommentServiceImpl implements CommentService {
         }
 
         Comment savedReply = commentRepository.save(reply);
+        postRepository.adjustCommentCount(postId, 1);
+        post.setCommentCount(post.getCommentCount() + 1);
+        commentRepository.adjustReplyCount(parentCommentId, 1);
+        parentComment.setReplyCount(parentComment.getReplyCount() + 1);
+        cacheInvalidationService.invalidate(CacheInvalidationService.post(postId),
+            CacheInvalidationService.comment(parentCommentId));
         return commentDtoMapper.toCommentDto(savedReply, user);
     }
 
     @Override
-    @Cacheable(value = "comments", key = "#commentId")
+    @Cacheable(value = "comments", key = "#commentId", sync = true)
     public CommentDto getCommentById(Long commentId, Long reqUserId) throws UserException {
         logger.info("Fetching comment {} for user {}", commentId, reqUserId);
 
@@ -140,7 +160,9 @@ public class CommentServiceImpl implements CommentService {
             throw new UserException("You do not have permission to view this comment");
         }
 
-        return commentDtoMapper.toCommentDtoWithReplies(comment, reqUser);
+        CommentDto commentDto = commentDtoMapper.toCommentDtoWithReplies(comment, reqUser);
+        cacheInvalidationService.track("comments", commentId, commentDependencies(comment).toArray(String[]::new));
+        return commentDto;
     }
 
     @Override
@@ -157,12 +179,27 @@ public class CommentServiceImpl implements CommentService {
             throw new UserException("You do not have permission to view comments of this post");
         }
 
-        return commentDtoMapper.toCommentDtosWithReplies(post.getComments(), reqUser);
+        // Ẩn bình luận và trả lời của người đã chặn/bị chặn bởi người xem: tra chỉ mục một lần cho cả bài viết
+        Set<Long> hidden = blockListService.hiddenFrom(reqUserId);
+        if (hidden.isEmpty()) {
+            return commentDtoMapper.toCommentDtosWithReplies(post.getComments(), reqUser);
+        }
+        List<Comment> comments = post.getComments().stream()
+            .filter(comment -> !hidden.contains(comment.getUser().getId()))
+            .toList();
+        List<CommentDto> commentDtos = commentDtoMapper.toCommentDtosWithReplies(comments, reqUser);
+        commentDtos.forEach(commentDto -> {
+            if (commentDto.getReplies() != null) {
+                commentDto.setReplies(commentDto.getReplies().stream()
+                    .filter(reply -> reply.getUser() == null || !hidden.contains(reply.getUser().getId()))
+                    .toList());
+            }
+        });
+        return commentDtos;
     }
 
     @Override
     @Transactional
-    @CacheEvict(value = {"posts", "comments"}, allEntries = true)
     public CommentDto updateComment(Long commentId, CommentDto commentDto, Long userId) throws UserException {
         logger.info("User {} updating comment {}", userId, commentId);
 
@@ -180,12 +217,13 @@ public class CommentServiceImpl implements CommentService {
         comment.setContent(commentDto.getContent());
         
         Comment updatedComment = commentRepository.save(comment);
+        // Bình luận cha được cache kèm replies cũng phụ thuộc comment(commentId) nên bị hủy theo
+        cacheInvalidationService.invalidate(CacheInvalidationService.comment(commentId));
         return commentDtoMapper.toCommentDto(updatedComment, userRepository.findById(userId).get());
     }
 
     @Override
     @Transactional
-    @CacheEvict(value = {"posts", "comments"}, allEntries = true)
     public void deleteComment(Long commentId, Long userId) throws UserException {
         logger.info("User {} deleting comment {}", userId, commentId);
 
@@ -196,12 +234,25 @@ public class CommentServiceImpl implements CommentService {
             throw new UserException("You are not authorized to delete this comment");
         }
         
+        Long postId = comment.getPost().getId();
+        Long parentId = comment.getParentComment() != null ? comment.getParentComment().getId() : null;
+        // Lấy trước khi xóa: cả cây trả lời bị xóa theo
+        List<String> dependencies = commentDependencies(comment);
+        dependencies.add(CacheInvalidationService.post(postId));
+
         commentRepository.delete(comment);
+        commentRepository.flush();
+
+        // Xóa bình luận kéo theo cả cây trả lời, nên đếm lại số bình luận của bài viết thay vì trừ 1
+        postRepository.recountComments(postId);
+        if (parentId != null) {
+            commentRepository.adjustReplyCount(parentId, -1);
+        }
+        cacheInvalidationService.invalidate(dependencies.toArray(String[]::new));
     }
 
     @Override
     @Transactional
-    @CacheEvict(value = {"posts", "comments"}, allEntries = true)
     public CommentDto likeComment(Long commentId, Long userId) throws UserException {
         logger.info("User {} liking comment {}", userId, commentId);
 
@@ -221,7 +272,6 @@ public class CommentServiceImpl implements CommentService {
 
     @Override
     @Transactional
-    @CacheEvict(value = {"posts", "comments"}, allEntries = true)
     public CommentDto unlikeComment(Long commentId, Long userId) throws UserException {
         logger.info("User {} unliking comment {}", userId, commentId);
 
@@ -239,12 +289,29 @@ public class CommentServiceImpl implements CommentService {
         return commentDtoMapper.toCommentDto(comment, user);
     }
 
+    // DTO kèm replies phụ thuộc bình luận và toàn bộ cây trả lời bên dưới nó
+    private List<String> commentDependencies(Comment comment) {
+        List<String> dependencies = new ArrayList<>();
+        collectCommentDependencies(comment, dependencies);
+        return dependencies;
+    }
+
+    private void collectCommentDependencies(Comment comment, List<String> dependencies) {
+        dependencies.add(CacheInvalidationService.comment(comment.getId()));
+        if (comment.getReplies() != null) {
+            comment.getReplies().forEach(reply -> collectCommentDependencies(reply, dependencies));
+        }
+    }
+
     private boolean canViewPost(Post post, User user) {
+        if (blockListService.isBlocked(post.getUser().getId(), user.getId())) {
+            return false;
+        }
         switch (post.getPrivacy()) {
             case PUBLIC:
                 return true;
             case FRIENDS:
-                return post.getUser().getFriends().contains(user);
+                return friendGraphService.areFriends(post.getUser().getId(), user.getId());
             case ONLY_ME:
                 return post.getUser().getId().equals(user.getId());
             default:
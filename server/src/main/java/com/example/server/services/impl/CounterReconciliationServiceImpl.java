@@ -0,0 +1,64 @@
+package com.example.server.services.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.server.repositories.CommentRepository;
+import com.example.server.repositories.PostRepository;
+import com.example.server.services.CounterReconciliationService;
+
+@Service
+public class CounterReconciliationServiceImpl implements CounterReconciliationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CounterReconciliationServiceImpl.class);
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    // Số ID mỗi lượt; mỗi lượt là một giao dịch ngắn để không giữ khóa lâu trên bảng lớn
+    @Value("${app.counters.reconcile-batch-size:1000}")
+    private int batchSize;
+
+    @Override
+    @Scheduled(initialDelayString = "${app.counters.reconcile-initial-delay-ms:60000}",
+               fixedDelayString = "${app.counters.reconcile-interval-ms:3600000}")
+    public int reconcileCounters() {
+        long start = System.currentTimeMillis();
+        int repaired = 0;
+
+        try {
+            long maxPostId = postRepository.findMaxId();
+            for (long from = 1; from <= maxPostId; from += batchSize) {
+                long to = from + batchSize - 1;
+                repaired += postRepository.reconcileLikeCounts(from, to);
+                repaired += postRepository.reconcileCommentCounts(from, to);
+                repaired += postRepository.reconcileRepostCounts(from, to);
+            }
+
+            long maxCommentId = commentRepository.findMaxId();
+            for (long from = 1; from <= maxCommentId; from += batchSize) {
+                long to = from + batchSize - 1;
+                repaired += commentRepository.reconcileLikeCounts(from, to);
+                for (CommentRepository.ReplyCountDrift drift : commentRepository.findReplyCountDrift(from, to)) {
+                    repaired += commentRepository.repairReplyCount(drift.getId(), drift.getStored(), drift.getActual().intValue());
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Lỗi khi đối soát bộ đếm: {}", e.getMessage(), e);
+        }
+
+        if (repaired > 0) {
+            logger.warn("Đối soát bộ đếm: đã sửa {} dòng bị lệch trong {} ms", repaired, System.currentTimeMillis() - start);
+        } else {
+            logger.info("Đối soát bộ đếm: không có dòng lệch ({} ms)", System.currentTimeMillis() - start);
+        }
+        return repaired;
+    }
+}
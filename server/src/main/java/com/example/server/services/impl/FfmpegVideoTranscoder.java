@@ -0,0 +1,99 @@
+package com.example.server.services.impl;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.server.services.VideoTranscoder;
+
+@Service
+public class FfmpegVideoTranscoder implements VideoTranscoder {
+
+    private static final Logger logger = LoggerFactory.getLogger(FfmpegVideoTranscoder.class);
+
+    // Chỉ giữ phần cuối output của ffmpeg để ghi vào lỗi của việc
+    private static final int MAX_OUTPUT_CHARS = 900;
+
+    @Value("${app.media.processing.ffmpeg-path:ffmpeg}")
+    private String ffmpegPath;
+
+    @Value("${app.media.processing.job-timeout-minutes:30}")
+    private long timeoutMinutes;
+
+    private volatile Boolean available;
+
+    @Override
+    public boolean isAvailable() {
+        Boolean current = available;
+        if (current == null) {
+            try {
+                run(List.of(ffmpegPath, "-version"), 1);
+                current = true;
+            } catch (IOException e) {
+                logger.warn("Không chạy được ffmpeg ({}): video sẽ được phục vụ nguyên bản, chưa xử lý nền", e.getMessage());
+                current = false;
+            }
+            available = current;
+        }
+        return current;
+    }
+
+    @Override
+    public void createThumbnail(Path source, Path target) throws IOException {
+        // Bộ lọc thumbnail chọn khung hình tiêu biểu trong các khung đầu, tránh khung đen lúc mở đầu
+        run(List.of(ffmpegPath, "-nostdin", "-y", "-loglevel", "error",
+            "-i", source.toString(),
+            "-vf", "thumbnail,scale=640:-2",
+            "-frames:v", "1",
+            "-f", "mjpeg", target.toString()), timeoutMinutes);
+    }
+
+    @Override
+    public void transcode(Path source, Path target, int height, String videoBitrate) throws IOException {
+        run(List.of(ffmpegPath, "-nostdin", "-y", "-loglevel", "error",
+            "-i", source.toString(),
+            "-vf", "scale=-2:'min(" + height + ",ih)'",
+            "-c:v", "libx264", "-preset", "veryfast", "-b:v", videoBitrate, "-maxrate", videoBitrate, "-bufsize", videoBitrate,
+            "-c:a", "aac", "-b:a", "96k",
+            // moov atom ở đầu tệp để trình phát bắt đầu phát trước khi tải xong
+            "-movflags", "+faststart",
+            "-f", "mp4", target.toString()), timeoutMinutes);
+    }
+
+    private void run(List<String> command, long timeout) throws IOException {
+        // Output ghi ra tệp tạm thay vì pipe: ffmpeg không bị treo khi bộ đệm pipe đầy, và waitFor vẫn áp được timeout
+        Path log = Files.createTempFile("ffmpeg-", ".log");
+        try {
+            Process process = new ProcessBuilder(new ArrayList<>(command))
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+            try {
+                if (!process.waitFor(timeout, TimeUnit.MINUTES)) {
+                    process.destroyForcibly();
+                    throw new IOException("ffmpeg quá thời gian " + timeout + " phút");
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+                throw new IOException("Bị ngắt khi chờ ffmpeg", e);
+            }
+            if (process.exitValue() != 0) {
+                String output = new String(Files.readAllBytes(log), StandardCharsets.UTF_8);
+                String tail = output.length() > MAX_OUTPUT_CHARS ? output.substring(output.length() - MAX_OUTPUT_CHARS) : output;
+                throw new IOException("ffmpeg thoát với mã " + process.exitValue() + ": " + tail.trim());
+            }
+        } finally {
+            Files.deleteIfExists(log);
+        }
+    }
+}
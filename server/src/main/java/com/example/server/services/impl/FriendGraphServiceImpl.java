@@ -0,0 +1,645 @@
+package com.example.server.services.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.ToLongFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.server.repositories.FriendshipRepository;
+import com.example.server.services.FriendGraphService;
+import com.example.server.utils.AfterCommit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+
+@Service
+public class FriendGraphServiceImpl implements FriendGraphService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FriendGraphServiceImpl.class);
+
+    private static final long[] EMPTY = new long[0];
+
+    // Chênh lệch kích thước từ mức này trở lên thì giao bằng tìm nhị phân thay vì trộn tuần tự
+    private static final int GALLOP_RATIO = 32;
+
+    // Số lần đọc lại database khi có thay đổi chen vào trong lúc sửa một người dùng
+    private static final int REPAIR_ATTEMPTS = 3;
+
+    @Autowired
+    private FriendshipRepository friendshipRepository;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Tắt thì mọi câu hỏi đều đi thẳng xuống database
+    @Value("${app.friend-graph.enabled:true}")
+    private boolean enabled;
+
+    // Số cạnh mỗi trang khi nạp
+    @Value("${app.friend-graph.load-batch-size:50000}")
+    private int loadBatchSize;
+
+    // Số người dùng mỗi trang khi đối chiếu
+    @Value("${app.friend-graph.verify-batch-size:5000}")
+    private int verifyBatchSize;
+
+    @Value("${app.friend-graph.channel:friend-graph:update}")
+    private String channel;
+
+    // Đọc không khóa (optimistic), ghi độc quyền; mảng bạn bè không bao giờ bị sửa tại chỗ nên đọc xong là dùng được
+    private final StampedLock lock = new StampedLock();
+
+    // null khi chưa nạp xong
+    private AdjacencyTable table;
+
+    // Thay đổi nhận trong lúc đang nạp, áp lại lên bảng mới trước khi đưa vào dùng
+    private List<long[]> changesDuringLoad;
+
+    // Người đang được repairUser đọc lại từ database -> đã có apply cho người đó chen vào chưa (giữ dưới lock)
+    private final Map<Long, Boolean> repairsInFlight = new HashMap<>();
+
+    private Timer loadTimer;
+    private Counter repairs;
+
+    /**
+     * Bảng băm địa chỉ mở userId -> long[] bạn bè đã sắp xếp (dò tuyến tính, khóa 0 là ô trống).
+     * Không có Long hay Entry cho từng người dùng: khoảng 40 byte mỗi người cộng 8 byte mỗi cạnh.
+     * Hai mảng keys/lists không đổi kích thước; khi cần lớn hơn thì tạo bảng mới.
+     */
+    static final class AdjacencyTable {
+        final long[] keys;
+        final long[][] lists;
+        int size;
+        long edges;
+
+        AdjacencyTable(int expectedUsers) {
+            int capacity = Integer.highestOneBit(Math.max(16, expectedUsers * 2 - 1)) << 1;
+            keys = new long[capacity];
+            lists = new long[capacity][];
+        }
+
+        long[] get(long userId) {
+            int mask = keys.length - 1;
+            int slot = mix(userId) & mask;
+            for (int probes = 0; probes < keys.length; probes++) {
+                long key = keys[slot];
+                if (key == userId) {
+                    long[] friends = lists[slot];
+                    return friends != null ? friends : EMPTY;
+                }
+                if (key == 0) {
+                    return EMPTY;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return EMPTY;
+        }
+
+        // Trả về bảng chứa giá trị mới: chính bảng này, hoặc bảng lớn hơn nếu phải mở rộng
+        AdjacencyTable put(long userId, long[] friends) {
+            int mask = keys.length - 1;
+            int slot = mix(userId) & mask;
+            while (keys[slot] != 0 && keys[slot] != userId) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == userId) {
+                edges += friends.length - lists[slot].length;
+                lists[slot] = friends;
+                return this;
+            }
+            // Người không còn bạn nào vẫn giữ khóa (mảng rỗng); người chưa có thì khỏi thêm
+            if (friends.length == 0) {
+                return this;
+            }
+            if ((size + 1) * 2 > keys.length) {
+                return grow().put(userId, friends);
+            }
+            lists[slot] = friends;
+            keys[slot] = userId;
+            size++;
+            edges += friends.length;
+            return this;
+        }
+
+        private AdjacencyTable grow() {
+            AdjacencyTable bigger = new AdjacencyTable(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) {
+                    bigger.put(keys[i], lists[i]);
+                }
+            }
+            return bigger;
+        }
+
+        // Người dùng đang có ít nhất một bạn, tăng dần
+        long[] usersWithFriends() {
+            long[] users = new long[size];
+            int count = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0 && lists[i].length > 0) {
+                    users[count++] = keys[i];
+                }
+            }
+            users = Arrays.copyOf(users, count);
+            Arrays.sort(users);
+            return users;
+        }
+
+        long estimatedBytes() {
+            // keys + tham chiếu lists, rồi header mỗi mảng con và 8 byte mỗi cạnh
+            return keys.length * 12L + size * 16L + edges * 8L;
+        }
+
+        private static int mix(long userId) {
+            long h = userId * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener(
+            (message, pattern) -> onRemoteChange(new String(message.getBody(), StandardCharsets.UTF_8)),
+            new ChannelTopic(channel));
+
+        Gauge.builder("friend.graph.users", this, service -> service.stat(t -> t.size)).register(meterRegistry);
+        Gauge.builder("friend.graph.edges", this, service -> service.stat(t -> t.edges)).register(meterRegistry);
+        Gauge.builder("friend.graph.memory", this, service -> service.stat(AdjacencyTable::estimatedBytes))
+            .baseUnit("bytes").register(meterRegistry);
+        loadTimer = Timer.builder("friend.graph.load").register(meterRegistry);
+        repairs = Counter.builder("friend.graph.repairs").register(meterRegistry);
+    }
+
+    // Sự kiện ứng dụng được phát bất đồng bộ (AppConfig): nạp chạy nền, trong lúc đó câu hỏi đi xuống database
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        reload();
+    }
+
+    @Override
+    public boolean isReady() {
+        long stamp = lock.tryOptimisticRead();
+        boolean ready = table != null;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                ready = table != null;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return ready;
+    }
+
+    @Override
+    public boolean areFriends(Long userId, Long otherUserId) {
+        if (userId == null || otherUserId == null || userId.equals(otherUserId)) {
+            return false;
+        }
+        long[] friends = adjacency(userId);
+        long[] otherFriends = adjacency(otherUserId);
+        if (friends == null || otherFriends == null) {
+            return friendshipRepository.existsAcceptedEdge(userId, otherUserId)
+                && friendshipRepository.existsAcceptedEdge(otherUserId, userId);
+        }
+        return Arrays.binarySearch(friends, otherUserId) >= 0 && Arrays.binarySearch(otherFriends, userId) >= 0;
+    }
+
+    @Override
+    public int degree(Long userId) {
+        return friendIds(userId).length;
+    }
+
+    @Override
+    public long[] friendIds(Long userId) {
+        if (userId == null) {
+            return EMPTY;
+        }
+        long[] friends = adjacency(userId);
+        return friends != null ? friends : sortedDistinct(friendshipRepository.findFriendIdsByUserId(userId));
+    }
+
+    @Override
+    public Map<Long, long[]> friendIds(Collection<Long> userIds) {
+        Map<Long, long[]> friends = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long userId : userIds) {
+            if (userId == null || friends.containsKey(userId)) {
+                continue;
+            }
+            long[] adjacency = adjacency(userId);
+            if (adjacency != null) {
+                friends.put(userId, adjacency);
+            } else {
+                missing.add(userId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<Long, List<Long>> grouped = new HashMap<>();
+            for (Object[] row : friendshipRepository.findAcceptedEdgesByUserIdIn(missing)) {
+                grouped.computeIfAbsent(((Number) row[0]).longValue(), id -> new ArrayList<>())
+                    .add(((Number) row[1]).longValue());
+            }
+            missing.forEach(userId -> friends.put(userId, sortedDistinct(grouped.getOrDefault(userId, List.of()))));
+        }
+        return friends;
+    }
+
+    @Override
+    public long[] userIds() {
+        long stamp = lock.readLock();
+        try {
+            return table != null ? table.usersWithFriends() : EMPTY;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public long[] mutualFriendIds(Long userId, Long otherUserId) {
+        long[] friends = friendIds(userId);
+        long[] otherFriends = friendIds(otherUserId);
+        long[] mutual = new long[Math.min(friends.length, otherFriends.length)];
+        int count = intersect(friends, otherFriends, mutual);
+        return count == mutual.length ? mutual : Arrays.copyOf(mutual, count);
+    }
+
+    @Override
+    public int mutualFriendsCount(Long userId, Long otherUserId) {
+        return intersect(friendIds(userId), friendIds(otherUserId), null);
+    }
+
+    @Override
+    public void onFriendshipChanged(Long userId, Long otherUserId) {
+        if (!enabled || userId == null || otherUserId == null) {
+            return;
+        }
+        afterCommit(() -> {
+            // Đọc lại trạng thái đã commit thay vì tin vào thao tác vừa làm: hai chiều có thể khác nhau (chặn một phía)
+            boolean forward = friendshipRepository.existsAcceptedEdge(userId, otherUserId);
+            boolean backward = friendshipRepository.existsAcceptedEdge(otherUserId, userId);
+            apply(userId, otherUserId, forward);
+            apply(otherUserId, userId, backward);
+            // Node này cũng nhận lại thông báo của chính nó; áp lại là vô hại
+            redisTemplate.convertAndSend(channel,
+                userId + "," + otherUserId + "," + (forward ? 1 : 0) + "," + (backward ? 1 : 0));
+        });
+    }
+
+    private void onRemoteChange(String message) {
+        try {
+            String[] parts = message.split(",");
+            long userId = Long.parseLong(parts[0]);
+            long otherUserId = Long.parseLong(parts[1]);
+            apply(userId, otherUserId, "1".equals(parts[2]));
+            apply(otherUserId, userId, "1".equals(parts[3]));
+        } catch (RuntimeException e) {
+            logger.warn("Bỏ qua thông báo đồ thị bạn bè không hợp lệ '{}': {}", message, e.getMessage());
+        }
+    }
+
+    @Override
+    public void reload() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        long stamp = lock.writeLock();
+        try {
+            if (changesDuringLoad != null) {
+                logger.info("Đồ thị bạn bè đang được nạp, bỏ qua yêu cầu nạp lại");
+                return;
+            }
+            changesDuringLoad = new ArrayList<>();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        AdjacencyTable loaded = null;
+        try {
+            loaded = load();
+        } catch (Exception e) {
+            logger.error("Không nạp được đồ thị bạn bè, tiếp tục trả lời từ database: {}", e.getMessage(), e);
+        }
+
+        stamp = lock.writeLock();
+        try {
+            if (loaded != null) {
+                for (long[] change : changesDuringLoad) {
+                    loaded = put(loaded, change[0], change[1], change[2] == 1);
+                }
+                table = loaded;
+            }
+            changesDuringLoad = null;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        if (loaded != null) {
+            long elapsed = System.nanoTime() - start;
+            loadTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            logger.info("Đã nạp đồ thị bạn bè: {} người dùng, {} cạnh, ~{} MB trong {} ms", loaded.size, loaded.edges,
+                loaded.estimatedBytes() >> 20, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+    }
+
+    // Cạnh đến theo thứ tự (user_id, friend_id) nên mỗi danh sách bạn bè được dựng liền một mạch, đã sắp xếp sẵn
+    private AdjacencyTable load() {
+        AdjacencyTable loaded = new AdjacencyTable(1024);
+        long[] buffer = new long[256];
+        int count = 0;
+        long currentUser = 0;
+        long afterUser = 0;
+        long afterFriend = 0;
+
+        while (true) {
+            List<Object[]> rows = friendshipRepository.findAcceptedEdgesAfter(afterUser, afterFriend,
+                PageRequest.of(0, loadBatchSize));
+            for (Object[] row : rows) {
+                long userId = ((Number) row[0]).longValue();
+                long friendId = ((Number) row[1]).longValue();
+                if (userId != currentUser) {
+                    if (count > 0) {
+                        loaded = loaded.put(currentUser, Arrays.copyOf(buffer, count));
+                    }
+                    currentUser = userId;
+                    count = 0;
+                }
+                // Bảng friendships không có ràng buộc duy nhất: bỏ dòng trùng
+                if (count == 0 || buffer[count - 1] != friendId) {
+                    if (count == buffer.length) {
+                        buffer = Arrays.copyOf(buffer, count * 2);
+                    }
+                    buffer[count++] = friendId;
+                }
+                afterUser = userId;
+                afterFriend = friendId;
+            }
+            if (rows.size() < loadBatchSize) {
+                break;
+            }
+        }
+        if (count > 0) {
+            loaded = loaded.put(currentUser, Arrays.copyOf(buffer, count));
+        }
+        return loaded;
+    }
+
+    @Override
+    @Scheduled(initialDelayString = "${app.friend-graph.verify-initial-delay-ms:600000}",
+               fixedDelayString = "${app.friend-graph.verify-interval-ms:3600000}")
+    public int verify() {
+        if (!enabled || !isReady()) {
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        int repaired = 0;
+
+        try {
+            // Người có dòng ACCEPTED trong database, tăng dần theo ID
+            long[] seen = new long[1024];
+            int seenCount = 0;
+            long afterUser = 0;
+            while (true) {
+                List<FriendshipRepository.FriendDigest> digests = friendshipRepository.findFriendDigestsAfter(afterUser,
+                    PageRequest.of(0, verifyBatchSize));
+                for (FriendshipRepository.FriendDigest digest : digests) {
+                    long userId = digest.getUserId();
+                    long[] friends = adjacency(userId);
+                    if (friends == null) {
+                        return repaired;
+                    }
+                    if ((friends.length != digest.getDegree() || sum(friends) != digest.getIdSum())
+                            && repairUser(userId)) {
+                        repaired++;
+                    }
+                    if (seenCount == seen.length) {
+                        seen = Arrays.copyOf(seen, seenCount * 2);
+                    }
+                    seen[seenCount++] = userId;
+                    afterUser = userId;
+                }
+                if (digests.size() < verifyBatchSize) {
+                    break;
+                }
+            }
+
+            // Người trong chỉ mục vẫn còn bạn nhưng database không còn dòng ACCEPTED nào
+            for (long userId : userIds()) {
+                if (Arrays.binarySearch(seen, 0, seenCount, userId) < 0 && repairUser(userId)) {
+                    repaired++;
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Lỗi khi đối chiếu đồ thị bạn bè: {}", e.getMessage(), e);
+        }
+
+        repairs.increment(repaired);
+        if (repaired > 0) {
+            logger.warn("Đối chiếu đồ thị bạn bè: đã nạp lại {} người dùng bị lệch trong {} ms", repaired,
+                System.currentTimeMillis() - start);
+        } else {
+            logger.info("Đối chiếu đồ thị bạn bè: không có người dùng bị lệch ({} ms)", System.currentTimeMillis() - start);
+        }
+        return repaired;
+    }
+
+    /**
+     * Nạp lại danh sách bạn bè của userId từ database. Nếu trong lúc đọc có apply (sau commit hoặc từ node khác)
+     * đổi danh sách của người này thì kết quả đọc có thể đã cũ hơn bảng: bỏ đi và đọc lại, không ghi đè.
+     * Trả về false nếu sau REPAIR_ATTEMPTS lần vẫn bị chen; lượt đối chiếu sau sẽ xét lại người này.
+     */
+    boolean repairUser(long userId) {
+        for (int attempt = 0; attempt < REPAIR_ATTEMPTS; attempt++) {
+            long stamp = lock.writeLock();
+            try {
+                repairsInFlight.put(userId, Boolean.FALSE);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+
+            long[] friends;
+            try {
+                friends = sortedDistinct(friendshipRepository.findFriendIdsByUserId(userId));
+            } catch (RuntimeException e) {
+                stamp = lock.writeLock();
+                try {
+                    repairsInFlight.remove(userId);
+                } finally {
+                    lock.unlockWrite(stamp);
+                }
+                throw e;
+            }
+
+            stamp = lock.writeLock();
+            try {
+                if (Boolean.FALSE.equals(repairsInFlight.remove(userId))) {
+                    if (table != null) {
+                        table = table.put(userId, friends);
+                    }
+                    return true;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+        logger.debug("Bỏ qua sửa đồ thị bạn bè của user {}: liên tục có thay đổi chen vào", userId);
+        return false;
+    }
+
+    private void apply(long userId, long friendId, boolean present) {
+        long stamp = lock.writeLock();
+        try {
+            if (changesDuringLoad != null) {
+                changesDuringLoad.add(new long[] { userId, friendId, present ? 1 : 0 });
+            }
+            repairsInFlight.computeIfPresent(userId, (id, changed) -> Boolean.TRUE);
+            if (table != null) {
+                table = put(table, userId, friendId, present);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Copy-on-write: tạo mảng mới thay vì sửa mảng mà luồng đọc có thể đang giữ
+    private static AdjacencyTable put(AdjacencyTable target, long userId, long friendId, boolean present) {
+        long[] friends = target.get(userId);
+        int index = Arrays.binarySearch(friends, friendId);
+        if (present == (index >= 0)) {
+            return target;
+        }
+        long[] updated;
+        if (present) {
+            int insertAt = -index - 1;
+            updated = new long[friends.length + 1];
+            System.arraycopy(friends, 0, updated, 0, insertAt);
+            updated[insertAt] = friendId;
+            System.arraycopy(friends, insertAt, updated, insertAt + 1, friends.length - insertAt);
+        } else {
+            updated = new long[friends.length - 1];
+            System.arraycopy(friends, 0, updated, 0, index);
+            System.arraycopy(friends, index + 1, updated, index, friends.length - index - 1);
+        }
+        return target.put(userId, updated);
+    }
+
+    // Mảng bạn bè của userId, null nếu chỉ mục chưa sẵn sàng
+    private long[] adjacency(long userId) {
+        long stamp = lock.tryOptimisticRead();
+        AdjacencyTable current = table;
+        long[] friends = current != null ? current.get(userId) : null;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                current = table;
+                friends = current != null ? current.get(userId) : null;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return friends;
+    }
+
+    private double stat(ToLongFunction<AdjacencyTable> metric) {
+        long stamp = lock.readLock();
+        try {
+            return table != null ? metric.applyAsLong(table) : 0;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Giao hai mảng tăng dần, ghi kết quả vào out nếu khác null; trả về số phần tử chung.
+     * Hai mảng cỡ tương đương thì trộn tuần tự O(m + n); chênh lệch lớn thì tìm nhị phân từng phần tử
+     * của mảng nhỏ trong phần còn lại của mảng lớn, O(m log n).
+     */
+    static int intersect(long[] first, long[] second, long[] out) {
+        long[] small = first.length <= second.length ? first : second;
+        long[] large = small == first ? second : first;
+        int count = 0;
+        if ((long) small.length * GALLOP_RATIO < large.length) {
+            int from = 0;
+            for (long value : small) {
+                int index = Arrays.binarySearch(large, from, large.length, value);
+                if (index >= 0) {
+                    if (out != null) {
+                        out[count] = value;
+                    }
+                    count++;
+                    from = index + 1;
+                } else {
+                    from = -index - 1;
+                }
+                if (from >= large.length) {
+                    break;
+                }
+            }
+            return count;
+        }
+        int i = 0;
+        int j = 0;
+        while (i < small.length && j < large.length) {
+            if (small[i] < large[j]) {
+                i++;
+            } else if (small[i] > large[j]) {
+                j++;
+            } else {
+                if (out != null) {
+                    out[count] = small[i];
+                }
+                count++;
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    private static long[] sortedDistinct(List<Long> ids) {
+        long[] values = ids.stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+        return values.length == 0 ? EMPTY : values;
+    }
+
+    private static long sum(long[] values) {
+        long total = 0;
+        for (long value : values) {
+            total += value;
+        }
+        return total;
+    }
+
+    // Lỗi chỉ ghi log: lần đối chiếu định kỳ sẽ sửa lại cặp này
+    private void afterCommit(Runnable task) {
+        AfterCommit.runSafely(task, logger, "Không cập nhật được đồ thị bạn bè: {}");
+    }
+}
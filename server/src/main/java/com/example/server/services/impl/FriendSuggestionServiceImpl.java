@@ -0,0 +1,531 @@
+package com.example.server.services.impl;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.server.dto.UserDto;
+import com.example.server.mapper.UserDtoMapper;
+import com.example.server.repositories.EducationRepository;
+import com.example.server.repositories.FriendshipRepository;
+import com.example.server.repositories.GroupMemberRepository;
+import com.example.server.repositories.WorkExperienceRepository;
+import com.example.server.services.FriendGraphService;
+import com.example.server.services.FriendSuggestionService;
+import com.example.server.utils.AfterCommit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+@Service
+public class FriendSuggestionServiceImpl implements FriendSuggestionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FriendSuggestionServiceImpl.class);
+
+    private static final String KEY_PREFIX = "suggestions:";
+    private static final String REBUILD_LOCK_KEY = "suggestions:rebuild:lock";
+    // Phần tử đánh dấu (điểm 0) để người không có gợi ý nào vẫn có khóa, không bị tính lại mỗi lần đọc
+    private static final String SENTINEL = "0";
+    // Số ID mỗi câu ... IN (...)
+    private static final int IN_CHUNK_SIZE = 1000;
+
+    private static final long[] EMPTY = new long[0];
+
+    // Thay cả tập gợi ý trong một lệnh nguyên tử: ARGV = ttlSeconds, score1, member1, score2, member2...
+    // Người đọc không bao giờ thấy khóa đã xóa mà chưa ghi lại (sẽ kích hoạt tính lại không cần thiết)
+    private static final RedisScript<Long> REPLACE_SCRIPT = new DefaultRedisScript<>(
+        "redis.call('DEL', KEYS[1]) " +
+        "for i = 2, #ARGV, 2 do redis.call('ZADD', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+        "redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+        "return 1", Long.class);
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private FriendGraphService friendGraphService;
+
+    @Autowired
+    private FriendshipRepository friendshipRepository;
+
+    @Autowired
+    private GroupMemberRepository groupMemberRepository;
+
+    @Autowired
+    private EducationRepository educationRepository;
+
+    @Autowired
+    private WorkExperienceRepository workExperienceRepository;
+
+    @Autowired
+    private UserDtoMapper userDtoMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Số gợi ý lưu cho mỗi người
+    @Value("${app.suggestions.size:50}")
+    private int size;
+
+    // Chỉ những ứng viên có nhiều bạn chung nhất được chấm điểm đầy đủ (nhóm, trường, công ty)
+    @Value("${app.suggestions.candidate-pool:200}")
+    private int candidatePool;
+
+    @Value("${app.suggestions.ttl-hours:168}")
+    private long ttlHours;
+
+    // Bạn có nhiều bạn hơn mức này (tài khoản "người nổi tiếng") không dùng để sinh ứng viên: tốn kém và ít ý nghĩa
+    @Value("${app.suggestions.max-friend-degree:5000}")
+    private int maxFriendDegree;
+
+    // Số người dùng mỗi lô; mỗi lô nạp đặc trưng bằng vài truy vấn IN
+    @Value("${app.suggestions.shard-size:256}")
+    private int shardSize;
+
+    // Số luồng tính song song; mỗi luồng giữ một kết nối database khi đang nạp lô
+    @Value("${app.suggestions.parallelism:4}")
+    private int parallelism;
+
+    // Khi quan hệ đổi, tối đa chừng này bạn của mỗi bên được đánh dấu tính lại
+    @Value("${app.suggestions.max-fanout:500}")
+    private int maxFanout;
+
+    @Value("${app.suggestions.rebuild-interval-ms:21600000}")
+    private long rebuildIntervalMs;
+
+    // Số lượt tính tại chỗ cùng lúc trên luồng request (người chưa có khóa gợi ý); vượt mức thì xếp hàng
+    @Value("${app.suggestions.on-demand-concurrency:4}")
+    private int onDemandConcurrency;
+
+    @Value("${app.suggestions.weight.mutual:1.0}")
+    private double mutualWeight;
+
+    @Value("${app.suggestions.weight.group:0.5}")
+    private double groupWeight;
+
+    @Value("${app.suggestions.weight.school:1.5}")
+    private double schoolWeight;
+
+    @Value("${app.suggestions.weight.company:1.5}")
+    private double companyWeight;
+
+    private ForkJoinPool pool;
+
+    // Người cần tính lại ở lượt refreshPending kế tiếp
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+
+    // Lượt tính đang chạy trên pool: lượt kế tiếp của cùng loại bỏ qua thay vì chồng lên
+    private final AtomicBoolean refreshRunning = new AtomicBoolean();
+    private final AtomicBoolean rebuildRunning = new AtomicBoolean();
+
+    private Semaphore onDemandPermits;
+
+    private Timer fullTimer;
+    private Timer incrementalTimer;
+    private Counter refreshedUsers;
+
+    private record Suggestion(long userId, double score) {
+    }
+
+    // Chia mảng người dùng đôi một tới khi còn một lô; lỗi của một lô không làm dừng các lô khác
+    private final class ShardTask extends RecursiveAction {
+        private final long[] userIds;
+        private final int from;
+        private final int to;
+
+        ShardTask(long[] userIds, int from, int to) {
+            this.userIds = userIds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= shardSize) {
+                try {
+                    refresh(Arrays.copyOfRange(userIds, from, to));
+                } catch (Exception e) {
+                    logger.warn("Không tính được gợi ý kết bạn cho lô {}..{}: {}", userIds[from], userIds[to - 1], e.getMessage());
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ShardTask(userIds, from, middle), new ShardTask(userIds, middle, to));
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        pool = new ForkJoinPool(threads, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("friend-suggestions-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+
+        fullTimer = Timer.builder("friend.suggestions.refresh").tag("type", "full").register(meterRegistry);
+        incrementalTimer = Timer.builder("friend.suggestions.refresh").tag("type", "incremental").register(meterRegistry);
+        refreshedUsers = Counter.builder("friend.suggestions.users").register(meterRegistry);
+        onDemandPermits = new Semaphore(Math.max(onDemandConcurrency, 0));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @Override
+    public Page<UserDto> getSuggestions(Long userId, Pageable pageable) {
+        List<Long> ids;
+        long total;
+        try {
+            String key = key(userId);
+            if (!Boolean.TRUE.equals(redisTemplate.hasKey(key)) && !refreshOnDemand(userId)) {
+                // Đang có quá nhiều lượt tính tại chỗ: trả trang rỗng, lượt refreshPending kế tiếp sẽ tính
+                pending.add(userId);
+                return new PageImpl<>(new ArrayList<>(), pageable, 0);
+            }
+            Set<String> members = redisTemplate.opsForZSet().reverseRangeByScore(key, Double.MIN_VALUE,
+                Double.POSITIVE_INFINITY, pageable.getOffset(), pageable.getPageSize());
+            Long count = redisTemplate.opsForZSet().count(key, Double.MIN_VALUE, Double.POSITIVE_INFINITY);
+            ids = members != null ? members.stream().map(Long::valueOf).toList() : List.of();
+            total = count != null ? count : 0;
+        } catch (Exception e) {
+            // Redis gián đoạn: tính tại chỗ, không lưu
+            logger.warn("Không đọc được gợi ý kết bạn của userId {} từ Redis: {}", userId, e.getMessage());
+            List<Suggestion> suggestions = computeOnDemand(userId);
+            ids = suggestions.stream()
+                .skip(pageable.getOffset())
+                .limit(pageable.getPageSize())
+                .map(Suggestion::userId)
+                .toList();
+            total = suggestions.size();
+        }
+
+        // Dạng gọn, một truy vấn cho cả trang; giữ thứ tự theo điểm
+        Map<Long, UserDto> users = userDtoMapper.toUserSummaryDtos(ids);
+        List<UserDto> page = ids.stream().map(users::get).filter(user -> user != null).toList();
+        return new PageImpl<>(new ArrayList<>(page), pageable, total);
+    }
+
+    @Override
+    public void onRelationshipChanged(Long userId, Long otherUserId, boolean friendsChanged) {
+        if (userId == null || otherUserId == null) {
+            return;
+        }
+        afterCommit(() -> {
+            // Đã là bạn, đang chờ hoặc đã chặn: không gợi ý nữa; hủy kết bạn thì lượt tính lại sẽ quyết định
+            redisTemplate.opsForZSet().remove(key(userId), otherUserId.toString());
+            redisTemplate.opsForZSet().remove(key(otherUserId), userId.toString());
+            if (friendsChanged) {
+                // Bạn của hai bên có thêm/bớt một bạn của bạn
+                markPending(userId);
+                markPending(otherUserId);
+            }
+        });
+    }
+
+    private boolean refreshOnDemand(long userId) {
+        if (!onDemandPermits.tryAcquire()) {
+            return false;
+        }
+        try {
+            refresh(new long[] { userId });
+            return true;
+        } finally {
+            onDemandPermits.release();
+        }
+    }
+
+    private List<Suggestion> computeOnDemand(long userId) {
+        if (!onDemandPermits.tryAcquire()) {
+            return List.of();
+        }
+        try {
+            return compute(new long[] { userId }).getOrDefault(userId, List.of());
+        } finally {
+            onDemandPermits.release();
+        }
+    }
+
+    private void markPending(Long userId) {
+        pending.add(userId);
+        long[] friends = friendGraphService.friendIds(userId);
+        for (int i = 0; i < Math.min(friends.length, maxFanout); i++) {
+            pending.add(friends[i]);
+        }
+    }
+
+    @Override
+    @Scheduled(initialDelayString = "${app.suggestions.refresh-interval-ms:60000}",
+               fixedDelayString = "${app.suggestions.refresh-interval-ms:60000}")
+    public int refreshPending() {
+        // Lượt trước chưa xong: người mới đánh dấu vẫn nằm trong pending cho lượt sau
+        if (pending.isEmpty() || !refreshRunning.compareAndSet(false, true)) {
+            return 0;
+        }
+        List<Long> drained = new ArrayList<>();
+        for (Iterator<Long> iterator = pending.iterator(); iterator.hasNext();) {
+            drained.add(iterator.next());
+            iterator.remove();
+        }
+        long[] userIds = drained.stream().mapToLong(Long::longValue).sorted().toArray();
+        runInBackground(userIds, incrementalTimer, refreshRunning,
+            elapsedMs -> logger.debug("Đã tính lại gợi ý kết bạn cho {} người dùng trong {} ms", userIds.length, elapsedMs));
+        return userIds.length;
+    }
+
+    @Override
+    @Scheduled(initialDelayString = "${app.suggestions.rebuild-initial-delay-ms:900000}",
+               fixedDelayString = "${app.suggestions.rebuild-interval-ms:21600000}")
+    public int rebuildAll() {
+        if (!friendGraphService.isReady()) {
+            logger.info("Đồ thị bạn bè chưa sẵn sàng, bỏ qua lượt tính lại gợi ý kết bạn");
+            return 0;
+        }
+        if (rebuildRunning.get()) {
+            logger.info("Lượt tính lại gợi ý kết bạn trước vẫn đang chạy");
+            return 0;
+        }
+        // Khóa không được nhả: hết hạn sau nửa chu kỳ để các node khác bỏ qua lượt của mình trong chu kỳ này
+        Boolean acquired = redisTemplate.opsForValue().setIfAbsent(REBUILD_LOCK_KEY, UUID.randomUUID().toString(),
+            Duration.ofMillis(Math.max(rebuildIntervalMs / 2, 1)));
+        if (!Boolean.TRUE.equals(acquired)) {
+            logger.info("Node khác đang/đã tính lại gợi ý kết bạn trong chu kỳ này");
+            return 0;
+        }
+
+        if (!rebuildRunning.compareAndSet(false, true)) {
+            return 0;
+        }
+        long[] userIds = friendGraphService.userIds();
+        runInBackground(userIds, fullTimer, rebuildRunning,
+            elapsedMs -> logger.info("Đã tính lại gợi ý kết bạn cho {} người dùng trong {} ms", userIds.length, elapsedMs));
+        return userIds.length;
+    }
+
+    /**
+     * Đưa lượt tính lên pool fork/join rồi trả về ngay: luồng @Scheduled dùng chung với presence, media job,
+     * đối soát... không bị giữ trong lúc tính. running được nhả khi lượt tính xong (kể cả khi lỗi).
+     */
+    private void runInBackground(long[] userIds, Timer timer, AtomicBoolean running, LongConsumer onDone) {
+        long start = System.nanoTime();
+        try {
+            pool.execute(() -> {
+                try {
+                    new ShardTask(userIds, 0, userIds.length).invoke();
+                } finally {
+                    long elapsed = System.nanoTime() - start;
+                    timer.record(elapsed, TimeUnit.NANOSECONDS);
+                    running.set(false);
+                    onDone.accept(TimeUnit.NANOSECONDS.toMillis(elapsed));
+                }
+            });
+        } catch (RuntimeException e) {
+            // Pool đã đóng (ứng dụng đang dừng)
+            running.set(false);
+            throw e;
+        }
+    }
+
+    private void refresh(long[] userIds) {
+        Map<Long, List<Suggestion>> suggestions = compute(userIds);
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                String ttlSeconds = Long.toString(TimeUnit.HOURS.toSeconds(ttlHours));
+                for (long userId : userIds) {
+                    List<String> args = new ArrayList<>();
+                    args.add(ttlSeconds);
+                    args.add("0");
+                    args.add(SENTINEL);
+                    for (Suggestion suggestion : suggestions.getOrDefault(userId, List.of())) {
+                        args.add(Double.toString(suggestion.score()));
+                        args.add(Long.toString(suggestion.userId()));
+                    }
+                    ops.execute(REPLACE_SCRIPT, List.of(key(userId)), args.toArray());
+                }
+                return null;
+            }
+        });
+        refreshedUsers.increment(userIds.length);
+    }
+
+    /**
+     * Gợi ý của một lô người dùng, điểm giảm dần. Ứng viên là bạn của bạn chưa có quan hệ nào với người dùng;
+     * top candidatePool theo số bạn chung được chấm điểm thêm bằng nhóm, trường và công ty chung.
+     */
+    private Map<Long, List<Suggestion>> compute(long[] userIds) {
+        List<Long> shard = Arrays.stream(userIds).boxed().toList();
+        Map<Long, long[]> friends = friendIds(shard);
+        Set<Long> friendsOfShard = new HashSet<>();
+        friends.values().forEach(ids -> Arrays.stream(ids).forEach(friendsOfShard::add));
+        Map<Long, long[]> friendsOfFriends = friendIds(friendsOfShard);
+        Map<Long, Set<Long>> related = relatedUsers(shard);
+
+        // Bước 1: đếm bạn chung cho mọi bạn của bạn, giữ top candidatePool
+        Map<Long, Map<Long, Integer>> candidates = new HashMap<>();
+        Set<Long> featureUserIds = new HashSet<>(shard);
+        for (long userId : userIds) {
+            long[] userFriends = friends.getOrDefault(userId, EMPTY);
+            Set<Long> excluded = related.getOrDefault(userId, Set.of());
+            Map<Long, Integer> mutualCounts = new HashMap<>();
+            for (long friendId : userFriends) {
+                long[] friendFriends = friendsOfFriends.getOrDefault(friendId, EMPTY);
+                if (friendFriends.length > maxFriendDegree) {
+                    continue;
+                }
+                for (long candidateId : friendFriends) {
+                    if (candidateId != userId && Arrays.binarySearch(userFriends, candidateId) < 0
+                            && !excluded.contains(candidateId)) {
+                        mutualCounts.merge(candidateId, 1, Integer::sum);
+                    }
+                }
+            }
+            Map<Long, Integer> top = new LinkedHashMap<>();
+            mutualCounts.entrySet().stream()
+                .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(candidatePool)
+                .forEach(entry -> top.put(entry.getKey(), entry.getValue()));
+            candidates.put(userId, top);
+            featureUserIds.addAll(top.keySet());
+        }
+
+        // Bước 2: đặc trưng của người trong lô và mọi ứng viên, vài truy vấn IN cho cả lô
+        Map<Long, long[]> groups = sortedIds(chunked(featureUserIds, groupMemberRepository::findGroupIdsByUserIdIn));
+        Map<Long, Set<String>> schools = names(chunked(featureUserIds, educationRepository::findSchoolNamesByUserIdIn));
+        Map<Long, Set<String>> companies = names(chunked(featureUserIds, workExperienceRepository::findCompanyNamesByUserIdIn));
+
+        Map<Long, List<Suggestion>> result = new HashMap<>();
+        for (long userId : userIds) {
+            long[] userGroups = groups.getOrDefault(userId, EMPTY);
+            Set<String> userSchools = schools.getOrDefault(userId, Set.of());
+            Set<String> userCompanies = companies.getOrDefault(userId, Set.of());
+            List<Suggestion> scored = new ArrayList<>();
+            candidates.get(userId).forEach((candidateId, mutual) -> {
+                double score = mutualWeight * mutual
+                    + groupWeight * FriendGraphServiceImpl.intersect(userGroups, groups.getOrDefault(candidateId, EMPTY), null)
+                    + schoolWeight * shared(userSchools, schools.getOrDefault(candidateId, Set.of()))
+                    + companyWeight * shared(userCompanies, companies.getOrDefault(candidateId, Set.of()));
+                scored.add(new Suggestion(candidateId, score));
+            });
+            scored.sort(Comparator.comparingDouble(Suggestion::score).reversed()
+                .thenComparingLong(Suggestion::userId));
+            result.put(userId, scored.size() > size ? new ArrayList<>(scored.subList(0, size)) : scored);
+        }
+        return result;
+    }
+
+    private Map<Long, long[]> friendIds(Collection<Long> userIds) {
+        // Khi chỉ mục chưa sẵn sàng friendIds đi xuống database: chia nhỏ danh sách IN
+        Map<Long, long[]> friends = new HashMap<>();
+        List<Long> ids = new ArrayList<>(userIds);
+        for (int i = 0; i < ids.size(); i += IN_CHUNK_SIZE) {
+            friends.putAll(friendGraphService.friendIds(ids.subList(i, Math.min(ids.size(), i + IN_CHUNK_SIZE))));
+        }
+        return friends;
+    }
+
+    // Người đã có bất kỳ quan hệ nào (bạn, đang chờ, từ chối, chặn, theo cả hai chiều) với từng người trong lô
+    private Map<Long, Set<Long>> relatedUsers(List<Long> shard) {
+        Set<Long> shardIds = new HashSet<>(shard);
+        Map<Long, Set<Long>> related = new HashMap<>();
+        for (Object[] row : chunked(shard, friendshipRepository::findRelationshipPairsByUserIdIn)) {
+            long userId = ((Number) row[0]).longValue();
+            long friendId = ((Number) row[1]).longValue();
+            if (shardIds.contains(userId)) {
+                related.computeIfAbsent(userId, id -> new HashSet<>()).add(friendId);
+            }
+            if (shardIds.contains(friendId)) {
+                related.computeIfAbsent(friendId, id -> new HashSet<>()).add(userId);
+            }
+        }
+        return related;
+    }
+
+    private List<Object[]> chunked(Collection<Long> userIds, Function<Collection<Long>, List<Object[]>> query) {
+        List<Long> ids = new ArrayList<>(userIds);
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += IN_CHUNK_SIZE) {
+            rows.addAll(query.apply(ids.subList(i, Math.min(ids.size(), i + IN_CHUNK_SIZE))));
+        }
+        return rows;
+    }
+
+    private static Map<Long, long[]> sortedIds(List<Object[]> rows) {
+        Map<Long, List<Long>> grouped = new HashMap<>();
+        for (Object[] row : rows) {
+            grouped.computeIfAbsent(((Number) row[0]).longValue(), id -> new ArrayList<>()).add(((Number) row[1]).longValue());
+        }
+        Map<Long, long[]> sorted = new HashMap<>();
+        grouped.forEach((userId, ids) -> sorted.put(userId, ids.stream().mapToLong(Long::longValue).sorted().distinct().toArray()));
+        return sorted;
+    }
+
+    private static Map<Long, Set<String>> names(List<Object[]> rows) {
+        Map<Long, Set<String>> names = new HashMap<>();
+        for (Object[] row : rows) {
+            names.computeIfAbsent(((Number) row[0]).longValue(), id -> new LinkedHashSet<>()).add((String) row[1]);
+        }
+        return names;
+    }
+
+    private static int shared(Set<String> first, Set<String> second) {
+        int count = 0;
+        for (String value : first) {
+            if (second.contains(value)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private String key(Long userId) {
+        return KEY_PREFIX + userId;
+    }
+
+    // Lỗi chỉ ghi log: gợi ý cũ còn lại tới lượt tính lại toàn bộ kế tiếp
+    private void afterCommit(Runnable task) {
+        AfterCommit.runSafely(task, logger, "Không cập nhật được gợi ý kết bạn: {}");
+    }
+}
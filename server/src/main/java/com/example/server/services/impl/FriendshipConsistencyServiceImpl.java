@@ -0,0 +1,235 @@
+package com.example.server.services.impl;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.server.models.Friendship;
+import com.example.server.models.Friendship.FriendshipStatus;
+import com.example.server.models.User;
+import com.example.server.repositories.FriendshipRepository;
+import com.example.server.repositories.UserRepository;
+import com.example.server.services.CacheInvalidationService;
+import com.example.server.services.FriendGraphService;
+import com.example.server.services.FriendSuggestionService;
+import com.example.server.services.FriendshipConsistencyService;
+import com.example.server.utils.UserUtil;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
+@Service
+public class FriendshipConsistencyServiceImpl implements FriendshipConsistencyService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FriendshipConsistencyServiceImpl.class);
+
+    private static final String VERIFY_LOCK_KEY = "friendships:verify:lock";
+    private static final int NAME_KEY_BATCH_SIZE = 500;
+
+    @Autowired
+    private FriendshipRepository friendshipRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CacheInvalidationService cacheInvalidationService;
+
+    @Autowired
+    private FriendGraphService friendGraphService;
+
+    @Autowired
+    private FriendSuggestionService friendSuggestionService;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Độ rộng khoảng user_id của mỗi lượt truy vấn
+    @Value("${app.friendship-verify.batch-size:10000}")
+    private long batchSize;
+
+    @Value("${app.friendship-verify.interval-ms:21600000}")
+    private long intervalMs;
+
+    private Counter repairs;
+
+    @PostConstruct
+    void registerMetrics() {
+        repairs = Counter.builder("friendship.consistency.repairs").register(meterRegistry);
+    }
+
+    @Override
+    public boolean repairPair(Long userId, Long otherUserId) {
+        if (userId.equals(otherUserId)) {
+            return false;
+        }
+        boolean repaired = Boolean.TRUE.equals(transactionTemplate.execute(status -> repairInTransaction(userId, otherUserId)));
+        if (repaired) {
+            repairs.increment();
+        }
+        return repaired;
+    }
+
+    @Override
+    @Scheduled(initialDelayString = "${app.friendship-verify.initial-delay-ms:1200000}",
+               fixedDelayString = "${app.friendship-verify.interval-ms:21600000}")
+    public int verify() {
+        // Khóa không được nhả: hết hạn sau nửa chu kỳ để các node khác bỏ qua lượt của mình trong chu kỳ này
+        Boolean acquired = redisTemplate.opsForValue().setIfAbsent(VERIFY_LOCK_KEY, UUID.randomUUID().toString(),
+            Duration.ofMillis(Math.max(intervalMs / 2, 1)));
+        if (!Boolean.TRUE.equals(acquired)) {
+            logger.info("Node khác đang/đã đối chiếu bảng friendships trong chu kỳ này");
+            return 0;
+        }
+
+        long start = System.currentTimeMillis();
+        int repaired = 0;
+        try {
+            Long maxUserId = friendshipRepository.findMaxUserId();
+            if (maxUserId == null) {
+                return 0;
+            }
+            for (long from = 0; from < maxUserId; from += batchSize) {
+                long to = from + batchSize;
+                // Cặp được chuẩn hóa (nhỏ, lớn) để mỗi cặp chỉ sửa một lần trong một khoảng
+                Set<List<Long>> pairs = new LinkedHashSet<>();
+                for (Object[] row : friendshipRepository.findDuplicateEdges(from, to)) {
+                    pairs.add(normalize((Long) row[0], (Long) row[1]));
+                }
+                for (Object[] row : friendshipRepository.findAsymmetricEdges(from, to)) {
+                    pairs.add(normalize((Long) row[0], (Long) row[1]));
+                }
+                for (List<Long> pair : pairs) {
+                    try {
+                        if (repairPair(pair.get(0), pair.get(1))) {
+                            repaired++;
+                        }
+                    } catch (Exception e) {
+                        logger.warn("Không sửa được cặp {} - {}: {}", pair.get(0), pair.get(1), e.getMessage());
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Lỗi khi đối chiếu bảng friendships: {}", e.getMessage(), e);
+        }
+
+        if (repaired > 0) {
+            logger.warn("Đối chiếu bảng friendships: đã sửa {} cặp bị lệch trong {} ms", repaired,
+                System.currentTimeMillis() - start);
+        } else {
+            logger.info("Đối chiếu bảng friendships: không có cặp bị lệch ({} ms)", System.currentTimeMillis() - start);
+        }
+        return repaired;
+    }
+
+    @Override
+    @EventListener(ApplicationReadyEvent.class)
+    public int backfillNameKeys() {
+        int filled = 0;
+        try {
+            while (true) {
+                List<Long> friendIds = friendshipRepository.findFriendIdsMissingNameKey(PageRequest.of(0, NAME_KEY_BATCH_SIZE));
+                if (friendIds.isEmpty()) {
+                    break;
+                }
+                int batchFilled = 0;
+                for (UserRepository.UserSummary user : userRepository.findSummariesByIdIn(friendIds)) {
+                    String nameKey = UserUtil.nameKey(user.getFirstName(), user.getLastName());
+                    transactionTemplate.executeWithoutResult(status -> friendshipRepository.updateFriendNameKey(user.getId(), nameKey));
+                    batchFilled++;
+                }
+                filled += batchFilled;
+                if (batchFilled == 0) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Lỗi khi điền khóa tên cho bảng friendships: {}", e.getMessage(), e);
+        }
+        if (filled > 0) {
+            logger.info("Đã điền khóa tên friendships cho {} người dùng", filled);
+        }
+        return filled;
+    }
+
+    private boolean repairInTransaction(Long userId, Long otherUserId) {
+        // Các dòng của cặp, cũ trước: dòng cuối cùng của mỗi chiều là dòng được giữ
+        List<Friendship> rows = friendshipRepository.findPairRows(userId, otherUserId);
+        List<Long> obsolete = new ArrayList<>();
+        Friendship forward = null;
+        Friendship backward = null;
+        for (Friendship row : rows) {
+            if (row.getUser().getId().equals(userId)) {
+                if (forward != null) {
+                    obsolete.add(forward.getId());
+                }
+                forward = row;
+            } else {
+                if (backward != null) {
+                    obsolete.add(backward.getId());
+                }
+                backward = row;
+            }
+        }
+
+        boolean forwardAccepted = forward != null && forward.getStatus() == FriendshipStatus.ACCEPTED;
+        boolean backwardAccepted = backward != null && backward.getStatus() == FriendshipStatus.ACCEPTED;
+        boolean friendsChanged = false;
+        if (forwardAccepted != backwardAccepted) {
+            Friendship accepted = forwardAccepted ? forward : backward;
+            Friendship other = forwardAccepted ? backward : forward;
+            if (other != null && other.getStatus() == FriendshipStatus.BLOCKED) {
+                // Chặn được ưu tiên: bỏ chiều ACCEPTED còn sót lại
+                obsolete.add(accepted.getId());
+            } else {
+                // Chấp nhận chỉ ghi được một chiều: bổ sung chiều còn lại
+                User user = forwardAccepted ? accepted.getUser() : accepted.getFriend();
+                User otherUser = forwardAccepted ? accepted.getFriend() : accepted.getUser();
+                friendshipRepository.upsertEdgePair(userId, otherUserId, FriendshipStatus.ACCEPTED.name(),
+                    UserUtil.nameKey(user.getFirstName(), user.getLastName()),
+                    UserUtil.nameKey(otherUser.getFirstName(), otherUser.getLastName()));
+            }
+            friendsChanged = true;
+        }
+        if (!obsolete.isEmpty()) {
+            friendshipRepository.deleteByIdIn(obsolete);
+        }
+        if (!friendsChanged && obsolete.isEmpty()) {
+            return false;
+        }
+
+        logger.warn("Đã sửa quan hệ lệch giữa {} và {} (xóa {} dòng, {} danh sách bạn bè)", userId, otherUserId,
+            obsolete.size(), friendsChanged ? "có đổi" : "không đổi");
+        cacheInvalidationService.invalidate(CacheInvalidationService.pair(userId, otherUserId),
+            CacheInvalidationService.friends(userId), CacheInvalidationService.friends(otherUserId));
+        friendGraphService.onFriendshipChanged(userId, otherUserId);
+        friendSuggestionService.onRelationshipChanged(userId, otherUserId, friendsChanged);
+        return true;
+    }
+
+    private static List<Long> normalize(Long userId, Long otherUserId) {
+        return userId < otherUserId ? List.of(userId, otherUserId) : List.of(otherUserId, userId);
+    }
+}
@@ -1,21 +1,34 @@
 package com.example.server.services.impl;
 
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.PagedModel;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.example.server.dto.FriendshipDto;
+import com.example.server.dto.RelationshipStatusDto;
 import com.example.server.dto.UserDto;
 import com.example.server.exception.UserException;
 import com.example.server.mapper.FriendshipDtoMapper;
@@ -25,17 +38,25 @@ import com.example.server.models.Friendship.FriendshipStatus;
 import com.example.server.models.User;
 import com.example.server.repositories.FriendshipRepository;
 import com.example.server.repositories.UserRepository;
+import com.example.server.services.BlockListService;
+import com.example.server.services.CacheInvalidationService;
+import com.example.server.services.FriendGraphService;
+import com.example.server.services.FriendSuggestionService;
+import com.example.server.services.MutualFriendsService;
 import com.example.server.services.FriendshipService;
 import com.example.server.services.NotificationService;
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.PersistenceContext;
-import jakarta.persistence.Query;
-import org.springframework.data.util.Pair;
+import com.example.server.services.PresenceService;
+import com.example.server.services.TimelineService;
+import com.example.server.utils.FriendCursor;
+import com.example.server.utils.UserUtil;
 
 @Service
 public class FriendshipServiceImpl implements FriendshipService {
 
     private static final Logger logger = LoggerFactory.getLogger(FriendshipServiceImpl.class);
+    private static final int SEARCH_LIMIT = 50;
+    // Mốc "sau mọi thời điểm kết bạn" cho trang đầu của kiểu sắp xếp RECENT
+    private static final LocalDateTime LATEST = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
 
     @Autowired
     private FriendshipRepository friendshipRepository;
@@ -46,36 +67,40 @@ public class FriendshipServiceImpl implements FriendshipService {
     @Autowired
     private NotificationService notificationService;
     
-    @PersistenceContext
-    private EntityManager entityManager;
-
     @Autowired
     private FriendshipDtoMapper friendshipDtoMapper;
 
     @Autowired
     private UserDtoMapper userDtoMapper;
 
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private TimelineService timelineService;
+
+    @Autowired
+    private BlockListService blockListService;
+
+    @Autowired
+    private CacheInvalidationService cacheInvalidationService;
+
+    @Autowired
+    private FriendGraphService friendGraphService;
+
+    @Autowired
+    private MutualFriendsService mutualFriendsService;
+
+    @Autowired
+    private FriendSuggestionService friendSuggestionService;
+
     private User findUserById(Long userId) throws UserException {
         return userRepository.findById(userId)
                 .orElseThrow(() -> new UserException("Không tìm thấy người dùng với ID: " + userId));
     }
     
-    // Phương thức hỗ trợ xóa dữ liệu trực tiếp bằng native query
-    private int executeNativeDelete(String sql, Long userId, Long friendId) {
-        try {
-            Query query = entityManager.createNativeQuery(sql);
-            query.setParameter("userId", userId);
-            query.setParameter("friendId", friendId);
-            return query.executeUpdate();
-        } catch (Exception e) {
-            logger.error("Lỗi khi thực hiện native query: {}", e.getMessage(), e);
-            return 0;
-        }
-    }
-
     @Override
     @Transactional
-    @CacheEvict(value = {"users", "friendships"}, allEntries = true)
     public FriendshipDto sendFriendRequest(Long friendId, Long userId) throws UserException {
         logger.info("=== BẮT ĐẦU GỬI LỜI MỜI KẾT BẠN === userId: {}, friendId: {}", userId, friendId);
         
@@ -109,6 +134,7 @@ public class FriendshipServiceImpl implements FriendshipService {
             friendship.setStatus(FriendshipStatus.PENDING);
             friendship.setUpdatedAt(LocalDateTime.now());
             Friendship savedFriendship = friendshipRepository.save(friendship);
+            invalidateRelationship(userId, friendId, false);
             
             // Tạo thông báo cho người được gửi lời mời
             notificationService.createFriendRequestNotification(user, friend);
@@ -128,22 +154,15 @@ public class FriendshipServiceImpl implements FriendshipService {
                 logger.info("Đã có lời mời từ {}, tự động chấp nhận", friendId);
                 
                 // Tạo mối quan hệ bạn bè hai chiều
-                Pair<Friendship, Friendship> friendships = ensureBidirectionalFriendship(
-                        user, friend, FriendshipStatus.ACCEPTED);
-                
-                // Cập nhật danh sách bạn bè
-                user.getFriends().add(friend);
-                friend.getFriends().add(user);
-                
-                userRepository.save(user);
-                userRepository.save(friend);
-                userRepository.flush();
+                Friendship accepted = writeAcceptedEdge(user, friend);
+                timelineService.onFriendshipCreated(user.getId(), friend.getId());
+                invalidateRelationship(userId, friendId, true);
                 
                 // Tạo thông báo cho người đã gửi lời mời trước đó
                 notificationService.createFriendAcceptedNotification(user, friend);
                 
                 logger.info("=== HOÀN THÀNH GỬI & CHẤP NHẬN LỜI MỜI KẾT BẠN ===");
-                return friendshipDtoMapper.toFriendshipDto(friendships.getFirst());
+                return friendshipDtoMapper.toFriendshipDto(accepted);
                 
             } else if (friendship.getStatus() == FriendshipStatus.BLOCKED) {
                 logger.warn("Bị chặn bởi người dùng {}", friendId);
@@ -160,12 +179,9 @@ public class FriendshipServiceImpl implements FriendshipService {
         friendship.setCreatedAt(LocalDateTime.now());
         friendship.setUpdatedAt(LocalDateTime.now());
 
-        // Tính toán số bạn chung
-        Integer mutualCount = friendshipRepository.countMutualFriends(user, friend);
-        friendship.setMutualFriendsCount(mutualCount != null ? mutualCount : 0);
-
         Friendship savedFriendship = friendshipRepository.save(friendship);
         logger.info("Đã tạo yêu cầu kết bạn từ {} đến {} với ID {}", user.getId(), friend.getId(), savedFriendship.getId());
+        invalidateRelationship(userId, friendId, false);
         
         // Tạo thông báo cho người được gửi lời mời
         notificationService.createFriendRequestNotification(user, friend);
@@ -176,7 +192,6 @@ public class FriendshipServiceImpl implements FriendshipService {
 
     @Override
     @Transactional
-    @CacheEvict(value = {"users", "friendships"}, allEntries = true)
     public FriendshipDto acceptFriendRequest(Long friendshipId, Long userId) throws UserException {
         logger.info("=== BẮT ĐẦU CHẤP NHẬN LỜI MỜI KẾT BẠN === friendshipId: {}, userId: {}", friendshipId, userId);
         
@@ -206,25 +221,15 @@ public class FriendshipServiceImpl implements FriendshipService {
             logger.info("Người gửi lời mời (friend): {}", friend.getId());
             
             // Đảm bảo tạo mối quan hệ bạn bè hai chiều
-            Pair<Friendship, Friendship> friendships = ensureBidirectionalFriendship(
-                    user, friend, FriendshipStatus.ACCEPTED);
-            
-            // Cập nhật danh sách bạn bè trong entity
-            if (!user.getFriends().contains(friend)) {
-                user.getFriends().add(friend);
-            }
-            if (!friend.getFriends().contains(user)) {
-                friend.getFriends().add(user);
-            }
-            
-            userRepository.save(user);
-            userRepository.save(friend);
+            Friendship accepted = writeAcceptedEdge(user, friend);
+            timelineService.onFriendshipCreated(user.getId(), friend.getId());
+            invalidateRelationship(user.getId(), friend.getId(), true);
             
             // Tạo thông báo cho người đã gửi lời mời
             notificationService.createFriendAcceptedNotification(user, friend);
             
             logger.info("=== HOÀN THÀNH CHẤP NHẬN LỜI MỜI KẾT BẠN ===");
-            return friendshipDtoMapper.toFriendshipDto(friendships.getFirst());
+            return friendshipDtoMapper.toFriendshipDto(accepted);
         } catch (Exception e) {
             logger.error("Lỗi khi chấp nhận lời mời kết bạn: {}", e.getMessage(), e);
             throw new UserException("Lỗi khi chấp nhận lời mời kết bạn: " + e.getMessage());
@@ -233,7 +238,6 @@ public class FriendshipServiceImpl implements FriendshipService {
 
     @Override
     @Transactional
-    @CacheEvict(value = {"users", "friendships"}, allEntries = true)
     public void rejectFriendRequest(Long friendshipId, Long userId) throws UserException {
         Friendship friendship = friendshipRepository.findById(friendshipId)
                 .orElseThrow(() -> new UserException("Không tìm thấy lời mời kết bạn"));
@@ -251,11 +255,11 @@ public class FriendshipServiceImpl implements FriendshipService {
         friendship.setStatus(FriendshipStatus.REJECTED);
         friendship.setUpdatedAt(LocalDateTime.now());
         friendshipRepository.save(friendship);
+        invalidateRelationship(friendship.getUser().getId(), userId, false);
     }
 
     @Override
     @Transactional
-    @CacheEvict(value = {"users", "friendships"}, allEntries = true)
     public void cancelFriendRequest(Long friendshipId, Long userId) throws UserException {
         Friendship friendship = friendshipRepository.findById(friendshipId)
                 .orElseThrow(() -> new UserException("Không tìm thấy lời mời kết bạn"));
@@ -271,66 +275,25 @@ public class FriendshipServiceImpl implements FriendshipService {
 
         // Xóa lời mời
         friendshipRepository.delete(friendship);
+        invalidateRelationship(userId, friendship.getFriend().getId(), false);
     }
 
     @Override
     @Transactional(rollbackFor = Exception.class)
-    @CacheEvict(value = {"users", "friendships"}, allEntries = true)
     public void removeFriend(Long friendId, Long userId) throws UserException {
         logger.info("===== BẮT ĐẦU XÓA BẠN BÈ ===== UserId: {}, FriendId: {}", userId, friendId);
         
         try {
-            User user = findUserById(userId);
-            User friend = findUserById(friendId);
-
-            logger.info("Thông tin người dùng: User({}), Friend({})", user.getId(), friend.getId());
-
-            // Kiểm tra quan hệ bạn bè
-            var existingFriendship = friendshipRepository.findByUserAndFriend(user, friend);
-            var existingReverseFriendship = friendshipRepository.findByUserAndFriend(friend, user);
-
-            // Kiểm tra xem có tồn tại mối quan hệ bạn bè không
-            boolean hasFriendship = existingFriendship.isPresent() && existingFriendship.get().getStatus() == FriendshipStatus.ACCEPTED;
-            boolean hasReverseFriendship = existingReverseFriendship.isPresent() && existingReverseFriendship.get().getStatus() == FriendshipStatus.ACCEPTED;
-            
-            if (!hasFriendship && !hasReverseFriendship) {
+            // Một câu lệnh xóa cả hai chiều ACCEPTED; không có dòng nào nghĩa là hai người không phải bạn bè
+            int deleted = friendshipRepository.deleteAcceptedEdgePair(userId, friendId);
+            if (deleted == 0) {
                 logger.warn("Không tìm thấy mối quan hệ bạn bè giữa hai người dùng");
                 throw new UserException("Không phải là bạn bè");
             }
-
-            // 1. Xóa dữ liệu từ bảng friendship
-            if (existingFriendship.isPresent()) {
-                logger.info("Xóa friendship: {} -> {}", userId, friendId);
-                friendshipRepository.delete(existingFriendship.get());
-            }
-            
-            if (existingReverseFriendship.isPresent()) {
-                logger.info("Xóa friendship: {} -> {}", friendId, userId);
-                friendshipRepository.delete(existingReverseFriendship.get());
-            }
+            logger.info("Đã xóa {} dòng friendships giữa {} và {}", deleted, userId, friendId);
             
-            // 2. Xóa trực tiếp từ bảng user_friends bằng SQL hiệu quả nhất
-            String sql = "DELETE FROM user_friends WHERE (user_id = ? AND friend_id = ?) OR (user_id = ? AND friend_id = ?)";
-            int deleted = executeRawSql(sql, userId, friendId, friendId, userId);
-            logger.info("Đã xóa {} dòng từ bảng user_friends", deleted);
-            
-            // 3. Cập nhật các entity
-            if (user.getFriends().contains(friend)) {
-                user.getFriends().remove(friend);
-                userRepository.save(user);
-                logger.info("Đã xóa friend khỏi danh sách của user");
-            }
-            
-            if (friend.getFriends().contains(user)) {
-                friend.getFriends().remove(user);
-                userRepository.save(friend);
-                logger.info("Đã xóa user khỏi danh sách của friend");
-            }
-            
-            // 4. Đảm bảo tất cả thay đổi được lưu vào database
-            friendshipRepository.flush();
-            userRepository.flush();
-            entityManager.flush();
+            timelineService.onFriendshipRemoved(userId, friendId);
+            invalidateRelationship(userId, friendId, true);
             
             logger.info("==== HOÀN THÀNH XÓA BẠN BÈ ====");
         } catch (Exception e) {
@@ -340,19 +303,19 @@ public class FriendshipServiceImpl implements FriendshipService {
     }
 
     /**
-     * Thực thi SQL trực tiếp với tham số
+     * Hủy cache liên quan tới quan hệ giữa hai người dùng. Khi danh sách bạn bè đổi thì hủy thêm
+     * danh sách bạn bè và số bạn chung của hai người, và cập nhật đồ thị bạn bè trong bộ nhớ.
+     * Gợi ý kết bạn của hai người (và của bạn bè họ nếu danh sách bạn bè đổi) được cập nhật theo.
      */
-    private int executeRawSql(String sql, Object... params) {
-        try {
-            Query query = entityManager.createNativeQuery(sql);
-            for (int i = 0; i < params.length; i++) {
-                query.setParameter(i+1, params[i]);
-            }
-            return query.executeUpdate();
-        } catch (Exception e) {
-            logger.error("Lỗi khi thực thi SQL: {} - {}", sql, e.getMessage());
-            return 0;
+    private void invalidateRelationship(Long userId, Long otherUserId, boolean friendsChanged) {
+        friendSuggestionService.onRelationshipChanged(userId, otherUserId, friendsChanged);
+        if (!friendsChanged) {
+            cacheInvalidationService.invalidate(CacheInvalidationService.pair(userId, otherUserId));
+            return;
         }
+        cacheInvalidationService.invalidate(CacheInvalidationService.pair(userId, otherUserId),
+            CacheInvalidationService.friends(userId), CacheInvalidationService.friends(otherUserId));
+        friendGraphService.onFriendshipChanged(userId, otherUserId);
     }
 
     @Override
@@ -365,16 +328,14 @@ public class FriendshipServiceImpl implements FriendshipService {
         var existingFriendship = friendshipRepository.findByUserAndFriend(user, blockUser);
         
         Friendship friendship;
+        boolean wasFriend = false;
         if (existingFriendship.isPresent()) {
             friendship = existingFriendship.get();
             
-            // Nếu là bạn bè, xóa khỏi danh sách bạn bè
+            // Nếu là bạn bè, chiều ngược lại bị xóa bên dưới nên hai người không còn là bạn
             if (friendship.getStatus() == FriendshipStatus.ACCEPTED) {
-                user.getFriends().remove(blockUser);
-                blockUser.getFriends().remove(user);
-                
-                userRepository.save(user);
-                userRepository.save(blockUser);
+                wasFriend = true;
+                timelineService.onFriendshipRemoved(userId, blockUserId);
             }
             
             friendship.setStatus(FriendshipStatus.BLOCKED);
@@ -395,6 +356,8 @@ public class FriendshipServiceImpl implements FriendshipService {
         if (reverseRequest.isPresent()) {
             friendshipRepository.delete(reverseRequest.get());
         }
+        invalidateRelationship(userId, blockUserId, wasFriend);
+        blockListService.onBlockChanged(userId, blockUserId);
         
         return friendshipDtoMapper.toFriendshipDto(friendshipRepository.save(friendship));
     }
@@ -412,14 +375,17 @@ public class FriendshipServiceImpl implements FriendshipService {
         }
         
         friendshipRepository.delete(existingFriendship.get());
+        invalidateRelationship(userId, blockedUserId, false);
+        blockListService.onBlockChanged(userId, blockedUserId);
     }
 
     @Override
-    @Cacheable(value = "friendships", key = "'friends_' + #userId")
+    @Cacheable(value = "friendships", key = "'friends_' + #userId", sync = true)
     public List<UserDto> getUserFriends(Long userId) throws UserException {
         User user = findUserById(userId);
         
         List<Friendship> acceptedFriendships = friendshipRepository.findByUserAndStatus(user, FriendshipStatus.ACCEPTED);
+        cacheInvalidationService.track("friendships", "friends_" + userId, CacheInvalidationService.friends(userId));
         
         return friendshipDtoMapper.toUserDtosFromFriendships(acceptedFriendships, true);
     }
@@ -453,135 +419,191 @@ public class FriendshipServiceImpl implements FriendshipService {
 
     @Override
     public Page<UserDto> getFriendSuggestions(Long userId, Pageable pageable) throws UserException {
-        User user = findUserById(userId);
-        
-        List<User> suggestionUsers = friendshipRepository.findFriendSuggestions(user, pageable);
-        
-        List<UserDto> suggestionDtos = suggestionUsers.stream()
-                .map(u -> userDtoMapper.toUserDto(u))
-                .collect(Collectors.toList());
-        
-        return new PageImpl<>(suggestionDtos, pageable, suggestionDtos.size());
+        // Danh sách đã được tính trước theo điểm; số bạn chung lấy trực tiếp để luôn mới
+        Page<UserDto> suggestions = friendSuggestionService.getSuggestions(userId, pageable);
+        mutualFriendsService.fillMutualCounts(userId, suggestions.getContent());
+        return suggestions;
     }
 
     @Override
     public String getFriendshipStatus(Long userId, Long otherUserId) throws UserException {
+        // Trường hợp phổ biến nhất trả lời từ đồ thị bạn bè, không cần nạp hai User và hai dòng friendships
+        if (friendGraphService.isReady() && friendGraphService.areFriends(userId, otherUserId)) {
+            return FriendshipStatus.ACCEPTED.toString();
+        }
+
         User user = findUserById(userId);
         User otherUser = findUserById(otherUserId);
         
         // Kiểm tra lời mời đã gửi
         var sentRequest = friendshipRepository.findByUserAndFriend(user, otherUser);
         if (sentRequest.isPresent()) {
-            return sentRequest.get().getStatus().toString();
+            return statusOf(sentRequest.get().getStatus(), null);
         }
         
         // Kiểm tra lời mời đã nhận
         var receivedRequest = friendshipRepository.findByUserAndFriend(otherUser, user);
-        if (receivedRequest.isPresent()) {
-            return receivedRequest.get().getStatus().toString() + "_RECEIVED";
+        return statusOf(null, receivedRequest.map(Friendship::getStatus).orElse(null));
+    }
+
+    @Override
+    public List<RelationshipStatusDto> getRelationshipStatuses(Long userId, Collection<Long> otherUserIds) {
+        // Bỏ trùng và bỏ chính mình, giữ thứ tự client gửi
+        List<Long> ids = otherUserIds.stream()
+                .filter(Objects::nonNull)
+                .filter(id -> !id.equals(userId))
+                .distinct()
+                .toList();
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        // Một câu lệnh cho mọi dòng friendships giữa userId và các người dùng, theo cả hai chiều
+        Map<Long, FriendshipStatus> sent = new HashMap<>();
+        Map<Long, FriendshipStatus> received = new HashMap<>();
+        for (Object[] row : friendshipRepository.findRelationshipsBetween(userId, ids)) {
+            if (userId.equals(row[0])) {
+                sent.put((Long) row[1], (FriendshipStatus) row[2]);
+            } else {
+                received.put((Long) row[0], (FriendshipStatus) row[2]);
+            }
+        }
+        Map<Long, Integer> mutualCounts = mutualFriendsService.counts(userId, ids);
+        Set<Long> following = new HashSet<>(userRepository.findFollowingIdsAmong(userId, ids));
+        Set<Long> followers = new HashSet<>(userRepository.findFollowerIdsAmong(userId, ids));
+
+        List<RelationshipStatusDto> statuses = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            FriendshipStatus sentStatus = sent.get(id);
+            FriendshipStatus receivedStatus = received.get(id);
+            statuses.add(new RelationshipStatusDto(id, statusOf(sentStatus, receivedStatus),
+                    sentStatus == FriendshipStatus.BLOCKED, receivedStatus == FriendshipStatus.BLOCKED,
+                    mutualCounts.getOrDefault(id, 0), following.contains(id), followers.contains(id)));
+        }
+        return statuses;
+    }
+
+    // Trạng thái theo dòng userId -> người kia (sent) và người kia -> userId (received), như /status/{userId}
+    private static String statusOf(FriendshipStatus sent, FriendshipStatus received) {
+        if (sent != null) {
+            return sent.toString();
+        }
+        if (received != null) {
+            return received.toString() + "_RECEIVED";
         }
-        
         return "NONE";
     }
 
     @Override
-    @Cacheable(value = "friendships", key = "'mutual_' + #userId + '_' + #otherUserId")
     public Integer getMutualFriendsCount(Long userId, Long otherUserId) throws UserException {
-        User user = findUserById(userId);
-        User otherUser = findUserById(otherUserId);
-        
-        Integer count = friendshipRepository.countMutualFriends(user, otherUser);
-        return count != null ? count : 0;
+        if (!userRepository.existsById(otherUserId)) {
+            throw new UserException("User not found with id: " + otherUserId);
+        }
+        // Giao hai danh sách bạn bè trong bộ nhớ rẻ hơn một lượt đọc cache nên không cache
+        return mutualFriendsService.count(userId, otherUserId);
+    }
+
+    @Override
+    public PagedModel<?> getFriends(Long userId, FriendCursor.Sort sort, String prefix, FriendCursor after, int size)
+            throws UserException {
+        if (!userRepository.existsById(userId)) {
+            throw new UserException("Không tìm thấy người dùng với ID: " + userId);
+        }
+        String namePrefix = UserUtil.normalizeName(prefix);
+        Set<Long> online = sort == FriendCursor.Sort.ONLINE ? onlineFriendIds(userId) : Set.of();
+
+        // Lấy dư 1 người để biết còn trang sau, không đếm tổng
+        List<FriendshipRepository.FriendEntry> window = findFriendWindow(userId, sort, namePrefix, online, after, size + 1);
+        boolean hasNext = window.size() > size;
+        List<FriendshipRepository.FriendEntry> entries = hasNext ? window.subList(0, size) : window;
+
+        PagedModel<UserDto> pagedModel = PagedModel.of(toFriendDtos(entries), (PagedModel.PageMetadata) null);
+        String basePath = String.format("/api/friendship/user/%d/friends/page?sort=%s&q=%s", userId,
+                sort.name().toLowerCase(Locale.ROOT), URLEncoder.encode(namePrefix, StandardCharsets.UTF_8));
+        String self = after.isFirst() ? "" : after.encode();
+        pagedModel.add(Link.of(String.format("%s&after=%s&size=%d", basePath, self, size)).withSelfRel());
+
+        if (hasNext) {
+            FriendshipRepository.FriendEntry last = entries.get(entries.size() - 1);
+            String next = new FriendCursor(online.contains(last.getFriendId()), last.getNameKey(), last.getSince(),
+                    last.getFriendId()).encode();
+            pagedModel.add(Link.of(String.format("%s&after=%s&size=%d", basePath, next, size)).withRel("next"));
+        }
+        return pagedModel;
     }
 
     @Override
     public List<UserDto> searchFriends(Long userId, String query) throws UserException {
-        User user = findUserById(userId);
-        
-        List<Friendship> acceptedFriendships = friendshipRepository.findByUserAndStatus(user, FriendshipStatus.ACCEPTED);
-        
-        List<UserDto> friends = friendshipDtoMapper.toUserDtosFromFriendships(acceptedFriendships, true);
-        
-        // Lọc theo query
-        if (query != null && !query.trim().isEmpty()) {
-            String lowercaseQuery = query.toLowerCase();
-            return friends.stream()
-                    .filter(friend -> 
-                        (friend.getFirstName() + " " + friend.getLastName()).toLowerCase().contains(lowercaseQuery) ||
-                        (friend.getEmail() != null && friend.getEmail().toLowerCase().contains(lowercaseQuery)))
-                    .collect(Collectors.toList());
+        if (!userRepository.existsById(userId)) {
+            throw new UserException("Không tìm thấy người dùng với ID: " + userId);
         }
-        
-        return friends;
+        // Tìm theo đầu tên trên idx_friendships_user_name: chỉ đọc các dòng khớp, không nạp cả danh sách bạn bè
+        return toFriendDtos(findFriendWindow(userId, FriendCursor.Sort.NAME, UserUtil.normalizeName(query), Set.of(),
+                FriendCursor.FIRST, SEARCH_LIMIT));
     }
 
-    /**
-     * Phương thức đảm bảo tạo mối quan hệ bạn bè hai chiều
-     * @param user1 Người dùng thứ nhất
-     * @param user2 Người dùng thứ hai
-     * @param status Trạng thái của mối quan hệ
-     * @return Cặp mối quan hệ bạn bè đã được tạo/cập nhật
-     */
-    @Transactional
-    private Pair<Friendship, Friendship> ensureBidirectionalFriendship(User user1, User user2, FriendshipStatus status) {
-        logger.info("Đảm bảo mối quan hệ bạn bè hai chiều giữa {} và {} với trạng thái {}", 
-                user1.getId(), user2.getId(), status);
-        
-        // Tìm hoặc tạo mối quan hệ từ user1 đến user2
-        Friendship friendship1 = friendshipRepository.findByUserAndFriend(user1, user2)
-                .orElse(new Friendship());
-        
-        // Nếu là mối quan hệ mới, cài đặt các thông tin cơ bản
-        if (friendship1.getId() == null) {
-            friendship1.setUser(user1);
-            friendship1.setFriend(user2);
-            friendship1.setCreatedAt(LocalDateTime.now());
-            logger.info("Tạo mới mối quan hệ từ {} đến {}", user1.getId(), user2.getId());
-        } else {
-            logger.info("Cập nhật mối quan hệ đã tồn tại từ {} đến {} (ID: {})", 
-                    user1.getId(), user2.getId(), friendship1.getId());
+    private List<FriendshipRepository.FriendEntry> findFriendWindow(Long userId, FriendCursor.Sort sort, String prefix,
+            Set<Long> online, FriendCursor after, int limit) {
+        String like = prefix + "%";
+        String nameKey = after.nameKey() == null ? "" : after.nameKey();
+        Long friendId = after.friendId();
+
+        if (sort == FriendCursor.Sort.RECENT) {
+            return friendshipRepository.findFriendsBySinceBefore(userId, like,
+                    after.since() == null ? LATEST : after.since(),
+                    friendId == null ? Long.MAX_VALUE : friendId, PageRequest.of(0, limit));
         }
-        
-        // Cập nhật trạng thái và thời gian
-        friendship1.setStatus(status);
-        friendship1.setUpdatedAt(LocalDateTime.now());
-        
-        // Tính số bạn chung
-        Integer mutualCount = friendshipRepository.countMutualFriends(user1, user2);
-        friendship1.setMutualFriendsCount(mutualCount != null ? mutualCount : 0);
-        
-        // Tìm hoặc tạo mối quan hệ từ user2 đến user1
-        Friendship friendship2 = friendshipRepository.findByUserAndFriend(user2, user1)
-                .orElse(new Friendship());
-        
-        // Nếu là mối quan hệ mới, cài đặt các thông tin cơ bản
-        if (friendship2.getId() == null) {
-            friendship2.setUser(user2);
-            friendship2.setFriend(user1);
-            friendship2.setCreatedAt(LocalDateTime.now());
-            logger.info("Tạo mới mối quan hệ từ {} đến {}", user2.getId(), user1.getId());
-        } else {
-            logger.info("Cập nhật mối quan hệ đã tồn tại từ {} đến {} (ID: {})", 
-                    user2.getId(), user1.getId(), friendship2.getId());
+        if (sort == FriendCursor.Sort.NAME) {
+            return friendshipRepository.findFriendsByNameAfter(userId, like, nameKey, friendId == null ? 0L : friendId,
+                    PageRequest.of(0, limit));
         }
-        
-        // Cập nhật trạng thái và thời gian
-        friendship2.setStatus(status);
-        friendship2.setUpdatedAt(LocalDateTime.now());
-        
-        // Tính số bạn chung
-        friendship2.setMutualFriendsCount(friendship1.getMutualFriendsCount());
-        
-        // Lưu cả hai mối quan hệ
-        Friendship saved1 = friendshipRepository.save(friendship1);
-        Friendship saved2 = friendshipRepository.save(friendship2);
-        
-        // Đảm bảo thay đổi được ghi xuống database
-        friendshipRepository.flush();
-        
-        logger.info("Đã lưu mối quan hệ hai chiều: {} <-> {} với trạng thái {}", 
-                user1.getId(), user2.getId(), status);
-        
-        return Pair.of(saved1, saved2);
+
+        // ONLINE: người đang online theo tên, hết thì sang người offline theo tên từ đầu
+        Collection<Long> onlineIds = online.isEmpty() ? List.of(0L) : online;
+        List<FriendshipRepository.FriendEntry> window = new ArrayList<>();
+        if (after.online()) {
+            window.addAll(friendshipRepository.findFriendsByNameAfterIn(userId, like, onlineIds, nameKey,
+                    friendId == null ? 0L : friendId, PageRequest.of(0, limit)));
+            if (window.size() >= limit) {
+                return window;
+            }
+            nameKey = "";
+            friendId = null;
+        }
+        window.addAll(friendshipRepository.findFriendsByNameAfterNotIn(userId, like, onlineIds, nameKey,
+                friendId == null ? 0L : friendId, PageRequest.of(0, limit - window.size())));
+        return window;
+    }
+
+    // Trạng thái online của cả danh sách bạn bè trong một lượt MGET
+    private Set<Long> onlineFriendIds(Long userId) {
+        long[] friendIds = friendGraphService.friendIds(userId);
+        if (friendIds.length == 0) {
+            return Set.of();
+        }
+        return presenceService.onlineAmong(Arrays.stream(friendIds).boxed().toList());
+    }
+
+    // Một câu SELECT tóm tắt cho cả trang, giữ thứ tự của các dòng
+    private List<UserDto> toFriendDtos(List<FriendshipRepository.FriendEntry> entries) {
+        Map<Long, UserDto> users = userDtoMapper.toUserSummaryDtos(
+                entries.stream().map(FriendshipRepository.FriendEntry::getFriendId).toList());
+        return entries.stream()
+                .map(entry -> users.get(entry.getFriendId()))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Ghi hai dòng ACCEPTED của cặp bằng một câu lệnh (tạo mới hoặc cập nhật dòng đã có), không nạp hay khóa
+     * dòng users nào, rồi đọc lại dòng user -> friend để trả về.
+     */
+    private Friendship writeAcceptedEdge(User user, User friend) throws UserException {
+        friendshipRepository.upsertEdgePair(user.getId(), friend.getId(), FriendshipStatus.ACCEPTED.name(),
+                UserUtil.nameKey(user.getFirstName(), user.getLastName()),
+                UserUtil.nameKey(friend.getFirstName(), friend.getLastName()));
+        logger.info("Đã ghi quan hệ bạn bè hai chiều giữa {} và {}", user.getId(), friend.getId());
+        return friendshipRepository.findByUserAndFriend(user, friend)
+                .orElseThrow(() -> new UserException("Không ghi được quan hệ bạn bè"));
     }
-} 
\ No newline at end of file
+}
@@ -16,6 +16,7 @@ import com.example.server.repositories.MembershipRequestRepository;
 import com.example.server.repositories.UserRepository;
 import com.example.server.services.GroupService;
 import com.example.server.services.NotificationService;
+import com.example.server.services.TimelineService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,6 +57,9 @@ public class GroupServiceImpl implements GroupService {
     @Autowired
     private NotificationService notificationService;
 
+    @Autowired
+    private TimelineService timelineService;
+
     @Override
     public Group findGroupById(Long groupId) throws UserException {
         logger.info("Lay nhom voi id: {}", groupId);
@@ -342,6 +346,7 @@ public class GroupServiceImpl implements GroupService {
         group.setMemberCount(group.getMemberCount() + 1);
 
         Group updatedGroup = groupRepository.save(group);
+        timelineService.onGroupJoined(groupId, userId);
 
         logger.info("Nguoi dung {} da duoc them vao nhom {}", userId, groupId);
         return groupDtoMapper.toGroupDto(updatedGroup, user);
@@ -475,6 +480,7 @@ public class GroupServiceImpl implements GroupService {
         membershipRequestRepository.save(request);
 
         Group updatedGroup = groupRepository.save(group);
+        timelineService.onGroupJoined(groupId, user.getId());
 
         // Gui thong bao den nguoi yeu cau
         notificationService.createMembershipRequestAcceptedOrNottification(admin.getUser(), user, groupId);
@@ -549,6 +555,7 @@ public class GroupServiceImpl implements GroupService {
         group.setMemberCount(group.getMemberCount() - 1);
 
         Group updatedGroup = groupRepository.save(group);
+        timelineService.onGroupLeft(groupId, userId);
 
         logger.info("Nguoi dung {} da bi xoa khoi nhom {}", userId, groupId);
         return groupDtoMapper.toGroupDto(updatedGroup, requester.getUser());
@@ -591,7 +598,7 @@ public class GroupServiceImpl implements GroupService {
     }
 
     @Override
-    @Cacheable(value = "groupMembers", key = "#groupId + ':' + (#userId != null ? #userId : 'anonymous')")
+    @Cacheable(value = "groupMembers", key = "#groupId + ':' + (#userId != null ? #userId : 'anonymous')", sync = true)
     public SerializablePagedGroupMembersDto getGroupMembers(Long groupId, Long userId, Pageable pageable) throws UserException {
         logger.info("Lay danh sach thanh vien cho groupId: {}, userId: {}, trang: {}, kich thuoc: {}", 
                     groupId, userId, pageable.getPageNumber(), pageable.getPageSize());
@@ -681,7 +688,7 @@ public class GroupServiceImpl implements GroupService {
     }
 
     @Override
-    @Cacheable(value = "groupMembersSearch", key = "#groupId + ':' + #query + ':' + (#userId != null ? #userId : 'anonymous')")
+    @Cacheable(value = "groupMembersSearch", key = "#groupId + ':' + #query + ':' + (#userId != null ? #userId : 'anonymous')", sync = true)
     public SerializablePagedGroupMembersDto searchGroupMembers(Long groupId, String query, Long userId, Pageable pageable) throws UserException {
         logger.info("Tìm kiếm thành viên trong groupId: {}, từ khóa: {}, userId: {}, trang: {}, kích thước: {}", 
                     groupId, query, userId, pageable.getPageNumber(), pageable.getPageSize());
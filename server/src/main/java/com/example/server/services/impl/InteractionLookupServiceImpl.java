@@ -0,0 +1,93 @@
+package com.example.server.services.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import com.example.server.repositories.LikeRepository;
+import com.example.server.repositories.PostRepository;
+import com.example.server.services.InteractionLookupService;
+
+@Service
+public class InteractionLookupServiceImpl implements InteractionLookupService {
+
+    private static final String MEMO_ATTRIBUTE = InteractionLookupServiceImpl.class.getName() + ".memo";
+
+    @Autowired
+    private LikeRepository likeRepository;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Override
+    public Set<Long> findLikedPostIds(Long userId, Collection<Long> postIds) {
+        return lookup("likedPost", userId, postIds, likeRepository::findLikedPostIds);
+    }
+
+    @Override
+    public Set<Long> findRepostedPostIds(Long userId, Collection<Long> postIds) {
+        return lookup("repostedPost", userId, postIds, postRepository::findRepostedPostIds);
+    }
+
+    @Override
+    public Set<Long> findLikedCommentIds(Long userId, Collection<Long> commentIds) {
+        return lookup("likedComment", userId, commentIds, likeRepository::findLikedCommentIds);
+    }
+
+    // Chỉ truy vấn những ID chưa có câu trả lời trong request hiện tại; ngoài request (job, async) thì truy vấn thẳng
+    private Set<Long> lookup(String kind, Long userId, Collection<Long> ids,
+                             BiFunction<Long, Collection<Long>, List<Long>> query) {
+        if (userId == null || ids == null || ids.isEmpty()) {
+            return Set.of();
+        }
+
+        Map<Long, Boolean> answers = memo(kind + ":" + userId);
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            if (id != null && !answers.containsKey(id)) {
+                missing.add(id);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            Set<Long> hits = new HashSet<>(query.apply(userId, missing));
+            for (Long id : missing) {
+                answers.put(id, hits.contains(id));
+            }
+        }
+
+        Set<Long> result = new HashSet<>();
+        for (Long id : ids) {
+            if (Boolean.TRUE.equals(answers.get(id))) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Long, Boolean> memo(String key) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return new HashMap<>();
+        }
+
+        Map<String, Map<Long, Boolean>> memo =
+            (Map<String, Map<Long, Boolean>>) attributes.getAttribute(MEMO_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (memo == null) {
+            memo = new HashMap<>();
+            attributes.setAttribute(MEMO_ATTRIBUTE, memo, RequestAttributes.SCOPE_REQUEST);
+        }
+        return memo.computeIfAbsent(key, k -> new HashMap<>());
+    }
+}
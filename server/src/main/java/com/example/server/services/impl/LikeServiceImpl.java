@@ -11,11 +11,12 @@ import com.example.server.repositories.CommentRepository;
 import com.example.server.repositories.LikeRepository;
 import com.example.server.repositories.PostRepository;
 import com.example.server.repositories.UserRepository;
+import com.example.server.services.CacheInvalidationService;
+import com.example.server.services.FriendGraphService;
 import com.example.server.services.LikeService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -43,9 +44,14 @@ public class LikeServiceImpl implements LikeService {
     @Autowired
     private LikeDtoMapper likeDtoMapper;
 
+    @Autowired
+    private CacheInvalidationService cacheInvalidationService;
+
+    @Autowired
+    private FriendGraphService friendGraphService;
+
     @Override
     @Transactional
-    @CacheEvict(value = {"posts", "comments"}, allEntries = true)
     public LikeDto likePost(Long postId, Long userId) throws UserException {
         logger.info("User {} liking post {}", userId, postId);
 
@@ -66,6 +72,9 @@ public class LikeServiceImpl implements LikeService {
             like.setUser(user);
             like.setPost(post);
             Like savedLike = likeRepository.save(like);
+            postRepository.adjustLikeCount(postId, 1);
+            post.setLikeCount(post.getLikeCount() + 1);
+            cacheInvalidationService.invalidate(CacheInvalidationService.post(postId));
             return likeDtoMapper.toLikeDto(savedLike, user);
         }
         
@@ -74,7 +83,6 @@ public class LikeServiceImpl implements LikeService {
 
     @Override
     @Transactional
-    @CacheEvict(value = {"posts", "comments"}, allEntries = true)
     public LikeDto likeComment(Long commentId, Long userId) throws UserException {
         logger.info("User {} liking comment {}", userId, commentId);
 
@@ -96,6 +104,9 @@ public class LikeServiceImpl implements LikeService {
             like.setUser(user);
             like.setComment(comment);
             Like savedLike = likeRepository.save(like);
+            commentRepository.adjustLikeCount(commentId, 1);
+            comment.setLikeCount(comment.getLikeCount() + 1);
+            cacheInvalidationService.invalidate(CacheInvalidationService.comment(commentId));
             return likeDtoMapper.toLikeDto(savedLike, user);
         }
         
@@ -104,7 +115,6 @@ public class LikeServiceImpl implements LikeService {
 
     @Override
     @Transactional
-    @CacheEvict(value = {"posts", "comments"}, allEntries = true)
     public void unlikePost(Long postId, Long userId) throws UserException {
         logger.info("User {} unliking post {}", userId, postId);
 
@@ -118,12 +128,15 @@ public class LikeServiceImpl implements LikeService {
             throw new UserException("You do not have permission to unlike this post");
         }
         
-        likeRepository.deleteByPostIdAndUserId(postId, userId);
+        if (likeRepository.deleteByPostIdAndUserId(postId, userId) > 0) {
+            postRepository.adjustLikeCount(postId, -1);
+            post.setLikeCount(Math.max(0, post.getLikeCount() - 1));
+            cacheInvalidationService.invalidate(CacheInvalidationService.post(postId));
+        }
     }
 
     @Override
     @Transactional
-    @CacheEvict(value = {"posts", "comments"}, allEntries = true)
     public void unlikeComment(Long commentId, Long userId) throws UserException {
         logger.info("User {} unliking comment {}", userId, commentId);
 
@@ -138,11 +151,15 @@ public class LikeServiceImpl implements LikeService {
             throw new UserException("You do not have permission to unlike this comment");
         }
         
-        likeRepository.deleteByCommentIdAndUserId(commentId, userId);
+        if (likeRepository.deleteByCommentIdAndUserId(commentId, userId) > 0) {
+            commentRepository.adjustLikeCount(commentId, -1);
+            comment.setLikeCount(Math.max(0, comment.getLikeCount() - 1));
+            cacheInvalidationService.invalidate(CacheInvalidationService.comment(commentId));
+        }
     }
 
     @Override
-    @Cacheable(value = "likes", key = "'post_' + #postId")
+    @Cacheable(value = "likes", key = "'post_' + #postId", sync = true)
     public List<LikeDto> getLikesByPostId(Long postId, Long reqUserId) throws UserException {
         logger.info("Fetching likes for post {}", postId);
 
@@ -157,11 +174,12 @@ public class LikeServiceImpl implements LikeService {
         }
         
         List<Like> likes = likeRepository.findByPostId(postId);
+        cacheInvalidationService.track("likes", "post_" + postId, CacheInvalidationService.post(postId));
         return likeDtoMapper.toLikeDtos(likes, reqUser);
     }
 
     @Override
-    @Cacheable(value = "likes", key = "'comment_' + #commentId")
+    @Cacheable(value = "likes", key = "'comment_' + #commentId", sync = true)
     public List<LikeDto> getLikesByCommentId(Long commentId, Long reqUserId) throws UserException {
         logger.info("Fetching likes for comment {}", commentId);
 
@@ -177,6 +195,7 @@ public class LikeServiceImpl implements LikeService {
         }
         
         List<Like> likes = likeRepository.findByCommentId(commentId);
+        cacheInvalidationService.track("likes", "comment_" + commentId, CacheInvalidationService.comment(commentId));
         return likeDtoMapper.toLikeDtos(likes, reqUser);
     }
 
@@ -185,7 +204,7 @@ public class LikeServiceImpl implements LikeService {
             case PUBLIC:
                 return true;
             case FRIENDS:
-                return post.getUser().getFriends().contains(user);
+                return friendGraphService.areFriends(post.getUser().getId(), user.getId());
             case ONLY_ME:
                 return post.getUser().getId().equals(user.getId());
             default:
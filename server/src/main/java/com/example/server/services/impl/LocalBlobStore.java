@@ -0,0 +1,147 @@
+package com.example.server.services.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.server.services.BlobStore;
+
+/**
+ * Kho blob trên hệ thống tệp cục bộ, gốc tại app.video.storage.path (phục vụ qua /videos/** bởi FileController).
+ * Khóa đã được phân mảnh sẵn ("ab/cd/..."), nên mỗi thư mục chỉ chứa vài trăm tệp kể cả khi kho có hàng triệu blob.
+ */
+@Service
+public class LocalBlobStore implements BlobStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalBlobStore.class);
+
+    private static final String STAGING_DIR = ".staging";
+
+    @Value("${app.video.storage.path:/Videos/Web}")
+    private String videoStoragePath;
+
+    private volatile Path root;
+
+    @Override
+    public Path createStagingFile() throws IOException {
+        Path staging = getRoot().resolve(STAGING_DIR);
+        Files.createDirectories(staging);
+        return Files.createTempFile(staging, "upload-", ".part");
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.exists(resolve(key));
+    }
+
+    @Override
+    public boolean put(String key, Path stagedFile) throws IOException {
+        Path target = resolve(key);
+        if (Files.exists(target)) {
+            Files.deleteIfExists(stagedFile);
+            return false;
+        }
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(stagedFile, target, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            Files.deleteIfExists(stagedFile);
+            return false;
+        }
+    }
+
+    @Override
+    public Path localPath(String key) throws IOException {
+        Path path = resolve(key);
+        if (!Files.isRegularFile(path)) {
+            throw new NoSuchFileException(path.toString());
+        }
+        return path;
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Path path = resolve(key);
+        Files.deleteIfExists(path);
+        String derivedPrefix = path.getFileName() + ".";
+        try (DirectoryStream<Path> siblings = Files.newDirectoryStream(path.getParent(), derivedPrefix + "*")) {
+            for (Path derived : siblings) {
+                Files.deleteIfExists(derived);
+            }
+        } catch (NoSuchFileException e) {
+            // Thư mục phân mảnh chưa từng được tạo: không còn gì để xóa
+        }
+    }
+
+    @Override
+    public String publicUrl(String key) {
+        return "/videos/" + key;
+    }
+
+    private Path resolve(String key) {
+        Path rootPath = getRoot();
+        Path path = rootPath.resolve(key).normalize();
+        if (!path.startsWith(rootPath) || path.equals(rootPath)) {
+            throw new IllegalArgumentException("Khóa blob không hợp lệ: " + key);
+        }
+        return path;
+    }
+
+    private Path getRoot() {
+        Path current = root;
+        if (current == null) {
+            current = Paths.get(getVideoStoragePath()).toAbsolutePath().normalize();
+            root = current;
+        }
+        return current;
+    }
+
+    private String getVideoStoragePath() {
+        String path = this.videoStoragePath;
+
+        try {
+            if (path.startsWith("./")) {
+                String workingDir = System.getProperty("user.dir");
+                path = workingDir + path.substring(1);
+            }
+
+            File directory = new File(path);
+            if (!directory.exists()) {
+                logger.info("Video storage directory doesn't exist: {}, attempting to create it", path);
+                boolean created = directory.mkdirs();
+                if (!created) {
+                    logger.warn("Failed to create video directory: {}", path);
+                    path = System.getProperty("java.io.tmpdir") + "/phan-lop-videos";
+                    logger.info("Falling back to temporary directory: {}", path);
+                    directory = new File(path);
+                    directory.mkdirs();
+                }
+            }
+
+            if (!directory.canWrite()) {
+                logger.error("Video directory is not writable: {}", path);
+                throw new RuntimeException("Cannot write to video storage directory: " + path);
+            }
+
+            return path;
+        } catch (Exception e) {
+            logger.error("Error setting up video storage path: {}", e.getMessage(), e);
+            String tempPath = System.getProperty("java.io.tmpdir") + "/phan-lop-videos";
+            logger.info("Using emergency fallback to temp directory: {}", tempPath);
+            new File(tempPath).mkdirs();
+            return tempPath;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.server.services.impl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import com.example.server.models.MediaJob;
+import com.example.server.models.PostMedia;
+import com.example.server.repositories.MediaJobRepository;
+import com.example.server.repositories.PostMediaRepository;
+import com.example.server.services.BlobStore;
+import com.example.server.services.MediaProcessingService;
+import com.example.server.services.VideoTranscoder;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+@Service
+public class MediaProcessingServiceImpl implements MediaProcessingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MediaProcessingServiceImpl.class);
+
+    @Autowired
+    private MediaJobRepository mediaJobRepository;
+
+    @Autowired
+    private PostMediaRepository postMediaRepository;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private VideoTranscoder videoTranscoder;
+
+    @Value("${app.media.processing.enabled:true}")
+    private boolean enabled;
+
+    // Chuyển mã rất tốn CPU: giới hạn số video xử lý đồng thời trên mỗi instance
+    @Value("${app.media.processing.worker-threads:2}")
+    private int workerThreads;
+
+    @Value("${app.media.processing.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${app.media.processing.job-timeout-minutes:30}")
+    private long jobTimeoutMinutes;
+
+    // Danh sách "chiều cao:bitrate", ví dụ "480:1000k,360:600k"
+    @Value("${app.media.processing.renditions:480:1000k,360:600k}")
+    private String renditionSpec;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private ThreadPoolExecutor executor;
+
+    private List<Rendition> renditions;
+
+    private record Rendition(int height, String videoBitrate) {
+        String label() {
+            return height + "p";
+        }
+    }
+
+    @FunctionalInterface
+    private interface BlobWriter {
+        void write(Path target) throws IOException;
+    }
+
+    @PostConstruct
+    public void init() {
+        renditions = new ArrayList<>();
+        for (String item : renditionSpec.split(",")) {
+            String[] parts = item.trim().split(":");
+            if (parts.length == 2) {
+                renditions.add(new Rendition(Integer.parseInt(parts[0].trim()), parts[1].trim()));
+            } else if (!item.isBlank()) {
+                logger.warn("Bỏ qua cấu hình bản chuyển mã không hợp lệ: {}", item);
+            }
+        }
+        // Hàng đợi của executor không bao giờ đầy: dispatcher chỉ nhận việc khi còn worker trống
+        executor = new ThreadPoolExecutor(workerThreads, workerThreads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), new CustomizableThreadFactory("media-worker-"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Việc đang chạy dở sẽ được requeueStale trả lại hàng đợi ở lần khởi động sau
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void enqueue(PostMedia media) {
+        if (!enabled || media.getMediaType() != PostMedia.MediaType.VIDEO || media.getStorageKey() == null) {
+            return;
+        }
+        media.setProcessingStatus(PostMedia.ProcessingStatus.PENDING);
+        postMediaRepository.save(media);
+
+        MediaJob job = new MediaJob();
+        job.setMediaId(media.getId());
+        job.setStorageKey(media.getStorageKey());
+        mediaJobRepository.save(job);
+        logger.info("Đã đưa video {} (media id: {}) vào hàng đợi xử lý", media.getStorageKey(), media.getId());
+    }
+
+    @Override
+    @Scheduled(initialDelayString = "${app.media.processing.poll-interval-ms:5000}",
+               fixedDelayString = "${app.media.processing.poll-interval-ms:5000}")
+    public int dispatchPendingJobs() {
+        if (!enabled || !videoTranscoder.isAvailable()) {
+            return 0;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            // Mỗi bước ffmpeg có timeout riêng, nên việc chạy quá tổng các timeout chắc chắn đã chết
+            long staleMinutes = jobTimeoutMinutes * (renditions.size() + 1);
+            int requeued = mediaJobRepository.requeueStale(MediaJob.Status.PENDING, MediaJob.Status.RUNNING,
+                now, now.minusMinutes(staleMinutes));
+            if (requeued > 0) {
+                logger.warn("Trả lại hàng đợi {} việc xử lý video bị treo", requeued);
+            }
+
+            int free = workerThreads - inFlight.get();
+            if (free <= 0) {
+                return 0;
+            }
+
+            int dispatched = 0;
+            for (Long jobId : mediaJobRepository.findReadyJobIds(MediaJob.Status.PENDING, now, PageRequest.of(0, free))) {
+                // Instance khác có thể đã nhận việc này trước
+                if (mediaJobRepository.claim(jobId, MediaJob.Status.PENDING, MediaJob.Status.RUNNING, now) == 0) {
+                    continue;
+                }
+                inFlight.incrementAndGet();
+                executor.execute(() -> {
+                    try {
+                        process(jobId);
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                });
+                dispatched++;
+            }
+            return dispatched;
+        } catch (Exception e) {
+            logger.error("Lỗi khi lấy việc xử lý video: {}", e.getMessage(), e);
+            return 0;
+        }
+    }
+
+    private void process(Long jobId) {
+        MediaJob job = mediaJobRepository.findById(jobId).orElse(null);
+        if (job == null) {
+            return;
+        }
+        PostMedia media = postMediaRepository.findById(job.getMediaId()).orElse(null);
+        if (media == null) {
+            mediaJobRepository.finish(jobId, MediaJob.Status.DONE, "Media đã bị xóa", job.getAvailableAt(), LocalDateTime.now());
+            return;
+        }
+
+        postMediaRepository.updateProcessingStatus(media.getId(), PostMedia.ProcessingStatus.PROCESSING);
+        long start = System.currentTimeMillis();
+        try {
+            Path source = blobStore.localPath(job.getStorageKey());
+
+            String thumbnailKey = job.getStorageKey() + THUMBNAIL_SUFFIX;
+            produce(thumbnailKey, target -> videoTranscoder.createThumbnail(source, target));
+
+            List<String> labels = new ArrayList<>();
+            for (Rendition rendition : renditions) {
+                produce(job.getStorageKey() + MediaProcessingService.renditionSuffix(rendition.label()),
+                    target -> videoTranscoder.transcode(source, target, rendition.height(), rendition.videoBitrate()));
+                labels.add(rendition.label());
+            }
+
+            postMediaRepository.completeProcessing(media.getId(), PostMedia.ProcessingStatus.READY,
+                blobStore.publicUrl(thumbnailKey), String.join(",", labels));
+            mediaJobRepository.finish(jobId, MediaJob.Status.DONE, null, job.getAvailableAt(), LocalDateTime.now());
+            logger.info("Đã xử lý video {} trong {} ms", job.getStorageKey(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            String error = e.getMessage() != null && e.getMessage().length() > 1000 ? e.getMessage().substring(0, 1000) : e.getMessage();
+            boolean retry = job.getAttempts() < maxAttempts;
+            if (retry) {
+                // Lùi thời điểm thử lại theo số lần đã thử
+                mediaJobRepository.finish(jobId, MediaJob.Status.PENDING, error,
+                    LocalDateTime.now().plusMinutes((long) job.getAttempts() * job.getAttempts()), null);
+                postMediaRepository.updateProcessingStatus(media.getId(), PostMedia.ProcessingStatus.PENDING);
+                logger.warn("Xử lý video {} thất bại (lần {}), sẽ thử lại: {}", job.getStorageKey(), job.getAttempts(), error);
+            } else {
+                mediaJobRepository.finish(jobId, MediaJob.Status.FAILED, error, job.getAvailableAt(), LocalDateTime.now());
+                postMediaRepository.updateProcessingStatus(media.getId(), PostMedia.ProcessingStatus.FAILED);
+                logger.error("Xử lý video {} thất bại sau {} lần: {}", job.getStorageKey(), job.getAttempts(), error);
+            }
+        }
+    }
+
+    // Blob dẫn xuất đã có (cùng nội dung đã xử lý trước đó, hoặc lần thử trước làm dở) thì không tạo lại
+    private void produce(String key, BlobWriter writer) throws IOException {
+        if (blobStore.exists(key)) {
+            return;
+        }
+        Path staged = blobStore.createStagingFile();
+        try {
+            writer.write(staged);
+            blobStore.put(key, staged);
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+    }
+}
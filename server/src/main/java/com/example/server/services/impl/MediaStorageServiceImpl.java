@@ -0,0 +1,234 @@
+package com.example.server.services.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.example.server.models.MediaBlob;
+import com.example.server.models.PostMedia;
+import com.example.server.repositories.MediaBlobRepository;
+import com.example.server.services.BlobStore;
+import com.example.server.services.MediaStorageService;
+import com.example.server.utils.AfterCommit;
+
+@Service
+public class MediaStorageServiceImpl implements MediaStorageService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MediaStorageServiceImpl.class);
+
+    // Mỗi lần transferFrom chuyển tối đa 8MB; bộ nhớ dùng cố định, không đệm cả tệp
+    private static final long TRANSFER_CHUNK = 8L * 1024 * 1024;
+
+    private static final Pattern SAFE_EXTENSION = Pattern.compile("\\.[a-z0-9]{1,10}");
+
+    // Chỉ nhận MIME type ảnh/video do client gửi; còn lại suy ra từ đuôi tệp
+    private static final Pattern MEDIA_CONTENT_TYPE = Pattern.compile("(image|video)/[a-z0-9.+-]{1,60}");
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private MediaBlobRepository mediaBlobRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Override
+    public StoredMedia store(MultipartFile file) throws IOException {
+        String originalFilename = file.getOriginalFilename();
+        PostMedia.MediaType mediaType = file.getContentType() != null && file.getContentType().startsWith("video/")
+            ? PostMedia.MediaType.VIDEO : PostMedia.MediaType.IMAGE;
+
+        String fileExtension = originalFilename != null && originalFilename.contains(".")
+            ? originalFilename.substring(originalFilename.lastIndexOf(".")).toLowerCase()
+            : "";
+        if (!SAFE_EXTENSION.matcher(fileExtension).matches()) {
+            fileExtension = mediaType == PostMedia.MediaType.VIDEO ? ".mp4" : ".jpg";
+        }
+        String contentType = contentTypeOf(file.getContentType(), fileExtension);
+
+        // Ghi vào tệp tạm của kho, băm trong lúc ghi, fsync rồi mới đưa vào kho dưới khóa theo hash
+        Path stagedFile = blobStore.createStagingFile();
+        try {
+            MessageDigest digest = newDigest();
+            long size = 0;
+            try (InputStream in = new DigestInputStream(file.getInputStream(), digest);
+                 ReadableByteChannel source = Channels.newChannel(in);
+                 FileChannel target = FileChannel.open(stagedFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long transferred;
+                while ((transferred = target.transferFrom(source, size, TRANSFER_CHUNK)) > 0) {
+                    size += transferred;
+                }
+                target.force(true);
+            }
+
+            String contentHash = HexFormat.of().formatHex(digest.digest());
+            String storageKey = shardedKey(contentHash);
+            boolean created = acquire(storageKey, contentHash, contentType, size, stagedFile);
+
+            logger.info("Đã lưu tệp {} ({} bytes) với khóa: {}{}", originalFilename, size, storageKey,
+                created ? "" : " (trùng nội dung, dùng lại)");
+            return new StoredMedia(mediaType, blobStore.publicUrl(storageKey), contentHash, size, storageKey, contentType);
+        } finally {
+            Files.deleteIfExists(stagedFile);
+        }
+    }
+
+    @Override
+    public List<StoredMedia> storeAll(List<MultipartFile> files) {
+        List<StoredMedia> stored = new ArrayList<>();
+        if (files == null) {
+            return stored;
+        }
+        for (MultipartFile file : files) {
+            if (file == null || file.isEmpty()) {
+                logger.warn("Bỏ qua tệp rỗng");
+                continue;
+            }
+            logger.info("Xử lý tệp: {}, kích thước: {}, loại: {}",
+                file.getOriginalFilename(), file.getSize(), file.getContentType());
+            try {
+                stored.add(store(file));
+            } catch (IOException e) {
+                logger.error("Lỗi khi lưu tệp {}: {}", file.getOriginalFilename(), e.getMessage(), e);
+            }
+        }
+        return stored;
+    }
+
+    @Override
+    public void discard(List<StoredMedia> media) {
+        if (media == null || media.isEmpty()) {
+            return;
+        }
+        release(media.stream().map(StoredMedia::storageKey).toList());
+    }
+
+    @Override
+    public void release(Collection<String> storageKeys) {
+        List<String> keys = storageKeys.stream().filter(Objects::nonNull).toList();
+        if (keys.isEmpty()) {
+            return;
+        }
+        // Chỉ trả tham chiếu khi việc xóa PostMedia đã commit, tránh xóa tệp của giao dịch bị rollback
+        AfterCommit.run(() -> keys.forEach(this::releaseOne));
+    }
+
+    // Tăng refCount và đưa tệp vào kho trong cùng một giao dịch giữ khóa dòng,
+    // nên không thể chen giữa bước "giảm về 0 rồi xóa tệp" của releaseOne
+    private boolean acquire(String storageKey, String contentHash, String contentType, long size, Path stagedFile) throws IOException {
+        Supplier<Boolean> work = () -> {
+            MediaBlob blob = mediaBlobRepository.findForUpdate(storageKey).orElseGet(() -> {
+                MediaBlob newBlob = new MediaBlob();
+                newBlob.setStorageKey(storageKey);
+                newBlob.setContentHash(contentHash);
+                newBlob.setContentType(contentType);
+                newBlob.setSize(size);
+                return newBlob;
+            });
+            blob.setRefCount(blob.getRefCount() + 1);
+            mediaBlobRepository.save(blob);
+            try {
+                return blobStore.put(storageKey, stagedFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        try {
+            try {
+                return inNewTransaction(work);
+            } catch (DataIntegrityViolationException e) {
+                // Hai lượt tải cùng nội dung cùng chèn dòng mới: lượt thua thử lại và sẽ thấy dòng đã có
+                return inNewTransaction(work);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void releaseOne(String storageKey) {
+        try {
+            inNewTransaction(() -> {
+                MediaBlob blob = mediaBlobRepository.findForUpdate(storageKey).orElse(null);
+                if (blob == null) {
+                    return null;
+                }
+                int refCount = Math.max(0, blob.getRefCount() - 1);
+                if (refCount > 0) {
+                    blob.setRefCount(refCount);
+                    mediaBlobRepository.save(blob);
+                    return null;
+                }
+                try {
+                    blobStore.delete(storageKey);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                mediaBlobRepository.delete(blob);
+                logger.info("Đã xóa blob không còn tham chiếu: {}", storageKey);
+                return null;
+            });
+        } catch (Exception e) {
+            logger.warn("Không trả được tham chiếu blob {}: {}", storageKey, e.getMessage());
+        }
+    }
+
+    // Giao dịch riêng: cũng được gọi từ afterCommit, khi giao dịch của bài viết đã kết thúc
+    private <T> T inNewTransaction(Supplier<T> work) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return template.execute(status -> work.get());
+    }
+
+    // "ab/cd/<hash>": hai cấp thư mục 256 nhánh theo đầu hash; đuôi tệp không thuộc khóa để khử trùng lặp theo nội dung
+    private String shardedKey(String contentHash) {
+        return contentHash.substring(0, 2) + "/" + contentHash.substring(2, 4) + "/" + contentHash;
+    }
+
+    static String contentTypeOf(String declared, String fileExtension) {
+        String normalized = declared != null ? declared.toLowerCase(Locale.ROOT).split(";", 2)[0].trim() : "";
+        if (MEDIA_CONTENT_TYPE.matcher(normalized).matches()) {
+            return normalized;
+        }
+        return MediaTypeFactory.getMediaType("file" + fileExtension)
+            .map(MediaType::toString)
+            .orElse(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+    }
+
+    private MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 không khả dụng", e);
+        }
+    }
+}
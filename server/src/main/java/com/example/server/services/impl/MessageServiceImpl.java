@@ -23,6 +23,7 @@ import com.example.server.models.User;
 import com.example.server.repositories.ConversationRepository;
 import com.example.server.repositories.MessageRepository;
 import com.example.server.repositories.UserRepository;
+import com.example.server.services.BlockListService;
 import com.example.server.services.MessageService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +38,7 @@ public class MessageServiceImpl implements MessageService {
     private final UserRepository userRepository;
     private final ConversationDtoMapper conversationDtoMapper;
     private final MessageDtoMapper messageDtoMapper;
+    private final BlockListService blockListService;
     private static final Logger logger = LoggerFactory.getLogger(MessageServiceImpl.class);
     
     public MessageServiceImpl(
@@ -44,28 +46,29 @@ public class MessageServiceImpl implements MessageService {
             MessageRepository messageRepository,
             UserRepository userRepository,
             ConversationDtoMapper conversationDtoMapper,
-            MessageDtoMapper messageDtoMapper) {
+            MessageDtoMapper messageDtoMapper,
+            BlockListService blockListService) {
         this.conversationRepository = conversationRepository;
         this.messageRepository = messageRepository;
         this.userRepository = userRepository;
         this.conversationDtoMapper = conversationDtoMapper;
         this.messageDtoMapper = messageDtoMapper;
+        this.blockListService = blockListService;
     }
 
     @Override
     public List<ConversationDto> getConversationsForUser(Long userId) {
         List<Conversation> conversations = conversationRepository.findByUserId(userId);
         
-        return conversations.stream()
-                .map(conversation -> conversationDtoMapper.toDto(conversation, userId))
-                .collect(Collectors.toList());
+        return conversationDtoMapper.toDtos(conversations, userId);
     }
 
     @Override
     public Page<ConversationDto> getConversationsForUser(Long userId, Pageable pageable) {
         Page<Conversation> conversationsPage = conversationRepository.findByUserId(userId, pageable);
         
-        return conversationsPage.map(conversation -> conversationDtoMapper.toDto(conversation, userId));
+        List<ConversationDto> conversationDtos = conversationDtoMapper.toDtos(conversationsPage.getContent(), userId);
+        return new PageImpl<>(conversationDtos, pageable, conversationsPage.getTotalElements());
     }
 
     @Override
@@ -128,6 +131,8 @@ public class MessageServiceImpl implements MessageService {
             return conversationDtoMapper.toDto(existingConversation.get(), creatorId);
         }
         
+        checkNotBlocked(creatorId, recipientId);
+
         // Tạo hội thoại mới
         Conversation conversation = new Conversation();
         conversation.setCreator(creator);
@@ -149,6 +154,9 @@ public class MessageServiceImpl implements MessageService {
         
         User sender = userRepository.findById(senderId)
                 .orElseThrow(() -> new UserNotFoundException("Sender not found"));
+
+        Long recipientId = getRecipientId(conversation, senderId);
+        checkNotBlocked(senderId, recipientId);
         
         // Tạo tin nhắn mới
         Message message = new Message();
@@ -167,7 +175,6 @@ public class MessageServiceImpl implements MessageService {
         conversation.updateLastMessage(content, LocalDateTime.now());
         
         // Tăng số tin nhắn chưa đọc cho người nhận
-        Long recipientId = getRecipientId(conversation, senderId);
         conversation.incrementUnreadCount(recipientId);
         
         conversationRepository.save(conversation);
@@ -212,6 +219,13 @@ public class MessageServiceImpl implements MessageService {
         return createConversation(userId1, userId2);
     }
     
+    // Không nhắn tin được khi một trong hai người đã chặn người kia (chỉ mục danh sách chặn, không truy vấn thêm)
+    private void checkNotBlocked(Long senderId, Long recipientId) {
+        if (blockListService.isBlocked(senderId, recipientId)) {
+            throw new UnauthorizedException("Không thể nhắn tin với người dùng này");
+        }
+    }
+
     private Long getRecipientId(Conversation conversation, Long senderId) {
         if (conversation.getCreator().getId().equals(senderId)) {
             return conversation.getRecipient().getId();
@@ -256,6 +270,7 @@ public class MessageServiceImpl implements MessageService {
             if (!isParticipant) {
                 throw new UnauthorizedException("User is not a participant in this conversation");
             }
+            checkNotBlocked(senderId, getRecipientId(conversation, senderId));
             
             // Tạo tin nhắn mới
             Message message = new Message();
@@ -0,0 +1,130 @@
+package com.example.server.services.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.example.server.dto.MutualFriendsDto;
+import com.example.server.dto.UserDto;
+import com.example.server.mapper.UserDtoMapper;
+import com.example.server.services.FriendGraphService;
+import com.example.server.services.MutualFriendsService;
+
+@Service
+public class MutualFriendsServiceImpl implements MutualFriendsService {
+
+    // Phần xem trước chỉ để hiển thị vài ảnh đại diện; danh sách đầy đủ đi qua API bạn bè
+    private static final int MAX_PREVIEW = 20;
+
+    private static final long[] EMPTY = new long[0];
+
+    @Autowired
+    private FriendGraphService friendGraphService;
+
+    @Autowired
+    private UserDtoMapper userDtoMapper;
+
+    @Override
+    public int count(Long userId, Long otherUserId) {
+        if (userId == null || otherUserId == null || userId.equals(otherUserId)) {
+            return 0;
+        }
+        return friendGraphService.mutualFriendsCount(userId, otherUserId);
+    }
+
+    @Override
+    public Map<Long, Integer> counts(Long userId, Collection<Long> candidateIds) {
+        Map<Long, Integer> counts = new LinkedHashMap<>();
+        if (userId == null || candidateIds == null || candidateIds.isEmpty()) {
+            return counts;
+        }
+        Map<Long, long[]> friends = friendIdsOf(userId, candidateIds);
+        long[] userFriends = friends.getOrDefault(userId, EMPTY);
+        for (Long candidateId : candidateIds) {
+            if (candidateId == null || counts.containsKey(candidateId)) {
+                continue;
+            }
+            counts.put(candidateId, candidateId.equals(userId) ? 0
+                : FriendGraphServiceImpl.intersect(userFriends, friends.getOrDefault(candidateId, EMPTY), null));
+        }
+        return counts;
+    }
+
+    @Override
+    public MutualFriendsDto preview(Long userId, Long otherUserId, int limit) {
+        MutualFriendsDto preview = previews(userId, List.of(otherUserId), limit).get(otherUserId);
+        return preview != null ? preview : new MutualFriendsDto(otherUserId, 0, new ArrayList<>());
+    }
+
+    @Override
+    public Map<Long, MutualFriendsDto> previews(Long userId, Collection<Long> candidateIds, int limit) {
+        Map<Long, MutualFriendsDto> previews = new LinkedHashMap<>();
+        if (userId == null || candidateIds == null || candidateIds.isEmpty()) {
+            return previews;
+        }
+        int previewSize = Math.max(0, Math.min(limit, MAX_PREVIEW));
+        Map<Long, long[]> friends = friendIdsOf(userId, candidateIds);
+        long[] userFriends = friends.getOrDefault(userId, EMPTY);
+
+        // Giao toàn bộ để có số đếm, chỉ giữ previewSize ID đầu; người dùng của mọi phần xem trước nạp chung một lượt
+        Map<Long, long[]> previewIds = new LinkedHashMap<>();
+        Map<Long, Integer> counts = new LinkedHashMap<>();
+        Set<Long> userIds = new LinkedHashSet<>();
+        for (Long candidateId : candidateIds) {
+            if (candidateId == null || counts.containsKey(candidateId)) {
+                continue;
+            }
+            long[] candidateFriends = candidateId.equals(userId) ? EMPTY : friends.getOrDefault(candidateId, EMPTY);
+            long[] mutual = new long[Math.min(userFriends.length, candidateFriends.length)];
+            int count = FriendGraphServiceImpl.intersect(userFriends, candidateFriends, mutual);
+            long[] shown = Arrays.copyOf(mutual, Math.min(count, previewSize));
+            counts.put(candidateId, count);
+            previewIds.put(candidateId, shown);
+            for (long id : shown) {
+                userIds.add(id);
+            }
+        }
+
+        Map<Long, UserDto> users = userDtoMapper.toUserSummaryDtos(userIds);
+        counts.forEach((candidateId, count) -> {
+            List<UserDto> preview = new ArrayList<>();
+            for (long id : previewIds.get(candidateId)) {
+                UserDto user = users.get(id);
+                if (user != null) {
+                    preview.add(user);
+                }
+            }
+            previews.put(candidateId, new MutualFriendsDto(candidateId, count, preview));
+        });
+        return previews;
+    }
+
+    @Override
+    public void fillMutualCounts(Long userId, Collection<UserDto> users) {
+        if (users == null || users.isEmpty()) {
+            return;
+        }
+        List<Long> ids = users.stream().map(UserDto::getId).toList();
+        Map<Long, Integer> counts = counts(userId, ids);
+        users.forEach(user -> user.setMutualFriendsCount(counts.getOrDefault(user.getId(), 0)));
+    }
+
+    private Map<Long, long[]> friendIdsOf(Long userId, Collection<Long> candidateIds) {
+        Set<Long> ids = new LinkedHashSet<>();
+        ids.add(userId);
+        candidateIds.forEach(id -> {
+            if (id != null) {
+                ids.add(id);
+            }
+        });
+        return friendGraphService.friendIds(ids);
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.server.services.impl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import com.example.server.exception.PasswordHashingBusyException;
+import com.example.server.services.PasswordHashingService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+@Service
+public class PasswordHashingServiceImpl implements PasswordHashingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PasswordHashingServiceImpl.class);
+
+    // "$2a$10$...": cost nằm giữa dấu $ thứ hai và thứ ba
+    private static final Pattern BCRYPT_COST = Pattern.compile("^\\$2[abxy]?\\$(\\d{2})\\$");
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.auth.bcrypt.strength:10}")
+    private int strength;
+
+    // 0 = bằng số CPU: BCrypt thuần CPU, nhiều luồng hơn chỉ tăng độ trễ của từng lần băm
+    @Value("${app.auth.hashing.threads:0}")
+    private int threads;
+
+    @Value("${app.auth.hashing.queue-capacity:64}")
+    private int queueCapacity;
+
+    // Tổng thời gian chờ tối đa (xếp hàng + băm) trước khi trả 429
+    @Value("${app.auth.hashing.max-wait-ms:3000}")
+    private long maxWaitMs;
+
+    private ThreadPoolExecutor executor;
+
+    private Timer hashTimer;
+    private Timer verifyTimer;
+    private Counter rejected;
+    private Counter timedOut;
+
+    @PostConstruct
+    public void init() {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        // Hàng đợi có giới hạn + AbortPolicy: đợt đăng nhập dồn dập bị từ chối ngay thay vì xếp hàng vô hạn
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("password-hash-"),
+            new ThreadPoolExecutor.AbortPolicy());
+        ExecutorServiceMetrics.monitor(meterRegistry, executor, "password.hashing");
+
+        hashTimer = Timer.builder("auth.password.hashing").tag("operation", "hash").register(meterRegistry);
+        verifyTimer = Timer.builder("auth.password.hashing").tag("operation", "verify").register(meterRegistry);
+        rejected = Counter.builder("auth.password.hashing.overload").tag("reason", "queue-full").register(meterRegistry);
+        timedOut = Counter.builder("auth.password.hashing.overload").tag("reason", "timeout").register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public String hash(String rawPassword) {
+        return submit(() -> hashTimer.record(() -> passwordEncoder.encode(rawPassword)));
+    }
+
+    @Override
+    public boolean matches(String rawPassword, String encodedPassword) {
+        return submit(() -> verifyTimer.record(() -> passwordEncoder.matches(rawPassword, encodedPassword)));
+    }
+
+    @Override
+    public boolean needsRehash(String encodedPassword) {
+        if (encodedPassword == null) {
+            return false;
+        }
+        Matcher matcher = BCRYPT_COST.matcher(encodedPassword);
+        return matcher.find() && Integer.parseInt(matcher.group(1)) != strength;
+    }
+
+    private <T> T submit(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new PasswordHashingBusyException("Hệ thống đang bận, vui lòng thử lại sau.", e);
+        }
+        try {
+            return future.get(maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Việc còn nằm trong hàng đợi thì bỏ luôn, không tốn CPU cho request đã trả lỗi
+            future.cancel(false);
+            timedOut.increment();
+            throw new PasswordHashingBusyException("Hệ thống đang bận, vui lòng thử lại sau.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new PasswordHashingBusyException("Yêu cầu bị gián đoạn.", e);
+        } catch (ExecutionException e) {
+            logger.error("Lỗi khi băm mật khẩu: {}", e.getCause().getMessage());
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
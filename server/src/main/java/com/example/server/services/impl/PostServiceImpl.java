@@ -13,8 +13,13 @@ import com.example.server.repositories.GroupRepository;
 import com.example.server.repositories.PostMediaRepository;
 import com.example.server.repositories.PostRepository;
 import com.example.server.repositories.UserRepository;
+import com.example.server.services.BlockListService;
 import com.example.server.services.LikeService;
+import com.example.server.services.MediaProcessingService;
+import com.example.server.services.MediaStorageService;
 import com.example.server.services.PostService;
+import com.example.server.services.TimelineService;
+import com.example.server.utils.PostCursor;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
@@ -22,25 +27,19 @@ import jakarta.persistence.PersistenceContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.hateoas.Link;
 import org.springframework.hateoas.PagedModel;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.multipart.MultipartFile;
-
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
+import java.util.Objects;
+import java.util.Optional;
 
 @Service
 public class PostServiceImpl implements PostService {
@@ -68,12 +67,21 @@ public class PostServiceImpl implements PostService {
     @Autowired
     private GroupRepository groupRepository;
 
+    @Autowired
+    private TimelineService timelineService;
+
+    @Autowired
+    private BlockListService blockListService;
+
+    @Autowired
+    private MediaStorageService mediaStorageService;
+
+    @Autowired
+    private MediaProcessingService mediaProcessingService;
+
     @PersistenceContext
     private EntityManager entityManager;
 
-    @Value("${app.video.storage.path:/Videos/Web}")
-    private String videoStoragePath;
-
     @Override
     public PostDto getPostById(Long postId, Long userId) throws UserException {
         logger.info("Đang lấy bài viết {} với userId: {}", postId, userId);
@@ -97,6 +105,10 @@ public class PostServiceImpl implements PostService {
             throw new UserException("Bài viết này đã bị ẩn");
         }
 
+        if (blockListService.isBlocked(userId, post.getUser().getId())) {
+            throw new UserException("Không tìm thấy bài viết");
+        }
+
         User reqUser = userId != null ? userRepository.findById(userId).orElse(null) : null;
         return postDtoMapper.toPostDtoWithDetails(post, reqUser);
     }
@@ -107,8 +119,15 @@ public class PostServiceImpl implements PostService {
         Page<Post> posts;
         User reqUser = userId != null ? userRepository.findById(userId).orElse(null) : null;
         
+        // Ưu tiên đọc từ timeline đã vật chất hóa, chỉ truy vấn DB khi timeline không phục vụ được
+        Optional<Page<Post>> timeline = userId != null
+            ? timelineService.getHomeTimeline(userId, pageable)
+            : timelineService.getPublicTimeline(pageable);
+
         // Chỉ tìm bài viết đang hiển thị (is_active = 0)
-        if (userId != null) {
+        if (timeline.isPresent()) {
+            posts = timeline.get();
+        } else if (userId != null) {
             // Lấy bài viết của user, bài viết của bạn bè (nếu privacy = FRIENDS), 
             // bài viết công khai, hoặc bài viết trong nhóm mà user là thành viên, chỉ lấy bài active
             posts = postRepository.findByUserIdOrFriendsOrPublicOrGroupMembersAndIsActiveFalse(userId, pageable);
@@ -117,7 +136,7 @@ public class PostServiceImpl implements PostService {
             posts = postRepository.findByPrivacyAndGroupIsNullAndIsActiveFalse(Post.Privacy.PUBLIC, pageable);
         }
     
-        List<PostDto> postDtos = postDtoMapper.toPostDtos(posts.getContent(), reqUser);
+        List<PostDto> postDtos = postDtoMapper.toPostDtos(visibleTo(posts.getContent(), reqUser), reqUser);
     
         PagedModel.PageMetadata metadata = new PagedModel.PageMetadata(
             posts.getSize(),
@@ -147,7 +166,7 @@ public class PostServiceImpl implements PostService {
     @SuppressWarnings("unlikely-arg-type")
     @Override
     @Transactional
-    public PostDto updatePost(Long postId, PostDto postDto, List<MultipartFile> mediaFiles, Long userId) throws UserException {
+    public PostDto updatePost(Long postId, PostDto postDto, List<MediaStorageService.StoredMedia> storedMedia, Long userId) throws UserException {
         logger.info("Cập nhật bài viết postId: {} cho userId: {}", postId, userId);
 
         Post post = postRepository.findById(postId)
@@ -168,6 +187,7 @@ public class PostServiceImpl implements PostService {
         }
 
         // Cập nhật nội dung và quyền riêng tư
+        Post.Privacy oldPrivacy = post.getPrivacy();
         post.setContent(postDto.getContent());
         if (post.getGroup() != null) {
             // Giữ quyền riêng tư phù hợp với nhóm
@@ -176,60 +196,22 @@ public class PostServiceImpl implements PostService {
             post.setPrivacy(Post.Privacy.valueOf(postDto.getPrivacy()));
         }
 
-        // Xử lý media
-        if (mediaFiles != null && !mediaFiles.isEmpty()) {
-            logger.info("Xử lý {} tệp media đính kèm", mediaFiles.size());
+        // Xử lý media (tệp đã được ghi xuống đĩa ở giai đoạn tải lên, ở đây chỉ ghi bản ghi PostMedia)
+        if (storedMedia != null && !storedMedia.isEmpty()) {
+            logger.info("Gắn {} tệp media đính kèm", storedMedia.size());
             List<PostMedia> mediaEntities = new ArrayList<>();
 
-            // Xóa media cũ
+            // Xóa media cũ và trả tham chiếu tới các blob của chúng
+            List<String> oldStorageKeys = storageKeysOf(post);
             postMediaRepository.deleteByPostId(postId);
+            mediaStorageService.release(oldStorageKeys);
             post.setMedia(new ArrayList<>());
 
-            for (MultipartFile file : mediaFiles) {
-                if (file.isEmpty()) {
-                    logger.warn("Bỏ qua tệp rỗng");
-                    continue;
-                }
-
-                String originalFilename = file.getOriginalFilename();
-                logger.info("Xử lý tệp: {}, kích thước: {}, loại: {}", 
-                    originalFilename, file.getSize(), file.getContentType());
-
-                try {
-                    PostMedia.MediaType mediaType = file.getContentType().startsWith("image/") 
-                            ? PostMedia.MediaType.IMAGE : PostMedia.MediaType.VIDEO;
-
-                    String uniqueFilename = UUID.randomUUID().toString();
-                    String fileExtension = originalFilename != null && originalFilename.contains(".") 
-                            ? originalFilename.substring(originalFilename.lastIndexOf(".")) : 
-                            (mediaType == PostMedia.MediaType.VIDEO ? ".mp4" : ".jpg");
-
-                    String storagePath = mediaType == PostMedia.MediaType.VIDEO ? 
-                        getVideoStoragePath() : "upload/posts";
-                    File directory = new File(storagePath);
-                    if (!directory.exists()) {
-                        directory.mkdirs();
-                    }
-
-                    String fileName = uniqueFilename + fileExtension;
-                    Path targetPath = Paths.get(storagePath, fileName);
-                    Files.copy(file.getInputStream(), targetPath, StandardCopyOption.REPLACE_EXISTING);
-                    logger.info("Đã lưu tệp tại: {}", targetPath);
-
-                    String publicUrl = "/videos/" + fileName;
-
-                    PostMedia media = new PostMedia();
-                    media.setPost(post);
-                    media.setMediaType(mediaType);
-                    media.setMediaUrl(publicUrl);
-                    media.setMediaOrder(mediaEntities.size());
-
-                    PostMedia savedMedia = postMediaRepository.save(media);
-                    mediaEntities.add(savedMedia);
-                    logger.info("Đã lưu thông tin media với id: {}, url: {}", savedMedia.getId(), publicUrl);
-                } catch (IOException e) {
-                    logger.error("Lỗi khi lưu tệp {}: {}", originalFilename, e.getMessage(), e);
-                }
+            for (MediaStorageService.StoredMedia stored : storedMedia) {
+                PostMedia savedMedia = postMediaRepository.save(toPostMedia(post, stored, mediaEntities.size()));
+                mediaProcessingService.enqueue(savedMedia);
+                mediaEntities.add(savedMedia);
+                logger.info("Đã lưu thông tin media với id: {}, url: {}", savedMedia.getId(), stored.url());
             }
 
             post.setMedia(mediaEntities);
@@ -238,6 +220,12 @@ public class PostServiceImpl implements PostService {
         Post updatedPost = postRepository.save(post);
         logger.info("Đã cập nhật bài viết với id: {}", updatedPost.getId());
 
+        // Đổi quyền riêng tư thì đối tượng xem thay đổi, phân phối lại bài viết
+        if (oldPrivacy != updatedPost.getPrivacy()) {
+            timelineService.onPostRemoved(updatedPost);
+            timelineService.onPostCreated(updatedPost);
+        }
+
         return postDtoMapper.toPostDto(updatedPost, userId != null ? userRepository.findById(userId).orElse(null) : null);
     }
 
@@ -264,7 +252,10 @@ public class PostServiceImpl implements PostService {
         }
 
         post.setIsActive(true);
+        // Xóa mềm: admin có thể mở lại bài viết (AdminPostServiceImpl.lockPost) nên giữ nguyên PostMedia và
+        // tham chiếu blob; chỉ xóa cứng bài viết mới được trả tham chiếu qua mediaStorageService.release
         postRepository.save(post);
+        timelineService.onPostRemoved(post);
         logger.info("Bài viết với id: {} đã được ẩn", postId);
     }
 
@@ -276,14 +267,12 @@ public class PostServiceImpl implements PostService {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new UserException("User not found"));
 
-        if (post.getRepostUsers().stream().anyMatch(u -> u.getId().equals(userId))) {
-            // Đã repost, không cần làm gì thêm
-            return postDtoMapper.toPostDto(post, user);
+        // Đã repost (hoặc request song song vừa ghi xong) thì không cần làm gì thêm
+        if (!postRepository.existsRepost(postId, userId) && postRepository.insertRepost(postId, userId) > 0) {
+            postRepository.adjustRepostCount(postId, 1);
+            post.setRepostCount(post.getRepostCount() + 1);
         }
-
-        post.getRepostUsers().add(user);
-        Post savedPost = postRepository.save(post);
-        return postDtoMapper.toPostDto(savedPost, user);
+        return postDtoMapper.toPostDto(post, user);
     }
 
     @Override
@@ -294,16 +283,12 @@ public class PostServiceImpl implements PostService {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new UserException("User not found"));
 
-        // Xóa user khỏi danh sách repost
-        boolean removed = post.getRepostUsers().removeIf(u -> u.getId().equals(userId));
-        
-        if (!removed) {
-            // Người dùng chưa repost bài này
-            return postDtoMapper.toPostDto(post, user);
+        // Người dùng chưa repost bài này thì không xóa được dòng nào
+        if (postRepository.deleteRepost(postId, userId) > 0) {
+            postRepository.adjustRepostCount(postId, -1);
+            post.setRepostCount(Math.max(0, post.getRepostCount() - 1));
         }
-        
-        Post savedPost = postRepository.save(post);
-        return postDtoMapper.toPostDto(savedPost, user);
+        return postDtoMapper.toPostDto(post, user);
     }
 
     @Override
@@ -381,7 +366,7 @@ public class PostServiceImpl implements PostService {
             logger.info("Trả về {} bài viết công khai đang hiển thị cho hồ sơ của người dùng khác", posts.getTotalElements());
         }
         
-        List<PostDto> postDtos = postDtoMapper.toPostDtos(posts.getContent(), reqUser);
+        List<PostDto> postDtos = postDtoMapper.toPostDtos(visibleTo(posts.getContent(), reqUser), reqUser);
         
         // Tạo paged model
         PagedModel.PageMetadata metadata = new PagedModel.PageMetadata(
@@ -424,7 +409,7 @@ public class PostServiceImpl implements PostService {
         Page<Post> posts = postRepository.findActivePostsRepostedByUser(userId, pageable);
         logger.info("Tìm thấy {} bài viết đang hiển thị đã được chia sẻ bởi người dùng {}", posts.getTotalElements(), userId);
         
-        List<PostDto> postDtos = postDtoMapper.toPostDtos(posts.getContent(), reqUser);
+        List<PostDto> postDtos = postDtoMapper.toPostDtos(visibleTo(posts.getContent(), reqUser), reqUser);
         
         // Tạo paged model
         PagedModel.PageMetadata metadata = new PagedModel.PageMetadata(
@@ -474,7 +459,7 @@ public class PostServiceImpl implements PostService {
             logger.info("Tìm thấy {} bài viết công khai đang hiển thị phù hợp với từ khóa cho người dùng ẩn danh", posts.getTotalElements());
         }
         
-        List<PostDto> postDtos = postDtoMapper.toPostDtos(posts.getContent(), reqUser);
+        List<PostDto> postDtos = postDtoMapper.toPostDtos(visibleTo(posts.getContent(), reqUser), reqUser);
         
         // Tạo paged model
         PagedModel.PageMetadata metadata = new PagedModel.PageMetadata(
@@ -521,7 +506,7 @@ public class PostServiceImpl implements PostService {
 
     @Override
     @Transactional
-    public PostDto createPost(PostDto postDto, List<MultipartFile> mediaFiles, Long userId) throws UserException {
+    public PostDto createPost(PostDto postDto, List<MediaStorageService.StoredMedia> storedMedia, Long userId) throws UserException {
         logger.info("Tạo bài viết mới cho người dùng có id: {}", userId);
 
         User user = userRepository.findById(userId)
@@ -590,108 +575,43 @@ public class PostServiceImpl implements PostService {
             logger.info("Không có media từ postDto");
         }
 
-        // Xử lý file upload (video)
-        if (mediaFiles != null && !mediaFiles.isEmpty()) {
-            logger.info("Xử lý {} tệp media đính kèm", mediaFiles.size());
-            for (MultipartFile file : mediaFiles) {
-                if (file.isEmpty()) {
-                    logger.warn("Bỏ qua tệp rỗng");
-                    continue;
-                }
-
-                String originalFilename = file.getOriginalFilename();
-                logger.info("Xử lý tệp: {}, kích thước: {}, loại: {}", 
-                    originalFilename, file.getSize(), file.getContentType());
-
-                try {
-                    PostMedia.MediaType mediaType = file.getContentType() != null && 
-                        file.getContentType().startsWith("video/") ? 
-                        PostMedia.MediaType.VIDEO : PostMedia.MediaType.IMAGE;
-
-                    String uniqueFilename = UUID.randomUUID().toString();
-                    String fileExtension = originalFilename != null && originalFilename.contains(".") ?
-                        originalFilename.substring(originalFilename.lastIndexOf(".")) : 
-                        (mediaType == PostMedia.MediaType.VIDEO ? ".mp4" : ".jpg");
-
-                    String storagePath = mediaType == PostMedia.MediaType.VIDEO ? 
-                        getVideoStoragePath() : "upload/posts";
-                    File directory = new File(storagePath);
-                    if (!directory.exists()) {
-                        directory.mkdirs();
-                    }
-                    if (!directory.canWrite()) {
-                        logger.error("Cannot write to directory: {}", storagePath);
-                        throw new IOException("Storage directory is not writable: " + storagePath);
-                    }
-
-                    String fileName = uniqueFilename + fileExtension;
-                    Path targetPath = Paths.get(storagePath, fileName);
-                    Files.copy(file.getInputStream(), targetPath, StandardCopyOption.REPLACE_EXISTING);
-                    logger.info("Đã lưu tệp tại: {}", targetPath);
-
-                    // Tạo URL công khai
-                    String publicUrl = "/videos/" + fileName;
-
-                    PostMedia media = new PostMedia();
-                    media.setPost(savedPost);
-                    media.setMediaType(mediaType);
-                    media.setMediaUrl(publicUrl);
-                    media.setMediaOrder(mediaEntities.size());
-                    PostMedia savedMedia = postMediaRepository.save(media);
-                    mediaEntities.add(savedMedia);
-                    logger.info("Đã lưu thông tin media với id: {}", savedMedia.getId());
-                } catch (IOException e) {
-                    logger.error("Lỗi khi lưu tệp {}: {}", originalFilename, e.getMessage(), e);
-                }
+        // Gắn các tệp đã tải lên (video); bytes đã bền vững trên đĩa trước khi giao dịch này mở
+        if (storedMedia != null && !storedMedia.isEmpty()) {
+            logger.info("Gắn {} tệp media đính kèm", storedMedia.size());
+            for (MediaStorageService.StoredMedia stored : storedMedia) {
+                PostMedia savedMedia = postMediaRepository.save(toPostMedia(savedPost, stored, mediaEntities.size()));
+                mediaProcessingService.enqueue(savedMedia);
+                mediaEntities.add(savedMedia);
+                logger.info("Đã lưu thông tin media với id: {}", savedMedia.getId());
             }
         } else {
             logger.info("Không có tệp media nào được tải lên");
         }
 
         savedPost.setMedia(mediaEntities);
+        timelineService.onPostCreated(savedPost);
         Post finalPost = postRepository.findById(savedPost.getId())
                 .orElseThrow(() -> new UserException("Không thể tìm thấy bài viết vừa tạo"));
         return postDtoMapper.toPostDto(finalPost, user);
     }
 
-    private String getVideoStoragePath() {
-        String path = this.videoStoragePath;
-        logger.info("Configured video storage path: {}", path);
-
-        try {
-            if (path.startsWith("./")) {
-                String workingDir = System.getProperty("user.dir");
-                path = workingDir + path.substring(1);
-                logger.info("Resolved relative path to absolute path: {}", path);
-            }
-
-            File directory = new File(path);
-            if (!directory.exists()) {
-                logger.info("Video storage directory doesn't exist: {}, attempting to create it", path);
-                boolean created = directory.mkdirs();
-                if (!created) {
-                    logger.warn("Failed to create video directory: {}", path);
-                    path = System.getProperty("java.io.tmpdir") + "/phan-lop-videos";
-                    logger.info("Falling back to temporary directory: {}", path);
-                    directory = new File(path);
-                    directory.mkdirs();
-                }
-            }
-
-            if (!directory.canWrite()) {
-                logger.error("Video directory is not writable: {}", path);
-                throw new RuntimeException("Cannot write to video storage directory: " + path);
-            }
+    private PostMedia toPostMedia(Post post, MediaStorageService.StoredMedia stored, int order) {
+        PostMedia media = new PostMedia();
+        media.setPost(post);
+        media.setMediaType(stored.mediaType());
+        media.setMediaUrl(stored.url());
+        media.setContentHash(stored.contentHash());
+        media.setStorageKey(stored.storageKey());
+        media.setContentType(stored.contentType());
+        media.setMediaOrder(order);
+        return media;
+    }
 
-            logger.info("Using video storage path: {}", path);
-            return path;
-        } catch (Exception e) {
-            logger.error("Error setting up video storage path: {}", e.getMessage(), e);
-            String tempPath = System.getProperty("java.io.tmpdir") + "/phan-lop-videos";
-            logger.info("Using emergency fallback to temp directory: {}", tempPath);
-            new File(tempPath).mkdirs();
-            return tempPath;
-        }
+    private List<String> storageKeysOf(Post post) {
+        return post.getMedia().stream()
+                .map(PostMedia::getStorageKey)
+                .filter(Objects::nonNull)
+                .toList();
     }
 
     @Override
@@ -699,23 +619,13 @@ public class PostServiceImpl implements PostService {
         logger.info("Fetching posts for group {}, userId: {}, page: {}, size: {}", 
                     groupId, userId, pageable.getPageNumber(), pageable.getPageSize());
 
-        // Kiểm tra nhóm tồn tại
-        Group group = groupRepository.findById(groupId)
-                .orElseThrow(() -> new UserException("Group not found"));
-
-        // Kiểm tra quyền truy cập nhóm
-        if (userId != null) {
-            groupMemberRepository.findByGroupIdAndUserId(groupId, userId)
-                    .orElseThrow(() -> new UserException("You are not a member of this group"));
-        } else if (group.getPrivacy() == Group.Privacy.PRIVATE) {
-            throw new UserException("Cannot access private group without authentication");
-        }
+        checkGroupReadAccess(groupId, userId);
 
         // Lấy bài viết đang hiển thị của nhóm (sửa điều kiện isActive)
         Page<Post> posts = postRepository.findByGroupIdAndIsActiveFalse(groupId, pageable);
         User reqUser = userId != null ? userRepository.findById(userId).orElse(null) : null;
 
-        List<PostDto> postDtos = postDtoMapper.toPostDtos(posts.getContent(), reqUser);
+        List<PostDto> postDtos = postDtoMapper.toPostDtos(visibleTo(posts.getContent(), reqUser), reqUser);
 
         PagedModel.PageMetadata metadata = new PagedModel.PageMetadata(
                 pageable.getPageSize(),
@@ -743,4 +653,99 @@ public class PostServiceImpl implements PostService {
 
         return pagedModel;
     }
-}
\ No newline at end of file
+
+    @Override
+    public PagedModel<?> getAllPosts(Long userId, PostCursor before, int size) {
+        logger.info("Đang tìm bài viết (keyset) với userId: {}, before: {}, kích thước: {}", userId, before, size);
+        User reqUser = userId != null ? userRepository.findById(userId).orElse(null) : null;
+
+        List<Post> window = userId != null
+            ? postRepository.findFeedBefore(userId, before.createdAt(), before.id(), PageRequest.of(0, size + 1))
+            : postRepository.findPublicFeedBefore(before.createdAt(), before.id(), PageRequest.of(0, size + 1));
+
+        return toCursorPagedModel(window, before, size, reqUser, "/api/posts");
+    }
+
+    @Override
+    public PagedModel<?> getPostsByUserId(Long userId, Long currentUserId, PostCursor before, int size) throws UserException {
+        logger.info("Đang tìm bài viết (keyset) cho người dùng {}, before: {}", userId, before);
+
+        userRepository.findById(userId).orElseThrow(() -> new UserException("Không tìm thấy người dùng"));
+        User reqUser = (currentUserId != null) ? userRepository.findById(currentUserId).orElse(null) : null;
+
+        List<Post> window;
+        if (currentUserId != null && currentUserId.equals(userId)) {
+            window = postRepository.findByUserIdAndIsActiveFalseBefore(userId, before.createdAt(), before.id(), PageRequest.of(0, size + 1));
+        } else {
+            window = postRepository.findByUserIdAndPrivacyAndIsActiveFalseBefore(
+                userId, Post.Privacy.PUBLIC, before.createdAt(), before.id(), PageRequest.of(0, size + 1));
+        }
+
+        return toCursorPagedModel(window, before, size, reqUser, String.format("/api/posts/user/%d", userId));
+    }
+
+    @Override
+    public PagedModel<?> getSharedPostsByUserId(Long userId, Long currentUserId, PostCursor before, int size) throws UserException {
+        logger.info("Đang tìm bài viết đã chia sẻ (keyset) cho người dùng {}, before: {}", userId, before);
+
+        userRepository.findById(userId).orElseThrow(() -> new UserException("Không tìm thấy người dùng"));
+        User reqUser = (currentUserId != null) ? userRepository.findById(currentUserId).orElse(null) : null;
+
+        List<Post> window = postRepository.findActivePostsRepostedByUserBefore(
+            userId, before.createdAt(), before.id(), PageRequest.of(0, size + 1));
+
+        return toCursorPagedModel(window, before, size, reqUser, String.format("/api/posts/user/%d/shared", userId));
+    }
+
+    @Override
+    public PagedModel<?> getGroupPosts(Long groupId, Long userId, PostCursor before, int size) throws UserException {
+        logger.info("Fetching posts for group {} (keyset), userId: {}, before: {}, size: {}", groupId, userId, before, size);
+
+        checkGroupReadAccess(groupId, userId);
+
+        List<Post> window = postRepository.findByGroupIdAndIsActiveFalseBefore(
+            groupId, before.createdAt(), before.id(), PageRequest.of(0, size + 1));
+        User reqUser = userId != null ? userRepository.findById(userId).orElse(null) : null;
+
+        return toCursorPagedModel(window, before, size, reqUser, String.format("/api/posts/group/%d", groupId));
+    }
+
+    private void checkGroupReadAccess(Long groupId, Long userId) throws UserException {
+        // Kiểm tra nhóm tồn tại
+        Group group = groupRepository.findById(groupId)
+                .orElseThrow(() -> new UserException("Group not found"));
+
+        // Kiểm tra quyền truy cập nhóm
+        if (userId != null) {
+            groupMemberRepository.findByGroupIdAndUserId(groupId, userId)
+                    .orElseThrow(() -> new UserException("You are not a member of this group"));
+        } else if (group.getPrivacy() == Group.Privacy.PRIVATE) {
+            throw new UserException("Cannot access private group without authentication");
+        }
+    }
+
+    // Bỏ bài viết của người đã chặn/bị chặn bởi người xem sau khi truy vấn thay vì thêm anti-join vào SQL;
+    // trang có thể ngắn hơn size nhưng phân trang không đổi (con trỏ keyset vẫn lấy từ bài cuối chưa lọc)
+    private List<Post> visibleTo(List<Post> posts, User reqUser) {
+        return reqUser == null ? posts : blockListService.filterVisible(reqUser.getId(), posts, post -> post.getUser().getId());
+    }
+
+    // Dựng PagedModel cho chế độ keyset: lấy dư 1 bài để biết còn trang sau, không có PageMetadata (không đếm tổng)
+    private PagedModel<?> toCursorPagedModel(List<Post> window, PostCursor before, int size, User reqUser, String basePath) {
+        boolean hasNext = window.size() > size;
+        List<Post> posts = hasNext ? window.subList(0, size) : window;
+
+        List<PostDto> postDtos = postDtoMapper.toPostDtos(visibleTo(posts, reqUser), reqUser);
+        PagedModel<PostDto> pagedModel = PagedModel.of(postDtos, (PagedModel.PageMetadata) null);
+
+        String self = before.isFirst() ? "" : before.encode();
+        pagedModel.add(Link.of(String.format("%s?before=%s&size=%d", basePath, self, size)).withSelfRel());
+
+        if (hasNext) {
+            String next = PostCursor.of(posts.get(posts.size() - 1)).encode();
+            pagedModel.add(Link.of(String.format("%s?before=%s&size=%d", basePath, next, size)).withRel("next"));
+        }
+
+        return pagedModel;
+    }
+}
@@ -0,0 +1,341 @@
+package com.example.server.services.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.server.dto.UserDto;
+import com.example.server.repositories.UserRepository;
+import com.example.server.services.PresenceService;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+@Service
+public class PresenceServiceImpl implements PresenceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PresenceServiceImpl.class);
+
+    // Hash tag {userId}: hai khóa của một người dùng luôn cùng slot, script chạy được trên Redis Cluster
+    private static final String KEY_PREFIX = "presence:{";
+    private static final String ONLINE_SUFFIX = "}:online";
+    private static final String SESSIONS_SUFFIX = "}:sessions";
+
+    // Số ID mỗi câu UPDATE ... IN (...)
+    private static final int FLUSH_CHUNK_SIZE = 500;
+
+    // Bỏ phiên (và các phiên đã quá hạn) khỏi ZSET; hết phiên thì xóa cờ online. Trả về 1 khi người dùng vừa offline
+    private static final RedisScript<Long> REMOVE_SESSION = new DefaultRedisScript<>(
+        "redis.call('ZREM', KEYS[1], ARGV[1]) " +
+        "redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', ARGV[2]) " +
+        "if redis.call('ZCARD', KEYS[1]) == 0 then redis.call('DEL', KEYS[1], KEYS[2]) return 1 end " +
+        "return 0",
+        Long.class);
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    // Khóa online hết hạn sau chừng này nếu node không gia hạn (node chết, mất kết nối Redis)
+    @Value("${app.presence.ttl-ms:60000}")
+    private long ttlMs;
+
+    // Phiên không gửi frame nào (kể cả heartbeat) lâu hơn chừng này bị coi là đã chết dù chưa nhận sự kiện đóng
+    @Value("${app.presence.idle-timeout-ms:180000}")
+    private long idleTimeoutMs;
+
+    // Đăng xuất được phát tới mọi node: phiên của người dùng có thể đang mở trên node khác
+    @Value("${app.presence.logout-channel:presence:logout}")
+    private String logoutChannel;
+
+    // Phiên WebSocket đang mở trên node này; chỉ node giữ phiên mới gia hạn nó trong Redis
+    private final ConcurrentMap<String, LocalSession> localSessions = new ConcurrentHashMap<>();
+
+    // Lượt gia hạn và lượt bỏ phiên do đăng xuất không chạy xen nhau: nếu không, lượt gia hạn đã lấy danh sách
+    // phiên trước khi nhận thông báo đăng xuất sẽ ghi lại phiên vừa bị xóa
+    private final Object refreshLock = new Object();
+
+    // Trạng thái chờ ghi xuống MySQL, giữ bản mới nhất của mỗi người dùng
+    private final ConcurrentMap<Long, PendingPresence> pending = new ConcurrentHashMap<>();
+
+    private static final class LocalSession {
+        final String id;
+        final Long userId;
+        volatile long lastActivity;
+
+        LocalSession(String id, Long userId, long lastActivity) {
+            this.id = id;
+            this.userId = userId;
+            this.lastActivity = lastActivity;
+        }
+    }
+
+    // lastSeen làm tròn tới giây để các thay đổi trong cùng giây gộp được vào một câu UPDATE
+    private record PendingPresence(int online, LocalDateTime lastSeen) {
+    }
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener(
+            (message, pattern) -> onRemoteLogout(new String(message.getBody(), StandardCharsets.UTF_8)),
+            new ChannelTopic(logoutChannel));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Phiên trên node này sẽ tự hết hạn trong Redis; chỉ cố ghi nốt lastSeen còn chờ
+        flushLastSeen();
+    }
+
+    @Override
+    public void sessionConnected(Long userId, String sessionId) {
+        LocalSession session = new LocalSession(sessionId, userId, System.currentTimeMillis());
+        localSessions.put(sessionId, session);
+        try {
+            extend(List.of(session));
+        } catch (Exception e) {
+            logger.warn("Không ghi được trạng thái online của user {}: {}", userId, e.getMessage());
+        }
+        record(userId, 1);
+    }
+
+    @Override
+    public void sessionActive(String sessionId) {
+        LocalSession session = localSessions.get(sessionId);
+        if (session != null) {
+            session.lastActivity = System.currentTimeMillis();
+        }
+    }
+
+    @Override
+    public void sessionDisconnected(Long userId, String sessionId) {
+        // Sự kiện phát bất đồng bộ: disconnect có thể tới trước connect; phiên "ma" khi đó bị dọn theo idle-timeout
+        LocalSession session = localSessions.remove(sessionId);
+        Long owner = session != null ? session.userId : userId;
+        if (owner == null) {
+            return;
+        }
+        try {
+            Long wentOffline = redisTemplate.execute(REMOVE_SESSION,
+                List.of(sessionsKey(owner), onlineKey(owner)),
+                sessionId, String.valueOf(System.currentTimeMillis()));
+            if (Long.valueOf(1).equals(wentOffline)) {
+                record(owner, 0);
+            }
+        } catch (Exception e) {
+            logger.warn("Không xóa được phiên {} của user {}: {}", sessionId, owner, e.getMessage());
+        }
+    }
+
+    @Override
+    public void touch(Long userId) {
+        try {
+            redisTemplate.opsForValue().set(onlineKey(userId), "1", Duration.ofMillis(ttlMs));
+        } catch (Exception e) {
+            logger.warn("Không ghi được trạng thái online của user {}: {}", userId, e.getMessage());
+        }
+        record(userId, 1);
+    }
+
+    @Override
+    public void markOffline(Long userId) {
+        dropLocalSessions(userId);
+        try {
+            redisTemplate.delete(List.of(onlineKey(userId), sessionsKey(userId)));
+            // Node khác bỏ phiên cục bộ của userId, nếu không lượt refreshLocalSessions kế tiếp của nó sẽ ghi lại khóa
+            redisTemplate.convertAndSend(logoutChannel, userId.toString());
+        } catch (Exception e) {
+            logger.warn("Không xóa được trạng thái online của user {}: {}", userId, e.getMessage());
+        }
+        record(userId, 0);
+    }
+
+    private void onRemoteLogout(String message) {
+        try {
+            // Node này cũng nhận lại thông báo của chính nó; khi đó không còn phiên nào để bỏ
+            dropLocalSessions(Long.parseLong(message));
+        } catch (RuntimeException e) {
+            logger.warn("Bỏ qua thông báo đăng xuất không hợp lệ '{}': {}", message, e.getMessage());
+        }
+    }
+
+    // Bỏ từng phiên qua REMOVE_SESSION thay vì chỉ xóa khỏi bộ nhớ: phiên này đã được gia hạn lại trong Redis
+    // (trước khi node nhận thông báo) cũng bị xóa
+    private void dropLocalSessions(Long userId) {
+        synchronized (refreshLock) {
+            for (LocalSession session : localSessions.values()) {
+                if (session.userId.equals(userId)) {
+                    sessionDisconnected(userId, session.id);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean isOnline(Long userId) {
+        return userId != null && !onlineAmong(List.of(userId)).isEmpty();
+    }
+
+    @Override
+    public Set<Long> onlineAmong(Collection<Long> userIds) {
+        List<Long> ids = userIds.stream().filter(Objects::nonNull).distinct().toList();
+        if (ids.isEmpty()) {
+            return Set.of();
+        }
+        List<String> values;
+        try {
+            values = redisTemplate.opsForValue().multiGet(ids.stream().map(this::onlineKey).toList());
+        } catch (Exception e) {
+            logger.warn("Không đọc được trạng thái online: {}", e.getMessage());
+            return Set.of();
+        }
+        Set<Long> online = new HashSet<>();
+        for (int i = 0; values != null && i < ids.size(); i++) {
+            if (values.get(i) != null) {
+                online.add(ids.get(i));
+            }
+        }
+        return online;
+    }
+
+    @Override
+    public void fillOnlineStatus(Collection<UserDto> users) {
+        if (users == null || users.isEmpty()) {
+            return;
+        }
+        Set<Long> online = onlineAmong(users.stream().filter(Objects::nonNull).map(UserDto::getId).toList());
+        for (UserDto user : users) {
+            if (user != null) {
+                user.setIsOnline(online.contains(user.getId()) ? 1 : 0);
+            }
+        }
+    }
+
+    @Override
+    @Scheduled(initialDelayString = "${app.presence.refresh-interval-ms:20000}",
+               fixedDelayString = "${app.presence.refresh-interval-ms:20000}")
+    public int refreshLocalSessions() {
+        synchronized (refreshLock) {
+            return refreshLocalSessionsLocked();
+        }
+    }
+
+    private int refreshLocalSessionsLocked() {
+        long idleBefore = System.currentTimeMillis() - idleTimeoutMs;
+        List<LocalSession> alive = new ArrayList<>();
+        for (LocalSession session : localSessions.values()) {
+            if (session.lastActivity < idleBefore) {
+                logger.debug("Phiên {} của user {} không còn hoạt động", session.id, session.userId);
+                sessionDisconnected(session.userId, session.id);
+            } else {
+                alive.add(session);
+            }
+        }
+        if (alive.isEmpty()) {
+            return 0;
+        }
+        try {
+            extend(alive);
+        } catch (Exception e) {
+            // Lượt sau thử lại; khóa chỉ hết hạn nếu lỗi kéo dài quá TTL
+            logger.warn("Không gia hạn được {} phiên online: {}", alive.size(), e.getMessage());
+        }
+        return alive.size();
+    }
+
+    @Override
+    @Scheduled(initialDelayString = "${app.presence.flush-interval-ms:30000}",
+               fixedDelayString = "${app.presence.flush-interval-ms:30000}")
+    public int flushLastSeen() {
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        Map<PendingPresence, List<Long>> groups = new HashMap<>();
+        for (Map.Entry<Long, PendingPresence> entry : pending.entrySet()) {
+            // remove(key, value): thay đổi mới hơn ghi vào trong lúc này được giữ lại cho lượt sau
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                groups.computeIfAbsent(entry.getValue(), state -> new ArrayList<>()).add(entry.getKey());
+            }
+        }
+
+        int written = 0;
+        for (Map.Entry<PendingPresence, List<Long>> group : groups.entrySet()) {
+            PendingPresence state = group.getKey();
+            List<Long> ids = group.getValue();
+            for (int from = 0; from < ids.size(); from += FLUSH_CHUNK_SIZE) {
+                List<Long> chunk = ids.subList(from, Math.min(from + FLUSH_CHUNK_SIZE, ids.size()));
+                try {
+                    userRepository.updatePresence(chunk, state.online(), state.lastSeen());
+                    written += chunk.size();
+                } catch (Exception e) {
+                    logger.warn("Không ghi được lastSeen cho {} người dùng: {}", chunk.size(), e.getMessage());
+                    chunk.forEach(userId -> pending.putIfAbsent(userId, state));
+                }
+            }
+        }
+        logger.debug("Đã ghi trạng thái hiện diện của {} người dùng trong {} câu lệnh", written, groups.size());
+        return written;
+    }
+
+    private void record(Long userId, int online) {
+        pending.put(userId, new PendingPresence(online, LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS)));
+    }
+
+    // Một lượt pipeline cho mọi phiên: ZSET phiên (điểm = hạn) và cờ online cùng được gia hạn
+    private void extend(Collection<LocalSession> sessions) {
+        Duration ttl = Duration.ofMillis(ttlMs);
+        double expiresAt = System.currentTimeMillis() + ttlMs;
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (LocalSession session : sessions) {
+                    String sessionsKey = sessionsKey(session.userId);
+                    ops.opsForZSet().add(sessionsKey, session.id, expiresAt);
+                    ops.expire(sessionsKey, ttl);
+                    ops.opsForValue().set(onlineKey(session.userId), "1", ttl);
+                }
+                return null;
+            }
+        });
+    }
+
+    private String onlineKey(Long userId) {
+        return KEY_PREFIX + userId + ONLINE_SUFFIX;
+    }
+
+    private String sessionsKey(Long userId) {
+        return KEY_PREFIX + userId + SESSIONS_SUFFIX;
+    }
+}
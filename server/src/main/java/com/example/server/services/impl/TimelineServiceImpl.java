@@ -0,0 +1,345 @@
+package com.example.server.services.impl;
+
+import com.example.server.models.Post;
+import com.example.server.repositories.FriendshipRepository;
+import com.example.server.repositories.GroupMemberRepository;
+import com.example.server.repositories.PostRepository;
+import com.example.server.repositories.PostRepository.TimelineEntry;
+import com.example.server.services.TimelineService;
+import com.example.server.utils.AfterCommit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+public class TimelineServiceImpl implements TimelineService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimelineServiceImpl.class);
+
+    private static final String HOME_PREFIX = "timeline:home:";
+    private static final String PUBLIC_KEY = "timeline:public";
+    // Phần tử đánh dấu để timeline rỗng vẫn tồn tại trong Redis (ZSET rỗng sẽ bị Redis xóa)
+    private static final String SENTINEL = "0";
+    private static final int FAN_OUT_BATCH = 500;
+
+    // Thêm một bài viết vào nhiều timeline, chỉ với những timeline đã được dựng (timeline lạnh sẽ dựng lại khi đọc)
+    private static final RedisScript<Long> FAN_OUT_SCRIPT = new DefaultRedisScript<>(
+        "local n = 0 " +
+        "for _, key in ipairs(KEYS) do " +
+        "  if redis.call('EXISTS', key) == 1 then " +
+        "    redis.call('ZADD', key, ARGV[2], ARGV[3]) " +
+        "    redis.call('ZREMRANGEBYRANK', key, 0, -(tonumber(ARGV[1]) + 1)) " +
+        "    n = n + 1 " +
+        "  end " +
+        "end " +
+        "return n", Long.class);
+
+    // Gộp nhiều bài viết vào một timeline đã tồn tại: ARGV = maxSize, score1, member1, score2, member2...
+    private static final RedisScript<Long> MERGE_SCRIPT = new DefaultRedisScript<>(
+        "if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end " +
+        "for i = 2, #ARGV, 2 do redis.call('ZADD', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+        "redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -(tonumber(ARGV[1]) + 1)) " +
+        "return 1", Long.class);
+
+    // Dựng timeline trong một lệnh nguyên tử: ARGV = maxSize, ttlMs, score1, member1, ...
+    // Không DEL trước: bài viết fan-out vào cùng khóa trong lúc đang đọc DB được giữ lại thay vì bị xóa mất
+    private static final RedisScript<Long> REBUILD_SCRIPT = new DefaultRedisScript<>(
+        "for i = 3, #ARGV, 2 do redis.call('ZADD', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+        "redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -(tonumber(ARGV[1]) + 1)) " +
+        "redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+        "return redis.call('ZCARD', KEYS[1])", Long.class);
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private FriendshipRepository friendshipRepository;
+
+    @Autowired
+    private GroupMemberRepository groupMemberRepository;
+
+    @Value("${app.timeline.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.timeline.max-size:800}")
+    private int maxSize;
+
+    @Value("${app.timeline.ttl-hours:72}")
+    private long ttlHours;
+
+    @Override
+    public Optional<Page<Post>> getHomeTimeline(Long userId, Pageable pageable) {
+        if (!enabled || userId == null || !withinTimeline(pageable)) {
+            return Optional.empty();
+        }
+        try {
+            String homeKey = homeKey(userId);
+            if (!Boolean.TRUE.equals(redisTemplate.hasKey(homeKey))) {
+                rebuild(homeKey, postRepository.findHomeTimelineEntries(userId, PageRequest.of(0, maxSize)));
+            }
+            return readPage(List.of(homeKey, ensurePublicTimeline()), pageable);
+        } catch (Exception e) {
+            logger.warn("Không đọc được home timeline của userId {} từ Redis: {}", userId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Optional<Page<Post>> getPublicTimeline(Pageable pageable) {
+        if (!enabled || !withinTimeline(pageable)) {
+            return Optional.empty();
+        }
+        try {
+            return readPage(List.of(ensurePublicTimeline()), pageable);
+        } catch (Exception e) {
+            logger.warn("Không đọc được timeline công khai từ Redis: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void onPostCreated(Post post) {
+        if (!enabled || post == null || post.getId() == null) {
+            return;
+        }
+        Long postId = post.getId();
+        Long authorId = post.getUser().getId();
+        Long groupId = post.getGroup() != null ? post.getGroup().getId() : null;
+        Post.Privacy privacy = post.getPrivacy();
+        double score = score(post.getCreatedAt());
+
+        afterCommit(() -> {
+            // Cùng điều kiện với truy vấn feed: bài FRIENDS tới bạn bè dù nằm trong nhóm nào
+            Set<String> keys = new LinkedHashSet<>();
+            if (groupId == null && privacy == Post.Privacy.PUBLIC) {
+                keys.add(PUBLIC_KEY);
+            } else {
+                keys.add(homeKey(authorId));
+            }
+            if (groupId != null) {
+                groupMemberRepository.findUserIdsByGroupId(groupId).forEach(id -> keys.add(homeKey(id)));
+            }
+            if (privacy == Post.Privacy.FRIENDS) {
+                friendshipRepository.findFriendIdsByUserId(authorId).forEach(id -> keys.add(homeKey(id)));
+            }
+            fanOut(keys, postId, score);
+        });
+    }
+
+    @Override
+    public void onPostRemoved(Post post) {
+        if (!enabled || post == null || post.getId() == null) {
+            return;
+        }
+        String member = post.getId().toString();
+        Long authorId = post.getUser().getId();
+        Long groupId = post.getGroup() != null ? post.getGroup().getId() : null;
+
+        afterCommit(() -> {
+            // Xóa khỏi mọi timeline có thể chứa bài viết, không phụ thuộc quyền riêng tư hiện tại
+            Set<String> keys = new LinkedHashSet<>();
+            keys.add(PUBLIC_KEY);
+            keys.add(homeKey(authorId));
+            friendshipRepository.findFriendIdsByUserId(authorId).forEach(id -> keys.add(homeKey(id)));
+            if (groupId != null) {
+                groupMemberRepository.findUserIdsByGroupId(groupId).forEach(id -> keys.add(homeKey(id)));
+            }
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                byte[] value = member.getBytes(StandardCharsets.UTF_8);
+                for (String key : keys) {
+                    connection.zSetCommands().zRem(key.getBytes(StandardCharsets.UTF_8), value);
+                }
+                return null;
+            });
+        });
+    }
+
+    @Override
+    public void onFriendshipCreated(Long userId, Long friendId) {
+        if (!enabled) {
+            return;
+        }
+        afterCommit(() -> {
+            merge(homeKey(userId), postRepository.findFriendsTimelineEntries(friendId, userId, PageRequest.of(0, maxSize)));
+            merge(homeKey(friendId), postRepository.findFriendsTimelineEntries(userId, friendId, PageRequest.of(0, maxSize)));
+        });
+    }
+
+    @Override
+    public void onFriendshipRemoved(Long userId, Long friendId) {
+        if (!enabled) {
+            return;
+        }
+        afterCommit(() -> {
+            // Bài FRIENDS trong nhóm mà người kia là thành viên vẫn hiển thị nên không bị xóa
+            remove(homeKey(userId), postRepository.findFriendsTimelineEntries(friendId, userId, PageRequest.of(0, maxSize)));
+            remove(homeKey(friendId), postRepository.findFriendsTimelineEntries(userId, friendId, PageRequest.of(0, maxSize)));
+        });
+    }
+
+    @Override
+    public void onGroupJoined(Long groupId, Long userId) {
+        if (!enabled) {
+            return;
+        }
+        afterCommit(() -> merge(homeKey(userId),
+                postRepository.findTimelineEntriesByGroupId(groupId, null, PageRequest.of(0, maxSize))));
+    }
+
+    @Override
+    public void onGroupLeft(Long groupId, Long userId) {
+        if (!enabled) {
+            return;
+        }
+        // Bài viết của chính người dùng và bài FRIENDS của bạn bè trong nhóm vẫn hiển thị với họ nên được giữ lại
+        afterCommit(() -> remove(homeKey(userId),
+                postRepository.findTimelineEntriesByGroupId(groupId, userId, PageRequest.of(0, maxSize))));
+    }
+
+    // Trang vượt quá độ dài timeline đã vật chất hóa thì để caller truy vấn DB, không dựng timeline vô ích
+    private boolean withinTimeline(Pageable pageable) {
+        return pageable.getOffset() + pageable.getPageSize() < maxSize;
+    }
+
+    private Optional<Page<Post>> readPage(List<String> keys, Pageable pageable) {
+        long offset = pageable.getOffset();
+        long end = offset + pageable.getPageSize();
+
+        List<TypedTuple<String>> merged = new ArrayList<>();
+        long total = 0;
+        for (String key : keys) {
+            Set<TypedTuple<String>> range = redisTemplate.opsForZSet().reverseRangeWithScores(key, 0, end);
+            if (range != null) {
+                merged.addAll(range);
+            }
+            Long card = redisTemplate.opsForZSet().zCard(key);
+            total += card != null ? Math.max(card - 1, 0) : 0;
+            redisTemplate.expire(key, ttlHours, TimeUnit.HOURS);
+        }
+
+        merged.sort(Comparator.<TypedTuple<String>>comparingDouble(t -> t.getScore() != null ? t.getScore() : 0)
+                .thenComparingLong(t -> Long.parseLong(t.getValue()))
+                .reversed());
+
+        List<Long> ids = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (TypedTuple<String> tuple : merged) {
+            if (SENTINEL.equals(tuple.getValue()) || !seen.add(tuple.getValue())) {
+                continue;
+            }
+            ids.add(Long.valueOf(tuple.getValue()));
+        }
+
+        List<Long> pageIds = offset < ids.size()
+                ? ids.subList((int) offset, (int) Math.min(ids.size(), end))
+                : List.of();
+
+        // Hydrate cả trang bằng một truy vấn, giữ nguyên thứ tự của timeline
+        Map<Long, Post> postsById = postRepository.findAllById(pageIds).stream()
+                .collect(Collectors.toMap(Post::getId, Function.identity()));
+        List<Post> posts = pageIds.stream()
+                .map(postsById::get)
+                .filter(post -> post != null && !Boolean.TRUE.equals(post.getIsActive()))
+                .collect(Collectors.toList());
+
+        return Optional.of(new PageImpl<>(posts, pageable, Math.max(total, offset + pageIds.size())));
+    }
+
+    private String ensurePublicTimeline() {
+        if (!Boolean.TRUE.equals(redisTemplate.hasKey(PUBLIC_KEY))) {
+            rebuild(PUBLIC_KEY, postRepository.findPublicTimelineEntries(PageRequest.of(0, maxSize)));
+        }
+        return PUBLIC_KEY;
+    }
+
+    private void rebuild(String key, List<TimelineEntry> entries) {
+        logger.info("Dựng lại timeline {} với {} bài viết", key, entries.size());
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(maxSize));
+        args.add(String.valueOf(TimeUnit.HOURS.toMillis(ttlHours)));
+        args.add("0");
+        args.add(SENTINEL);
+        for (TimelineEntry entry : entries) {
+            args.add(String.valueOf(score(entry.getCreatedAt())));
+            args.add(entry.getId().toString());
+        }
+        redisTemplate.execute(REBUILD_SCRIPT, List.of(key), args.toArray());
+    }
+
+    private void fanOut(Set<String> keys, Long postId, double score) {
+        List<String> all = new ArrayList<>(keys);
+        long updated = 0;
+        for (int i = 0; i < all.size(); i += FAN_OUT_BATCH) {
+            List<String> batch = all.subList(i, Math.min(all.size(), i + FAN_OUT_BATCH));
+            Long n = redisTemplate.execute(FAN_OUT_SCRIPT, batch,
+                    String.valueOf(maxSize), String.valueOf(score), postId.toString());
+            updated += n != null ? n : 0;
+        }
+        logger.debug("Fan-out bài viết {} tới {}/{} timeline", postId, updated, all.size());
+    }
+
+    private void merge(String key, List<TimelineEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(maxSize));
+        for (TimelineEntry entry : entries) {
+            args.add(String.valueOf(score(entry.getCreatedAt())));
+            args.add(entry.getId().toString());
+        }
+        redisTemplate.execute(MERGE_SCRIPT, List.of(key), args.toArray());
+    }
+
+    private void remove(String key, List<TimelineEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        Object[] members = entries.stream().map(entry -> entry.getId().toString()).toArray();
+        redisTemplate.opsForZSet().remove(key, members);
+    }
+
+    // Chỉ ghi vào Redis sau khi transaction commit để không fan-out bài viết bị rollback
+    private void afterCommit(Runnable task) {
+        AfterCommit.runSafely(task, logger, "Không cập nhật được timeline trong Redis: {}");
+    }
+
+    private static String homeKey(Long userId) {
+        return HOME_PREFIX + userId;
+    }
+
+    private static double score(LocalDateTime createdAt) {
+        LocalDateTime time = createdAt != null ? createdAt : LocalDateTime.now();
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.server.services.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import com.example.server.services.TokenBlacklistService;
+
+@Service
+public class TokenBlacklistServiceImpl implements TokenBlacklistService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenBlacklistServiceImpl.class);
+
+    private static final String BLACKLIST_PREFIX = "blacklist_token:";
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    // Kết quả "chưa bị chặn" chỉ được tin trong khoảng này: đăng xuất ở instance khác có hiệu lực chậm nhất chừng ấy
+    @Value("${app.jwt.blacklist-cache-ttl-ms:5000}")
+    private long negativeTtlMs;
+
+    @Value("${app.jwt.verified-cache-max-size:10000}")
+    private int maxSize;
+
+    private final Map<String, CachedState> states = new ConcurrentHashMap<>();
+
+    private record CachedState(boolean blacklisted, long cachedUntil) {
+    }
+
+    @Override
+    public boolean isBlacklisted(String token) {
+        long now = System.currentTimeMillis();
+        CachedState cached = states.get(token);
+        if (cached != null && cached.cachedUntil() > now) {
+            return cached.blacklisted();
+        }
+
+        boolean blacklisted = redisTemplate.opsForValue().get(BLACKLIST_PREFIX + token) != null;
+        if (blacklisted) {
+            // Token đã bị chặn thì không bao giờ được gỡ; chỉ giữ trong cache cục bộ theo TTL của khóa Redis
+            Long ttlMs = redisTemplate.getExpire(BLACKLIST_PREFIX + token, TimeUnit.MILLISECONDS);
+            put(token, true, now + (ttlMs != null && ttlMs > 0 ? ttlMs : negativeTtlMs), now);
+        } else {
+            put(token, false, now + negativeTtlMs, now);
+        }
+        return blacklisted;
+    }
+
+    @Override
+    public void blacklist(String token, long ttlSeconds) {
+        redisTemplate.opsForValue().set(BLACKLIST_PREFIX + token, "true", ttlSeconds, TimeUnit.SECONDS);
+        long now = System.currentTimeMillis();
+        put(token, true, now + TimeUnit.SECONDS.toMillis(ttlSeconds), now);
+        logger.debug("Đã đưa token vào danh sách đen trong {} giây", ttlSeconds);
+    }
+
+    private void put(String token, boolean blacklisted, long cachedUntil, long now) {
+        if (states.size() >= maxSize) {
+            states.entrySet().removeIf(entry -> entry.getValue().cachedUntil() <= now);
+            if (states.size() >= maxSize) {
+                states.clear();
+            }
+        }
+        states.put(token, new CachedState(blacklisted, cachedUntil));
+    }
+}
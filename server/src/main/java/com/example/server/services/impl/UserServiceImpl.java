@@ -1,17 +1,18 @@
 package com.example.server.services.impl;
 
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.time.LocalDateTime;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -29,9 +30,15 @@ import com.example.server.repositories.UserRepository;
 import com.example.server.repositories.FriendshipRepository;
 import com.example.server.models.Friendship;
 import com.example.server.requests.UserRequest;
+import com.example.server.services.BlockListService;
+import com.example.server.services.CacheInvalidationService;
+import com.example.server.services.FriendGraphService;
+import com.example.server.services.FriendSuggestionService;
+import com.example.server.services.PasswordHashingService;
+import com.example.server.services.PresenceService;
+import com.example.server.services.TimelineService;
+import com.example.server.utils.UserUtil;
 import com.example.server.services.UserService;
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.PersistenceContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,10 +60,25 @@ public class UserServiceImpl implements UserService {
     private FriendshipRepository friendshipRepository;
     
     @Autowired
-    private PasswordEncoder passwordEncoder;
+    private PasswordHashingService passwordHashingService;
 
-    @PersistenceContext
-    private EntityManager entityManager;
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private TimelineService timelineService;
+
+    @Autowired
+    private CacheInvalidationService cacheInvalidationService;
+
+    @Autowired
+    private FriendGraphService friendGraphService;
+
+    @Autowired
+    private FriendSuggestionService friendSuggestionService;
+
+    @Autowired
+    private BlockListService blockListService;
 
     @Override
     public User findByEmail(String email) throws UserException {
@@ -71,8 +93,8 @@ public class UserServiceImpl implements UserService {
         return user;
     }
 
+    // Không cache: entity trả về còn được duyệt qua quan hệ lazy và được save lại, bản tách khỏi session không dùng được
     @Override
-    @Cacheable(value = "users", key = "#userId")
     public User findUserById(Long userId) throws UserException {
         if (userId == null) {
             throw new UserException("User ID cannot be null");
@@ -98,14 +120,19 @@ public class UserServiceImpl implements UserService {
     }
 
     @Transactional
-    @CacheEvict(value = "users", key = "#userId")
     @Override
     public User updateUser(Long userId, UserDto dto) throws UserException {
         User user = findUserById(userId);
+        String oldNameKey = UserUtil.nameKey(user.getFirstName(), user.getLastName());
 
         // Cập nhật các field cơ bản
         Optional.ofNullable(dto.getFirstName()).ifPresent(user::setFirstName);
         Optional.ofNullable(dto.getLastName()).ifPresent(user::setLastName);
+        String nameKey = UserUtil.nameKey(user.getFirstName(), user.getLastName());
+        if (!nameKey.equals(oldNameKey)) {
+            // Danh sách bạn bè của những người khác sắp xếp/tìm theo tên này
+            friendshipRepository.updateFriendNameKey(userId, nameKey);
+        }
         Optional.ofNullable(dto.getImage()).ifPresent(user::setImage);
         Optional.ofNullable(dto.getBackgroundImage()).ifPresent(user::setBackgroundImage);
         Optional.ofNullable(dto.getBirthDate()).ifPresent(user::setBirthDate);
@@ -191,9 +218,10 @@ public class UserServiceImpl implements UserService {
     }
 
     @Transactional
-    @CacheEvict(value = "users", allEntries = true) // Xóa toàn bộ cache vì ảnh hưởng đến nhiều user
     @Override
-    public User followUser(Long userId, User user) throws UserException {
+    public User followUser(Long userId, Long reqUserId) throws UserException {
+        // Cần entity của cả hai bên để sửa hai danh sách following/followers
+        User user = findUserById(reqUserId);
         User followUser = findUserById(userId);
         if (user.getFollowing().contains(followUser) && followUser.getFollowers().contains(user)) {
             user.getFollowing().remove(followUser);
@@ -208,6 +236,14 @@ public class UserServiceImpl implements UserService {
         return followUser;
     }
 
+    @Override
+    public Set<Long> followingAmong(Long reqUserId, Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return Set.of();
+        }
+        return new HashSet<>(userRepository.findFollowingIdsAmong(reqUserId, userIds));
+    }
+
     @Override
     public Page<User> searchUser(String query, Pageable pageable) {
         // Tiền xử lý query
@@ -230,36 +266,39 @@ public class UserServiceImpl implements UserService {
 
     @Transactional
     @Override
-    public FriendRequest sendFriendRequest(Long receiverId, User sender) throws UserException {
-        if (sender.getId().equals(receiverId)) {
+    public FriendRequest sendFriendRequest(Long receiverId, Long senderId) throws UserException {
+        if (senderId.equals(receiverId)) {
             throw new UserException("Cannot send friend request to yourself");
         }
 
-        User receiver = findUserById(receiverId);
+        if (blockListService.isBlocked(senderId, receiverId)) {
+            throw new UserException("Cannot send friend request to this user");
+        }
 
         // Kiểm tra xem đã là bạn bè chưa
-        if (sender.getFriends().contains(receiver)) {
+        if (isFriend(senderId, receiverId)) {
             throw new UserException("Already friends with this user");
         }
 
         // Kiểm tra yêu cầu hiện có
-        FriendRequest existingRequest = friendRequestRepository.findBySenderAndReceiver(sender, receiver);
+        FriendRequest existingRequest = friendRequestRepository.findBySenderIdAndReceiverId(senderId, receiverId);
         if (existingRequest != null && existingRequest.getStatus() == FriendRequest.Status.PENDING) {
             throw new UserException("Friend request already sent");
         }
 
-        FriendRequest request = new FriendRequest(sender, receiver);
+        // Lời mời mới được trả về cho client nên cần entity đầy đủ của hai bên
+        FriendRequest request = new FriendRequest(findUserById(senderId), findUserById(receiverId));
+        cacheInvalidationService.invalidate(CacheInvalidationService.pair(senderId, receiverId));
         return friendRequestRepository.save(request);
     }
 
     @Transactional
-    @CacheEvict(value = "users", allEntries = true)
     @Override
-    public FriendRequest acceptFriendRequest(Long requestId, User receiver) throws UserException {
+    public FriendRequest acceptFriendRequest(Long requestId, Long receiverId) throws UserException {
         FriendRequest request = friendRequestRepository.findById(requestId)
                 .orElseThrow(() -> new UserException("Friend request not found"));
 
-        if (!request.getReceiver().equals(receiver)) {
+        if (!request.getReceiver().getId().equals(receiverId)) {
             throw new UserException("You are not authorized to accept this request");
         }
 
@@ -269,216 +308,89 @@ public class UserServiceImpl implements UserService {
 
         request.setStatus(FriendRequest.Status.ACCEPTED);
 
-        // Thêm vào danh sách bạn bè của cả hai
+        // Ghi cả hai chiều vào bảng friendships bằng một câu lệnh
         User sender = request.getSender();
-        sender.getFriends().add(receiver);
-        receiver.getFriends().add(sender);
-
-        userRepository.save(sender);
-        userRepository.save(receiver);
+        User receiver = request.getReceiver();
+        friendshipRepository.upsertEdgePair(sender.getId(), receiver.getId(), Friendship.FriendshipStatus.ACCEPTED.name(),
+                UserUtil.nameKey(sender.getFirstName(), sender.getLastName()),
+                UserUtil.nameKey(receiver.getFirstName(), receiver.getLastName()));
+        timelineService.onFriendshipCreated(sender.getId(), receiver.getId());
+        invalidateFriendsOf(sender.getId(), receiver.getId());
         return friendRequestRepository.save(request);
     }
 
     @Transactional
     @Override
-    public void rejectFriendRequest(Long requestId, User receiver) throws UserException {
+    public void rejectFriendRequest(Long requestId, Long receiverId) throws UserException {
         FriendRequest request = friendRequestRepository.findById(requestId)
                 .orElseThrow(() -> new UserException("Friend request not found"));
 
-        if (!request.getReceiver().equals(receiver)) {
+        if (!request.getReceiver().getId().equals(receiverId)) {
             throw new UserException("You are not authorized to reject this request");
         }
 
         friendRequestRepository.delete(request);
+        cacheInvalidationService.invalidate(CacheInvalidationService.pair(request.getSender().getId(), receiverId));
     }
 
     @Transactional
-    @CacheEvict(value = {"users", "friendships", "friendrequests"}, allEntries = true)
     @Override
-    public void removeFriend(Long friendId, User user) throws UserException {
-        User friend = findUserById(friendId);
-
-        if (!user.getFriends().contains(friend)) {
+    public void removeFriend(Long friendId, Long userId) throws UserException {
+        // Một câu lệnh xóa cả hai chiều ACCEPTED; không có dòng nào nghĩa là hai người không phải bạn bè
+        int deleted = friendshipRepository.deleteAcceptedEdgePair(userId, friendId);
+        if (deleted == 0) {
             throw new UserException("Not friends with this user");
         }
-
-        try {
-            System.out.println("===== BẮT ĐẦU XÓA BẠN BÈ ===== User: " + user.getId() + ", Friend: " + friendId);
-            
-            // BƯỚC 1: Kiểm tra mối quan hệ bạn bè trong cả hai bảng
-            int userFriendsCount = friendshipRepository.countUserFriendsRelation(user.getId(), friendId);
-            var friendship1 = friendshipRepository.findByUserAndFriend(user, friend);
-            var friendship2 = friendshipRepository.findByUserAndFriend(friend, user);
-            
-            boolean hasFriendship1 = friendship1.isPresent() && friendship1.get().getStatus() == Friendship.FriendshipStatus.ACCEPTED;
-            boolean hasFriendship2 = friendship2.isPresent() && friendship2.get().getStatus() == Friendship.FriendshipStatus.ACCEPTED;
-            
-            System.out.println("Kiểm tra: user_friends count = " + userFriendsCount + 
-                             ", friendship1 exists = " + hasFriendship1 + 
-                             ", friendship2 exists = " + hasFriendship2);
-            
-            // BƯỚC 2: Xóa từ bảng Friendship
-            if (friendship1.isPresent()) {
-                friendshipRepository.delete(friendship1.get());
-                System.out.println("Đã xóa friendship từ User -> Friend");
-            }
-            
-            if (friendship2.isPresent()) {
-                friendshipRepository.delete(friendship2.get());
-                System.out.println("Đã xóa friendship từ Friend -> User");
-            }
-            
-            // BƯỚC 3: Xóa trực tiếp từ bảng user_friends
-            directRemoveFriendConnection(user.getId(), friendId);
-            
-            // BƯỚC 4: Dùng phương thức cleanup để đảm bảo dữ liệu đã được xóa
-            int cleanedUp = friendshipRepository.cleanupInvalidUserFriends(user.getId(), friendId);
-            System.out.println("Cleanup: Đã xóa thêm " + cleanedUp + " quan hệ không hợp lệ");
-            
-            // BƯỚC 5: Xóa từ danh sách bạn bè trong entities và lưu lại
-            // Refresh entities để đảm bảo chúng ta có dữ liệu mới nhất
-            entityManager.clear(); // Clear để đảm bảo lấy dữ liệu mới từ database
-            
-            User refreshedUser = findUserById(user.getId());
-            User refreshedFriend = findUserById(friendId);
-            
-            boolean removed1 = refreshedUser.getFriends().remove(refreshedFriend);
-            boolean removed2 = refreshedFriend.getFriends().remove(refreshedUser);
-            System.out.println("Xóa từ collection: User->Friend: " + removed1 + ", Friend->User: " + removed2);
-            
-            userRepository.save(refreshedUser);
-            userRepository.save(refreshedFriend);
-            userRepository.flush();
-            
-            System.out.println("===== HOÀN THÀNH XÓA BẠN BÈ =====");
-        } catch (Exception e) {
-            System.err.println("Lỗi khi xóa bạn bè: " + e.getMessage());
-            e.printStackTrace();
-            throw new UserException("Lỗi khi xóa bạn bè: " + e.getMessage());
-        }
+        timelineService.onFriendshipRemoved(userId, friendId);
+        invalidateFriendsOf(userId, friendId);
     }
 
     @Override
-    public List<FriendRequest> getPendingFriendRequests(User user) {
-        return friendRequestRepository.findByReceiverAndStatus(user, FriendRequest.Status.PENDING);
+    public List<FriendRequest> getPendingFriendRequests(Long userId) {
+        return friendRequestRepository.findByReceiverIdAndStatus(userId, FriendRequest.Status.PENDING);
     }
 
     @Override
-    @Cacheable(value = "friendships", key = "'friendship_' + #userId1 + '_' + #userId2")
     public boolean isFriend(Long userId1, Long userId2) throws UserException {
         // Nếu ID giống nhau, không thể là bạn bè
         if (userId1.equals(userId2)) {
             return false;
         }
-        
-        User user1 = findUserById(userId1);
-        User user2 = findUserById(userId2);
-        
-        // Kiểm tra xem user1 có trong danh sách bạn bè của user2 không (và ngược lại)
-        return user1.getFriends().contains(user2) && user2.getFriends().contains(user1);
+
+        // Đồ thị bạn bè trong bộ nhớ trả lời nhanh hơn cả cache; khi chưa nạp xong thì tự hỏi bảng friendships
+        return friendGraphService.areFriends(userId1, userId2);
     }
     
     @Override
-    @Cacheable(value = "friendrequests", key = "'pending_' + #userId1 + '_' + #userId2")
+    @Cacheable(value = "friendrequests", key = "'pending_' + #userId1 + '_' + #userId2", sync = true)
     public boolean hasPendingFriendRequest(Long userId1, Long userId2) throws UserException {
         // Nếu ID giống nhau, không thể có lời mời kết bạn
         if (userId1.equals(userId2)) {
             return false;
         }
         
-        User sender = findUserById(userId1);
-        User receiver = findUserById(userId2);
-        
         // Kiểm tra xem có lời mời kết bạn đang chờ xử lý từ userId1 đến userId2 không
-        FriendRequest request = friendRequestRepository.findBySenderAndReceiver(sender, receiver);
+        FriendRequest request = friendRequestRepository.findBySenderIdAndReceiverId(userId1, userId2);
+        cacheInvalidationService.track("friendrequests", "pending_" + userId1 + "_" + userId2,
+            CacheInvalidationService.pair(userId1, userId2));
         return request != null && request.getStatus() == FriendRequest.Status.PENDING;
     }
 
-    // Phương thức xóa bạn bè trực tiếp từ bảng user_friends
-    private void directRemoveFriendConnection(Long userId, Long friendId) {
-        try {
-            // Phương pháp 1: Sử dụng Native Query thông qua EntityManager
-            String nativeSQL = "DELETE FROM user_friends WHERE user_id = ? AND friend_id = ?";
-            int deleted1 = entityManager.createNativeQuery(nativeSQL)
-                .setParameter(1, userId)
-                .setParameter(2, friendId)
-                .executeUpdate();
-            
-            int deleted2 = entityManager.createNativeQuery(nativeSQL)
-                .setParameter(1, friendId)
-                .setParameter(2, userId)
-                .executeUpdate();
-            
-            System.out.println("EntityManager Native SQL: Đã xóa " + deleted1 + " + " + deleted2 + " = " + (deleted1 + deleted2) + " bản ghi");
-            
-            // Phương pháp 2: Sử dụng Native Query thông qua FriendshipRepository (phương thức có sẵn)
-            int deleted3 = friendshipRepository.deleteUserFriendsRelation(userId, friendId);
-            int deleted4 = friendshipRepository.deleteUserFriendsRelation(friendId, userId);
-            System.out.println("Repository Native SQL: Đã xóa " + deleted3 + " + " + deleted4 + " = " + (deleted3 + deleted4) + " bản ghi");
-            
-            // Phương pháp 3: Sử dụng phương thức tổng hợp trong repository
-            int deleted5 = friendshipRepository.forceDeleteUserFriendsRelation(userId, friendId);
-            System.out.println("Force Delete: Đã xóa " + deleted5 + " bản ghi");
-            
-            // Đảm bảo thay đổi được đẩy xuống database ngay lập tức
-            entityManager.flush();
-        } catch (Exception e) {
-            System.err.println("Lỗi khi xóa trực tiếp bạn bè: " + e.getMessage());
-            e.printStackTrace();
-        }
-    }
-
-    /**
-     * Phương thức để sửa lỗi quan hệ bạn bè không đồng bộ trong database
-     * - Nếu friendship status=ACCEPTED nhưng không có trong user_friends: thêm vào user_friends
-     * - Nếu có trong user_friends nhưng không có friendship hoặc status khác ACCEPTED: xóa khỏi user_friends
-     */
-    @Transactional
-    public void fixFriendshipConsistency(Long userId1, Long userId2) throws UserException {
-        User user1 = findUserById(userId1);
-        User user2 = findUserById(userId2);
-        
-        // Kiểm tra trạng thái trong bảng friendships
-        var friendship1 = friendshipRepository.findByUserAndFriend(user1, user2);
-        var friendship2 = friendshipRepository.findByUserAndFriend(user2, user1);
-        
-        boolean shouldBeFriends = 
-            (friendship1.isPresent() && friendship1.get().getStatus() == Friendship.FriendshipStatus.ACCEPTED) ||
-            (friendship2.isPresent() && friendship2.get().getStatus() == Friendship.FriendshipStatus.ACCEPTED);
-        
-        // Kiểm tra trạng thái trong bảng user_friends
-        int userFriendsCount = friendshipRepository.countUserFriendsRelation(userId1, userId2);
-        boolean areFriendsInTable = userFriendsCount > 0;
-        
-        if (shouldBeFriends && !areFriendsInTable) {
-            // Trường hợp 1: Nên là bạn bè nhưng không có trong bảng user_friends
-            // Thêm vào danh sách bạn bè của cả hai
-            user1.getFriends().add(user2);
-            user2.getFriends().add(user1);
-            
-            userRepository.save(user1);
-            userRepository.save(user2);
-            System.out.println("Đã thêm lại quan hệ bạn bè giữa " + userId1 + " và " + userId2);
-            
-        } else if (!shouldBeFriends && areFriendsInTable) {
-            // Trường hợp 2: Không nên là bạn bè nhưng vẫn còn trong bảng user_friends
-            // Xóa khỏi bảng user_friends
-            directRemoveFriendConnection(userId1, userId2);
-            System.out.println("Đã xóa quan hệ bạn bè không hợp lệ giữa " + userId1 + " và " + userId2);
-        }
+    // Hai người trở thành/thôi là bạn: hủy cache của cặp và danh sách bạn bè của hai bên
+    private void invalidateFriendsOf(Long userId, Long friendId) {
+        cacheInvalidationService.invalidate(CacheInvalidationService.pair(userId, friendId),
+            CacheInvalidationService.friends(userId), CacheInvalidationService.friends(friendId));
+        friendGraphService.onFriendshipChanged(userId, friendId);
+        friendSuggestionService.onRelationshipChanged(userId, friendId, true);
     }
 
     @Override
-    @Transactional
     public void updateOnlineStatus(Long userId, int isOnline) {
-        try {
-            User user = userRepository.findById(userId)
-                .orElseThrow(() -> new UserException("User not found with id " + userId));
-            user.setOnline(isOnline);
-            user.setLastSeen(LocalDateTime.now());
-            userRepository.save(user);
-        } catch (Exception e) {
-            System.err.println("Error updating online status: " + e.getMessage());
+        // Trạng thái nằm ở Redis; cột users.is_online/last_seen được PresenceService ghi theo lô
+        if (isOnline == 1) {
+            presenceService.touch(userId);
+        } else {
+            presenceService.markOffline(userId);
         }
     }
     
@@ -512,7 +424,7 @@ public class UserServiceImpl implements UserService {
         newUser.setFirstName(req.getFirstName());
         newUser.setLastName(req.getLastName());
         newUser.setEmail(req.getEmail());
-        newUser.setPassword(passwordEncoder.encode(req.getPassword()));
+        newUser.setPassword(passwordHashingService.hash(req.getPassword()));
         newUser.setAdmin(false); // Đảm bảo người dùng mới không phải admin
         
         if (req.getIsActive() != null) {
@@ -557,7 +469,6 @@ public class UserServiceImpl implements UserService {
     
     @Override
     @Transactional
-    @CacheEvict(value = "users", key = "#userId")
     public User updateUser(Long userId, UserRequest req) throws UserException {
         User user = findUserById(userId);
         
@@ -599,7 +510,7 @@ public class UserServiceImpl implements UserService {
         
         // Cập nhật mật khẩu nếu có
         if (req.getPassword() != null && !req.getPassword().isBlank()) {
-            user.setPassword(passwordEncoder.encode(req.getPassword()));
+            user.setPassword(passwordHashingService.hash(req.getPassword()));
         }
         
         // Lưu cập nhật
@@ -624,7 +535,6 @@ public class UserServiceImpl implements UserService {
     
     @Override
     @Transactional
-    @CacheEvict(value = "users", key = "#userId")
     public User lockUser(Long userId) throws UserException {
         User user = findUserById(userId);
         
@@ -650,7 +560,6 @@ public class UserServiceImpl implements UserService {
     
     @Override
     @Transactional
-    @CacheEvict(value = "users", key = "#userId")
     public User unlockUser(Long userId) throws UserException {
         User user = findUserById(userId);
         
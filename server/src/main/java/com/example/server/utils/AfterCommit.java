@@ -0,0 +1,41 @@
+package com.example.server.utils;
+
+import org.slf4j.Logger;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Chạy một tác vụ sau khi transaction hiện tại commit, hoặc chạy ngay nếu không có transaction.
+ * Dùng cho các bản sao dữ liệu ngoài DB (Redis, chỉ mục trong bộ nhớ, tệp media) để không phản ánh
+ * thay đổi của một transaction bị rollback.
+ */
+public final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    public static void run(Runnable task) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+        } else {
+            task.run();
+        }
+    }
+
+    // Như run, nhưng lỗi chỉ được ghi log với message (một tham số {} là thông báo lỗi):
+    // cho các bản sao có cơ chế tự sửa (TTL, dựng lại định kỳ) và không được làm hỏng request đã commit
+    public static void runSafely(Runnable task, Logger logger, String message) {
+        run(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                logger.warn(message, e.getMessage());
+            }
+        });
+    }
+}
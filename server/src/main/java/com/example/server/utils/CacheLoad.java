@@ -0,0 +1,63 @@
+package com.example.server.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Lượt tính một giá trị cache đang chạy trên luồng hiện tại (TwoTierCache gọi loader rồi ghi kết quả).
+ * Tác vụ đăng ký trong lúc tính chỉ chạy sau khi giá trị đã nằm trong cache, giống AfterCommit với transaction;
+ * ngoài lượt tính thì chạy ngay.
+ */
+public final class CacheLoad {
+
+    private static final ThreadLocal<CacheLoad> CURRENT = new ThreadLocal<>();
+
+    private final CacheLoad outer;
+    private final long startNanos = System.nanoTime();
+    private final List<LongConsumer> afterPut = new ArrayList<>();
+
+    private CacheLoad(CacheLoad outer) {
+        this.outer = outer;
+    }
+
+    // Mở lượt tính; luôn đóng bằng end() trong finally. Lượt lồng nhau (phương thức cache gọi phương thức cache khác) được hỗ trợ
+    public static CacheLoad begin() {
+        CacheLoad load = new CacheLoad(CURRENT.get());
+        CURRENT.set(load);
+        return load;
+    }
+
+    // Tham số của task: số ms từ lúc bắt đầu lượt tính tới lúc task chạy (0 khi chạy ngay ngoài lượt tính)
+    public static void afterPut(LongConsumer task) {
+        CacheLoad load = CURRENT.get();
+        if (load != null) {
+            load.afterPut.add(task);
+        } else {
+            task.accept(0);
+        }
+    }
+
+    // Giá trị đã được ghi vào cache: chạy các tác vụ đã đăng ký
+    public void putDone() {
+        List<LongConsumer> tasks = new ArrayList<>(afterPut);
+        afterPut.clear();
+        long elapsedMs = (System.nanoTime() - startNanos) / 1_000_000;
+        // Tác vụ chạy như ngoài lượt tính này (nhưng vẫn trong lượt bên ngoài nếu có)
+        CURRENT.set(outer);
+        try {
+            tasks.forEach(task -> task.accept(elapsedMs));
+        } finally {
+            CURRENT.set(this);
+        }
+    }
+
+    // Loader lỗi hoặc không ghi được cache thì các tác vụ bị bỏ: không có giá trị nào cần theo dõi
+    public void end() {
+        if (outer != null) {
+            CURRENT.set(outer);
+        } else {
+            CURRENT.remove();
+        }
+    }
+}
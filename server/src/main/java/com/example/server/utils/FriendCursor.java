@@ -0,0 +1,68 @@
+package com.example.server.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Locale;
+
+/**
+ * Con trỏ keyset cho danh sách bạn bè của một người: vị trí của người bạn cuối cùng đã trả về.
+ * NAME dùng (nameKey, friendId) tăng dần, RECENT dùng (since, friendId) giảm dần, ONLINE dùng thêm cờ online
+ * (người đang online trước, mỗi nhóm theo tên). Ra ngoài dưới dạng chuỗi base64url giống PostCursor.
+ */
+public record FriendCursor(boolean online, String nameKey, LocalDateTime since, Long friendId) {
+
+    public enum Sort {
+        NAME, RECENT, ONLINE;
+
+        public static Sort parse(String value) {
+            if (value == null || value.isBlank()) {
+                return NAME;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Kiểu sắp xếp không hợp lệ: " + value);
+            }
+        }
+    }
+
+    // Con trỏ của trang đầu tiên (client gửi ?after= rỗng): đứng trước mọi người bạn theo mọi kiểu sắp xếp
+    public static final FriendCursor FIRST = new FriendCursor(true, null, null, null);
+
+    public boolean isFirst() {
+        return FIRST.equals(this);
+    }
+
+    public String encode() {
+        String raw = (online ? "1" : "0") + "," + (since == null ? "" : since) + "," + (friendId == null ? "" : friendId)
+            + "," + (nameKey == null ? "" : nameKey);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static FriendCursor decode(String value) {
+        if (value == null || value.isBlank()) {
+            return FIRST;
+        }
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(value.trim()), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cursor không hợp lệ: " + value);
+        }
+        // Khóa tên chỉ gồm chữ, số và khoảng trắng nên nằm cuối và không chứa dấu phẩy
+        String[] parts = raw.split(",", 4);
+        if (parts.length != 4 || !(parts[0].equals("0") || parts[0].equals("1"))) {
+            throw new IllegalArgumentException("Cursor không hợp lệ: " + value);
+        }
+        try {
+            return new FriendCursor(parts[0].equals("1"),
+                parts[3].isEmpty() ? null : parts[3],
+                parts[1].isEmpty() ? null : LocalDateTime.parse(parts[1]),
+                parts[2].isEmpty() ? null : Long.parseLong(parts[2]));
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException("Cursor không hợp lệ: " + value);
+        }
+    }
+}
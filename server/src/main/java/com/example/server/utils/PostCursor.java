@@ -0,0 +1,54 @@
+package com.example.server.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+import com.example.server.models.Post;
+
+/**
+ * Con trỏ keyset cho phân trang bài viết theo (createdAt, id) giảm dần.
+ * Ra ngoài dưới dạng chuỗi base64url "không trong suốt"; khi nhận vào vẫn chấp nhận dạng thô "createdAt,id".
+ */
+public record PostCursor(LocalDateTime createdAt, Long id) {
+
+    // Con trỏ của trang đầu tiên (client gửi ?before= rỗng): đứng trước mọi bài viết
+    public static final PostCursor FIRST = new PostCursor(LocalDateTime.of(9999, 12, 31, 23, 59, 59), Long.MAX_VALUE);
+
+    public static PostCursor of(Post post) {
+        return new PostCursor(post.getCreatedAt(), post.getId());
+    }
+
+    public boolean isFirst() {
+        return FIRST.equals(this);
+    }
+
+    public String encode() {
+        String raw = createdAt + "," + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static PostCursor decode(String value) {
+        if (value == null || value.isBlank()) {
+            return FIRST;
+        }
+        String raw = value.trim();
+        if (raw.indexOf(',') < 0) {
+            try {
+                raw = new String(Base64.getUrlDecoder().decode(raw), StandardCharsets.UTF_8);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Cursor không hợp lệ: " + value);
+            }
+        }
+        int comma = raw.lastIndexOf(',');
+        if (comma <= 0 || comma == raw.length() - 1) {
+            throw new IllegalArgumentException("Cursor không hợp lệ: " + value);
+        }
+        try {
+            return new PostCursor(LocalDateTime.parse(raw.substring(0, comma)), Long.parseLong(raw.substring(comma + 1)));
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException("Cursor không hợp lệ: " + value);
+        }
+    }
+}
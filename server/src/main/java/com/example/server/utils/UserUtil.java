@@ -1,8 +1,15 @@
 package com.example.server.utils;
 
+import java.text.Normalizer;
+import java.util.Locale;
+
 import com.example.server.models.User;
 
 public class UserUtil {
+
+    // Độ dài tối đa của khóa tên (vừa index utf8mb4 của MySQL)
+    public static final int NAME_KEY_LENGTH = 191;
+
     public static final boolean isReqUser(User reqUser, User user2){
         return reqUser.getId().equals(user2.getId());
     }
@@ -11,4 +18,20 @@ public class UserUtil {
         return reqUser.getFollowing().contains(user2);
     }
 
+    // Khóa sắp xếp/tìm theo tên: "firstName lastName" chữ thường, bỏ dấu, chỉ còn chữ, số và một khoảng trắng
+    public static String nameKey(String firstName, String lastName) {
+        return normalizeName((firstName == null ? "" : firstName) + " " + (lastName == null ? "" : lastName));
+    }
+
+    public static String normalizeName(String name) {
+        if (name == null) {
+            return "";
+        }
+        String lower = name.toLowerCase(Locale.ROOT).replace('đ', 'd');
+        String key = Normalizer.normalize(lower, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .replaceAll("[^a-z0-9]+", " ")
+                .trim();
+        return key.length() > NAME_KEY_LENGTH ? key.substring(0, NAME_KEY_LENGTH) : key;
+    }
 }
@@ -0,0 +1,235 @@
+package com.example.server.config;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import com.example.server.dto.CommentDto;
+import com.example.server.dto.GroupMemberDto;
+import com.example.server.dto.SerializablePagedGroupMembersDto;
+import com.example.server.dto.UserDto;
+import com.example.server.dto.WorkExperienceDto;
+import com.example.server.models.Group;
+import com.example.server.models.User;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class CacheValueCodecTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private CacheValueCodec codec;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        codec = new CacheValueCodec(meterRegistry);
+    }
+
+    @Test
+    void roundTripsDtoWithNullAndNestedFields() {
+        UserDto user = user(1L, "An");
+        user.setLastSeen(LocalDateTime.of(2024, 3, 1, 10, 15, 30, 123_000_000));
+        user.setFriendIds(new ArrayList<>(List.of(2L, 3L, 5L)));
+        user.setFollowers(new ArrayList<>(List.of(user(2L, "Bình"), user(3L, "Chi"))));
+        WorkExperienceDto work = new WorkExperienceDto();
+        user.setWorkExperiences(new ArrayList<>(List.of(work)));
+        // Các trường còn null (bio, website, mutualFriendsCount...) phải giữ nguyên null
+        user.setBio(null);
+        user.setMutualFriendsCount(null);
+
+        Object decoded = codec.deserialize(codec.serialize(user));
+
+        assertEquals(user, decoded);
+        assertNull(((UserDto) decoded).getBio());
+    }
+
+    @Test
+    void roundTripsCommentTreeAndInnerClasses() {
+        CommentDto reply = comment(11L, "trả lời", null);
+        CommentDto comment = comment(10L, "bình luận gốc", new ArrayList<>(List.of(reply)));
+        comment.setMedia(new ArrayList<>(List.of(new CommentDto.MediaDto("IMAGE", "/videos/a.jpg"))));
+
+        assertEquals(comment, codec.deserialize(codec.serialize(comment)));
+    }
+
+    @Test
+    void roundTripsListsAndPages() {
+        GroupMemberDto member = new GroupMemberDto();
+        member.setUser(user(7L, "Dũng"));
+        member.setRole("ADMIN");
+        member.setJoinedAt(LocalDateTime.of(2023, 12, 31, 23, 59));
+        SerializablePagedGroupMembersDto page = new SerializablePagedGroupMembersDto(
+            new ArrayList<>(List.of(member, new GroupMemberDto())), 20, 0, 2, 1);
+
+        assertEquals(page, codec.deserialize(codec.serialize(page)));
+
+        List<UserDto> users = new ArrayList<>(List.of(user(1L, "An"), user(2L, "Bình")));
+        assertEquals(users, codec.deserialize(codec.serialize(users)));
+    }
+
+    @Test
+    void roundTripsValueTypesAndCollections() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("privacy", Group.Privacy.values()[0]);
+        map.put("date", LocalDate.of(2024, 2, 29));
+        map.put("ratio", 0.25d);
+        map.put("weight", 1.5f);
+        map.put("count", Integer.MIN_VALUE);
+        map.put("big", Long.MAX_VALUE);
+        map.put("flag", Boolean.FALSE);
+        map.put("ids", new LinkedHashSet<>(List.of(3L, 1L, 2L)));
+        map.put("nested", new ArrayList<>(List.of(new ArrayList<>(List.of("a", "b")), new ArrayList<>())));
+        map.put("missing", null);
+
+        Object decoded = codec.deserialize(codec.serialize(map));
+
+        assertEquals(map, decoded);
+        // Thứ tự của Set được giữ nguyên
+        assertEquals(List.of(3L, 1L, 2L), new ArrayList<>((Set<?>) ((Map<?, ?>) decoded).get("ids")));
+        assertNull(codec.deserialize(codec.serialize(null)));
+    }
+
+    @Test
+    void roundTripsStampedValue() {
+        StampedValue stamped = new StampedValue(user(1L, "An"), 1_700_000_000_000L, 42L);
+
+        Object decoded = codec.deserialize(codec.serialize(stamped));
+
+        assertEquals(stamped, decoded);
+    }
+
+    @Test
+    void fingerprintMismatchIsTreatedAsMiss() {
+        byte[] payload = codec.serialize(new CommentDto.MediaDto("VIDEO", "/videos/b.mp4"));
+        // Dấu vân tay 4 byte nằm ngay sau tên lớp: đổi một bit giống như DTO đã đổi trường sau khi deploy
+        byte[] name = CommentDto.MediaDto.class.getName().getBytes(StandardCharsets.UTF_8);
+        int fingerprintAt = indexOf(payload, name) + name.length;
+        payload[fingerprintAt] ^= 1;
+
+        assertThrows(SerializationException.class, () -> codec.decode(payload));
+        assertNull(codec.deserialize(payload));
+        assertEquals(1.0, meterRegistry.counter("cache.codec.unreadable").count());
+    }
+
+    @Test
+    void unknownFormatAndTruncatedPayloadsAreMisses() {
+        byte[] payload = codec.serialize(user(1L, "An"));
+
+        byte[] otherVersion = payload.clone();
+        otherVersion[1]++;
+        assertNull(codec.deserialize(otherVersion));
+
+        byte[] truncated = Arrays.copyOf(payload, payload.length - 3);
+        assertNull(codec.deserialize(truncated));
+
+        // Mục cũ ghi bằng JDK serialization bắt đầu bằng 0xACED
+        assertNull(codec.deserialize(new byte[] { (byte) 0xAC, (byte) 0xED, 0, 5 }));
+    }
+
+    @Test
+    void rejectsClassesOutsideAllowListWhenEncoding() {
+        assertThrows(SerializationException.class, () -> codec.serialize(new User()));
+        assertThrows(SerializationException.class, () -> codec.serialize(new StringBuilder("x")));
+        assertThrows(SerializationException.class, () -> codec.serialize(List.of(new NotADto())));
+    }
+
+    @Test
+    void rejectsClassesOutsideAllowListWhenDecoding() {
+        // Payload tự dựng yêu cầu khởi tạo java.util.ArrayList như một DTO: không được nạp lớp đó
+        byte[] payload = objectPayload("java.util.ArrayList");
+        SerializationException error = assertThrows(SerializationException.class, () -> codec.decode(payload));
+        assertTrue(error.getMessage().contains("java.util.ArrayList"));
+        assertNull(codec.deserialize(payload));
+
+        // Entity JPA nằm ngoài gói dto cũng bị từ chối
+        assertNull(codec.deserialize(objectPayload(User.class.getName())));
+    }
+
+    @Test
+    void repeatedClassesAreWrittenOnce() {
+        List<UserDto> one = List.of(user(1L, "An"));
+        List<UserDto> two = List.of(user(1L, "An"), user(1L, "An"));
+
+        byte[] single = codec.serialize(new ArrayList<>(one));
+        byte[] repeated = codec.serialize(new ArrayList<>(two));
+        byte[] name = UserDto.class.getName().getBytes(StandardCharsets.UTF_8);
+
+        int first = indexOf(repeated, name);
+        assertTrue(first >= 0);
+        assertEquals(-1, indexOf(Arrays.copyOfRange(repeated, first + name.length, repeated.length), name));
+        assertTrue(repeated.length - single.length < single.length);
+        assertArrayEquals(single, codec.serialize(new ArrayList<>(one)));
+    }
+
+    private static UserDto user(Long id, String firstName) {
+        UserDto user = new UserDto();
+        user.setId(id);
+        user.setFirstName(firstName);
+        user.setLastName("Nguyễn");
+        user.setEmail("user" + id + "@example.com");
+        user.setIsOnline(1);
+        user.setFollowed(true);
+        return user;
+    }
+
+    private static CommentDto comment(Long id, String content, List<CommentDto> replies) {
+        CommentDto comment = new CommentDto();
+        comment.setId(id);
+        comment.setContent(content);
+        comment.setUser(user(1L, "An"));
+        comment.setCreatedAt(LocalDateTime.of(2024, 1, 1, 8, 0));
+        comment.setTotalLikes(3);
+        comment.setReplyCount(replies == null ? 0 : replies.size());
+        comment.setReplies(replies);
+        return comment;
+    }
+
+    // MAGIC, phiên bản, OBJECT, lớp mới (id 0), tên lớp, dấu vân tay
+    private byte[] objectPayload(String className) {
+        byte[] valid = codec.serialize(new CommentDto.MediaDto());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(valid[0]);
+        out.write(valid[1]);
+        out.write(14);
+        out.write(0);
+        byte[] name = className.getBytes(StandardCharsets.UTF_8);
+        out.write(name.length << 1);
+        out.writeBytes(name);
+        out.writeBytes(new byte[4]);
+        return out.toByteArray();
+    }
+
+    private static int indexOf(byte[] haystack, byte[] needle) {
+        outer:
+        for (int i = 0; i + needle.length <= haystack.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (haystack[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static final class NotADto {
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.server.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Date;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+
+class JwtProviderTest {
+
+    private JwtProvider jwtProvider;
+
+    @BeforeEach
+    void setUp() {
+        jwtProvider = new JwtProvider();
+        ReflectionTestUtils.setField(jwtProvider, "verifiedCacheTtlMs", 60000L);
+        ReflectionTestUtils.setField(jwtProvider, "verifiedCacheMaxSize", 100);
+    }
+
+    @Test
+    void verifiedTokenIsServedFromCache() {
+        String token = token("a@example.com", 42L, System.currentTimeMillis() + 60000);
+
+        Claims first = jwtProvider.parseClaims(token);
+        assertSame(first, jwtProvider.parseClaims(token));
+        assertEquals("a@example.com", jwtProvider.getEmailFromToken(token));
+        assertEquals(42L, jwtProvider.getUserIdFromToken(token));
+    }
+
+    @Test
+    void tamperedTokenIsRejected() {
+        String token = token("a@example.com", 42L, System.currentTimeMillis() + 60000);
+        String forged = token("admin@example.com", 1L, System.currentTimeMillis() + 60000);
+        // Phần thân của token khác, chữ ký của token đầu
+        String tampered = forged.substring(0, forged.lastIndexOf('.')) + token.substring(token.lastIndexOf('.'));
+
+        jwtProvider.parseClaims(token);
+        assertThrows(JwtException.class, () -> jwtProvider.parseClaims(tampered));
+        assertFalse(jwtProvider.validateToken(tampered));
+    }
+
+    @Test
+    void cacheEntryDoesNotOutliveTokenExpiry() throws InterruptedException {
+        // exp tính theo giây: token hết hạn trong vòng một giây, sớm hơn nhiều so với TTL 60 giây của cache
+        long expiresAt = (System.currentTimeMillis() / 1000 + 1) * 1000;
+        String token = token("a@example.com", 42L, expiresAt);
+        assertTrue(jwtProvider.validateToken(token));
+
+        Thread.sleep(Math.max(0, expiresAt - System.currentTimeMillis()) + 50);
+
+        assertThrows(ExpiredJwtException.class, () -> jwtProvider.parseClaims(token));
+    }
+
+    private static String token(String email, Long userId, long expiresAt) {
+        return Jwts.builder()
+                .setSubject(email)
+                .claim(JwtProvider.CLAIM_USER_ID, userId)
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(expiresAt))
+                .signWith(JwtProvider.SECRET_KEY, SignatureAlgorithm.HS256)
+                .compact();
+    }
+}
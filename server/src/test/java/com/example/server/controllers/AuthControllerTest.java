@@ -0,0 +1,61 @@
+package com.example.server.controllers;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.example.server.exception.PasswordHashingBusyException;
+import com.example.server.repositories.UserRepository;
+import com.example.server.services.PasswordHashingService;
+
+@ExtendWith(MockitoExtension.class)
+class AuthControllerTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private PasswordHashingService passwordHashingService;
+
+    @InjectMocks
+    private AuthController authController;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(authController, "adminEmail", "admin123@admin.com");
+        mockMvc = MockMvcBuilders.standaloneSetup(authController).build();
+    }
+
+    @Test
+    void busyHashingPoolReturns429WithRetryAfter() throws Exception {
+        when(passwordHashingService.hash(anyString()))
+            .thenThrow(new PasswordHashingBusyException("Hệ thống đang bận, vui lòng thử lại sau."));
+
+        mockMvc.perform(post("/api/auth/signup")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                    {"email":"a@example.com","password":"secret1","firstName":"A","lastName":"B",
+                     "birthDate":"2000-01-01","gender":"male"}
+                    """))
+            .andExpect(status().isTooManyRequests())
+            .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"))
+            .andExpect(jsonPath("$.status").value(false));
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.server.controllers;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.example.server.repositories.MediaBlobRepository;
+
+class FileControllerTest {
+
+    private static final String BODY = "0123456789abcdefghij";
+
+    // Tên theo SHA-256 nội dung như blob trong kho media
+    private static final String HASH = "a".repeat(64);
+
+    @TempDir
+    Path storage;
+
+    private MediaBlobRepository mediaBlobRepository;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        FileController controller = new FileController();
+        mediaBlobRepository = mock(MediaBlobRepository.class);
+        ReflectionTestUtils.setField(controller, "videoStoragePath", storage.toString());
+        ReflectionTestUtils.setField(controller, "mediaBlobRepository", mediaBlobRepository);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+
+        Path shard = storage.resolve("aa").resolve("aa");
+        Files.createDirectories(shard);
+        Files.writeString(shard.resolve(HASH + ".mp4"), BODY, StandardCharsets.UTF_8);
+        Files.writeString(shard.resolve(HASH), BODY, StandardCharsets.UTF_8);
+        Files.writeString(storage.resolve("clip.mp4"), BODY, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void rangeRequestOnPublicUrlReturnsPartialContent() throws Exception {
+        // URL do LocalBlobStore.publicUrl sinh ra
+        mockMvc.perform(get("/videos/aa/aa/" + HASH + ".mp4").header(HttpHeaders.RANGE, "bytes=2-5"))
+            .andExpect(status().isPartialContent())
+            .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/20"))
+            .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+            .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 4))
+            .andExpect(content().string("2345"));
+    }
+
+    @Test
+    void hashOnlyBlobUsesStoredContentType() throws Exception {
+        String storageKey = "aa/aa/" + HASH;
+        when(mediaBlobRepository.findContentTypeByStorageKey(storageKey)).thenReturn(Optional.of("video/webm"));
+
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(get("/videos/" + storageKey))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "video/webm"))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "public, max-age=31536000, immutable"))
+                .andExpect(content().string(BODY));
+        }
+        // Nội dung theo hash không đổi: chỉ tra database một lần
+        verify(mediaBlobRepository, times(1)).findContentTypeByStorageKey(storageKey);
+    }
+
+    @Test
+    void suffixRangeReturnsTail() throws Exception {
+        mockMvc.perform(get("/api/videos/clip.mp4").header(HttpHeaders.RANGE, "bytes=-3"))
+            .andExpect(status().isPartialContent())
+            .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 17-19/20"))
+            .andExpect(content().string("hij"));
+    }
+
+    @Test
+    void unsatisfiableRangeReturns416() throws Exception {
+        mockMvc.perform(get("/videos/clip.mp4").header(HttpHeaders.RANGE, "bytes=50-60"))
+            .andExpect(status().isRequestedRangeNotSatisfiable())
+            .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */20"));
+    }
+
+    @Test
+    void staleIfRangeIgnoresRange() throws Exception {
+        mockMvc.perform(get("/videos/aa/aa/" + HASH + ".mp4")
+                .header(HttpHeaders.RANGE, "bytes=2-5")
+                .header(HttpHeaders.IF_RANGE, "\"other\""))
+            .andExpect(status().isOk())
+            .andExpect(content().string(BODY));
+    }
+
+    @Test
+    void matchingETagReturnsNotModified() throws Exception {
+        String etag = "\"" + HASH + ".mp4\"";
+        mockMvc.perform(get("/videos/aa/aa/" + HASH + ".mp4").header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified())
+            .andExpect(header().string(HttpHeaders.ETAG, etag))
+            .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "public, max-age=31536000, immutable"));
+    }
+
+    @Test
+    void pathTraversalIsNotFound() throws Exception {
+        mockMvc.perform(get("/videos/..%2Fsecret.mp4"))
+            .andExpect(status().isNotFound());
+    }
+}
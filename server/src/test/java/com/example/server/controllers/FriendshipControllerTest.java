@@ -0,0 +1,99 @@
+package com.example.server.controllers;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.MethodParameter;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+import com.example.server.config.AuthPrincipal;
+import com.example.server.services.FriendshipService;
+import com.example.server.utils.FriendCursor;
+
+@ExtendWith(MockitoExtension.class)
+class FriendshipControllerTest {
+
+    @Mock
+    private FriendshipService friendshipService;
+
+    @InjectMocks
+    private FriendshipController friendshipController;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.standaloneSetup(friendshipController)
+            .setCustomArgumentResolvers(new SignedIn(new AuthPrincipal(1L, "a@example.com", false)))
+            .build();
+    }
+
+    @Test
+    void friendPageSizeIsClamped() throws Exception {
+        mockMvc.perform(get("/api/friendship/friends/page").param("after", "").param("size", "1000"))
+            .andExpect(status().isOk());
+        verify(friendshipService).getFriends(1L, FriendCursor.Sort.NAME, null, FriendCursor.FIRST, 100);
+
+        FriendCursor after = new FriendCursor(false, null, LocalDateTime.of(2024, 5, 1, 12, 0), 9L);
+        mockMvc.perform(get("/api/friendship/user/5/friends/page")
+                .param("sort", "recent").param("q", "ng").param("after", after.encode()).param("size", "0"))
+            .andExpect(status().isOk());
+        verify(friendshipService).getFriends(5L, FriendCursor.Sort.RECENT, "ng", after, 1);
+    }
+
+    @Test
+    void malformedCursorOrSortIsBadRequest() throws Exception {
+        mockMvc.perform(get("/api/friendship/friends/page").param("after", "not base64!"))
+            .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/friendship/friends/page").param("sort", "oldest"))
+            .andExpect(status().isBadRequest());
+        verify(friendshipService, never()).getFriends(anyLong(), any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void bulkStatusIsCappedPerRequest() throws Exception {
+        String ids = LongStream.rangeClosed(1, 301).mapToObj(Long::toString).collect(Collectors.joining(","));
+        mockMvc.perform(get("/api/friendship/status").param("userIds", ids))
+            .andExpect(status().isBadRequest());
+        verify(friendshipService, never()).getRelationshipStatuses(anyLong(), any());
+
+        mockMvc.perform(get("/api/friendship/status").param("userIds", "3,2"))
+            .andExpect(status().isOk());
+        verify(friendshipService).getRelationshipStatuses(1L, List.of(3L, 2L));
+    }
+
+    // Thay cho AuthPrincipalArgumentResolver: request nào cũng là người dùng đã đăng nhập principal
+    private record SignedIn(AuthPrincipal principal) implements HandlerMethodArgumentResolver {
+        @Override
+        public boolean supportsParameter(MethodParameter parameter) {
+            return AuthPrincipal.class.equals(parameter.getParameterType());
+        }
+
+        @Override
+        public Object resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+                                      NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+            return principal;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.server.controllers;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.example.server.services.PostService;
+import com.example.server.utils.PostCursor;
+
+@ExtendWith(MockitoExtension.class)
+class PostControllerTest {
+
+    @Mock
+    private PostService postService;
+
+    @InjectMocks
+    private PostController postController;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.standaloneSetup(postController).build();
+    }
+
+    @Test
+    void cursorPageSizeIsClamped() throws Exception {
+        mockMvc.perform(get("/api/posts").param("before", "").param("size", "1000"))
+            .andExpect(status().isOk());
+        verify(postService).getAllPosts(isNull(), eq(PostCursor.FIRST), eq(100));
+
+        mockMvc.perform(get("/api/posts").param("before", "").param("size", "0"))
+            .andExpect(status().isOk());
+        verify(postService).getAllPosts(isNull(), eq(PostCursor.FIRST), eq(1));
+    }
+
+    @Test
+    void offsetPageAndSizeAreClamped() throws Exception {
+        mockMvc.perform(get("/api/posts").param("page", "-3").param("size", "-5"))
+            .andExpect(status().isOk());
+        verify(postService).getAllPosts(isNull(), eq(PageRequest.of(0, 1)));
+    }
+
+    @Test
+    void malformedCursorIsBadRequest() throws Exception {
+        mockMvc.perform(get("/api/posts").param("before", "not base64!"))
+            .andExpect(status().isBadRequest());
+        verify(postService, never()).getAllPosts(any(), any(PostCursor.class), anyInt());
+    }
+}
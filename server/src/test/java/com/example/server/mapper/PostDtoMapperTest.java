@@ -0,0 +1,181 @@
+package com.example.server.mapper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import com.example.server.dto.PostDto;
+import com.example.server.models.Comment;
+import com.example.server.models.Like;
+import com.example.server.models.Post;
+import com.example.server.models.PostMedia;
+import com.example.server.models.User;
+import com.example.server.repositories.PostRepository;
+import com.example.server.services.FriendGraphService;
+import com.example.server.services.PresenceService;
+import com.example.server.services.impl.InteractionLookupServiceImpl;
+
+import jakarta.persistence.EntityManagerFactory;
+
+@DataJpaTest(properties = {
+    "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.properties.hibernate.generate_statistics=true",
+    "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@ContextConfiguration(classes = PostDtoMapperTest.Config.class)
+class PostDtoMapperTest {
+
+    // Số câu lệnh tối đa cho một trang: tác giả, media, người repost, "đã like" (số đếm nằm sẵn trên bảng posts)
+    private static final long MAX_STATEMENTS_PER_PAGE = 4;
+
+    // Không gắn @Configuration: @ComponentScan tường minh của ServerApplication quét cả gói mapper (kể cả lớp test)
+    // và sẽ đăng ký lại các repository trong context đầy đủ; lớp này chỉ được nạp qua @ContextConfiguration
+    @EntityScan(basePackages = "com.example.server.models")
+    @EnableJpaRepositories(basePackages = "com.example.server.repositories")
+    @Import({ PostDtoMapper.class, UserDtoMapper.class, CommentDtoMapper.class, InteractionLookupServiceImpl.class })
+    static class Config {
+    }
+
+    // Trạng thái online nằm ở Redis, không thuộc phạm vi đếm câu lệnh SQL
+    @MockitoBean
+    private PresenceService presenceService;
+
+    @MockitoBean
+    private FriendGraphService friendGraphService;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private PostDtoMapper postDtoMapper;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void statementCountPerPageDoesNotGrowWithPageSize() {
+        User reader = persistUser("Reader");
+        seedPosts(5, reader);
+        long smallPage = countStatementsForPage(reader);
+
+        seedPosts(20, reader);
+        long largePage = countStatementsForPage(reader);
+
+        assertTrue(smallPage <= MAX_STATEMENTS_PER_PAGE, "Trang 5 bài dùng " + smallPage + " câu lệnh");
+        assertEquals(smallPage, largePage, "Số câu lệnh phải cố định, không phụ thuộc số bài trong trang");
+    }
+
+    @Test
+    void batchMappingKeepsInteractionData() {
+        User reader = persistUser("Reader");
+        seedPosts(3, reader);
+        entityManager.flush();
+        entityManager.clear();
+
+        User reqUser = entityManager.find(User.class, reader.getId());
+        List<PostDto> postDtos = postDtoMapper.toPostDtos(postRepository.findAll(Sort.by("id")), reqUser);
+
+        assertEquals(3, postDtos.size());
+        for (PostDto postDto : postDtos) {
+            assertEquals(2, postDto.getTotalLikes());
+            assertTrue(postDto.isLiked());
+            assertEquals(1, postDto.getTotalComments());
+            assertEquals(1, postDto.getTotalReposts());
+            assertFalse(postDto.isReposted());
+            assertEquals(2, postDto.getMedia().size());
+            assertTrue(postDto.getUser().getFirstName().startsWith("Author"));
+        }
+    }
+
+    private long countStatementsForPage(User reader) {
+        entityManager.flush();
+        entityManager.clear();
+
+        User reqUser = entityManager.find(User.class, reader.getId());
+        List<Post> page = postRepository.findAll(Sort.by(Sort.Direction.DESC, "id"));
+
+        statistics.clear();
+        List<PostDto> postDtos = postDtoMapper.toPostDtos(page, reqUser);
+        long statements = statistics.getPrepareStatementCount();
+
+        assertEquals(page.size(), postDtos.size());
+        return statements;
+    }
+
+    private void seedPosts(int count, User reader) {
+        for (int i = 0; i < count; i++) {
+            User author = persistUser("Author" + i);
+            User reposter = persistUser("Reposter" + i);
+
+            Post post = new Post();
+            post.setUser(author);
+            post.setContent("Bài viết " + i);
+            post.setPrivacy(Post.Privacy.PUBLIC);
+            post.setIsActive(false);
+            post.setRepostUsers(new ArrayList<>(List.of(reposter)));
+            post.setLikeCount(2);
+            post.setCommentCount(1);
+            post.setRepostCount(1);
+            entityManager.persist(post);
+
+            for (int m = 0; m < 2; m++) {
+                PostMedia media = new PostMedia();
+                media.setPost(post);
+                media.setMediaType(PostMedia.MediaType.IMAGE);
+                media.setMediaUrl("/uploads/" + i + "-" + m + ".jpg");
+                entityManager.persist(media);
+            }
+
+            persistLike(post, reader);
+            persistLike(post, author);
+
+            Comment comment = new Comment();
+            comment.setPost(post);
+            comment.setUser(reposter);
+            comment.setContent("Bình luận " + i);
+            entityManager.persist(comment);
+        }
+    }
+
+    private void persistLike(Post post, User user) {
+        Like like = new Like();
+        like.setPost(post);
+        like.setUser(user);
+        entityManager.persist(like);
+    }
+
+    private User persistUser(String firstName) {
+        User user = new User();
+        user.setFirstName(firstName);
+        user.setLastName("Test");
+        user.setEmail(firstName.toLowerCase() + "@example.com");
+        return entityManager.persist(user);
+    }
+}
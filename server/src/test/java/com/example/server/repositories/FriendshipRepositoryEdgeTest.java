@@ -0,0 +1,118 @@
+package com.example.server.repositories;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.ContextConfiguration;
+
+import com.example.server.models.Friendship;
+import com.example.server.models.User;
+
+// upsertEdgePair là câu lệnh MySQL (ON DUPLICATE KEY UPDATE): chạy H2 ở chế độ MySQL thay cho cơ sở dữ liệu nhúng mặc định
+@DataJpaTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:friendship-edges;MODE=MySQL;DB_CLOSE_DELAY=-1",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.datasource.password=",
+    "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ContextConfiguration(classes = FriendshipRepositoryEdgeTest.Config.class)
+class FriendshipRepositoryEdgeTest {
+
+    // Không gắn @Configuration, cùng lý do với PostDtoMapperTest.Config
+    @EntityScan(basePackages = "com.example.server.models")
+    @EnableJpaRepositories(basePackages = "com.example.server.repositories")
+    static class Config {
+    }
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private FriendshipRepository friendshipRepository;
+
+    private User alice;
+    private User bob;
+
+    @BeforeEach
+    void setUp() {
+        alice = persistUser("Alice");
+        bob = persistUser("Bob");
+    }
+
+    @Test
+    void upsertWritesBothDirectionsAndUpdatesInPlace() {
+        friendshipRepository.upsertEdgePair(alice.getId(), bob.getId(), "PENDING", "alice", "bob");
+        List<Friendship> pending = pairRows();
+        assertEquals(2, pending.size());
+
+        // Chấp nhận: cùng hai dòng được cập nhật, không sinh dòng trùng
+        friendshipRepository.upsertEdgePair(bob.getId(), alice.getId(), "ACCEPTED", "bob", "alice");
+        List<Friendship> accepted = pairRows();
+        assertEquals(ids(pending), ids(accepted));
+        accepted.forEach(row -> assertEquals(Friendship.FriendshipStatus.ACCEPTED, row.getStatus()));
+        // friend_name_key của mỗi dòng là tên của người ở đầu kia
+        assertEquals("bob", row(alice, bob).getFriendNameKey());
+        assertEquals("alice", row(bob, alice).getFriendNameKey());
+        assertEquals(List.of(bob.getId()), friendshipRepository.findFriendIdsByUserId(alice.getId()));
+        assertEquals(List.of(alice.getId()), friendshipRepository.findFriendIdsByUserId(bob.getId()));
+    }
+
+    @Test
+    void deleteRemovesAcceptedPairButKeepsBlockedRow() {
+        friendshipRepository.upsertEdgePair(alice.getId(), bob.getId(), "ACCEPTED", "alice", "bob");
+        assertEquals(2, friendshipRepository.deleteAcceptedEdgePair(bob.getId(), alice.getId()));
+        assertEquals(List.of(), pairRows());
+
+        // Chiều bị chặn không phải ACCEPTED: lệnh xóa chỉ gỡ chiều còn lại
+        friendshipRepository.upsertEdgePair(alice.getId(), bob.getId(), "ACCEPTED", "alice", "bob");
+        entityManager.clear();
+        Friendship blocked = row(alice, bob);
+        blocked.setStatus(Friendship.FriendshipStatus.BLOCKED);
+        entityManager.merge(blocked);
+        entityManager.flush();
+
+        assertEquals(1, friendshipRepository.deleteAcceptedEdgePair(alice.getId(), bob.getId()));
+        List<Friendship> remaining = pairRows();
+        assertEquals(1, remaining.size());
+        assertEquals(Friendship.FriendshipStatus.BLOCKED, remaining.get(0).getStatus());
+        assertEquals(List.of(alice.getId()), friendshipRepository.findBlockerIdsByUserId(bob.getId()));
+    }
+
+    private List<Friendship> pairRows() {
+        entityManager.clear();
+        return friendshipRepository.findPairRows(alice.getId(), bob.getId());
+    }
+
+    private Friendship row(User user, User friend) {
+        return pairRows().stream()
+            .filter(row -> row.getUser().getId().equals(user.getId()) && row.getFriend().getId().equals(friend.getId()))
+            .findFirst().orElseThrow();
+    }
+
+    private static List<Long> ids(List<Friendship> rows) {
+        return rows.stream().map(Friendship::getId).sorted().collect(Collectors.toList());
+    }
+
+    private User persistUser(String firstName) {
+        User user = new User();
+        user.setFirstName(firstName);
+        user.setLastName("Test");
+        user.setEmail(firstName.toLowerCase() + "@example.com");
+        User saved = entityManager.persist(user);
+        entityManager.flush();
+        return saved;
+    }
+}
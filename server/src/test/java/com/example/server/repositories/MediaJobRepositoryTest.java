@@ -0,0 +1,93 @@
+package com.example.server.repositories;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.ContextConfiguration;
+
+import com.example.server.models.MediaJob;
+
+@DataJpaTest(properties = {
+    "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@ContextConfiguration(classes = MediaJobRepositoryTest.Config.class)
+class MediaJobRepositoryTest {
+
+    // Không gắn @Configuration, cùng lý do với PostDtoMapperTest.Config
+    @EntityScan(basePackages = "com.example.server.models")
+    @EnableJpaRepositories(basePackages = "com.example.server.repositories")
+    static class Config {
+    }
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private MediaJobRepository mediaJobRepository;
+
+    @Test
+    void readyJobIsClaimedOnlyOnce() {
+        // Cột DATETIME không giữ nano giây: so sánh theo giây
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        MediaJob ready = persistJob(MediaJob.Status.PENDING, now.minusSeconds(1), null);
+        // Đang chờ backoff sau lần thử thất bại
+        persistJob(MediaJob.Status.PENDING, now.plusMinutes(4), null);
+        persistJob(MediaJob.Status.RUNNING, now.minusMinutes(1), now.minusMinutes(1));
+
+        assertEquals(List.of(ready.getId()),
+            mediaJobRepository.findReadyJobIds(MediaJob.Status.PENDING, now, PageRequest.of(0, 10)));
+
+        assertEquals(1, mediaJobRepository.claim(ready.getId(), MediaJob.Status.PENDING, MediaJob.Status.RUNNING, now));
+        // Instance thứ hai thấy dòng đã RUNNING: không nhận được
+        assertEquals(0, mediaJobRepository.claim(ready.getId(), MediaJob.Status.PENDING, MediaJob.Status.RUNNING, now));
+
+        MediaJob claimed = reload(ready);
+        assertEquals(MediaJob.Status.RUNNING, claimed.getStatus());
+        assertEquals(1, claimed.getAttempts());
+        assertEquals(now, claimed.getStartedAt());
+    }
+
+    @Test
+    void onlyStaleRunningJobsAreRequeued() {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        MediaJob stale = persistJob(MediaJob.Status.RUNNING, now.minusHours(2), now.minusHours(2));
+        MediaJob running = persistJob(MediaJob.Status.RUNNING, now.minusMinutes(5), now.minusMinutes(5));
+        MediaJob failed = persistJob(MediaJob.Status.FAILED, now.minusHours(2), now.minusHours(2));
+
+        assertEquals(1, mediaJobRepository.requeueStale(MediaJob.Status.PENDING, MediaJob.Status.RUNNING, now, now.minusMinutes(90)));
+
+        assertEquals(MediaJob.Status.PENDING, reload(stale).getStatus());
+        assertEquals(now, reload(stale).getAvailableAt());
+        assertEquals(MediaJob.Status.RUNNING, reload(running).getStatus());
+        assertEquals(MediaJob.Status.FAILED, reload(failed).getStatus());
+    }
+
+    private MediaJob persistJob(MediaJob.Status status, LocalDateTime availableAt, LocalDateTime startedAt) {
+        MediaJob job = new MediaJob();
+        job.setMediaId(1L);
+        job.setStorageKey("ab/cd/abcd");
+        job.setStatus(status);
+        job.setAvailableAt(availableAt);
+        job.setStartedAt(startedAt);
+        entityManager.persist(job);
+        entityManager.flush();
+        return job;
+    }
+
+    // Câu UPDATE hàng loạt không đi qua persistence context
+    private MediaJob reload(MediaJob job) {
+        entityManager.clear();
+        return entityManager.find(MediaJob.class, job.getId());
+    }
+}
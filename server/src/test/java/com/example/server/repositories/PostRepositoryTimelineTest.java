@@ -0,0 +1,159 @@
+package com.example.server.repositories;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.ContextConfiguration;
+
+import com.example.server.models.Friendship;
+import com.example.server.models.Group;
+import com.example.server.models.GroupMember;
+import com.example.server.models.Post;
+import com.example.server.models.User;
+import com.example.server.repositories.PostRepository.TimelineEntry;
+
+@DataJpaTest(properties = {
+    "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@ContextConfiguration(classes = PostRepositoryTimelineTest.Config.class)
+class PostRepositoryTimelineTest {
+
+    // Không gắn @Configuration, cùng lý do với PostDtoMapperTest.Config
+    @EntityScan(basePackages = "com.example.server.models")
+    @EnableJpaRepositories(basePackages = "com.example.server.repositories")
+    static class Config {
+    }
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    private User reader;
+    private User friend;
+    private User stranger;
+    private Group joinedGroup;
+    private Group otherGroup;
+
+    @BeforeEach
+    void setUp() {
+        reader = persistUser("Reader");
+        friend = persistUser("Friend");
+        stranger = persistUser("Stranger");
+        persistFriendship(reader, friend);
+        persistFriendship(friend, reader);
+        joinedGroup = persistGroup("Joined", reader, friend);
+        otherGroup = persistGroup("Other", friend, stranger);
+    }
+
+    @Test
+    void homeEntriesMatchFeedPredicateWithoutSharedPublicPosts() {
+        Post friendsPost = persistPost(friend, Post.Privacy.FRIENDS, null);
+        // Bài FRIENDS của bạn bè trong nhóm người đọc không tham gia: truy vấn feed gốc vẫn trả về
+        Post friendsPostInOtherGroup = persistPost(friend, Post.Privacy.FRIENDS, otherGroup);
+        Post friendsPostInJoinedGroup = persistPost(friend, Post.Privacy.FRIENDS, joinedGroup);
+        Post ownPrivatePost = persistPost(reader, Post.Privacy.ONLY_ME, null);
+        Post strangerPostInJoinedGroup = persistPost(stranger, Post.Privacy.ONLY_ME, joinedGroup);
+        Post publicPost = persistPost(stranger, Post.Privacy.PUBLIC, null);
+        persistPost(friend, Post.Privacy.ONLY_ME, null);
+        persistPost(stranger, Post.Privacy.FRIENDS, null);
+        persistPost(stranger, Post.Privacy.PUBLIC, otherGroup);
+        Post deleted = persistPost(reader, Post.Privacy.FRIENDS, null);
+        deleted.setIsActive(true);
+        entityManager.flush();
+
+        Set<Long> home = ids(postRepository.findHomeTimelineEntries(reader.getId(), PageRequest.of(0, 100)));
+        Set<Long> feed = postRepository.findFeedBefore(reader.getId(), LocalDateTime.now().plusDays(1), Long.MAX_VALUE, PageRequest.of(0, 100))
+            .stream().map(Post::getId).collect(Collectors.toSet());
+
+        assertEquals(Set.of(friendsPost.getId(), friendsPostInOtherGroup.getId(), friendsPostInJoinedGroup.getId(),
+            ownPrivatePost.getId(), strangerPostInJoinedGroup.getId()), home);
+        // Home timeline + timeline công khai dùng chung phải đúng bằng feed
+        home.add(publicPost.getId());
+        assertEquals(feed, home);
+        assertEquals(Set.of(publicPost.getId()), ids(postRepository.findPublicTimelineEntries(PageRequest.of(0, 100))));
+    }
+
+    @Test
+    void friendAndGroupEntriesSkipPostsVisibleThroughTheOtherRelation() {
+        Post friendsPost = persistPost(friend, Post.Privacy.FRIENDS, null);
+        Post friendsPostInOtherGroup = persistPost(friend, Post.Privacy.FRIENDS, otherGroup);
+        Post friendsPostInJoinedGroup = persistPost(friend, Post.Privacy.FRIENDS, joinedGroup);
+        Post friendPublicPostInJoinedGroup = persistPost(friend, Post.Privacy.PUBLIC, joinedGroup);
+        Post ownPostInJoinedGroup = persistPost(reader, Post.Privacy.PUBLIC, joinedGroup);
+        Post strangerPostInJoinedGroup = persistPost(stranger, Post.Privacy.FRIENDS, joinedGroup);
+        entityManager.flush();
+
+        // Hủy kết bạn: bài trong nhóm người đọc vẫn là thành viên không bị gỡ
+        assertEquals(Set.of(friendsPost.getId(), friendsPostInOtherGroup.getId()),
+            ids(postRepository.findFriendsTimelineEntries(friend.getId(), reader.getId(), PageRequest.of(0, 100))));
+
+        // Rời nhóm: giữ bài của chính mình và bài FRIENDS của bạn bè
+        assertEquals(Set.of(friendPublicPostInJoinedGroup.getId(), strangerPostInJoinedGroup.getId()),
+            ids(postRepository.findTimelineEntriesByGroupId(joinedGroup.getId(), reader.getId(), PageRequest.of(0, 100))));
+
+        // Vào nhóm: toàn bộ bài trong nhóm
+        assertEquals(Set.of(friendsPostInJoinedGroup.getId(), friendPublicPostInJoinedGroup.getId(),
+                ownPostInJoinedGroup.getId(), strangerPostInJoinedGroup.getId()),
+            ids(postRepository.findTimelineEntriesByGroupId(joinedGroup.getId(), null, PageRequest.of(0, 100))));
+    }
+
+    private static Set<Long> ids(List<TimelineEntry> entries) {
+        return entries.stream().map(TimelineEntry::getId).collect(Collectors.toSet());
+    }
+
+    private Post persistPost(User author, Post.Privacy privacy, Group group) {
+        Post post = new Post();
+        post.setUser(author);
+        post.setContent("Bài viết");
+        post.setPrivacy(privacy);
+        post.setGroup(group);
+        post.setIsActive(false);
+        return entityManager.persist(post);
+    }
+
+    private Group persistGroup(String name, User... members) {
+        Group group = new Group();
+        group.setName(name);
+        group.setPrivacy(Group.Privacy.PUBLIC);
+        group.setCreatedBy(members[0]);
+        entityManager.persist(group);
+        for (User member : members) {
+            GroupMember groupMember = new GroupMember();
+            groupMember.setGroup(group);
+            groupMember.setUser(member);
+            entityManager.persist(groupMember);
+        }
+        return group;
+    }
+
+    private void persistFriendship(User user, User other) {
+        Friendship friendship = new Friendship();
+        friendship.setUser(user);
+        friendship.setFriend(other);
+        friendship.setStatus(Friendship.FriendshipStatus.ACCEPTED);
+        entityManager.persist(friendship);
+    }
+
+    private User persistUser(String firstName) {
+        User user = new User();
+        user.setFirstName(firstName);
+        user.setLastName("Test");
+        user.setEmail(firstName.toLowerCase() + "@example.com");
+        return entityManager.persist(user);
+    }
+}
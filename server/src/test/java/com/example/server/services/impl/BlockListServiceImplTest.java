@@ -0,0 +1,166 @@
+package com.example.server.services.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.server.repositories.FriendshipRepository;
+import com.example.server.support.EmbeddedRedis;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@SpringJUnitConfig(BlockListServiceImplTest.Config.class)
+@TestPropertySource(properties = { "app.block-list.bloom-enabled=true", "app.block-list.load-batch-size=1000" })
+// Bloom filter và bộ đếm nằm trong service: mỗi test một context mới
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class BlockListServiceImplTest {
+
+    // Không gắn @Configuration: gói services nằm trong @ComponentScan của ServerApplication
+    @Import(BlockListServiceImpl.class)
+    static class Config {
+        @Bean
+        StringRedisTemplate redisTemplate() {
+            return EmbeddedRedis.template();
+        }
+
+        @Bean
+        RedisMessageListenerContainer listenerContainer(StringRedisTemplate redisTemplate) {
+            RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+            container.setConnectionFactory(redisTemplate.getConnectionFactory());
+            return container;
+        }
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @MockitoBean
+    private FriendshipRepository friendshipRepository;
+
+    @Autowired
+    private BlockListServiceImpl service;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @BeforeEach
+    void setUp() {
+        EmbeddedRedis.flush();
+    }
+
+    @Test
+    void bloomFilterHasNoFalseNegatives() {
+        BlockListServiceImpl.BloomFilter filter = new BlockListServiceImpl.BloomFilter(20000, 0.01);
+        for (long userId = 1; userId <= 20000; userId++) {
+            filter.add(userId * 7919);
+        }
+
+        int falsePositives = 0;
+        for (long userId = 1; userId <= 20000; userId++) {
+            assertTrue(filter.mightContain(userId * 7919));
+            if (filter.mightContain(userId * 7919 + 1)) {
+                falsePositives++;
+            }
+        }
+        assertEquals(20000, filter.size.get());
+        // Mục tiêu 1%: để dư cho dao động ngẫu nhiên
+        assertTrue(falsePositives < 20000 * 0.03, "dương tính giả: " + falsePositives);
+    }
+
+    @Test
+    void reloadMergesUsersAddedDuringLoad() {
+        when(friendshipRepository.findBlockedEdgesAfter(anyLong(), any(Pageable.class))).thenAnswer(invocation -> {
+            // Một lượt chặn commit trong lúc đang quét bảng friendships
+            service.onBlockChanged(50L, 60L);
+            return List.<Object[]>of(new Object[] { 1L, 2L, 3L });
+        });
+
+        service.reload();
+
+        BlockListServiceImpl.BloomFilter bloom = (BlockListServiceImpl.BloomFilter) ReflectionTestUtils.getField(service, "bloom");
+        for (long userId : new long[] { 2L, 3L, 50L, 60L }) {
+            assertTrue(bloom.mightContain(userId));
+        }
+        assertEquals(4.0, meterRegistry.get("block.list.bloom.users").gauge().value());
+        assertNull(ReflectionTestUtils.getField(service, "addedDuringLoad"));
+    }
+
+    @Test
+    void hiddenFromAndFilterVisibleUseIndex() {
+        when(friendshipRepository.findBlockedEdgesAfter(anyLong(), any(Pageable.class)))
+            .thenReturn(List.<Object[]>of(new Object[] { 1L, 1L, 2L }, new Object[] { 2L, 4L, 1L }));
+        service.reload();
+        when(friendshipRepository.findBlockedIdsByUserId(1L)).thenReturn(List.of(2L));
+        when(friendshipRepository.findBlockerIdsByUserId(1L)).thenReturn(List.of(4L));
+
+        assertEquals(Set.of(2L, 4L), service.hiddenFrom(1L));
+        // Lần sau đọc từ Redis
+        assertEquals(Set.of(2L, 4L), service.hiddenFrom(1L));
+        verify(friendshipRepository, times(1)).findBlockedIdsByUserId(1L);
+
+        List<Long> owners = Arrays.asList(3L, 2L, null, 5L, 4L, 3L);
+        assertEquals(Arrays.asList(3L, null, 5L, 3L), service.filterVisible(1L, owners, owner -> owner));
+        assertTrue(service.isBlocked(1L, 2L));
+        assertTrue(service.isBlocked(1L, 4L));
+
+        // Người không có trong Bloom filter: trả lời ngay, không chạm Redis hay database, danh sách giữ nguyên
+        assertEquals(Set.of(), service.hiddenFrom(99L));
+        assertSame(owners, service.filterVisible(99L, owners, owner -> owner));
+        assertFalse(service.isBlocked(99L, 1L));
+        verify(friendshipRepository, never()).findBlockedIdsByUserId(99L);
+    }
+
+    @Test
+    void loadOverlappingBlockChangeDoesNotCacheStaleSet() {
+        when(friendshipRepository.findBlockerIdsByUserId(1L)).thenReturn(List.of());
+        List<Integer> reads = new ArrayList<>();
+        when(friendshipRepository.findBlockedIdsByUserId(1L)).thenAnswer(invocation -> {
+            reads.add(reads.size());
+            if (reads.size() == 1) {
+                // Người 1 chặn người 3 và commit đúng lúc lần nạp đầu đang đọc database
+                service.onBlockChanged(1L, 3L);
+                return List.of(2L);
+            }
+            return List.of(2L, 3L);
+        });
+
+        assertEquals(Set.of(2L), service.hiddenFrom(1L));
+        // Tập cũ không được ghi vào Redis, lần đọc sau nạp lại trạng thái mới
+        assertEquals(Boolean.FALSE, redisTemplate.hasKey("blocks:1"));
+        assertEquals(Set.of(2L, 3L), service.hiddenFrom(1L));
+        assertEquals(Set.of("0", "2", "3"), redisTemplate.opsForSet().members("blocks:1"));
+    }
+}
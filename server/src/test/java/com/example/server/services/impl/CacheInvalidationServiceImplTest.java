@@ -0,0 +1,184 @@
+package com.example.server.services.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.server.services.CacheInvalidationService;
+import com.example.server.support.EmbeddedRedis;
+import com.example.server.utils.CacheLoad;
+
+@SpringJUnitConfig(CacheInvalidationServiceImplTest.Config.class)
+class CacheInvalidationServiceImplTest {
+
+    // Không gắn @Configuration: gói services nằm trong @ComponentScan của ServerApplication
+    @Import(CacheInvalidationServiceImpl.class)
+    static class Config {
+        @Bean
+        StringRedisTemplate redisTemplate() {
+            return EmbeddedRedis.template();
+        }
+
+        @Bean
+        CacheManager cacheManager() {
+            return new ConcurrentMapCacheManager("likes", "comments", "friendships", "users");
+        }
+    }
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private CacheInvalidationServiceImpl service;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @BeforeEach
+    void setUp() {
+        EmbeddedRedis.flush();
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void likingPostEvictsOnlyThatPostsEntries() {
+        cacheTracked("likes", "post_1", CacheInvalidationService.post(1L));
+        cacheTracked("likes", "post_2", CacheInvalidationService.post(2L));
+        cacheTracked("likes", "comment_10", CacheInvalidationService.comment(10L));
+        cacheTracked("comments", 10L, CacheInvalidationService.comment(10L));
+
+        service.invalidate(CacheInvalidationService.post(1L));
+
+        assertNull(cached("likes", "post_1"));
+        assertNotNull(cached("likes", "post_2"));
+        assertNotNull(cached("likes", "comment_10"));
+        assertNotNull(cached("comments", 10L));
+    }
+
+    @Test
+    void editingReplyEvictsParentCachedWithItsReplies() {
+        // Bình luận 10 được cache kèm reply 11; bình luận 20 không liên quan
+        cacheTracked("comments", 10L, CacheInvalidationService.comment(10L), CacheInvalidationService.comment(11L));
+        cacheTracked("comments", 11L, CacheInvalidationService.comment(11L));
+        cacheTracked("comments", 20L, CacheInvalidationService.comment(20L));
+
+        service.invalidate(CacheInvalidationService.comment(11L));
+
+        assertNull(cached("comments", 10L));
+        assertNull(cached("comments", 11L));
+        assertNotNull(cached("comments", 20L));
+    }
+
+    @Test
+    void friendshipChangeEvictsOnlyEntriesOfBothUsers() {
+        cacheTracked("friendships", "friends_1", CacheInvalidationService.friends(1L));
+        cacheTracked("friendships", "friends_2", CacheInvalidationService.friends(2L));
+        cacheTracked("friendships", "friends_3", CacheInvalidationService.friends(3L));
+        cacheTracked("friendships", "mutual_3_1", CacheInvalidationService.friends(3L), CacheInvalidationService.friends(1L));
+        cacheTracked("friendships", "mutual_3_4", CacheInvalidationService.friends(3L), CacheInvalidationService.friends(4L));
+        cacheTracked("friendships", "friendship_2_1", CacheInvalidationService.pair(2L, 1L));
+        cacheTracked("friendships", "friendship_1_3", CacheInvalidationService.pair(1L, 3L));
+        cacheManager.getCache("users").put(1L, "user-1");
+        cacheManager.getCache("users").put(3L, "user-3");
+
+        service.invalidate(CacheInvalidationService.pair(1L, 2L),
+            CacheInvalidationService.friends(1L), CacheInvalidationService.friends(2L));
+        service.evict("users", 1L, 2L);
+
+        assertNull(cached("friendships", "friends_1"));
+        assertNull(cached("friendships", "friends_2"));
+        assertNull(cached("friendships", "mutual_3_1"));
+        assertNull(cached("friendships", "friendship_2_1"));
+        assertNull(cached("users", 1L));
+        assertNotNull(cached("friendships", "friends_3"));
+        assertNotNull(cached("friendships", "mutual_3_4"));
+        assertNotNull(cached("friendships", "friendship_1_3"));
+        assertNotNull(cached("users", 3L));
+    }
+
+    @Test
+    void invalidationInsideTransactionWaitsForCommit() {
+        cacheTracked("likes", "post_1", CacheInvalidationService.post(1L));
+        TransactionSynchronizationManager.initSynchronization();
+
+        service.invalidate(CacheInvalidationService.post(1L));
+        assertNotNull(cached("likes", "post_1"));
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertNull(cached("likes", "post_1"));
+    }
+
+    @Test
+    void evictedEntryIsNoLongerTrackedAfterInvalidation() {
+        cacheTracked("likes", "post_1", CacheInvalidationService.post(1L));
+        service.invalidate(CacheInvalidationService.post(1L));
+
+        // Nạp lại mà không track: lần hủy sau không còn chỉ mục cũ để lần theo
+        cacheManager.getCache("likes").put("post_1", "value");
+        service.invalidate(CacheInvalidationService.post(1L));
+        assertNotNull(cached("likes", "post_1"));
+    }
+
+    @Test
+    void invalidationDuringLoadEvictsValueWrittenAfterIt() {
+        // Lượt tính đọc database, rồi một lượt like commit và hủy cache trước khi giá trị cũ kịp ghi vào
+        CacheLoad load = CacheLoad.begin();
+        try {
+            service.track("likes", "post_1", CacheInvalidationService.post(1L));
+            assertEquals(Boolean.FALSE, redisTemplate.hasKey("cache:deps:post:1"));
+            service.invalidate(CacheInvalidationService.post(1L));
+            cacheManager.getCache("likes").put("post_1", "stale");
+            load.putDone();
+        } finally {
+            load.end();
+        }
+
+        assertNull(cached("likes", "post_1"));
+    }
+
+    @Test
+    void dependencyRegisteredAfterPutSurvivesForLaterInvalidation() {
+        CacheLoad load = CacheLoad.begin();
+        try {
+            service.track("likes", "post_1", CacheInvalidationService.post(1L));
+            cacheManager.getCache("likes").put("post_1", "value");
+            load.putDone();
+        } finally {
+            load.end();
+        }
+        assertNotNull(cached("likes", "post_1"));
+
+        service.invalidate(CacheInvalidationService.post(1L));
+        assertNull(cached("likes", "post_1"));
+    }
+
+    private void cacheTracked(String cacheName, Object key, String... dependencies) {
+        service.track(cacheName, key, dependencies);
+        cacheManager.getCache(cacheName).put(key, "value");
+    }
+
+    private Cache.ValueWrapper cached(String cacheName, Object key) {
+        return cacheManager.getCache(cacheName).get(key);
+    }
+}
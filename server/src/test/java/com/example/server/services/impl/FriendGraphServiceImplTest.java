@@ -0,0 +1,184 @@
+package com.example.server.services.impl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.server.repositories.FriendshipRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class FriendGraphServiceImplTest {
+
+    private FriendshipRepository friendshipRepository;
+    private FriendGraphServiceImpl service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        friendshipRepository = mock(FriendshipRepository.class);
+        service = new FriendGraphServiceImpl();
+        ReflectionTestUtils.setField(service, "friendshipRepository", friendshipRepository);
+        ReflectionTestUtils.setField(service, "redisTemplate", mock(RedisTemplate.class));
+        ReflectionTestUtils.setField(service, "listenerContainer", mock(RedisMessageListenerContainer.class));
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "loadBatchSize", 1000);
+        ReflectionTestUtils.setField(service, "channel", "friend-graph:update");
+        service.init();
+    }
+
+    @Test
+    void adjacencyTableInsertsReplacesAndRemoves() {
+        FriendGraphServiceImpl.AdjacencyTable table = new FriendGraphServiceImpl.AdjacencyTable(16);
+
+        assertSame(table, table.put(1L, new long[] { 2L, 3L }));
+        assertSame(table, table.put(2L, new long[] { 1L }));
+        assertArrayEquals(new long[] { 2L, 3L }, table.get(1L));
+        assertEquals(2, table.size);
+        assertEquals(3, table.edges);
+
+        // Thay danh sách: số cạnh cập nhật theo chênh lệch
+        table.put(1L, new long[] { 3L });
+        assertArrayEquals(new long[] { 3L }, table.get(1L));
+        assertEquals(2, table.edges);
+
+        // Hết bạn: giữ khóa với mảng rỗng, không còn trong usersWithFriends
+        table.put(1L, new long[0]);
+        assertArrayEquals(new long[0], table.get(1L));
+        assertEquals(2, table.size);
+        assertArrayEquals(new long[] { 2L }, table.usersWithFriends());
+
+        // Người chưa có trong bảng mà không có bạn thì không chiếm ô
+        table.put(99L, new long[0]);
+        assertEquals(2, table.size);
+        assertArrayEquals(new long[0], table.get(42L));
+    }
+
+    @Test
+    void adjacencyTableGrowsAndKeepsEveryEntry() {
+        FriendGraphServiceImpl.AdjacencyTable table = new FriendGraphServiceImpl.AdjacencyTable(16);
+        int initialCapacity = table.keys.length;
+        int users = 5000;
+        for (long userId = 1; userId <= users; userId++) {
+            // Bước nhảy lớn để nhiều khóa rơi vào cùng vùng sau khi băm
+            table = table.put(userId * 1024, new long[] { userId, userId + 1 });
+        }
+
+        assertTrue(table.keys.length > initialCapacity);
+        assertTrue(table.size * 2 <= table.keys.length);
+        assertEquals(users, table.size);
+        assertEquals(users * 2L, table.edges);
+        for (long userId = 1; userId <= users; userId++) {
+            assertArrayEquals(new long[] { userId, userId + 1 }, table.get(userId * 1024));
+        }
+        assertEquals(users, table.usersWithFriends().length);
+    }
+
+    @Test
+    void intersectMatchesHashSetReference() {
+        Random random = new Random(42);
+        // Kích thước tương đương (trộn tuần tự) và chênh lệch lớn (tìm nhị phân), kể cả mảng rỗng
+        int[][] sizes = { { 0, 10 }, { 10, 0 }, { 50, 60 }, { 300, 280 }, { 5, 1000 }, { 2000, 3 }, { 1, 50000 } };
+        for (int[] size : sizes) {
+            for (int round = 0; round < 20; round++) {
+                long[] first = randomSorted(random, size[0], 4 * Math.max(size[0], size[1]) + 8);
+                long[] second = randomSorted(random, size[1], 4 * Math.max(size[0], size[1]) + 8);
+
+                Set<Long> reference = new HashSet<>();
+                Arrays.stream(first).forEach(reference::add);
+                Set<Long> secondSet = new HashSet<>();
+                Arrays.stream(second).forEach(secondSet::add);
+                reference.retainAll(secondSet);
+                long[] expected = reference.stream().mapToLong(Long::longValue).sorted().toArray();
+
+                long[] out = new long[Math.min(first.length, second.length)];
+                int count = FriendGraphServiceImpl.intersect(first, second, out);
+
+                assertEquals(expected.length, count);
+                assertArrayEquals(expected, Arrays.copyOf(out, count));
+                assertEquals(expected.length, FriendGraphServiceImpl.intersect(second, first, null));
+            }
+        }
+    }
+
+    @Test
+    void reloadReplaysChangesReceivedDuringLoad() {
+        when(friendshipRepository.existsAcceptedEdge(1L, 9L)).thenReturn(true);
+        when(friendshipRepository.existsAcceptedEdge(9L, 1L)).thenReturn(true);
+        when(friendshipRepository.existsAcceptedEdge(1L, 2L)).thenReturn(false);
+        when(friendshipRepository.existsAcceptedEdge(2L, 1L)).thenReturn(false);
+        when(friendshipRepository.findAcceptedEdgesAfter(anyLong(), anyLong(), any(Pageable.class))).thenAnswer(invocation -> {
+            // Trong lúc đang đọc bảng friendships: 1 kết bạn với 9 và hủy kết bạn với 2
+            service.onFriendshipChanged(1L, 9L);
+            service.onFriendshipChanged(1L, 2L);
+            return rows(new long[][] { { 1, 2 }, { 1, 3 }, { 2, 1 }, { 3, 1 } });
+        });
+
+        service.reload();
+
+        assertTrue(service.isReady());
+        assertArrayEquals(new long[] { 3L, 9L }, service.friendIds(1L));
+        assertArrayEquals(new long[0], service.friendIds(2L));
+        assertArrayEquals(new long[] { 1L }, service.friendIds(3L));
+        assertArrayEquals(new long[] { 1L }, service.friendIds(9L));
+        assertTrue(service.areFriends(1L, 9L));
+    }
+
+    @Test
+    void repairDoesNotOverwriteConcurrentApply() {
+        when(friendshipRepository.findAcceptedEdgesAfter(anyLong(), anyLong(), any(Pageable.class)))
+            .thenReturn(rows(new long[][] { { 1, 2 }, { 2, 1 } }));
+        service.reload();
+
+        when(friendshipRepository.existsAcceptedEdge(1L, 3L)).thenReturn(true);
+        when(friendshipRepository.existsAcceptedEdge(3L, 1L)).thenReturn(true);
+        List<List<Long>> reads = new ArrayList<>();
+        when(friendshipRepository.findFriendIdsByUserId(1L)).thenAnswer(invocation -> {
+            if (reads.isEmpty()) {
+                // Lần đọc đầu trả kết quả cũ, và đúng lúc đó một kết bạn mới được commit và áp vào bảng
+                reads.add(List.of(2L));
+                service.onFriendshipChanged(1L, 3L);
+                return List.of(2L);
+            }
+            reads.add(List.of(2L, 3L));
+            return List.of(2L, 3L);
+        });
+
+        assertTrue(service.repairUser(1L));
+
+        assertEquals(2, reads.size());
+        assertArrayEquals(new long[] { 2L, 3L }, service.friendIds(1L));
+    }
+
+    private static long[] randomSorted(Random random, int size, int bound) {
+        return random.longs(size * 2L, 1, bound).distinct().limit(size).sorted().toArray();
+    }
+
+    private static List<Object[]> rows(long[][] edges) {
+        List<Object[]> rows = new ArrayList<>();
+        for (long[] edge : edges) {
+            rows.add(new Object[] { edge[0], edge[1] });
+        }
+        return rows;
+    }
+}
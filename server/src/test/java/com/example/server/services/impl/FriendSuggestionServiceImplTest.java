@@ -0,0 +1,167 @@
+package com.example.server.services.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import com.example.server.dto.UserDto;
+import com.example.server.mapper.UserDtoMapper;
+import com.example.server.repositories.EducationRepository;
+import com.example.server.repositories.FriendshipRepository;
+import com.example.server.repositories.GroupMemberRepository;
+import com.example.server.repositories.WorkExperienceRepository;
+import com.example.server.services.FriendGraphService;
+import com.example.server.support.EmbeddedRedis;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@SpringJUnitConfig(FriendSuggestionServiceImplTest.Config.class)
+@TestPropertySource(properties = { "app.suggestions.on-demand-concurrency=1", "app.suggestions.ttl-hours=1" })
+class FriendSuggestionServiceImplTest {
+
+    // Không gắn @Configuration: gói services nằm trong @ComponentScan của ServerApplication
+    @Import(FriendSuggestionServiceImpl.class)
+    static class Config {
+        @Bean
+        StringRedisTemplate redisTemplate() {
+            return EmbeddedRedis.template();
+        }
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @MockitoBean
+    private FriendGraphService friendGraphService;
+
+    @MockitoBean
+    private FriendshipRepository friendshipRepository;
+
+    @MockitoBean
+    private GroupMemberRepository groupMemberRepository;
+
+    @MockitoBean
+    private EducationRepository educationRepository;
+
+    @MockitoBean
+    private WorkExperienceRepository workExperienceRepository;
+
+    @MockitoBean
+    private UserDtoMapper userDtoMapper;
+
+    @Autowired
+    private FriendSuggestionServiceImpl suggestionService;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    // 1 - 2 - 3: người 3 là bạn của bạn của người 1
+    private final Map<Long, long[]> graph = new HashMap<>(Map.of(1L, new long[] { 2L }, 2L, new long[] { 1L, 3L }, 3L, new long[] { 2L }));
+
+    @BeforeEach
+    void setUp() {
+        EmbeddedRedis.flush();
+        when(friendGraphService.friendIds(anyCollection())).thenAnswer(invocation -> friendsOf(invocation.getArgument(0)));
+        when(userDtoMapper.toUserSummaryDtos(anyCollection())).thenAnswer(invocation -> {
+            Map<Long, UserDto> users = new HashMap<>();
+            for (Long id : invocation.<Collection<Long>>getArgument(0)) {
+                UserDto user = new UserDto();
+                user.setId(id);
+                users.put(id, user);
+            }
+            return users;
+        });
+    }
+
+    @Test
+    void missingKeyIsComputedOnDemand() {
+        Page<UserDto> page = suggestionService.getSuggestions(1L, PageRequest.of(0, 10));
+
+        assertEquals(List.of(3L), page.getContent().stream().map(UserDto::getId).toList());
+        assertEquals(1, page.getTotalElements());
+        assertEquals(Set.of("0", "3"), redisTemplate.opsForZSet().range("suggestions:1", 0, -1));
+        Long ttl = redisTemplate.getExpire("suggestions:1");
+        assertTrue(ttl != null && ttl > 0 && ttl <= 3600);
+    }
+
+    @Test
+    void refreshReplacesStaleSuggestions() throws InterruptedException {
+        redisTemplate.opsForZSet().add("suggestions:1", "0", 0d);
+        redisTemplate.opsForZSet().add("suggestions:1", "99", 5d);
+        when(friendGraphService.friendIds(anyLong())).thenAnswer(invocation -> graph.getOrDefault(invocation.<Long>getArgument(0), new long[0]));
+
+        // Người 1 và 2 vừa đổi quan hệ: cả hai và bạn của họ được tính lại ở lượt refreshPending
+        suggestionService.onRelationshipChanged(1L, 2L, true);
+        assertEquals(3, refreshPending());
+
+        // Gợi ý cũ bị thay hẳn, không gộp; khóa không lúc nào vắng mặt nên không kích hoạt tính tại chỗ
+        long deadline = System.currentTimeMillis() + 5000;
+        while (redisTemplate.opsForZSet().score("suggestions:1", "99") != null && System.currentTimeMillis() < deadline) {
+            assertEquals(Boolean.TRUE, redisTemplate.hasKey("suggestions:1"));
+            Thread.sleep(10);
+        }
+        assertEquals(Set.of("0", "3"), redisTemplate.opsForZSet().range("suggestions:1", 0, -1));
+    }
+
+    @Test
+    void onDemandComputeBeyondLimitIsQueued() throws InterruptedException {
+        List<Page<UserDto>> nested = new ArrayList<>();
+        when(friendGraphService.friendIds(anyCollection())).thenAnswer(invocation -> {
+            // Lượt tính của người 1 đang giữ suất duy nhất khi người 3 cũng mở trang gợi ý
+            if (nested.isEmpty()) {
+                nested.add(suggestionService.getSuggestions(3L, PageRequest.of(0, 10)));
+            }
+            return friendsOf(invocation.getArgument(0));
+        });
+
+        Page<UserDto> first = suggestionService.getSuggestions(1L, PageRequest.of(0, 10));
+
+        assertEquals(1, first.getTotalElements());
+        assertTrue(nested.get(0).isEmpty());
+        assertEquals(Boolean.FALSE, redisTemplate.hasKey("suggestions:3"));
+        // Người 3 nằm trong hàng đợi của refreshPending
+        assertEquals(1, refreshPending());
+    }
+
+    // Lượt refreshPending của test trước có thể còn chạy nền: khi đó lượt này bỏ qua và trả 0
+    private int refreshPending() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        int refreshed;
+        while ((refreshed = suggestionService.refreshPending()) == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return refreshed;
+    }
+
+    private Map<Long, long[]> friendsOf(Collection<Long> userIds) {
+        Map<Long, long[]> friends = new HashMap<>();
+        for (Long userId : userIds) {
+            friends.put(userId, graph.getOrDefault(userId, new long[0]));
+        }
+        return friends;
+    }
+}
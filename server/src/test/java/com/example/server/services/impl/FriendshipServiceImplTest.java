@@ -0,0 +1,73 @@
+package com.example.server.services.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.example.server.dto.RelationshipStatusDto;
+import com.example.server.models.Friendship.FriendshipStatus;
+import com.example.server.repositories.FriendshipRepository;
+import com.example.server.repositories.UserRepository;
+import com.example.server.services.MutualFriendsService;
+
+@ExtendWith(MockitoExtension.class)
+class FriendshipServiceImplTest {
+
+    @Mock
+    private FriendshipRepository friendshipRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private MutualFriendsService mutualFriendsService;
+
+    @InjectMocks
+    private FriendshipServiceImpl friendshipService;
+
+    @Test
+    void bulkStatusesMapBothDirectionsInRequestOrder() {
+        List<Long> ids = List.of(2L, 3L, 4L, 5L, 6L, 7L);
+        when(friendshipRepository.findRelationshipsBetween(1L, ids)).thenReturn(List.of(
+            new Object[] { 1L, 2L, FriendshipStatus.ACCEPTED },
+            new Object[] { 2L, 1L, FriendshipStatus.ACCEPTED },
+            new Object[] { 1L, 3L, FriendshipStatus.PENDING },
+            new Object[] { 4L, 1L, FriendshipStatus.PENDING },
+            // Người xem chặn 5; 6 chặn người xem, còn dòng lời mời người xem đã gửi cho 6 thì bị xóa khi chặn
+            new Object[] { 1L, 5L, FriendshipStatus.BLOCKED },
+            new Object[] { 6L, 1L, FriendshipStatus.BLOCKED }));
+        when(mutualFriendsService.counts(1L, ids)).thenReturn(Map.of(2L, 4, 7L, 1));
+        when(userRepository.findFollowingIdsAmong(1L, ids)).thenReturn(List.of(2L, 7L));
+        when(userRepository.findFollowerIdsAmong(1L, ids)).thenReturn(List.of(4L));
+
+        // Bỏ chính mình, null và ID trùng
+        List<RelationshipStatusDto> statuses = friendshipService.getRelationshipStatuses(1L,
+            Arrays.asList(2L, 3L, 1L, null, 4L, 5L, 2L, 6L, 7L));
+
+        assertEquals(List.of(
+            new RelationshipStatusDto(2L, "ACCEPTED", false, false, 4, true, false),
+            new RelationshipStatusDto(3L, "PENDING", false, false, 0, false, false),
+            new RelationshipStatusDto(4L, "PENDING_RECEIVED", false, false, 0, false, true),
+            new RelationshipStatusDto(5L, "BLOCKED", true, false, 0, false, false),
+            new RelationshipStatusDto(6L, "BLOCKED_RECEIVED", false, true, 0, false, false),
+            new RelationshipStatusDto(7L, "NONE", false, false, 1, true, false)), statuses);
+        verify(friendshipRepository).findRelationshipsBetween(1L, ids);
+    }
+
+    @Test
+    void onlySelfOrNullsReturnsEmptyWithoutQueries() {
+        assertEquals(List.of(), friendshipService.getRelationshipStatuses(1L, Arrays.asList(1L, null)));
+        verifyNoInteractions(friendshipRepository, userRepository, mutualFriendsService);
+    }
+}
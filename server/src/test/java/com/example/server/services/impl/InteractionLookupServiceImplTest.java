@@ -0,0 +1,81 @@
+package com.example.server.services.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.example.server.repositories.LikeRepository;
+import com.example.server.repositories.PostRepository;
+
+@ExtendWith(MockitoExtension.class)
+class InteractionLookupServiceImplTest {
+
+    @Mock
+    private LikeRepository likeRepository;
+
+    @Mock
+    private PostRepository postRepository;
+
+    @InjectMocks
+    private InteractionLookupServiceImpl lookupService;
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void answersAreMemoizedWithinRequest() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        when(likeRepository.findLikedPostIds(1L, List.of(10L, 11L, 12L))).thenReturn(List.of(11L));
+        when(likeRepository.findLikedPostIds(1L, List.of(13L))).thenReturn(List.of(13L));
+
+        assertEquals(Set.of(11L), lookupService.findLikedPostIds(1L, List.of(10L, 11L, 12L)));
+        // Danh sách bài thứ hai trong cùng request: chỉ hỏi ID chưa có câu trả lời, kể cả câu trả lời "không"
+        assertEquals(Set.of(11L, 13L), lookupService.findLikedPostIds(1L, List.of(10L, 11L, 13L)));
+        assertEquals(Set.of(11L), lookupService.findLikedPostIds(1L, List.of(11L, 12L)));
+
+        verify(likeRepository, times(2)).findLikedPostIds(any(), any());
+    }
+
+    @Test
+    void memoIsKeyedByKindAndUser() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        when(likeRepository.findLikedPostIds(1L, List.of(10L))).thenReturn(List.of(10L));
+        when(postRepository.findRepostedPostIds(1L, List.of(10L))).thenReturn(List.of());
+        when(likeRepository.findLikedPostIds(2L, List.of(10L))).thenReturn(List.of());
+
+        assertEquals(Set.of(10L), lookupService.findLikedPostIds(1L, List.of(10L)));
+        assertEquals(Set.of(), lookupService.findRepostedPostIds(1L, List.of(10L)));
+        assertEquals(Set.of(), lookupService.findLikedPostIds(2L, List.of(10L)));
+    }
+
+    @Test
+    void outsideRequestEveryCallQueriesAndAnonymousNeverDoes() {
+        when(likeRepository.findLikedCommentIds(1L, List.of(5L))).thenReturn(List.of(5L));
+
+        lookupService.findLikedCommentIds(1L, List.of(5L));
+        lookupService.findLikedCommentIds(1L, List.of(5L));
+        verify(likeRepository, times(2)).findLikedCommentIds(1L, List.of(5L));
+
+        assertEquals(Set.of(), lookupService.findLikedPostIds(null, List.of(10L)));
+        assertEquals(Set.of(), lookupService.findLikedPostIds(1L, List.of()));
+        verify(likeRepository, never()).findLikedPostIds(any(), any());
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.server.services.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.server.models.MediaJob;
+import com.example.server.models.PostMedia;
+import com.example.server.repositories.MediaJobRepository;
+import com.example.server.repositories.PostMediaRepository;
+import com.example.server.services.BlobStore;
+import com.example.server.services.VideoTranscoder;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class MediaProcessingServiceImplTest {
+
+    @Mock
+    private MediaJobRepository mediaJobRepository;
+
+    @Mock
+    private PostMediaRepository postMediaRepository;
+
+    @Mock
+    private BlobStore blobStore;
+
+    @Mock
+    private VideoTranscoder videoTranscoder;
+
+    @InjectMocks
+    private MediaProcessingServiceImpl service;
+
+    @TempDir
+    Path staging;
+
+    private final MediaJob job = new MediaJob();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "workerThreads", 2);
+        ReflectionTestUtils.setField(service, "maxAttempts", 3);
+        ReflectionTestUtils.setField(service, "jobTimeoutMinutes", 30L);
+        ReflectionTestUtils.setField(service, "renditionSpec", "480:1000k");
+        service.init();
+
+        job.setId(7L);
+        job.setMediaId(70L);
+        job.setStorageKey("ab/cd/abcd");
+        PostMedia media = new PostMedia();
+        media.setId(70L);
+
+        when(videoTranscoder.isAvailable()).thenReturn(true);
+        when(mediaJobRepository.findReadyJobIds(eq(MediaJob.Status.PENDING), any(), any(Pageable.class))).thenReturn(List.of(7L));
+        when(mediaJobRepository.claim(eq(7L), eq(MediaJob.Status.PENDING), eq(MediaJob.Status.RUNNING), any())).thenAnswer(invocation -> {
+            job.setAttempts(job.getAttempts() + 1);
+            return 1;
+        });
+        when(mediaJobRepository.findById(7L)).thenReturn(Optional.of(job));
+        when(postMediaRepository.findById(70L)).thenReturn(Optional.of(media));
+        when(blobStore.createStagingFile()).thenAnswer(invocation -> Files.createTempFile(staging, "job", ".tmp"));
+        when(blobStore.publicUrl(anyString())).thenAnswer(invocation -> "/videos/" + invocation.getArgument(0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void staleJobsAreRequeuedBeforeClaiming() throws Exception {
+        assertEquals(1, service.dispatchPendingJobs());
+
+        ArgumentCaptor<LocalDateTime> now = ArgumentCaptor.forClass(LocalDateTime.class);
+        ArgumentCaptor<LocalDateTime> staleBefore = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(mediaJobRepository).requeueStale(eq(MediaJob.Status.PENDING), eq(MediaJob.Status.RUNNING), now.capture(), staleBefore.capture());
+        // Một thumbnail và một bản chuyển mã, mỗi bước tối đa 30 phút
+        assertEquals(now.getValue().minusMinutes(60), staleBefore.getValue());
+
+        verify(blobStore, timeout(5000)).put(eq("ab/cd/abcd.480p.mp4"), any());
+        verify(postMediaRepository, timeout(5000)).completeProcessing(70L, PostMedia.ProcessingStatus.READY,
+            "/videos/ab/cd/abcd.thumb.jpg", "480p");
+        verify(mediaJobRepository, timeout(5000)).finish(eq(7L), eq(MediaJob.Status.DONE), isNull(), any(), any());
+    }
+
+    @Test
+    void failedJobIsRetriedWithBackoffThenMarkedFailed() throws Exception {
+        doThrow(new IOException("ffmpeg lỗi")).when(videoTranscoder).createThumbnail(any(), any());
+
+        LocalDateTime before = LocalDateTime.now();
+        service.dispatchPendingJobs();
+        ArgumentCaptor<LocalDateTime> availableAt = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(mediaJobRepository, timeout(5000)).finish(eq(7L), eq(MediaJob.Status.PENDING), eq("ffmpeg lỗi"), availableAt.capture(), isNull());
+        verify(postMediaRepository, timeout(5000)).updateProcessingStatus(70L, PostMedia.ProcessingStatus.PENDING);
+        // Lần 1 thất bại: thử lại sau 1 phút
+        assertFalse(availableAt.getValue().isBefore(before.plusMinutes(1)));
+
+        // Lần thứ max-attempts thất bại thì dừng hẳn
+        job.setAttempts(2);
+        service.dispatchPendingJobs();
+        verify(mediaJobRepository, timeout(5000)).finish(eq(7L), eq(MediaJob.Status.FAILED), eq("ffmpeg lỗi"), any(), any(LocalDateTime.class));
+        verify(postMediaRepository, timeout(5000)).updateProcessingStatus(70L, PostMedia.ProcessingStatus.FAILED);
+        verify(postMediaRepository, never()).completeProcessing(any(), any(), any(), any());
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.server.services.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.example.server.models.MediaBlob;
+import com.example.server.models.PostMedia;
+import com.example.server.repositories.MediaBlobRepository;
+import com.example.server.services.MediaStorageService.StoredMedia;
+
+@SpringJUnitConfig(MediaStorageServiceImplTest.Config.class)
+class MediaStorageServiceImplTest {
+
+    // Không gắn @Configuration: gói services nằm trong @ComponentScan của ServerApplication
+    @Import({ MediaStorageServiceImpl.class, LocalBlobStore.class })
+    static class Config {
+    }
+
+    @TempDir
+    static Path storage;
+
+    @DynamicPropertySource
+    static void storagePath(DynamicPropertyRegistry registry) {
+        registry.add("app.video.storage.path", () -> storage.toString());
+    }
+
+    @MockitoBean
+    private MediaBlobRepository mediaBlobRepository;
+
+    // TransactionTemplate chỉ cần getTransaction/commit; mock trả về null là đủ
+    @MockitoBean
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MediaStorageServiceImpl mediaStorageService;
+
+    // Bảng media_blobs trong bộ nhớ
+    private final Map<String, MediaBlob> blobs = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        blobs.clear();
+        when(mediaBlobRepository.findForUpdate(anyString())).thenAnswer(invocation ->
+            Optional.ofNullable(blobs.get(invocation.<String>getArgument(0))));
+        when(mediaBlobRepository.save(any(MediaBlob.class))).thenAnswer(invocation -> {
+            MediaBlob blob = invocation.getArgument(0);
+            blobs.put(blob.getStorageKey(), blob);
+            return blob;
+        });
+        doAnswer(invocation -> blobs.remove(invocation.<MediaBlob>getArgument(0).getStorageKey()))
+            .when(mediaBlobRepository).delete(any(MediaBlob.class));
+    }
+
+    @Test
+    void sameContentUnderDifferentNamesSharesOneBlob() throws Exception {
+        byte[] body = "cùng một nội dung".getBytes(StandardCharsets.UTF_8);
+        String hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+
+        StoredMedia first = mediaStorageService.store(new MockMultipartFile("files", "clip.mp4", "video/mp4", body));
+        StoredMedia second = mediaStorageService.store(new MockMultipartFile("files", "copy.MOV", "video/quicktime; codecs=x", body));
+
+        // Khóa chỉ theo hash: đuôi và MIME type không làm tách blob
+        String key = hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash;
+        assertEquals(key, first.storageKey());
+        assertEquals(key, second.storageKey());
+        assertEquals("/videos/" + key, first.url());
+        assertEquals(hash, first.contentHash());
+        assertEquals(body.length, first.size());
+        assertEquals(PostMedia.MediaType.VIDEO, first.mediaType());
+        assertEquals("video/mp4", first.contentType());
+        assertEquals("video/quicktime", second.contentType());
+
+        assertEquals(2, blobs.get(key).getRefCount());
+        assertEquals("video/mp4", blobs.get(key).getContentType());
+        assertTrue(Files.isRegularFile(storage.resolve(key)));
+        // Tệp tạm đã được đưa vào kho hoặc xóa
+        try (Stream<Path> staged = Files.list(storage.resolve(".staging"))) {
+            assertEquals(0, staged.count());
+        }
+    }
+
+    @Test
+    void contentTypeFallsBackToExtension() throws Exception {
+        StoredMedia image = mediaStorageService.store(
+            new MockMultipartFile("files", "photo.png", "application/octet-stream", new byte[] { 1, 2, 3 }));
+        StoredMedia unnamed = mediaStorageService.store(new MockMultipartFile("files", "noextension", null, new byte[] { 4 }));
+
+        assertEquals(PostMedia.MediaType.IMAGE, image.mediaType());
+        assertEquals("image/png", image.contentType());
+        assertEquals("image/jpeg", unnamed.contentType());
+    }
+
+    @Test
+    void lastReleaseDeletesBlobAndDerivedFiles() throws Exception {
+        byte[] body = { 9, 8, 7 };
+        StoredMedia first = mediaStorageService.store(new MockMultipartFile("files", "a.mp4", "video/mp4", body));
+        mediaStorageService.store(new MockMultipartFile("files", "b.mp4", "video/mp4", body));
+        Path blob = storage.resolve(first.storageKey());
+        Path thumbnail = storage.resolve(first.storageKey() + ".thumb.jpg");
+        Files.writeString(thumbnail, "thumb");
+
+        mediaStorageService.release(List.of(first.storageKey()));
+        assertTrue(Files.exists(blob));
+        assertEquals(1, blobs.get(first.storageKey()).getRefCount());
+
+        mediaStorageService.release(List.of(first.storageKey()));
+        assertFalse(Files.exists(blob));
+        assertFalse(Files.exists(thumbnail));
+        assertFalse(blobs.containsKey(first.storageKey()));
+    }
+}
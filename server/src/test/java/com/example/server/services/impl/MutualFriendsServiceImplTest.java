@@ -0,0 +1,109 @@
+package com.example.server.services.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import com.example.server.dto.MutualFriendsDto;
+import com.example.server.dto.UserDto;
+import com.example.server.mapper.UserDtoMapper;
+import com.example.server.services.FriendGraphService;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class MutualFriendsServiceImplTest {
+
+    @Mock
+    private FriendGraphService friendGraphService;
+
+    @Mock
+    private UserDtoMapper userDtoMapper;
+
+    @InjectMocks
+    private MutualFriendsServiceImpl mutualFriendsService;
+
+    // Danh sách bạn bè đã sắp xếp, như chỉ mục FriendGraphService trả về
+    private final Map<Long, long[]> graph = Map.of(
+        1L, new long[] { 10L, 11L, 12L, 13L },
+        2L, new long[] { 11L, 13L, 14L },
+        3L, new long[] { 20L },
+        4L, new long[] { 10L, 11L, 12L, 13L, 14L });
+
+    @BeforeEach
+    void setUp() {
+        when(friendGraphService.friendIds(anyCollection())).thenAnswer(invocation -> {
+            Map<Long, long[]> friends = new HashMap<>();
+            for (Long id : invocation.<Collection<Long>>getArgument(0)) {
+                friends.put(id, graph.getOrDefault(id, new long[0]));
+            }
+            return friends;
+        });
+        when(userDtoMapper.toUserSummaryDtos(anyCollection())).thenAnswer(invocation -> {
+            Map<Long, UserDto> users = new HashMap<>();
+            for (Long id : invocation.<Collection<Long>>getArgument(0)) {
+                UserDto user = new UserDto();
+                user.setId(id);
+                users.put(id, user);
+            }
+            return users;
+        });
+    }
+
+    @Test
+    void countsForCandidatesLoadFriendListsOnce() {
+        Map<Long, Integer> counts = mutualFriendsService.counts(1L, Arrays.asList(2L, 3L, null, 1L, 2L, 99L));
+
+        // Giữ thứ tự ứng viên, bỏ null và trùng; chính mình và người không có bạn đều là 0
+        assertEquals(List.of(2L, 3L, 1L, 99L), List.copyOf(counts.keySet()));
+        assertEquals(List.of(2, 0, 0, 0), List.copyOf(counts.values()));
+        verify(friendGraphService, times(1)).friendIds(new LinkedHashSet<>(List.of(1L, 2L, 3L, 99L)));
+    }
+
+    @Test
+    void previewsAreCappedAndLoadUsersInOneLookup() {
+        Map<Long, MutualFriendsDto> previews = mutualFriendsService.previews(1L, List.of(2L, 4L), 2);
+
+        assertEquals(2, previews.get(2L).getCount());
+        assertEquals(List.of(11L, 13L), ids(previews.get(2L)));
+        // Đếm đủ 4 bạn chung nhưng chỉ xem trước 2 người đầu
+        assertEquals(4, previews.get(4L).getCount());
+        assertEquals(List.of(10L, 11L), ids(previews.get(4L)));
+        verify(userDtoMapper, times(1)).toUserSummaryDtos(Set.of(10L, 11L, 13L));
+
+        MutualFriendsDto none = mutualFriendsService.preview(1L, 3L, 5);
+        assertEquals(0, none.getCount());
+        assertEquals(List.of(), none.getPreview());
+    }
+
+    @Test
+    void countWithSelfOrMissingUserIsZero() {
+        assertEquals(0, mutualFriendsService.count(1L, 1L));
+        assertEquals(0, mutualFriendsService.count(null, 2L));
+        assertEquals(Map.of(), mutualFriendsService.counts(null, List.of(2L)));
+        verifyNoInteractions(friendGraphService);
+    }
+
+    private static List<Long> ids(MutualFriendsDto preview) {
+        return preview.getPreview().stream().map(UserDto::getId).toList();
+    }
+}
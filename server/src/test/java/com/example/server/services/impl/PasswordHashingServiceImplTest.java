@@ -0,0 +1,124 @@
+package com.example.server.services.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.server.exception.PasswordHashingBusyException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PasswordHashingServiceImplTest {
+
+    private PasswordEncoder passwordEncoder;
+    private MeterRegistry meterRegistry;
+    private PasswordHashingServiceImpl service;
+
+    // Giữ worker duy nhất bận cho tới khi test mở chốt
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        passwordEncoder = mock(PasswordEncoder.class);
+        meterRegistry = new SimpleMeterRegistry();
+        service = new PasswordHashingServiceImpl();
+        ReflectionTestUtils.setField(service, "passwordEncoder", passwordEncoder);
+        ReflectionTestUtils.setField(service, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(service, "strength", 10);
+        ReflectionTestUtils.setField(service, "threads", 1);
+        ReflectionTestUtils.setField(service, "queueCapacity", 1);
+        ReflectionTestUtils.setField(service, "maxWaitMs", 200L);
+        service.init();
+
+        when(passwordEncoder.encode("fast")).thenReturn("hashed-fast");
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        service.shutdown();
+    }
+
+    @Test
+    void fullQueueIsRejectedImmediately() throws Exception {
+        occupyWorker();
+        // Việc thứ hai chiếm chỗ duy nhất trong hàng đợi
+        CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> service.hash("fast"));
+        waitForQueued(1);
+
+        long start = System.nanoTime();
+        assertThrows(PasswordHashingBusyException.class, () -> service.hash("fast"));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 200);
+        assertEquals(1.0, overload("queue-full"));
+
+        // Việc đã xếp hàng trước đó chỉ chờ tối đa max-wait-ms
+        queued.handle((hash, error) -> null).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void waitBeyondMaxWaitTimesOutAndDropsQueuedTask() throws Exception {
+        occupyWorker();
+
+        assertThrows(PasswordHashingBusyException.class, () -> service.matches("raw", "$2a$10$abc"));
+        assertEquals(1.0, overload("timeout"));
+
+        release.countDown();
+        // Việc đã bị hủy khi còn trong hàng đợi: không tốn CPU băm nữa
+        assertEquals("hashed-fast", service.hash("fast"));
+        verify(passwordEncoder, never()).matches(anyString(), anyString());
+    }
+
+    @Test
+    void rehashIsNeededOnlyForOtherCost() {
+        assertFalse(service.needsRehash("$2a$10$abcdefghijklmnopqrstuv"));
+        assertTrue(service.needsRehash("$2a$12$abcdefghijklmnopqrstuv"));
+        assertTrue(service.needsRehash("$2y$04$abcdefghijklmnopqrstuv"));
+        assertFalse(service.needsRehash("{noop}plain"));
+        assertFalse(service.needsRehash(null));
+    }
+
+    // Chiếm worker duy nhất bằng một việc chờ chốt, không qua hash() để không tính vào bộ đếm timeout
+    private void occupyWorker() throws InterruptedException {
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) ReflectionTestUtils.getField(service, "executor");
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    private double overload(String reason) {
+        return meterRegistry.get("auth.password.hashing.overload").tag("reason", reason).counter().count();
+    }
+
+    private void waitForQueued(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (meterRegistry.get("executor.queued").tag("name", "password.hashing").gauge().value() < expected
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+}
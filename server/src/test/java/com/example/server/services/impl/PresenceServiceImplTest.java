@@ -0,0 +1,94 @@
+package com.example.server.services.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import com.example.server.repositories.UserRepository;
+import com.example.server.support.EmbeddedRedis;
+
+@SpringJUnitConfig(PresenceServiceImplTest.Config.class)
+class PresenceServiceImplTest {
+
+    // Hai "node" dùng chung một Redis; không gắn @Configuration vì gói services nằm trong @ComponentScan
+    static class Config {
+        @Bean
+        StringRedisTemplate redisTemplate() {
+            return EmbeddedRedis.template();
+        }
+
+        @Bean
+        RedisMessageListenerContainer listenerContainer(StringRedisTemplate redisTemplate) {
+            RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+            container.setConnectionFactory(redisTemplate.getConnectionFactory());
+            return container;
+        }
+
+        @Bean
+        PresenceServiceImpl nodeA() {
+            return new PresenceServiceImpl();
+        }
+
+        @Bean
+        PresenceServiceImpl nodeB() {
+            return new PresenceServiceImpl();
+        }
+    }
+
+    @MockitoBean
+    private UserRepository userRepository;
+
+    @Autowired
+    @Qualifier("nodeA")
+    private PresenceServiceImpl nodeA;
+
+    @Autowired
+    @Qualifier("nodeB")
+    private PresenceServiceImpl nodeB;
+
+    @BeforeEach
+    void setUp() {
+        EmbeddedRedis.flush();
+    }
+
+    @Test
+    void lastSessionDisconnectGoesOffline() {
+        nodeA.sessionConnected(1L, "s1");
+        nodeB.sessionConnected(1L, "s2");
+
+        nodeA.sessionDisconnected(1L, "s1");
+        assertTrue(nodeB.isOnline(1L));
+
+        nodeB.sessionDisconnected(null, "s2");
+        assertFalse(nodeA.isOnline(1L));
+    }
+
+    @Test
+    void logoutOnOneNodeStopsOtherNodesFromExtending() throws InterruptedException {
+        nodeA.sessionConnected(1L, "s1");
+        nodeB.sessionConnected(1L, "s2");
+        nodeB.sessionConnected(2L, "s3");
+
+        // Đăng xuất xử lý ở node A trong khi phiên s2 đang mở trên node B
+        nodeA.markOffline(1L);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (nodeB.refreshLocalSessions() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        // Node B chỉ còn gia hạn phiên của người 2; người 1 không bị ghi online trở lại
+        assertEquals(1, nodeB.refreshLocalSessions());
+        assertFalse(nodeA.isOnline(1L));
+        assertTrue(nodeA.isOnline(2L));
+    }
+}
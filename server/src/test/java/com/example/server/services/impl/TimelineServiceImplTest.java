@@ -0,0 +1,263 @@
+package com.example.server.services.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import com.example.server.models.Group;
+import com.example.server.models.Post;
+import com.example.server.models.User;
+import com.example.server.repositories.FriendshipRepository;
+import com.example.server.repositories.GroupMemberRepository;
+import com.example.server.repositories.PostRepository;
+import com.example.server.repositories.PostRepository.TimelineEntry;
+import com.example.server.support.EmbeddedRedis;
+
+@SpringJUnitConfig(TimelineServiceImplTest.Config.class)
+@TestPropertySource(properties = { "app.timeline.max-size=5", "app.timeline.ttl-hours=1" })
+class TimelineServiceImplTest {
+
+    // Không gắn @Configuration: gói services nằm trong @ComponentScan của ServerApplication
+    @Import(TimelineServiceImpl.class)
+    static class Config {
+        @Bean
+        StringRedisTemplate redisTemplate() {
+            return EmbeddedRedis.template();
+        }
+    }
+
+    @MockitoBean
+    private PostRepository postRepository;
+
+    @MockitoBean
+    private FriendshipRepository friendshipRepository;
+
+    @MockitoBean
+    private GroupMemberRepository groupMemberRepository;
+
+    @Autowired
+    private TimelineServiceImpl timelineService;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    private final Map<Long, Post> posts = new HashMap<>();
+    private final LocalDateTime now = LocalDateTime.of(2024, 5, 1, 12, 0);
+
+    @BeforeEach
+    void setUp() {
+        EmbeddedRedis.flush();
+        posts.clear();
+        when(postRepository.findAllById(any())).thenAnswer(invocation -> {
+            List<Post> found = new ArrayList<>();
+            for (Long id : invocation.<Iterable<Long>>getArgument(0)) {
+                if (posts.containsKey(id)) {
+                    found.add(posts.get(id));
+                }
+            }
+            return found;
+        });
+        when(postRepository.findHomeTimelineEntries(anyLong(), any(Pageable.class))).thenReturn(List.of());
+        when(postRepository.findPublicTimelineEntries(any(Pageable.class))).thenReturn(List.of());
+    }
+
+    @Test
+    void lazyRebuildMergesHomeAndPublicTimelinesOnce() {
+        post(1L, 1, Post.Privacy.FRIENDS, null);
+        post(2L, 2, Post.Privacy.PUBLIC, null);
+        post(3L, 3, Post.Privacy.FRIENDS, null);
+        when(postRepository.findHomeTimelineEntries(eq(10L), any(Pageable.class))).thenReturn(entries(3L, 1L));
+        when(postRepository.findPublicTimelineEntries(any(Pageable.class))).thenReturn(entries(2L));
+
+        Page<Post> first = timelineService.getHomeTimeline(10L, PageRequest.of(0, 2)).orElseThrow();
+        Page<Post> second = timelineService.getHomeTimeline(10L, PageRequest.of(1, 2)).orElseThrow();
+
+        assertEquals(List.of(3L, 2L), ids(first));
+        assertEquals(List.of(1L), ids(second));
+        assertEquals(3, first.getTotalElements());
+        // Lần đọc thứ hai không dựng lại từ DB, timeline có TTL
+        verify(postRepository, times(1)).findHomeTimelineEntries(eq(10L), any(Pageable.class));
+        verify(postRepository, times(1)).findPublicTimelineEntries(any(Pageable.class));
+        assertTrue(redisTemplate.getExpire("timeline:home:10") > 0);
+    }
+
+    @Test
+    void emptyTimelineIsCachedWithSentinel() {
+        assertEquals(0, timelineService.getHomeTimeline(10L, PageRequest.of(0, 2)).orElseThrow().getTotalElements());
+        timelineService.getHomeTimeline(10L, PageRequest.of(0, 2));
+
+        verify(postRepository, times(1)).findHomeTimelineEntries(eq(10L), any(Pageable.class));
+        assertEquals(Set.of("0"), redisTemplate.opsForZSet().range("timeline:home:10", 0, -1));
+    }
+
+    @Test
+    void rebuildKeepsPostsFannedOutWhileReadingDatabase() {
+        post(1L, 1, Post.Privacy.FRIENDS, null);
+        post(9L, 9, Post.Privacy.FRIENDS, null);
+        when(postRepository.findHomeTimelineEntries(eq(10L), any(Pageable.class))).thenAnswer(invocation -> {
+            // Một lượt dựng khác vừa xong và bài 9 đã được fan-out vào đó trong lúc truy vấn này còn chạy
+            redisTemplate.opsForZSet().add("timeline:home:10", "0", 0);
+            redisTemplate.opsForZSet().add("timeline:home:10", "9", score(9));
+            return entries(1L);
+        });
+
+        Page<Post> page = timelineService.getHomeTimeline(10L, PageRequest.of(0, 4)).orElseThrow();
+
+        assertEquals(List.of(9L, 1L), ids(page));
+    }
+
+    @Test
+    void rebuildTrimsToMaxSize() {
+        List<TimelineEntry> entries = new ArrayList<>();
+        for (long id = 1; id <= 8; id++) {
+            post(id, (int) id, Post.Privacy.FRIENDS, null);
+            entries.add(entry(id));
+        }
+        when(postRepository.findHomeTimelineEntries(eq(10L), any(Pageable.class))).thenReturn(entries);
+
+        timelineService.getHomeTimeline(10L, PageRequest.of(0, 2));
+
+        assertEquals(5L, redisTemplate.opsForZSet().zCard("timeline:home:10"));
+        assertEquals(Set.of("8", "7", "6", "5", "4"), redisTemplate.opsForZSet().range("timeline:home:10", 0, -1));
+    }
+
+    @Test
+    void fanOutFollowsFeedVisibility() {
+        // Timeline của 10 (bạn tác giả), 20 (thành viên nhóm), 30 (người lạ) đã được dựng; timeline của 40 còn lạnh
+        for (long userId : new long[] { 10L, 20L, 30L }) {
+            timelineService.getHomeTimeline(userId, PageRequest.of(0, 2));
+        }
+        when(friendshipRepository.findFriendIdsByUserId(1L)).thenReturn(List.of(10L, 40L));
+        when(groupMemberRepository.findUserIdsByGroupId(7L)).thenReturn(List.of(1L, 20L));
+
+        timelineService.onPostCreated(post(100L, 1, Post.Privacy.FRIENDS, 7L));
+        timelineService.onPostCreated(post(101L, 2, Post.Privacy.PUBLIC, 7L));
+        timelineService.onPostCreated(post(102L, 3, Post.Privacy.PUBLIC, null));
+        timelineService.onPostCreated(post(103L, 4, Post.Privacy.FRIENDS, null));
+        timelineService.onPostCreated(post(104L, 5, Post.Privacy.ONLY_ME, null));
+
+        // Bài FRIENDS trong nhóm tới cả bạn bè lẫn thành viên; bài PUBLIC trong nhóm chỉ tới thành viên
+        assertEquals(Set.of("100", "103"), members("timeline:home:10"));
+        assertEquals(Set.of("100", "101"), members("timeline:home:20"));
+        assertEquals(Set.of(), members("timeline:home:30"));
+        assertEquals(Set.of("102"), members("timeline:public"));
+        assertFalse(redisTemplate.hasKey("timeline:home:40"));
+        assertFalse(redisTemplate.hasKey("timeline:home:1"));
+    }
+
+    @Test
+    void removedPostIsDroppedFromEveryTimeline() {
+        when(friendshipRepository.findFriendIdsByUserId(1L)).thenReturn(List.of(10L));
+        when(groupMemberRepository.findUserIdsByGroupId(7L)).thenReturn(List.of(1L, 20L));
+        timelineService.getHomeTimeline(10L, PageRequest.of(0, 2));
+        timelineService.getHomeTimeline(20L, PageRequest.of(0, 2));
+        Post post = post(100L, 1, Post.Privacy.FRIENDS, 7L);
+        timelineService.onPostCreated(post);
+
+        timelineService.onPostRemoved(post);
+
+        assertEquals(Set.of(), members("timeline:home:10"));
+        assertEquals(Set.of(), members("timeline:home:20"));
+    }
+
+    @Test
+    void pagesBeyondMaterializedLengthFallBackToDatabase() {
+        assertTrue(timelineService.getHomeTimeline(10L, PageRequest.of(2, 2)).isEmpty());
+        assertTrue(timelineService.getPublicTimeline(PageRequest.of(0, 5)).isEmpty());
+
+        // Không dựng timeline chỉ để trả lời rằng phải đọc DB
+        verify(postRepository, never()).findPublicTimelineEntries(any(Pageable.class));
+        assertFalse(redisTemplate.hasKey("timeline:public"));
+    }
+
+    @Test
+    void redisFailureFallsBackToDatabase() {
+        when(postRepository.findHomeTimelineEntries(eq(10L), any(Pageable.class))).thenThrow(new IllegalStateException("db"));
+
+        assertTrue(timelineService.getHomeTimeline(10L, PageRequest.of(0, 2)).isEmpty());
+        verifyNoInteractions(friendshipRepository);
+    }
+
+    private Set<String> members(String key) {
+        Set<String> members = redisTemplate.opsForZSet().range(key, 0, -1);
+        members.remove("0");
+        return members;
+    }
+
+    private Post post(Long id, int minute, Post.Privacy privacy, Long groupId) {
+        User author = new User();
+        author.setId(1L);
+        Post post = new Post();
+        post.setId(id);
+        post.setUser(author);
+        post.setPrivacy(privacy);
+        post.setIsActive(false);
+        post.setCreatedAt(now.plusMinutes(minute));
+        if (groupId != null) {
+            Group group = new Group();
+            group.setId(groupId);
+            post.setGroup(group);
+        }
+        posts.put(id, post);
+        return post;
+    }
+
+    private List<TimelineEntry> entries(Long... ids) {
+        List<TimelineEntry> entries = new ArrayList<>();
+        for (Long id : ids) {
+            entries.add(entry(id));
+        }
+        return entries;
+    }
+
+    private TimelineEntry entry(Long id) {
+        LocalDateTime createdAt = posts.get(id).getCreatedAt();
+        return new TimelineEntry() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public LocalDateTime getCreatedAt() {
+                return createdAt;
+            }
+        };
+    }
+
+    private double score(long id) {
+        return posts.get(id).getCreatedAt().atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static List<Long> ids(Page<Post> page) {
+        return page.getContent().stream().map(Post::getId).toList();
+    }
+}
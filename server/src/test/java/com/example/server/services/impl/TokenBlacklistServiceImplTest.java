@@ -0,0 +1,71 @@
+package com.example.server.services.impl;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import com.example.server.support.EmbeddedRedis;
+
+@SpringJUnitConfig(TokenBlacklistServiceImplTest.Config.class)
+@TestPropertySource(properties = "app.jwt.blacklist-cache-ttl-ms=300")
+// Cache cục bộ nằm trong service: mỗi test một context mới
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class TokenBlacklistServiceImplTest {
+
+    // Không gắn @Configuration: gói services nằm trong @ComponentScan của ServerApplication
+    @Import(TokenBlacklistServiceImpl.class)
+    static class Config {
+        @Bean
+        StringRedisTemplate redisTemplate() {
+            return EmbeddedRedis.template();
+        }
+    }
+
+    @Autowired
+    private TokenBlacklistServiceImpl blacklistService;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @BeforeEach
+    void setUp() {
+        EmbeddedRedis.flush();
+    }
+
+    @Test
+    void logoutOnAnotherNodeIsSeenAfterNegativeTtl() throws InterruptedException {
+        assertFalse(blacklistService.isBlacklisted("t1"));
+
+        // Instance khác đăng xuất token: trong TTL vẫn đọc kết quả cũ từ cache cục bộ
+        redisTemplate.opsForValue().set("blacklist_token:t1", "true", 60, TimeUnit.SECONDS);
+        assertFalse(blacklistService.isBlacklisted("t1"));
+
+        Thread.sleep(350);
+        assertTrue(blacklistService.isBlacklisted("t1"));
+    }
+
+    @Test
+    void blacklistedStateIsCachedForKeyTtl() throws InterruptedException {
+        blacklistService.blacklist("t2", 60);
+        redisTemplate.opsForValue().set("blacklist_token:t3", "true", 60, TimeUnit.SECONDS);
+        assertTrue(blacklistService.isBlacklisted("t3"));
+
+        // Quá TTL của kết quả "chưa bị chặn" mà không còn đọc Redis: token đã chặn vẫn bị chặn
+        EmbeddedRedis.flush();
+        Thread.sleep(350);
+        assertTrue(blacklistService.isBlacklisted("t2"));
+        assertTrue(blacklistService.isBlacklisted("t3"));
+        assertFalse(blacklistService.isBlacklisted("t4"));
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.server.support;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import redis.embedded.RedisServer;
+
+/**
+ * Redis thật chạy trong tiến trình test: các script Lua, ZSET và TTL được Redis thực thi,
+ * không phải giả lập lại trong test. Một server dùng chung cho cả JVM, mỗi test gọi {@link #flush()} trước khi chạy.
+ */
+public final class EmbeddedRedis {
+
+    private static RedisServer server;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate template;
+
+    private EmbeddedRedis() {
+    }
+
+    public static synchronized StringRedisTemplate template() {
+        if (template == null) {
+            start();
+        }
+        return template;
+    }
+
+    // Xóa toàn bộ dữ liệu giữa các test
+    public static void flush() {
+        template().execute((RedisCallback<Object>) connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        });
+    }
+
+    private static void start() {
+        try {
+            int port = freePort();
+            server = new RedisServer(port);
+            server.start();
+            connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+            connectionFactory.afterPropertiesSet();
+            connectionFactory.start();
+            template = new StringRedisTemplate(connectionFactory);
+            Runtime.getRuntime().addShutdownHook(new Thread(EmbeddedRedis::stop));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Không khởi động được Redis nhúng", e);
+        }
+    }
+
+    private static void stop() {
+        try {
+            connectionFactory.destroy();
+            server.stop();
+        } catch (IOException e) {
+            // JVM đang tắt, bỏ qua
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
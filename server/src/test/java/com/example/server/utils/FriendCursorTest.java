@@ -0,0 +1,49 @@
+package com.example.server.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import org.junit.jupiter.api.Test;
+
+class FriendCursorTest {
+
+    @Test
+    void encodedCursorRoundTripsAndIsOpaque() {
+        FriendCursor byName = new FriendCursor(false, "nguyen van an", null, 42L);
+        FriendCursor byDate = new FriendCursor(true, "tran thi b", LocalDateTime.of(2024, 5, 1, 12, 30, 15, 123_456_000), 7L);
+
+        for (FriendCursor cursor : new FriendCursor[] { byName, byDate }) {
+            String encoded = cursor.encode();
+            assertFalse(encoded.contains(","));
+            assertFalse(encoded.contains("="));
+            assertEquals(cursor, FriendCursor.decode(encoded));
+            assertFalse(FriendCursor.decode(encoded).isFirst());
+        }
+        assertEquals(FriendCursor.FIRST, FriendCursor.decode(FriendCursor.FIRST.encode()));
+    }
+
+    @Test
+    void blankIsFirstPageAndSortDefaultsToName() {
+        // ?after= rỗng là trang đầu
+        assertTrue(FriendCursor.decode("").isFirst());
+        assertTrue(FriendCursor.decode(null).isFirst());
+        assertEquals(FriendCursor.Sort.NAME, FriendCursor.Sort.parse(null));
+        assertEquals(FriendCursor.Sort.RECENT, FriendCursor.Sort.parse(" Recent "));
+        assertThrows(IllegalArgumentException.class, () -> FriendCursor.Sort.parse("oldest"));
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        for (String raw : new String[] { "1,,7", "2,,7,an", "1,2024-13-01T12:00,7,an", "1,,x,an" }) {
+            String value = Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+            assertThrows(IllegalArgumentException.class, () -> FriendCursor.decode(value), raw);
+        }
+        assertThrows(IllegalArgumentException.class, () -> FriendCursor.decode("not base64!"));
+    }
+}
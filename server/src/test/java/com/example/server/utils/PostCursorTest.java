@@ -0,0 +1,40 @@
+package com.example.server.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+
+class PostCursorTest {
+
+    @Test
+    void encodedCursorRoundTripsAndIsOpaque() {
+        PostCursor cursor = new PostCursor(LocalDateTime.of(2024, 5, 1, 12, 30, 15, 123_456_000), 42L);
+
+        String encoded = cursor.encode();
+
+        assertFalse(encoded.contains(","));
+        assertFalse(encoded.contains("="));
+        assertEquals(cursor, PostCursor.decode(encoded));
+        assertFalse(PostCursor.decode(encoded).isFirst());
+    }
+
+    @Test
+    void rawFormAndBlankAreAccepted() {
+        assertEquals(new PostCursor(LocalDateTime.of(2024, 5, 1, 12, 0), 7L), PostCursor.decode(" 2024-05-01T12:00,7 "));
+        // ?before= rỗng là trang đầu
+        assertTrue(PostCursor.decode("").isFirst());
+        assertTrue(PostCursor.decode(null).isFirst());
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        for (String value : new String[] { "not base64!", "2024-05-01T12:00,", ",7", "2024-13-01T12:00,7", "2024-05-01T12:00,x" }) {
+            assertThrows(IllegalArgumentException.class, () -> PostCursor.decode(value), value);
+        }
+    }
+}